@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.bench;
+
+import java.util.Random;
+
+/**
+ * Reproducible input streams for the benchmarks.
+ */
+public final class BenchData {
+
+  /**
+   * Fixed seed so that every run and every release sees the same stream.
+   */
+  public static final long RANDOM_SEED = 0x5EED_DA7AL;
+
+  /**
+   * The shape of the input stream.
+   */
+  public enum Distribution {
+    /** All items are distinct and presented in increasing order. */
+    SEQUENTIAL,
+    /** Items are drawn uniformly at random from a universe much larger than the stream. */
+    UNIFORM,
+    /** Items are drawn from a heavily skewed, approximately Zipfian (s = 1), universe. */
+    ZIPF
+  }
+
+  private BenchData() {}
+
+  /**
+   * Returns a stream of <i>n</i> long items with the given distribution.
+   * @param dist the given Distribution
+   * @param n the number of items
+   * @param seed the seed of the random generator. Different seeds give different streams.
+   * @return a stream of <i>n</i> long items
+   */
+  public static long[] longs(final Distribution dist, final int n, final long seed) {
+    final long[] out = new long[n];
+    final Random rand = new Random(seed);
+    switch (dist) {
+      case SEQUENTIAL: {
+        final long start = seed * n;
+        for (int i = 0; i < n; i++) { out[i] = start + i; }
+        break;
+      }
+      case UNIFORM: {
+        for (int i = 0; i < n; i++) { out[i] = rand.nextLong(); }
+        break;
+      }
+      case ZIPF: {
+        //log-uniform over [1, n]: P(x) ~ 1/x, which is Zipf with s = 1
+        final double lnN = Math.log(n);
+        for (int i = 0; i < n; i++) { out[i] = (long) Math.exp(rand.nextDouble() * lnN); }
+        break;
+      }
+      default: throw new IllegalArgumentException("Unknown distribution: " + dist);
+    }
+    return out;
+  }
+
+  /**
+   * Returns a stream of <i>n</i> double items with the given distribution.
+   * SEQUENTIAL items are increasing, UNIFORM items are in [0, 1) and ZIPF items are skewed toward
+   * small values with many repeats.
+   * @param dist the given Distribution
+   * @param n the number of items
+   * @param seed the seed of the random generator
+   * @return a stream of <i>n</i> double items
+   */
+  public static double[] doubles(final Distribution dist, final int n, final long seed) {
+    final double[] out = new double[n];
+    if (dist == Distribution.UNIFORM) {
+      final Random rand = new Random(seed);
+      for (int i = 0; i < n; i++) { out[i] = rand.nextDouble(); }
+      return out;
+    }
+    final long[] longs = longs(dist, n, seed);
+    for (int i = 0; i < n; i++) { out[i] = longs[i]; }
+    return out;
+  }
+
+  /**
+   * Returns a stream of <i>n</i> float items with the given distribution.
+   * @param dist the given Distribution
+   * @param n the number of items
+   * @param seed the seed of the random generator
+   * @return a stream of <i>n</i> float items
+   */
+  public static float[] floats(final Distribution dist, final int n, final long seed) {
+    final double[] doubles = doubles(dist, n, seed);
+    final float[] out = new float[n];
+    for (int i = 0; i < n; i++) { out[i] = (float) doubles[i]; }
+    return out;
+  }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.datasketches.memory.WritableHandle;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * Allocates the <i>WritableMemory</i> that backs the Direct variants of the sketches and releases
+ * any off-heap allocations when closed. Each benchmark state owns one instance and closes it in
+ * its tear-down.
+ *
+ * <p>On JDK 9+ datasketches-memory needs the <i>--add-exports</i> and <i>--add-opens</i> JVM
+ * arguments that every benchmark class appends to its forks. When running on JDK 8 override them
+ * on the command line, e.g. <code>-jvmArgsAppend -Xmx4g</code>.</p>
+ */
+public final class BenchMemory implements AutoCloseable {
+
+  /**
+   * Where the sketch lives.
+   */
+  public enum Type {
+    /** The sketch uses plain Java heap arrays. */
+    HEAP,
+    /** The sketch is a Direct sketch in an off-heap <i>WritableMemory</i>. */
+    DIRECT
+  }
+
+  private final List<WritableHandle> handles = new ArrayList<>();
+
+  /**
+   * Allocates a new, zeroed, off-heap <i>WritableMemory</i> of the given capacity.
+   * @param capacityBytes the capacity in bytes
+   * @return a new off-heap WritableMemory that stays valid until this object is closed
+   */
+  public WritableMemory allocateDirect(final long capacityBytes) {
+    final WritableHandle handle = WritableMemory.allocateDirect(capacityBytes);
+    handles.add(handle);
+    final WritableMemory wmem = handle.getWritable();
+    wmem.clear();
+    return wmem;
+  }
+
+  @Override
+  public void close() {
+    for (final WritableHandle handle : handles) {
+      try {
+        handle.close();
+      } catch (final Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    handles.clear();
+  }
+
+}
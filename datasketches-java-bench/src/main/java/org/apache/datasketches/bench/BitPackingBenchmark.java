@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.theta.BenchBitPacking;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Theta compression kernels: the unrolled block-of-8 kernels (<i>BitPacking.packBitsBlock8</i> and
+ * <i>unpackBitsBlock8</i>) against the word-at-a-time block-of-64 kernels
+ * (<i>packBitsBlock64</i> and <i>unpackBitsBlock64</i>) over the same packed data.
+ *
+ * <p>Every benchmark reports the time per value over {@link #NUM_VALUES} values. The block-of-8
+ * kernels read from a <i>byte[]</i>, the block-of-64 kernels read from a <i>Memory</i> wrapping
+ * the same array, which is how the compact sketch code calls them. The kernels are internal to
+ * the library and are called through {@link BenchBitPacking}.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+    "--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+    "--add-exports", "java.base/jdk.internal.ref=ALL-UNNAMED",
+    "--add-opens", "java.base/java.nio=ALL-UNNAMED",
+    "--add-opens", "java.base/sun.nio.ch=ALL-UNNAMED"})
+public class BitPackingBenchmark {
+  static final int NUM_VALUES = 1 << 16;
+
+  //typical delta widths of ordered compact sketches from lgK = 20 down to lgK = 12
+  @Param({"44", "52"})
+  int bits;
+
+  private long[] values;
+  private long[] out;
+  private byte[] packed;
+  private Memory packedMem;
+  private byte[] outBytes;
+  private WritableMemory outMem;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    final long mask = (1L << bits) - 1;
+    final long[] items = BenchData.longs(BenchData.Distribution.UNIFORM, NUM_VALUES,
+        BenchData.RANDOM_SEED);
+    values = new long[NUM_VALUES];
+    for (int i = 0; i < NUM_VALUES; i++) { values[i] = items[i] & mask; }
+    out = new long[NUM_VALUES];
+    packed = new byte[(NUM_VALUES / 8) * bits];
+    for (int i = 0; i < NUM_VALUES; i += 8) {
+      BenchBitPacking.packBitsBlock8(values, i, packed, (i / 8) * bits, bits);
+    }
+    packedMem = Memory.wrap(packed);
+    outBytes = new byte[packed.length];
+    outMem = WritableMemory.allocate(packed.length);
+  }
+
+  /**
+   * Unpacks all values with the block-of-8 kernel.
+   * @return the unpacked values
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_VALUES)
+  public long[] unpackBlock8() {
+    for (int i = 0; i < NUM_VALUES; i += 8) {
+      BenchBitPacking.unpackBitsBlock8(out, i, packed, (i / 8) * bits, bits);
+    }
+    return out;
+  }
+
+  /**
+   * Unpacks all values with the block-of-64 kernel.
+   * @return the unpacked values
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_VALUES)
+  public long[] unpackBlock64() {
+    for (int i = 0; i < NUM_VALUES; i += 64) {
+      BenchBitPacking.unpackBitsBlock64(out, i, packedMem, (long) (i / 8) * bits, bits);
+    }
+    return out;
+  }
+
+  /**
+   * Packs all values with the block-of-8 kernel.
+   * @return the packed bytes
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_VALUES)
+  public byte[] packBlock8() {
+    for (int i = 0; i < NUM_VALUES; i += 8) {
+      BenchBitPacking.packBitsBlock8(values, i, outBytes, (i / 8) * bits, bits);
+    }
+    return outBytes;
+  }
+
+  /**
+   * Packs all values with the block-of-64 kernel.
+   * @return the packed Memory
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_VALUES)
+  public WritableMemory packBlock64() {
+    for (int i = 0; i < NUM_VALUES; i += 64) {
+      BenchBitPacking.packBitsBlock64(values, i, outMem, (long) (i / 8) * bits, bits);
+    }
+    return outMem;
+  }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.bench;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares a JMH result file against a baseline recorded with the same settings on the same
+ * machine and JDK, as described in the README.md of this module. No baseline is committed.
+ * Both files must be in the JMH CSV format (<code>-rf csv</code>).
+ *
+ * <p>Usage: <code>CompareResults baseline.csv current.csv [tolerance]</code>,
+ * where <i>tolerance</i> is the relative slowdown that is still accepted, 0.10 by default.
+ * A benchmark whose score error in either file is larger than the tolerance times its score is
+ * reported as noisy, since the comparison cannot detect a regression of that size. The exit
+ * status is 1 if any benchmark present in both files regressed beyond the tolerance or is
+ * noisy.</p>
+ *
+ * <p>All benchmarks of this module report the average time per operation, so a larger score
+ * is a slower result.</p>
+ */
+public final class CompareResults {
+
+  private CompareResults() {}
+
+  /**
+   * Compares the two result files and prints one row per benchmark.
+   * @param args the baseline file, the current file and an optional tolerance
+   * @throws IOException if a file cannot be read
+   */
+  public static void main(final String[] args) throws IOException {
+    if ((args.length < 2) || (args.length > 3)) {
+      System.err.println("Usage: CompareResults baseline.csv current.csv [tolerance]");
+      System.exit(2);
+    }
+    final double tolerance = (args.length == 3) ? Double.parseDouble(args[2]) : 0.10;
+    final Map<String, double[]> base = read(args[0]);
+    final Map<String, double[]> cur = read(args[1]);
+    int regressions = 0;
+    int noisy = 0;
+    System.out.println(String.format(Locale.US, "%-100s %14s %14s %8s",
+        "Benchmark", "Baseline", "Current", "Ratio"));
+    for (final Map.Entry<String, double[]> e : cur.entrySet()) {
+      final double[] b = base.get(e.getKey());
+      final double[] c = e.getValue();
+      if (b == null) {
+        System.out.println(String.format(Locale.US, "%-100s %14s %14.3f %8s",
+            e.getKey(), "-", c[0], "new"));
+        continue;
+      }
+      final double ratio = c[0] / b[0];
+      final String flag;
+      if (isNoisy(b, tolerance) || isNoisy(c, tolerance)) {
+        noisy++;
+        flag = " NOISY";
+      } else if (ratio > (1.0 + tolerance)) {
+        regressions++;
+        flag = " REGRESSION";
+      } else {
+        flag = "";
+      }
+      System.out.println(String.format(Locale.US, "%-100s %14.3f %14.3f %8.3f%s",
+          e.getKey(), b[0], c[0], ratio, flag));
+    }
+    System.out.println(regressions + " regression(s) beyond " + tolerance + ", "
+        + noisy + " noisy result(s) with a score error beyond " + tolerance);
+    if ((regressions > 0) || (noisy > 0)) { System.exit(1); }
+  }
+
+  //True if the score error is too large to detect a slowdown of the given tolerance.
+  static boolean isNoisy(final double[] scoreAndError, final double tolerance) {
+    return !(scoreAndError[1] <= (tolerance * scoreAndError[0]));
+  }
+
+  /**
+   * Reads a JMH CSV result file into a map from the benchmark name plus its parameters
+   * to the score and the score error.
+   * @param file the file name
+   * @return the scores and score errors in file order
+   * @throws IOException if the file cannot be read
+   */
+  static Map<String, double[]> read(final String file) throws IOException {
+    final List<String> lines = Files.readAllLines(Paths.get(file), UTF_8);
+    final Map<String, double[]> out = new LinkedHashMap<>();
+    if (lines.isEmpty()) { return out; }
+    final List<String> header = split(lines.get(0));
+    final int benchIdx = header.indexOf("Benchmark");
+    final int scoreIdx = header.indexOf("Score");
+    final int errorIdx = header.indexOf("Score Error (99.9%)");
+    for (int i = 1; i < lines.size(); i++) {
+      if (lines.get(i).trim().isEmpty()) { continue; }
+      final List<String> row = split(lines.get(i));
+      final StringBuilder key = new StringBuilder(row.get(benchIdx));
+      for (int c = 0; c < header.size(); c++) {
+        if (header.get(c).startsWith("Param: ") && (c < row.size()) && !row.get(c).isEmpty()) {
+          key.append(' ').append(header.get(c).substring(7)).append('=').append(row.get(c));
+        }
+      }
+      final String error = (errorIdx < 0) ? "" : row.get(errorIdx);
+      out.put(key.toString(), new double[] { Double.parseDouble(row.get(scoreIdx)),
+          error.isEmpty() ? Double.NaN : Double.parseDouble(error) });
+    }
+    return out;
+  }
+
+  //JMH quotes every string field and never embeds quotes or commas inside a field.
+  private static List<String> split(final String line) {
+    final List<String> out = new ArrayList<>();
+    for (final String field : line.split(",", -1)) {
+      String f = field.trim();
+      if ((f.length() >= 2) && (f.charAt(0) == '"') && (f.charAt(f.length() - 1) == '"')) {
+        f = f.substring(1, f.length() - 1);
+      }
+      out.add(f);
+    }
+    return out;
+  }
+
+}
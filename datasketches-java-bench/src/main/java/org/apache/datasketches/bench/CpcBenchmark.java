@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.bench.BenchData.Distribution;
+import org.apache.datasketches.cpc.CpcSketch;
+import org.apache.datasketches.cpc.CpcUnion;
+import org.apache.datasketches.cpc.CpcWrapper;
+import org.apache.datasketches.memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CPC sketch: update (<i>CpcSketch.update</i> through the sparse, hybrid, pinned and sliding
+ * flavors), union, compressed serialization, heapify and the <i>CpcWrapper</i> estimate.
+ * CPC sketches are heap-only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+    "--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+    "--add-exports", "java.base/jdk.internal.ref=ALL-UNNAMED",
+    "--add-opens", "java.base/java.nio=ALL-UNNAMED",
+    "--add-opens", "java.base/sun.nio.ch=ALL-UNNAMED"})
+public class CpcBenchmark {
+  static final int STREAM_LENGTH = 1 << 20;
+  static final int NUM_SKETCHES = 16;
+
+  @Param({"11", "16"})
+  int lgK;
+
+  @Param({"SEQUENTIAL", "ZIPF"})
+  Distribution distribution;
+
+  private long[] items;
+  private CpcSketch sketch;
+  private CpcSketch[] sketches;
+  private Memory image;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    items = BenchData.longs(distribution, STREAM_LENGTH, BenchData.RANDOM_SEED);
+    sketch = new CpcSketch(lgK);
+    for (final long item : items) { sketch.update(item); }
+    image = Memory.wrap(sketch.toByteArray());
+
+    sketches = new CpcSketch[NUM_SKETCHES];
+    final int perSketch = 4 << lgK;
+    for (int i = 0; i < NUM_SKETCHES; i++) {
+      final CpcSketch sk = new CpcSketch(lgK);
+      final long[] part = BenchData.longs(distribution, perSketch, BenchData.RANDOM_SEED + i);
+      for (final long item : part) { sk.update(item); }
+      sketches[i] = sk;
+    }
+  }
+
+  /**
+   * Builds a sketch from the whole stream.
+   * @return the sketch
+   */
+  @Benchmark
+  @OperationsPerInvocation(STREAM_LENGTH)
+  public CpcSketch update() {
+    final CpcSketch sk = new CpcSketch(lgK);
+    final long[] arr = items;
+    for (int i = 0; i < arr.length; i++) { sk.update(arr[i]); }
+    return sk;
+  }
+
+  /**
+   * Merges {@link #NUM_SKETCHES} sketches, reported per sketch.
+   * @return the union result
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public CpcSketch union() {
+    final CpcUnion union = new CpcUnion(lgK);
+    for (final CpcSketch sk : sketches) { union.update(sk); }
+    return union.getResult();
+  }
+
+  /**
+   * Compresses and serializes the full sketch.
+   * @return the serialized bytes
+   */
+  @Benchmark
+  public byte[] serialize() {
+    return sketch.toByteArray();
+  }
+
+  /**
+   * Uncompresses the serialized image onto the heap.
+   * @return the heap sketch
+   */
+  @Benchmark
+  public CpcSketch heapify() {
+    return CpcSketch.heapify(image);
+  }
+
+  /**
+   * Reads the estimate straight from the compressed image.
+   * @return the estimate
+   */
+  @Benchmark
+  public double wrapEstimate() {
+    return new CpcWrapper(image).getEstimate();
+  }
+
+  /**
+   * Estimate and bounds of the full sketch.
+   * @return the sum of the estimate and its bounds
+   */
+  @Benchmark
+  public double estimate() {
+    return sketch.getEstimate() + sketch.getUpperBound(2) + sketch.getLowerBound(2);
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.hash.MurmurHash3;
+import org.apache.datasketches.theta.UpdateSketch;
+import org.apache.datasketches.thetacommon.HashOperations;
+import org.apache.datasketches.thetacommon.ThetaUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Theta hash table layouts: the OADH layout (<i>HashOperations.hashSearch</i>) against the
+ * cache-line bucketed layout (<i>HashOperations.hashSearchBucketed</i>) for hits and misses in a
+ * table of 2^(lgK + 1) longs filled to the rebuild threshold of each layout, and the
+ * update of a heap QuickSelect sketch built with each layout.
+ *
+ * <p>The search benchmarks report the time per probe over {@link #NUM_PROBES} probes in random
+ * order, so once the table is larger than the caches most probes miss the cache.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+    "--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+    "--add-exports", "java.base/jdk.internal.ref=ALL-UNNAMED",
+    "--add-opens", "java.base/java.nio=ALL-UNNAMED",
+    "--add-opens", "java.base/sun.nio.ch=ALL-UNNAMED"})
+public class HashTableBenchmark {
+  static final int NUM_PROBES = 1 << 16;
+  static final int STREAM_LENGTH = 1 << 20;
+
+  public enum Layout { OADH, BUCKETED }
+
+  @Param({"12", "16", "20", "24"})
+  int lgK;
+
+  @Param({"OADH", "BUCKETED"})
+  Layout layout;
+
+  private int lgArrLongs;
+  private long[] table;
+  private long[] hits;
+  private long[] misses;
+  private long[] items;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    lgArrLongs = lgK + 1;
+    table = new long[1 << lgArrLongs];
+    final double threshold = (layout == Layout.BUCKETED)
+        ? ThetaUtil.BUCKETED_REBUILD_THRESHOLD : ThetaUtil.REBUILD_THRESHOLD;
+    final int count = (int) (threshold * (1 << lgArrLongs));
+    final long[] keys = BenchData.longs(BenchData.Distribution.UNIFORM, count + NUM_PROBES,
+        BenchData.RANDOM_SEED);
+    final long[] inserted = new long[count];
+    for (int i = 0; i < count; i++) {
+      inserted[i] = hash(keys[i]);
+      if (layout == Layout.BUCKETED) {
+        HashOperations.hashSearchOrInsertBucketed(table, lgArrLongs, inserted[i]);
+      } else {
+        HashOperations.hashSearchOrInsert(table, lgArrLongs, inserted[i]);
+      }
+    }
+    hits = new long[NUM_PROBES];
+    misses = new long[NUM_PROBES];
+    for (int i = 0; i < NUM_PROBES; i++) {
+      hits[i] = inserted[(int) ((keys[count + i] >>> 1) % count)];
+      misses[i] = hash(keys[count + i] ^ 0x5555_5555_5555_5555L);
+    }
+    items = BenchData.longs(BenchData.Distribution.UNIFORM, STREAM_LENGTH, BenchData.RANDOM_SEED);
+  }
+
+  private static long hash(final long key) {
+    final long h = MurmurHash3.hash(key, BenchData.RANDOM_SEED)[0] >>> 1;
+    return (h == 0) ? 1 : h;
+  }
+
+  /**
+   * Searches for hashes that are in the table.
+   * @return the sum of the indices found
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_PROBES)
+  public long searchHit() {
+    return search(hits);
+  }
+
+  /**
+   * Searches for hashes that are not in the table.
+   * @return the sum of the indices found
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_PROBES)
+  public long searchMiss() {
+    return search(misses);
+  }
+
+  private long search(final long[] probes) {
+    long sum = 0;
+    if (layout == Layout.BUCKETED) {
+      for (int i = 0; i < NUM_PROBES; i++) {
+        sum += HashOperations.hashSearchBucketed(table, lgArrLongs, probes[i]);
+      }
+    } else {
+      for (int i = 0; i < NUM_PROBES; i++) {
+        sum += HashOperations.hashSearch(table, lgArrLongs, probes[i]);
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Builds a heap QuickSelect sketch with the layout from a stream of {@link #STREAM_LENGTH} items.
+   * @return the sketch
+   */
+  @Benchmark
+  @OperationsPerInvocation(STREAM_LENGTH)
+  public UpdateSketch update() {
+    final UpdateSketch sketch = UpdateSketch.builder().setNominalEntries(1 << lgK)
+        .setCacheLineBuckets(layout == Layout.BUCKETED).build();
+    for (int i = 0; i < STREAM_LENGTH; i++) { sketch.update(items[i]); }
+    return sketch;
+  }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.bench.BenchData.Distribution;
+import org.apache.datasketches.hll.HllSketch;
+import org.apache.datasketches.hll.TgtHllType;
+import org.apache.datasketches.hll.Union;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * HLL sketch: update (through <i>Hll4Update</i>, <i>Hll6Array</i>, <i>Hll8Array</i>), batch update
+ * (<i>BaseHllSketch.updateBatch</i>), union,
+ * parallel union (<i>Union.updateAll</i> in the common pool), serialization, wrap and estimate,
+ * for each target HLL type.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+    "--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+    "--add-exports", "java.base/jdk.internal.ref=ALL-UNNAMED",
+    "--add-opens", "java.base/java.nio=ALL-UNNAMED",
+    "--add-opens", "java.base/sun.nio.ch=ALL-UNNAMED"})
+public class HllBenchmark {
+  static final int STREAM_LENGTH = 1 << 20;
+  static final int NUM_SKETCHES = 16;
+
+  @Param({"12", "21"})
+  int lgK;
+
+  @Param({"HLL_4", "HLL_6", "HLL_8"})
+  TgtHllType tgtHllType;
+
+  @Param({"SEQUENTIAL", "ZIPF"})
+  Distribution distribution;
+
+  @Param({"HEAP", "DIRECT"})
+  BenchMemory.Type memory;
+
+  private final BenchMemory mem = new BenchMemory();
+  private long[] items;
+  private WritableMemory updateMem;
+  private WritableMemory unionMem;
+  private HllSketch sketch;
+  private HllSketch[] sketches;
+  private Memory compactImage;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    items = BenchData.longs(distribution, STREAM_LENGTH, BenchData.RANDOM_SEED);
+    if (memory == BenchMemory.Type.DIRECT) {
+      updateMem = mem.allocateDirect(HllSketch.getMaxUpdatableSerializationBytes(lgK, tgtHllType));
+      unionMem = mem.allocateDirect(Union.getMaxSerializationBytes(lgK));
+    }
+    sketch = newSketch();
+    for (final long item : items) { sketch.update(item); }
+    compactImage = Memory.wrap(sketch.toCompactByteArray());
+
+    sketches = new HllSketch[NUM_SKETCHES];
+    final int perSketch = Math.min(4 << lgK, STREAM_LENGTH);
+    for (int i = 0; i < NUM_SKETCHES; i++) {
+      final HllSketch sk = new HllSketch(lgK, tgtHllType);
+      final long[] part = BenchData.longs(distribution, perSketch, BenchData.RANDOM_SEED + i);
+      for (final long item : part) { sk.update(item); }
+      sketches[i] = sk;
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    mem.close();
+  }
+
+  private HllSketch newSketch() {
+    if (memory == BenchMemory.Type.DIRECT) {
+      return new HllSketch(lgK, tgtHllType, updateMem);
+    }
+    return new HllSketch(lgK, tgtHllType);
+  }
+
+  private Union newUnion() {
+    if (memory == BenchMemory.Type.DIRECT) {
+      return new Union(lgK, unionMem);
+    }
+    return new Union(lgK);
+  }
+
+  /**
+   * Builds a sketch from the whole stream, through list, set and HLL modes.
+   * @return the sketch
+   */
+  @Benchmark
+  @OperationsPerInvocation(STREAM_LENGTH)
+  public HllSketch update() {
+    final HllSketch sk = newSketch();
+    final long[] arr = items;
+    for (int i = 0; i < arr.length; i++) { sk.update(arr[i]); }
+    return sk;
+  }
+
+  /**
+   * Builds a sketch from the whole stream with one batch update.
+   * @return the sketch
+   */
+  @Benchmark
+  @OperationsPerInvocation(STREAM_LENGTH)
+  public HllSketch updateBatch() {
+    final HllSketch sk = newSketch();
+    sk.updateBatch(items, 0, items.length);
+    return sk;
+  }
+
+  /**
+   * Merges {@link #NUM_SKETCHES} HLL-mode sketches, reported per sketch.
+   * @return the union result
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public HllSketch union() {
+    final Union union = newUnion();
+    for (final HllSketch sk : sketches) { union.update(sk); }
+    return union.getResult(tgtHllType);
+  }
+
+  /**
+   * Merges the same {@link #NUM_SKETCHES} sketches with <i>Union.updateAll</i> in the common
+   * pool, reported per sketch.
+   * @return the union result
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public HllSketch unionAll() {
+    final Union union = newUnion();
+    union.updateAll(Arrays.asList(sketches), ForkJoinPool.commonPool());
+    return union.getResult(tgtHllType);
+  }
+
+  /**
+   * Serializes the full sketch in compact form.
+   * @return the serialized bytes
+   */
+  @Benchmark
+  public byte[] serialize() {
+    return sketch.toCompactByteArray();
+  }
+
+  /**
+   * Wraps the compact image and reads its estimate.
+   * @return the estimate
+   */
+  @Benchmark
+  public double wrapEstimate() {
+    return HllSketch.wrap(compactImage).getEstimate();
+  }
+
+  /**
+   * Heapifies the compact image.
+   * @return the heap sketch
+   */
+  @Benchmark
+  public HllSketch heapify() {
+    return HllSketch.heapify(compactImage);
+  }
+
+  /**
+   * Estimate and bounds of the full sketch.
+   * @return the sum of the estimate and its bounds
+   */
+  @Benchmark
+  public double estimate() {
+    return sketch.getEstimate() + sketch.getUpperBound(2) + sketch.getLowerBound(2);
+  }
+
+}
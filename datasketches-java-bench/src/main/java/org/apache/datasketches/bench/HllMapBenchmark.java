@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.bench.BenchData.Distribution;
+import org.apache.datasketches.hllmap.UniqueCountMap;
+import org.apache.datasketches.memory.WritableMemory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The hllmap <i>UniqueCountMap</i>: update of (key, identifier) pairs through the level
+ * promotions, and the estimate lookup, for a map on the java heap and a direct map in one
+ * off-heap <i>WritableMemory</i>.
+ *
+ * <p>Run with <code>-prof gc</code> to compare the heap allocated by the two.
+ * The direct map is given no MemoryRequestServer, so its memory is sized up front from a heap map
+ * built in the setup and the benchmark fails rather than grow onto the heap.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+    "--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+    "--add-exports", "java.base/jdk.internal.ref=ALL-UNNAMED",
+    "--add-opens", "java.base/java.nio=ALL-UNNAMED",
+    "--add-opens", "java.base/sun.nio.ch=ALL-UNNAMED"})
+public class HllMapBenchmark {
+  static final int STREAM_LENGTH = 1 << 20;
+  static final int KEY_BYTES = 4;
+  static final int INITIAL_ENTRIES = 1000003; //as UniqueCountMap(int)
+
+  @Param({"1024", "65536"})
+  int numKeys;
+
+  @Param({"ZIPF", "UNIFORM"})
+  Distribution distribution;
+
+  @Param({"HEAP", "DIRECT"})
+  BenchMemory.Type memory;
+
+  private final BenchMemory mem = new BenchMemory();
+  private WritableMemory mapMem;
+  private byte[][] keys;
+  private byte[][] ids;
+  private UniqueCountMap map;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    final long[] keyItems = BenchData.longs(distribution, STREAM_LENGTH, BenchData.RANDOM_SEED);
+    final long[] idItems =
+        BenchData.longs(Distribution.UNIFORM, STREAM_LENGTH, BenchData.RANDOM_SEED + 1);
+    keys = new byte[STREAM_LENGTH][];
+    ids = new byte[STREAM_LENGTH][];
+    for (int i = 0; i < STREAM_LENGTH; i++) {
+      keys[i] = intToBytes((int) Math.floorMod(keyItems[i], (long) numKeys));
+      ids[i] = longToBytes(idItems[i]);
+    }
+    if (memory == BenchMemory.Type.DIRECT) {
+      //the regions replaced by resizes stay in the memory, so leave ample room
+      final UniqueCountMap heapMap = new UniqueCountMap(INITIAL_ENTRIES, KEY_BYTES);
+      for (int i = 0; i < STREAM_LENGTH; i++) { heapMap.update(keys[i], ids[i]); }
+      mapMem = mem.allocateDirect(4 * heapMap.getMemoryUsageBytes() + (1 << 20));
+    }
+    map = update();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    mem.close();
+  }
+
+  /**
+   * Builds a map from the whole stream of pairs.
+   * @return the map
+   */
+  @Benchmark
+  @OperationsPerInvocation(STREAM_LENGTH)
+  public UniqueCountMap update() {
+    final UniqueCountMap m = (memory == BenchMemory.Type.DIRECT)
+        ? new UniqueCountMap(INITIAL_ENTRIES, KEY_BYTES, mapMem, null)
+        : new UniqueCountMap(INITIAL_ENTRIES, KEY_BYTES);
+    for (int i = 0; i < STREAM_LENGTH; i++) { m.update(keys[i], ids[i]); }
+    return m;
+  }
+
+  /**
+   * Looks up the estimates of all keys of the stream, reported per lookup.
+   * @return the sum of the estimates
+   */
+  @Benchmark
+  @OperationsPerInvocation(STREAM_LENGTH)
+  public double estimate() {
+    double sum = 0;
+    for (int i = 0; i < STREAM_LENGTH; i++) { sum += map.getEstimate(keys[i]); }
+    return sum;
+  }
+
+  private static byte[] intToBytes(final int v) {
+    return new byte[] {(byte) v, (byte) (v >>> 8), (byte) (v >>> 16), (byte) (v >>> 24)};
+  }
+
+  private static byte[] longToBytes(final long v) {
+    final byte[] out = new byte[8];
+    for (int i = 0; i < 8; i++) { out[i] = (byte) (v >>> (8 * i)); }
+    return out;
+  }
+
+}
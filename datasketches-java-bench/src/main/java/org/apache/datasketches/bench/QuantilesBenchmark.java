@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.bench;
+
+import static org.apache.datasketches.quantilescommon.QuantileSearchCriteria.INCLUSIVE;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.bench.BenchData.Distribution;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.quantiles.DoublesSketch;
+import org.apache.datasketches.quantiles.DoublesUnion;
+import org.apache.datasketches.quantiles.UpdateDoublesSketch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Classic quantiles doubles sketch: update, union, serialization, wrap and queries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+    "--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+    "--add-exports", "java.base/jdk.internal.ref=ALL-UNNAMED",
+    "--add-opens", "java.base/java.nio=ALL-UNNAMED",
+    "--add-opens", "java.base/sun.nio.ch=ALL-UNNAMED"})
+public class QuantilesBenchmark {
+  static final int STREAM_LENGTH = 1 << 20;
+  static final int NUM_SKETCHES = 16;
+  static final double[] RANKS = {0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99};
+
+  @Param({"128", "512"})
+  int k;
+
+  @Param({"UNIFORM", "SEQUENTIAL"})
+  Distribution distribution;
+
+  @Param({"HEAP", "DIRECT"})
+  BenchMemory.Type memory;
+
+  private final BenchMemory mem = new BenchMemory();
+  private double[] items;
+  private WritableMemory updateMem;
+  private WritableMemory unionMem;
+  private UpdateDoublesSketch sketch;
+  private UpdateDoublesSketch[] sketches;
+  private Memory compactImage;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    items = BenchData.doubles(distribution, STREAM_LENGTH, BenchData.RANDOM_SEED);
+    if (memory == BenchMemory.Type.DIRECT) {
+      final int bytes = DoublesSketch.getUpdatableStorageBytes(k, 4L * STREAM_LENGTH);
+      updateMem = mem.allocateDirect(bytes);
+      unionMem = mem.allocateDirect(bytes);
+    }
+    sketch = newSketch();
+    for (final double item : items) { sketch.update(item); }
+    compactImage = Memory.wrap(sketch.compact().toByteArray());
+
+    sketches = new UpdateDoublesSketch[NUM_SKETCHES];
+    final int perSketch = STREAM_LENGTH / NUM_SKETCHES;
+    for (int i = 0; i < NUM_SKETCHES; i++) {
+      final UpdateDoublesSketch sk = DoublesSketch.builder().setK(k).build();
+      final double[] part = BenchData.doubles(distribution, perSketch, BenchData.RANDOM_SEED + i);
+      for (final double item : part) { sk.update(item); }
+      sketches[i] = sk;
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    mem.close();
+  }
+
+  private UpdateDoublesSketch newSketch() {
+    if (memory == BenchMemory.Type.DIRECT) {
+      return DoublesSketch.builder().setK(k).build(updateMem);
+    }
+    return DoublesSketch.builder().setK(k).build();
+  }
+
+  private DoublesUnion newUnion() {
+    if (memory == BenchMemory.Type.DIRECT) {
+      return DoublesUnion.builder().setMaxK(k).build(unionMem);
+    }
+    return DoublesUnion.builder().setMaxK(k).build();
+  }
+
+  /**
+   * Builds a sketch from the whole stream.
+   * @return the sketch
+   */
+  @Benchmark
+  @OperationsPerInvocation(STREAM_LENGTH)
+  public UpdateDoublesSketch update() {
+    final UpdateDoublesSketch sk = newSketch();
+    final double[] arr = items;
+    for (int i = 0; i < arr.length; i++) { sk.update(arr[i]); }
+    return sk;
+  }
+
+  /**
+   * Unions {@link #NUM_SKETCHES} heap sketches, reported per sketch.
+   * @return the union result
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public UpdateDoublesSketch union() {
+    final DoublesUnion union = newUnion();
+    for (final UpdateDoublesSketch sk : sketches) { union.union(sk); }
+    return union.getResult();
+  }
+
+  /**
+   * Serializes the full sketch in compact form.
+   * @return the serialized bytes
+   */
+  @Benchmark
+  public byte[] serialize() {
+    return sketch.compact().toByteArray();
+  }
+
+  /**
+   * Heapifies the compact image.
+   * @return the heap sketch
+   */
+  @Benchmark
+  public DoublesSketch heapify() {
+    return DoublesSketch.heapify(compactImage);
+  }
+
+  /**
+   * Wraps the compact image and answers a set of quantile queries.
+   * @return the quantiles
+   */
+  @Benchmark
+  public double[] wrapQuantiles() {
+    return DoublesSketch.wrap(compactImage).getQuantiles(RANKS, INCLUSIVE);
+  }
+
+}
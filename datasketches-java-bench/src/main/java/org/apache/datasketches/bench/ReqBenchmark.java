@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.bench;
+
+import static org.apache.datasketches.quantilescommon.QuantileSearchCriteria.INCLUSIVE;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.bench.BenchData.Distribution;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.req.ReqSketch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Relative error quantiles (REQ) sketch: update, merge, serialization and queries.
+ * REQ sketches are heap-only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+    "--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+    "--add-exports", "java.base/jdk.internal.ref=ALL-UNNAMED",
+    "--add-opens", "java.base/java.nio=ALL-UNNAMED",
+    "--add-opens", "java.base/sun.nio.ch=ALL-UNNAMED"})
+public class ReqBenchmark {
+  static final int STREAM_LENGTH = 1 << 20;
+  static final int NUM_SKETCHES = 16;
+  static final double[] RANKS = {0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99};
+
+  @Param({"12", "50"})
+  int k;
+
+  @Param({"UNIFORM", "SEQUENTIAL"})
+  Distribution distribution;
+
+  private float[] items;
+  private ReqSketch sketch;
+  private ReqSketch[] sketches;
+  private Memory image;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    items = BenchData.floats(distribution, STREAM_LENGTH, BenchData.RANDOM_SEED);
+    sketch = ReqSketch.builder().setK(k).build();
+    for (final float item : items) { sketch.update(item); }
+    image = Memory.wrap(sketch.toByteArray());
+
+    sketches = new ReqSketch[NUM_SKETCHES];
+    final int perSketch = STREAM_LENGTH / NUM_SKETCHES;
+    for (int i = 0; i < NUM_SKETCHES; i++) {
+      final ReqSketch sk = ReqSketch.builder().setK(k).build();
+      final float[] part = BenchData.floats(distribution, perSketch, BenchData.RANDOM_SEED + i);
+      for (final float item : part) { sk.update(item); }
+      sketches[i] = sk;
+    }
+  }
+
+  /**
+   * Builds a sketch from the whole stream.
+   * @return the sketch
+   */
+  @Benchmark
+  @OperationsPerInvocation(STREAM_LENGTH)
+  public ReqSketch update() {
+    final ReqSketch sk = ReqSketch.builder().setK(k).build();
+    final float[] arr = items;
+    for (int i = 0; i < arr.length; i++) { sk.update(arr[i]); }
+    return sk;
+  }
+
+  /**
+   * Merges {@link #NUM_SKETCHES} sketches, reported per sketch.
+   * @return the merged sketch
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public ReqSketch merge() {
+    final ReqSketch target = ReqSketch.builder().setK(k).build();
+    for (final ReqSketch sk : sketches) { target.merge(sk); }
+    return target;
+  }
+
+  /**
+   * Serializes the full sketch.
+   * @return the serialized bytes
+   */
+  @Benchmark
+  public byte[] serialize() {
+    return sketch.toByteArray();
+  }
+
+  /**
+   * Heapifies the serialized image and answers a set of quantile queries,
+   * which includes building the sorted view.
+   * @return the quantiles
+   */
+  @Benchmark
+  public float[] heapifyQuantiles() {
+    return ReqSketch.heapify(image).getQuantiles(RANKS, INCLUSIVE);
+  }
+
+}
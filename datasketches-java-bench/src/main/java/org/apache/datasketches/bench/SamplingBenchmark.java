@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.bench.BenchData.Distribution;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.sampling.ReservoirLongsSketch;
+import org.apache.datasketches.sampling.ReservoirLongsUnion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reservoir sampling of longs: update, union, serialization and heapify.
+ * Sampling sketches are heap-only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+    "--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+    "--add-exports", "java.base/jdk.internal.ref=ALL-UNNAMED",
+    "--add-opens", "java.base/java.nio=ALL-UNNAMED",
+    "--add-opens", "java.base/sun.nio.ch=ALL-UNNAMED"})
+public class SamplingBenchmark {
+  static final int STREAM_LENGTH = 1 << 20;
+  static final int NUM_SKETCHES = 16;
+
+  @Param({"1024", "65536"})
+  int k;
+
+  @Param({"UNIFORM"})
+  Distribution distribution;
+
+  private long[] items;
+  private ReservoirLongsSketch sketch;
+  private ReservoirLongsSketch[] sketches;
+  private Memory image;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    items = BenchData.longs(distribution, STREAM_LENGTH, BenchData.RANDOM_SEED);
+    sketch = ReservoirLongsSketch.newInstance(k);
+    for (final long item : items) { sketch.update(item); }
+    image = Memory.wrap(sketch.toByteArray());
+
+    sketches = new ReservoirLongsSketch[NUM_SKETCHES];
+    final int perSketch = STREAM_LENGTH / NUM_SKETCHES;
+    for (int i = 0; i < NUM_SKETCHES; i++) {
+      final ReservoirLongsSketch sk = ReservoirLongsSketch.newInstance(k);
+      final long[] part = BenchData.longs(distribution, perSketch, BenchData.RANDOM_SEED + i);
+      for (final long item : part) { sk.update(item); }
+      sketches[i] = sk;
+    }
+  }
+
+  /**
+   * Builds a reservoir from the whole stream.
+   * @return the sketch
+   */
+  @Benchmark
+  @OperationsPerInvocation(STREAM_LENGTH)
+  public ReservoirLongsSketch update() {
+    final ReservoirLongsSketch sk = ReservoirLongsSketch.newInstance(k);
+    final long[] arr = items;
+    for (int i = 0; i < arr.length; i++) { sk.update(arr[i]); }
+    return sk;
+  }
+
+  /**
+   * Unions {@link #NUM_SKETCHES} reservoirs, reported per sketch.
+   * @return the union result
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public ReservoirLongsSketch union() {
+    final ReservoirLongsUnion union = ReservoirLongsUnion.newInstance(k);
+    for (final ReservoirLongsSketch sk : sketches) { union.update(sk); }
+    return union.getResult();
+  }
+
+  /**
+   * Serializes the full reservoir.
+   * @return the serialized bytes
+   */
+  @Benchmark
+  public byte[] serialize() {
+    return sketch.toByteArray();
+  }
+
+  /**
+   * Heapifies the serialized image.
+   * @return the heap sketch
+   */
+  @Benchmark
+  public ReservoirLongsSketch heapify() {
+    return ReservoirLongsSketch.heapify(image);
+  }
+
+}
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.bench.BenchData.Distribution;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.theta.CompactSketch;
+import org.apache.datasketches.theta.SetOperation;
+import org.apache.datasketches.theta.Sketch;
+import org.apache.datasketches.theta.Union;
+import org.apache.datasketches.theta.UpdateSketch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Theta QuickSelect sketch: update and batch update (<i>HeapQuickSelectSketch.hashUpdate</i> and
+ * its Direct counterpart), union, compaction/serialization, wrap and estimate.
+ *
+ * <p>The update benchmark reports the cost per item of building a sketch from scratch over a
+ * stream of {@link #STREAM_LENGTH} items, which includes the resize and rebuild work.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+    "--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+    "--add-exports", "java.base/jdk.internal.ref=ALL-UNNAMED",
+    "--add-opens", "java.base/java.nio=ALL-UNNAMED",
+    "--add-opens", "java.base/sun.nio.ch=ALL-UNNAMED"})
+public class ThetaBenchmark {
+  static final int STREAM_LENGTH = 1 << 20;
+  static final int NUM_SKETCHES = 32;
+
+  @Param({"12", "16"})
+  int lgK;
+
+  @Param({"SEQUENTIAL", "ZIPF"})
+  Distribution distribution;
+
+  @Param({"HEAP", "DIRECT"})
+  BenchMemory.Type memory;
+
+  private final BenchMemory mem = new BenchMemory();
+  private long[] items;
+  private WritableMemory updateMem;
+  private WritableMemory unionMem;
+  private UpdateSketch sketch;
+  private CompactSketch[] compacts;
+  private Memory[] images;
+  private Memory orderedImage;
+  private Memory compressedImage;
+  private WritableMemory compactMem;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    final int k = 1 << lgK;
+    items = BenchData.longs(distribution, STREAM_LENGTH, BenchData.RANDOM_SEED);
+    if (memory == BenchMemory.Type.DIRECT) {
+      updateMem = mem.allocateDirect(Sketch.getMaxUpdateSketchBytes(k));
+      unionMem = mem.allocateDirect(SetOperation.getMaxUnionBytes(k));
+    }
+    sketch = newSketch();
+    for (final long item : items) { sketch.update(item); }
+
+    compacts = new CompactSketch[NUM_SKETCHES];
+    images = new Memory[NUM_SKETCHES];
+    final int perSketch = 4 * k;
+    for (int i = 0; i < NUM_SKETCHES; i++) {
+      final UpdateSketch sk = UpdateSketch.builder().setNominalEntries(k).build();
+      final long[] part = BenchData.longs(distribution, perSketch, BenchData.RANDOM_SEED + i);
+      for (final long item : part) { sk.update(item); }
+      compacts[i] = sk.compact();
+      images[i] = Memory.wrap(compacts[i].toByteArray());
+    }
+    orderedImage = Memory.wrap(sketch.compact(true, null).toByteArray());
+    compressedImage = Memory.wrap(sketch.compact(true, null).toByteArrayCompressed());
+    compactMem = WritableMemory.allocate(sketch.getCompactBytes());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    mem.close();
+  }
+
+  private UpdateSketch newSketch() {
+    final UpdateSketch sk;
+    if (memory == BenchMemory.Type.DIRECT) {
+      sk = UpdateSketch.builder().setNominalEntries(1 << lgK).build(updateMem);
+    } else {
+      sk = UpdateSketch.builder().setNominalEntries(1 << lgK).build();
+    }
+    return sk;
+  }
+
+  private Union newUnion() {
+    if (memory == BenchMemory.Type.DIRECT) {
+      return SetOperation.builder().setNominalEntries(1 << lgK).buildUnion(unionMem);
+    }
+    return SetOperation.builder().setNominalEntries(1 << lgK).buildUnion();
+  }
+
+  /**
+   * Builds a sketch from the whole stream.
+   * @return the sketch
+   */
+  @Benchmark
+  @OperationsPerInvocation(STREAM_LENGTH)
+  public UpdateSketch update() {
+    final UpdateSketch sk = newSketch();
+    final long[] arr = items;
+    for (int i = 0; i < arr.length; i++) { sk.update(arr[i]); }
+    return sk;
+  }
+
+  /**
+   * Builds a sketch from the whole stream with the batch update API.
+   * @return the sketch
+   */
+  @Benchmark
+  @OperationsPerInvocation(STREAM_LENGTH)
+  public UpdateSketch updateBatch() {
+    final UpdateSketch sk = newSketch();
+    sk.updateBatch(items, 0, items.length);
+    return sk;
+  }
+
+  /**
+   * Unions {@link #NUM_SKETCHES} heap compact sketches, reported per sketch.
+   * @return the union result
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public CompactSketch unionSketches() {
+    final Union union = newUnion();
+    for (final CompactSketch csk : compacts) { union.union(csk); }
+    return union.getResult();
+  }
+
+  /**
+   * Unions {@link #NUM_SKETCHES} serialized compact images, reported per image.
+   * @return the union result
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public CompactSketch unionMemory() {
+    final Union union = newUnion();
+    for (final Memory image : images) { union.union(image); }
+    return union.getResult();
+  }
+
+  /**
+   * Compacts (orders) the full update sketch into a preallocated Memory.
+   * @return the compact sketch
+   */
+  @Benchmark
+  public CompactSketch compactOrdered() {
+    return sketch.compact(true, compactMem);
+  }
+
+  /**
+   * Serializes the full update sketch as an ordered compact byte array.
+   * @return the serialized bytes
+   */
+  @Benchmark
+  public byte[] serialize() {
+    return sketch.compact(true, null).toByteArray();
+  }
+
+  /**
+   * Wraps a serialized compact image and reads its estimate.
+   * @return the estimate
+   */
+  @Benchmark
+  public double wrapEstimate() {
+    return Sketch.wrap(orderedImage).getEstimate();
+  }
+
+  /**
+   * Heapifies a serialized compact image.
+   * @return the heap sketch
+   */
+  @Benchmark
+  public Sketch heapify() {
+    return Sketch.heapify(orderedImage);
+  }
+
+  /**
+   * Heapifies a serialized compressed compact image, which decodes all of its deltas.
+   * @return the heap sketch
+   */
+  @Benchmark
+  public Sketch heapifyCompressed() {
+    return Sketch.heapify(compressedImage);
+  }
+
+  /**
+   * Estimate and bounds of the update sketch.
+   * @return the sum of the estimate and its bounds
+   */
+  @Benchmark
+  public double estimate() {
+    return sketch.getEstimate() + sketch.getUpperBound(2) + sketch.getLowerBound(2);
+  }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.datasketches.bench.BenchData.Distribution;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.tuple.CompactSketch;
+import org.apache.datasketches.tuple.Sketch;
+import org.apache.datasketches.tuple.Sketches;
+import org.apache.datasketches.tuple.Union;
+import org.apache.datasketches.tuple.adouble.DoubleSketch;
+import org.apache.datasketches.tuple.adouble.DoubleSummary;
+import org.apache.datasketches.tuple.adouble.DoubleSummaryDeserializer;
+import org.apache.datasketches.tuple.adouble.DoubleSummarySetOperations;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tuple sketch with a double summary: update (<i>QuickSelectSketch</i>), union,
+ * serialization, heapify and estimate. Tuple sketches are heap-only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {
+    "--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+    "--add-exports", "java.base/jdk.internal.ref=ALL-UNNAMED",
+    "--add-opens", "java.base/java.nio=ALL-UNNAMED",
+    "--add-opens", "java.base/sun.nio.ch=ALL-UNNAMED"})
+public class TupleBenchmark {
+  static final int STREAM_LENGTH = 1 << 20;
+  static final int NUM_SKETCHES = 16;
+  static final Double ONE = 1.0;
+
+  @Param({"12", "16"})
+  int lgK;
+
+  @Param({"SEQUENTIAL", "ZIPF"})
+  Distribution distribution;
+
+  private long[] items;
+  private DoubleSketch sketch;
+  private CompactSketch<DoubleSummary>[] compacts;
+  private Memory image;
+
+  @Setup(Level.Trial)
+  @SuppressWarnings("unchecked")
+  public void setup() {
+    items = BenchData.longs(distribution, STREAM_LENGTH, BenchData.RANDOM_SEED);
+    sketch = new DoubleSketch(lgK, DoubleSummary.Mode.Sum);
+    for (final long item : items) { sketch.update(item, ONE); }
+    image = Memory.wrap(sketch.compact().toByteArray());
+
+    compacts = new CompactSketch[NUM_SKETCHES];
+    final int perSketch = 4 << lgK;
+    for (int i = 0; i < NUM_SKETCHES; i++) {
+      final DoubleSketch sk = new DoubleSketch(lgK, DoubleSummary.Mode.Sum);
+      final long[] part = BenchData.longs(distribution, perSketch, BenchData.RANDOM_SEED + i);
+      for (final long item : part) { sk.update(item, ONE); }
+      compacts[i] = sk.compact();
+    }
+  }
+
+  /**
+   * Builds a sketch from the whole stream.
+   * @return the sketch
+   */
+  @Benchmark
+  @OperationsPerInvocation(STREAM_LENGTH)
+  public DoubleSketch update() {
+    final DoubleSketch sk = new DoubleSketch(lgK, DoubleSummary.Mode.Sum);
+    final long[] arr = items;
+    for (int i = 0; i < arr.length; i++) { sk.update(arr[i], ONE); }
+    return sk;
+  }
+
+  /**
+   * Unions {@link #NUM_SKETCHES} compact sketches, reported per sketch.
+   * @return the union result
+   */
+  @Benchmark
+  @OperationsPerInvocation(NUM_SKETCHES)
+  public CompactSketch<DoubleSummary> union() {
+    final Union<DoubleSummary> union =
+        new Union<>(1 << lgK, new DoubleSummarySetOperations(DoubleSummary.Mode.Sum));
+    for (final CompactSketch<DoubleSummary> csk : compacts) { union.union(csk); }
+    return union.getResult();
+  }
+
+  /**
+   * Serializes the full sketch in compact form.
+   * @return the serialized bytes
+   */
+  @Benchmark
+  public byte[] serialize() {
+    return sketch.compact().toByteArray();
+  }
+
+  /**
+   * Heapifies the compact image.
+   * @return the heap sketch
+   */
+  @Benchmark
+  public Sketch<DoubleSummary> heapify() {
+    return Sketches.heapifySketch(image, new DoubleSummaryDeserializer());
+  }
+
+  /**
+   * Estimate and bounds of the full sketch.
+   * @return the sum of the estimate and its bounds
+   */
+  @Benchmark
+  public double estimate() {
+    return sketch.getEstimate() + sketch.getUpperBound(2) + sketch.getLowerBound(2);
+  }
+
+}
@@ -0,0 +1,32 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * <p>JMH benchmarks for the update, merge, serialize and query paths of every sketch family.</p>
+ *
+ * <p>Each family has one benchmark class. All classes share the same parameter vocabulary:
+ * the configured size of the sketch (<i>lgK</i> or <i>k</i>), the {@link
+ * org.apache.datasketches.bench.BenchData.Distribution Distribution} of the input stream, and
+ * for the families that support it, the {@link org.apache.datasketches.bench.BenchMemory.Type
+ * memory Type} backing the sketch (heap or Direct <i>WritableMemory</i>).</p>
+ *
+ * <p>See the README.md of this module for how to run the suites, record a baseline and compare
+ * the results against it.</p>
+ */
+package org.apache.datasketches.bench;
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * Gives the benchmarks of this module access to the package-private block kernels of
+ * {@link BitPacking}. This class only exists in the benchmark module, so the kernels stay
+ * internal to <i>datasketches-java</i>.
+ */
+public final class BenchBitPacking {
+
+  private BenchBitPacking() {}
+
+  /**
+   * Calls {@link BitPacking#packBitsBlock8(long[], int, byte[], int, int)}.
+   * @param values the values to pack
+   * @param i the index of the first value
+   * @param buf the destination
+   * @param off the offset of the block in buf
+   * @param bits the number of bits per value
+   */
+  public static void packBitsBlock8(final long[] values, final int i, final byte[] buf,
+      final int off, final int bits) {
+    BitPacking.packBitsBlock8(values, i, buf, off, bits);
+  }
+
+  /**
+   * Calls {@link BitPacking#unpackBitsBlock8(long[], int, byte[], int, int)}.
+   * @param values the destination of the unpacked values
+   * @param i the index of the first value
+   * @param buf the packed block
+   * @param off the offset of the block in buf
+   * @param bits the number of bits per value
+   */
+  public static void unpackBitsBlock8(final long[] values, final int i, final byte[] buf,
+      final int off, final int bits) {
+    BitPacking.unpackBitsBlock8(values, i, buf, off, bits);
+  }
+
+  /**
+   * Calls {@link BitPacking#packBitsBlock64(long[], int, WritableMemory, long, int)}.
+   * @param values the values to pack
+   * @param i the index of the first value
+   * @param mem the destination
+   * @param offsetBytes the offset of the block in mem
+   * @param bits the number of bits per value
+   */
+  public static void packBitsBlock64(final long[] values, final int i, final WritableMemory mem,
+      final long offsetBytes, final int bits) {
+    BitPacking.packBitsBlock64(values, i, mem, offsetBytes, bits);
+  }
+
+  /**
+   * Calls {@link BitPacking#unpackBitsBlock64(long[], int, Memory, long, int)}.
+   * @param values the destination of the unpacked values
+   * @param i the index of the first value
+   * @param mem the packed block
+   * @param offsetBytes the offset of the block in mem
+   * @param bits the number of bits per value
+   */
+  public static void unpackBitsBlock64(final long[] values, final int i, final Memory mem,
+      final long offsetBytes, final int bits) {
+    BitPacking.unpackBitsBlock64(values, i, mem, offsetBytes, bits);
+  }
+
+}
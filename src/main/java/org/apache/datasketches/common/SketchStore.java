@@ -0,0 +1,432 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.common;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.MemoryRequestServer;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * A read-only store of serialized sketch images of any family, addressed by a long key, that is
+ * queried in place. The store is intended to be written once, for example to a file, and then
+ * opened with {@link #wrap(Memory)} over a memory-mapped file, so that each lookup is a binary
+ * search of the key index followed by a zero-copy <i>wrap</i> of the image.
+ *
+ * <p>The images are stored as given, so any sketch that can be wrapped from Memory can be
+ * stored, for example:</p>
+ * <pre>
+ * SketchStore.Writer writer = SketchStore.writer(dstMem); //e.g. a file mapped with writableMap
+ * writer.put(1L, thetaSketch.compact().toByteArray());
+ * writer.put(2L, hllSketch.toCompactByteArray());
+ * writer.finish();
+ *
+ * SketchStore store = SketchStore.wrap(srcMem); //e.g. the same file mapped with Memory.map(...)
+ * Sketch theta = store.get(1L, Sketch::wrap);
+ * HllSketch hll = store.get(2L, HllSketch::wrap);
+ * </pre>
+ *
+ * <p>The layout, which is little-endian with every section 8-byte aligned:</p>
+ * <pre>
+ * Long || Start Byte Adr:
+ * Adr:
+ *      ||    7   |    6   |    5   |    4   |    3   |    2   |    1   |     0              |
+ *  0   ||          Number of Entries        |  (unused)       | SerVer |  Magic ("SK")      |
+ *
+ *      ||   15   |   14   |   13   |   12   |   11   |   10   |    9   |     8              |
+ *  1   ||                     Total Bytes of the Store                                       |
+ *
+ *      ||   23   |   22   |   21   |   20   |   19   |   18   |   17   |    16              |
+ *  2   ||                     Offset of the Key Index                                        |
+ *
+ *  3   ||  Images in the order they were written, each starting at an 8-byte aligned offset. |
+ *
+ *      ||  Key Index: Entries of {Key (long), Image Offset (long), Image Bytes (int),
+ *      ||  Family ID (int)}, sorted by key.                                                  |
+ * </pre>
+ */
+public final class SketchStore {
+  static final short STORE_MAGIC = 0x4B53; //"SK"
+  static final int STORE_SER_VER = 1;
+
+  private static final int MAGIC_SHORT = 0;
+  private static final int SER_VER_BYTE = 2;
+  private static final int NUM_ENTRIES_INT = 4;
+  private static final int TOTAL_BYTES_LONG = 8;
+  private static final int INDEX_OFFSET_LONG = 16;
+  static final int STORE_PREAMBLE_BYTES = 24;
+
+  private static final int ENTRY_KEY_LONG = 0;
+  private static final int ENTRY_OFFSET_LONG = 8;
+  private static final int ENTRY_BYTES_INT = 16;
+  private static final int ENTRY_FAMILY_INT = 20;
+  static final int INDEX_ENTRY_BYTES = 24;
+
+  private static final int FAMILY_BYTE = 2; //common to the preambles of all sketch families
+
+  private final Memory mem_;
+  private final int numEntries_;
+  private final long indexOffset_;
+
+  private SketchStore(final Memory mem, final int numEntries, final long indexOffset) {
+    mem_ = mem;
+    numEntries_ = numEntries;
+    indexOffset_ = indexOffset;
+  }
+
+  /**
+   * Opens the store in the given Memory, which is usually a memory-mapped file.
+   * Nothing is copied; only the preamble is checked.
+   * @param srcMem the Memory holding a store written by {@link Writer}
+   * @return the store backed by the given Memory
+   */
+  public static SketchStore wrap(final Memory srcMem) {
+    final long cap = srcMem.getCapacity();
+    if (cap < STORE_PREAMBLE_BYTES) {
+      throw new SketchesArgumentException(
+          "Memory capacity is too small: " + cap + " < " + STORE_PREAMBLE_BYTES);
+    }
+    final short magic = srcMem.getShort(MAGIC_SHORT);
+    if (magic != STORE_MAGIC) {
+      throw new SketchesArgumentException("Memory does not hold a SketchStore: " + magic);
+    }
+    final int serVer = srcMem.getByte(SER_VER_BYTE) & 0XFF;
+    if (serVer != STORE_SER_VER) {
+      throw new SketchesArgumentException("Unsupported SketchStore SerVer: " + serVer);
+    }
+    final int numEntries = srcMem.getInt(NUM_ENTRIES_INT);
+    final long totalBytes = srcMem.getLong(TOTAL_BYTES_LONG);
+    final long indexOffset = srcMem.getLong(INDEX_OFFSET_LONG);
+    if ((numEntries < 0) || (cap < totalBytes) || (indexOffset < STORE_PREAMBLE_BYTES)
+        || (totalBytes != indexOffset + ((long) numEntries * INDEX_ENTRY_BYTES))) {
+      throw new SketchesArgumentException("Corrupt SketchStore preamble: entries: " + numEntries
+          + ", index offset: " + indexOffset + ", total bytes: " + totalBytes
+          + ", capacity: " + cap);
+    }
+    return new SketchStore(srcMem, numEntries, indexOffset);
+  }
+
+  /**
+   * Returns a new, empty Writer that streams the images into the given WritableMemory as they
+   * are added. When the destination is full it grows through its own MemoryRequestServer, if it
+   * has one.
+   * @param dstMem the destination, for example a memory-mapped file
+   * @return a new, empty Writer
+   */
+  public static Writer writer(final WritableMemory dstMem) {
+    return new Writer(dstMem, null);
+  }
+
+  /**
+   * Returns a new, empty Writer that streams the images into the given WritableMemory as they
+   * are added, and grows the destination through the given MemoryRequestServer when it is full.
+   * @param dstMem the destination, for example a memory-mapped file
+   * @param memReqSvr the MemoryRequestServer used to grow the destination. If null, the server of
+   * the given Memory is used, and if that is null too the destination never grows.
+   * @return a new, empty Writer
+   */
+  public static Writer writer(final WritableMemory dstMem, final MemoryRequestServer memReqSvr) {
+    return new Writer(dstMem, memReqSvr);
+  }
+
+  /**
+   * Returns the number of images in this store.
+   * @return the number of images in this store
+   */
+  public int size() {
+    return numEntries_;
+  }
+
+  /**
+   * Returns the key of the entry at the given position of the key index. Keys are in
+   * ascending order.
+   * @param index the position in the key index, from zero to {@link #size()} - 1
+   * @return the key of the entry at the given position
+   */
+  public long getKey(final int index) {
+    checkIndex(index);
+    return mem_.getLong(entryOffset(index) + ENTRY_KEY_LONG);
+  }
+
+  /**
+   * Returns true if this store holds an image for the given key.
+   * @param key the given key
+   * @return true if this store holds an image for the given key
+   */
+  public boolean contains(final long key) {
+    return search(key) >= 0;
+  }
+
+  /**
+   * Returns a read-only region over the image of the given key, or null if there is none.
+   * @param key the given key
+   * @return a read-only region over the image of the given key, or null
+   */
+  public Memory getMemory(final long key) {
+    final int index = search(key);
+    if (index < 0) { return null; }
+    final long entry = entryOffset(index);
+    return mem_.region(mem_.getLong(entry + ENTRY_OFFSET_LONG),
+        mem_.getInt(entry + ENTRY_BYTES_INT));
+  }
+
+  /**
+   * Returns the sketch for the given key, wrapped in place by the given function, or null if
+   * there is none. For example, <i>store.get(key, HllSketch::wrap)</i>.
+   * @param <T> the type of the sketch
+   * @param key the given key
+   * @param wrapper the <i>wrap(Memory)</i> method of the sketch family of the image
+   * @return the sketch for the given key, or null
+   */
+  public <T> T get(final long key, final Function<? super Memory, T> wrapper) {
+    final Memory region = getMemory(key);
+    return (region == null) ? null : wrapper.apply(region);
+  }
+
+  /**
+   * Returns the Family ID found in the image of the given key, or -1 if there is none.
+   * @param key the given key
+   * @return the Family ID found in the image of the given key, or -1
+   * @see Family#idToFamily(int)
+   */
+  public int getFamilyId(final long key) {
+    final int index = search(key);
+    return (index < 0) ? -1 : mem_.getInt(entryOffset(index) + ENTRY_FAMILY_INT);
+  }
+
+  //restricted
+
+  private long entryOffset(final int index) {
+    return indexOffset_ + ((long) index * INDEX_ENTRY_BYTES);
+  }
+
+  private void checkIndex(final int index) {
+    if ((index < 0) || (index >= numEntries_)) {
+      throw new SketchesArgumentException("Index out of range: " + index);
+    }
+  }
+
+  private int search(final long key) { //binary search of the key index in place
+    int lo = 0;
+    int hi = numEntries_ - 1;
+    while (lo <= hi) {
+      final int mid = (lo + hi) >>> 1;
+      final long midKey = mem_.getLong(entryOffset(mid) + ENTRY_KEY_LONG);
+      if (midKey < key) { lo = mid + 1; }
+      else if (midKey > key) { hi = mid - 1; }
+      else { return mid; }
+    }
+    return -1;
+  }
+
+  /**
+   * Streams serialized sketch images into a destination WritableMemory in the
+   * {@link SketchStore} format. Each image is copied to the destination when it is added, so only
+   * the key index is kept on the heap until {@link #finish()} sorts it and writes it after the
+   * images.
+   */
+  public static final class Writer {
+    private static final int MIN_LG_KEYS = 4;
+
+    private WritableMemory wmem_;
+    private MemoryRequestServer memReqSvr_;
+    private long end_ = STORE_PREAMBLE_BYTES; //end of the images written so far
+    private int numEntries_;
+    private long[] keys_ = new long[1 << MIN_LG_KEYS];
+    private long[] offsets_ = new long[1 << MIN_LG_KEYS];
+    private int[] imageBytes_ = new int[1 << MIN_LG_KEYS];
+    private int[] familyIds_ = new int[1 << MIN_LG_KEYS];
+    private int lgKeyTableLongs_ = MIN_LG_KEYS + 1;
+    private long[] keyTable_ = new long[1 << lgKeyTableLongs_]; //open addressing, linear probing
+    private int[] keyTableEntries_ = new int[1 << lgKeyTableLongs_]; //entry + 1, 0 is empty
+    private boolean finished_;
+
+    private Writer(final WritableMemory dstMem, final MemoryRequestServer memReqSvr) {
+      if (dstMem == null) {
+        throw new SketchesArgumentException("The destination Memory must not be null.");
+      }
+      wmem_ = dstMem;
+      memReqSvr_ = memReqSvr;
+      ensureCapacity(STORE_PREAMBLE_BYTES);
+    }
+
+    /**
+     * Copies the serialized image of a sketch under the given key to the destination.
+     * @param key the given key, which must not already be in this Writer
+     * @param image the serialized sketch, for example from <i>toByteArray()</i>
+     * @return this Writer
+     */
+    public Writer put(final long key, final byte[] image) {
+      if ((image == null) || (image.length <= FAMILY_BYTE)) {
+        throw new SketchesArgumentException("The image must hold at least a sketch preamble.");
+      }
+      checkNotFinished();
+      if (keyTableFind(key) >= 0) {
+        throw new SketchesArgumentException("Duplicate key: " + key);
+      }
+      final long aligned = alignedBytes(image.length);
+      ensureCapacity(end_ + aligned);
+      wmem_.putByteArray(end_, image, 0, image.length);
+      wmem_.clear(end_ + image.length, aligned - image.length);
+      if (numEntries_ == keys_.length) {
+        final int len = 2 * numEntries_;
+        keys_ = Arrays.copyOf(keys_, len);
+        offsets_ = Arrays.copyOf(offsets_, len);
+        imageBytes_ = Arrays.copyOf(imageBytes_, len);
+        familyIds_ = Arrays.copyOf(familyIds_, len);
+      }
+      keys_[numEntries_] = key;
+      offsets_[numEntries_] = end_;
+      imageBytes_[numEntries_] = image.length;
+      familyIds_[numEntries_] = image[FAMILY_BYTE] & 0XFF;
+      keyTableInsert(key, numEntries_);
+      numEntries_++;
+      end_ += aligned;
+      return this;
+    }
+
+    /**
+     * Returns the number of images in this Writer.
+     * @return the number of images in this Writer
+     */
+    public int size() {
+      return numEntries_;
+    }
+
+    /**
+     * Returns the number of bytes of the store once {@link #finish()} has written the key index.
+     * @return the number of bytes of the finished store
+     */
+    public long getSerializedSizeBytes() {
+      return end_ + ((long) numEntries_ * INDEX_ENTRY_BYTES);
+    }
+
+    /**
+     * Returns the current destination. It changes when the destination grows.
+     * @return the current destination
+     */
+    public WritableMemory getMemory() {
+      return wmem_;
+    }
+
+    /**
+     * Sorts the key index, writes it after the images and then writes the preamble, which
+     * completes the store. No more images can be added.
+     * @return the completed store, backed by the destination
+     */
+    public SketchStore finish() {
+      checkNotFinished();
+      final long totalBytes = getSerializedSizeBytes();
+      ensureCapacity(totalBytes);
+      final long[] sortedKeys = Arrays.copyOf(keys_, numEntries_);
+      Arrays.sort(sortedKeys);
+      long entry = end_;
+      for (int i = 0; i < numEntries_; i++) {
+        final int e = keyTableFind(sortedKeys[i]);
+        wmem_.putLong(entry + ENTRY_KEY_LONG, sortedKeys[i]);
+        wmem_.putLong(entry + ENTRY_OFFSET_LONG, offsets_[e]);
+        wmem_.putInt(entry + ENTRY_BYTES_INT, imageBytes_[e]);
+        wmem_.putInt(entry + ENTRY_FAMILY_INT, familyIds_[e]);
+        entry += INDEX_ENTRY_BYTES;
+      }
+      wmem_.putShort(MAGIC_SHORT, STORE_MAGIC);
+      wmem_.putByte(SER_VER_BYTE, (byte) STORE_SER_VER);
+      wmem_.putByte(SER_VER_BYTE + 1, (byte) 0);
+      wmem_.putInt(NUM_ENTRIES_INT, numEntries_);
+      wmem_.putLong(TOTAL_BYTES_LONG, totalBytes);
+      wmem_.putLong(INDEX_OFFSET_LONG, end_);
+      finished_ = true;
+      return new SketchStore(wmem_, numEntries_, end_);
+    }
+
+    private void checkNotFinished() {
+      if (finished_) {
+        throw new SketchesStateException("This Writer has already been finished.");
+      }
+    }
+
+    private void ensureCapacity(final long reqBytes) {
+      final long curCapBytes = wmem_.getCapacity();
+      if (reqBytes <= curCapBytes) { return; }
+      memReqSvr_ = (memReqSvr_ == null) ? wmem_.getMemoryRequestServer() : memReqSvr_;
+      if (memReqSvr_ == null) {
+        throw new SketchesArgumentException(
+            "A request for more memory has been denied, "
+            + "or a default MemoryRequestServer has not been provided. Must abort. "
+            + "Capacity: " + curCapBytes + ", required: " + reqBytes);
+      }
+      final WritableMemory newMem = memReqSvr_.request(wmem_, Math.max(reqBytes, 2 * curCapBytes));
+      wmem_.copyTo(0, newMem, 0, end_);
+      memReqSvr_.requestClose(wmem_, newMem);
+      wmem_ = newMem;
+    }
+
+    private static long alignedBytes(final int bytes) {
+      return (bytes + 7L) & ~7L;
+    }
+
+    //key to entry table, which rejects duplicate keys and maps the sorted keys back to entries
+
+    private static int keyHash(final long key) { //MurmurHash3 fmix64
+      long h = key;
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb9fe1a85ec53L;
+      h ^= h >>> 33;
+      return (int) h;
+    }
+
+    private int keyTableFind(final long key) {
+      final int mask = (1 << lgKeyTableLongs_) - 1;
+      int i = keyHash(key) & mask;
+      while (keyTableEntries_[i] != 0) {
+        if (keyTable_[i] == key) { return keyTableEntries_[i] - 1; }
+        i = (i + 1) & mask;
+      }
+      return -1;
+    }
+
+    private void keyTableInsert(final long key, final int entry) {
+      if (2 * (numEntries_ + 1) > (1 << lgKeyTableLongs_)) {
+        lgKeyTableLongs_++;
+        keyTable_ = new long[1 << lgKeyTableLongs_];
+        keyTableEntries_ = new int[1 << lgKeyTableLongs_];
+        for (int e = 0; e < numEntries_; e++) { keyTablePut(keys_[e], e); }
+      }
+      keyTablePut(key, entry);
+    }
+
+    private void keyTablePut(final long key, final int entry) {
+      final int mask = (1 << lgKeyTableLongs_) - 1;
+      int i = keyHash(key) & mask;
+      while (keyTableEntries_[i] != 0) { i = (i + 1) & mask; }
+      keyTable_[i] = key;
+      keyTableEntries_[i] = entry + 1;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SketchStore: entries: " + numEntries_ + ", bytes: " + mem_.getLong(TOTAL_BYTES_LONG);
+  }
+}
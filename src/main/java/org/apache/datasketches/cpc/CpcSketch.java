@@ -251,6 +251,9 @@ public final class CpcSketch {
    * @return the given Memory as a CpcSketch on the Java heap.
    */
   public static CpcSketch heapify(final Memory mem, final long seed) {
+    if ((mem.getCapacity() >= 8) && !PreambleUtil.isCompressed(mem)) {
+      return DirectCpcSketch.heapify(mem, seed); //the updatable image of a DirectCpcSketch
+    }
     final CompressedState state = CompressedState.importFromMemory(mem);
     return uncompress(state, seed);
   }
@@ -496,7 +499,17 @@ public final class CpcSketch {
    */
   //Also used in test
   static void refreshKXP(final CpcSketch sketch, final long[] bitMatrix) {
-    final int k = (1 << sketch.lgK);
+    sketch.kxp = computeKxp(sketch.lgK, bitMatrix);
+  }
+
+  /**
+   * Returns the KXP register computed from the given bit matrix. Also used by DirectCpcSketch.
+   * @param lgK the given log_base2 of k
+   * @param bitMatrix the given bit Matrix
+   * @return the KXP register computed from the given bit matrix
+   */
+  static double computeKxp(final int lgK, final long[] bitMatrix) {
+    final int k = (1 << lgK);
 
     // for improved numerical accuracy, we separately sum the bytes of the U64's
     final double[] byteSums = new double[8];
@@ -518,7 +531,7 @@ public final class CpcSketch {
       final double factor = invPow2(8 * j); // pow(256, -j) == pow(2, -8 * j);
       total += factor * byteSums[j];
     }
-    sketch.kxp = total;
+    return total;
   }
 
   /**
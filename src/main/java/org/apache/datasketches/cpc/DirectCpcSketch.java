@@ -0,0 +1,726 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.cpc;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.datasketches.common.Util.invPow2;
+import static org.apache.datasketches.cpc.CpcUtil.checkLgK;
+import static org.apache.datasketches.cpc.PreambleUtil.HIP_FLAG_MASK;
+import static org.apache.datasketches.cpc.PreambleUtil.SER_VER;
+import static org.apache.datasketches.cpc.PreambleUtil.WINDOW_FLAG_MASK;
+import static org.apache.datasketches.hash.MurmurHash3.hash;
+import static org.apache.datasketches.hash.MurmurHash3.hash128;
+
+import java.util.Arrays;
+
+import org.apache.datasketches.common.Family;
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.common.SketchesStateException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.MemoryRequestServer;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.thetacommon.ThetaUtil;
+
+/**
+ * A CPC sketch that keeps its complete updatable state in a WritableMemory, which may be
+ * off-heap or memory-mapped, and is updated in place, so large numbers of these sketches can live
+ * off-heap. It is not a subclass of {@link CpcSketch}, but it produces the same results and the
+ * same serialized form. An update with a long or a double allocates nothing on the heap. The other update
+ * methods allocate to hash their input. The occasional change to the windowed flavors, shift of
+ * the sliding window or resize of the table of surprising values builds temporary arrays of up to
+ * K longs on the heap.
+ *
+ * <p>The memory holds the sliding window as K bytes and the table of surprising values as an
+ * open-addressed table of ints, the same structures that the heap sketch uses. A sketch that is
+ * fed the same items in the same order as a CpcSketch produces the same coupons, estimates and
+ * bounds. The compressed form is only produced on serialization by
+ * {@link #toByteArray()}, which is identical to that of the equivalent CpcSketch.</p>
+ *
+ * <p>The table of surprising values may outgrow the memory, in which case a larger
+ * WritableMemory is requested from the MemoryRequestServer given to the sketch. Without one the
+ * update throws a SketchesArgumentException; the server of the memory itself is never used, so
+ * a memory-mapped sketch is never moved to the heap. The size returned by
+ * {@link #getUpdatableBytes(int)} is large enough that this is rare.</p>
+ *
+ * <p>Updatable layout, little-endian. The first 8 bytes are the same as those of the compressed
+ * formats described in PreambleUtil, with the compressed flag cleared:</p>
+ * <pre>
+ * Long adr ||
+ *          ||    7   |    6   |    5   |    4   |    3   |    2   |    1   |    0   |
+ *      0   ||---SEED HASH-----|-Flags--|-FIcol--|---lgK--|-FamID--|-SerVer-|---PI---|
+ *
+ *          ||   15   |   14   |   13   |   12   |   11   |   10   |    9   |    8   |
+ *      1   ||                 |-WinOff-|-LgSzI--|--------------numPairs-------------|
+ *
+ *          ||   23   |   22   |   21   |   20   |   19   |   18   |   17   |   16   |
+ *      2   ||--------------------------------numCoupons-----------------------------|
+ *
+ *          ||   31   |   30   |   29   |   28   |   27   |   26   |   25   |   24   |
+ *      3   ||----------------------------------KxP----------------------------------|
+ *
+ *          ||   39   |   38   |   37   |   36   |   35   |   34   |   33   |   32   |
+ *      4   ||-------------------------------HIP Accum-------------------------------|
+ *
+ *     40   ||  Sliding window, K bytes, then the table of surprising values at the next
+ *          ||  multiple of 8 bytes, 2^LgSzI ints, where -1 is an empty slot.
+ * </pre>
+ */
+public final class DirectCpcSketch {
+  private static final int PRE_INTS = 10;
+  private static final int FLAGS_BYTE = 5;
+  private static final int SEED_HASH_SHORT = 6;
+  private static final int NUM_PAIRS_INT = 8;
+  private static final int LG_SIZE_INTS_BYTE = 12;
+  private static final int WINDOW_OFFSET_BYTE = 13;
+  private static final int NUM_COUPONS_LONG = 16;
+  private static final int KXP_DOUBLE = 24;
+  private static final int HIP_ACCUM_DOUBLE = 32;
+  private static final int WINDOW_START = 40;
+  private static final int MIN_LG_SIZE_INTS = 2;
+  private static final int UPSIZE_NUMER = 3;
+  private static final int UPSIZE_DENOM = 4;
+  private static final int DOWNSIZE_NUMER = 1;
+  private static final int DOWNSIZE_DENOM = 4;
+
+  private final long seed;
+  private final int lgK;
+  private final int validBits; //of the rowCol items of the table
+  private final long pairsStart;
+  private WritableMemory wmem;
+  private final MemoryRequestServer memReqSvr; //null if the memory cannot grow
+  private final long[] hashOut = new long[2]; //scratch for the hash of a long or a double
+
+  /**
+   * Constructs a new, empty sketch in the given WritableMemory using the DEFAULT_UPDATE_SEED.
+   * The previous contents of the memory are lost. The sketch cannot grow beyond the given memory.
+   * @param lgK the given log_base2 of k
+   * @param dstMem the destination WritableMemory, see {@link #getUpdatableBytes(int)}
+   */
+  public DirectCpcSketch(final int lgK, final WritableMemory dstMem) {
+    this(lgK, ThetaUtil.DEFAULT_UPDATE_SEED, dstMem, null);
+  }
+
+  /**
+   * Constructs a new, empty sketch in the given WritableMemory.
+   * The previous contents of the memory are lost.
+   * @param lgK the given log_base2 of k
+   * @param seed the given seed
+   * @param dstMem the destination WritableMemory, see {@link #getUpdatableBytes(int)}
+   * @param memReqSvr the MemoryRequestServer to request a larger WritableMemory when dstMem is
+   * full, or null if the sketch must not grow beyond dstMem
+   */
+  public DirectCpcSketch(final int lgK, final long seed, final WritableMemory dstMem,
+      final MemoryRequestServer memReqSvr) {
+    checkLgK(lgK);
+    this.lgK = lgK;
+    this.seed = seed;
+    validBits = 6 + lgK;
+    pairsStart = getPairsStart(lgK);
+    final long minBytes = pairsStart + ((long) Integer.BYTES << MIN_LG_SIZE_INTS);
+    if (dstMem.getCapacity() < minBytes) {
+      throw new SketchesArgumentException(
+          "Memory capacity must be at least " + minBytes + ": " + dstMem.getCapacity());
+    }
+    wmem = dstMem;
+    this.memReqSvr = memReqSvr;
+    wmem.clear(0, WINDOW_START);
+    wmem.putByte(0, (byte) PRE_INTS);
+    wmem.putByte(1, SER_VER);
+    wmem.putByte(2, (byte) Family.CPC.getID());
+    wmem.putByte(3, (byte) lgK);
+    wmem.putShort(SEED_HASH_SHORT, ThetaUtil.computeSeedHash(seed));
+    reset();
+  }
+
+  private DirectCpcSketch(final WritableMemory srcMem, final long seed,
+      final MemoryRequestServer memReqSvr) {
+    checkUpdatableImage(srcMem, seed);
+    lgK = PreambleUtil.getLgK(srcMem);
+    this.seed = seed;
+    validBits = 6 + lgK;
+    pairsStart = getPairsStart(lgK);
+    wmem = srcMem;
+    this.memReqSvr = memReqSvr;
+  }
+
+  /**
+   * Wraps the given WritableMemory, which holds a sketch created by
+   * {@link #DirectCpcSketch(int, WritableMemory)}, using the DEFAULT_UPDATE_SEED. The sketch
+   * cannot grow beyond the given memory.
+   * @param srcMem the WritableMemory that holds the sketch
+   * @return a DirectCpcSketch backed by the given WritableMemory
+   */
+  public static DirectCpcSketch writableWrap(final WritableMemory srcMem) {
+    return writableWrap(srcMem, ThetaUtil.DEFAULT_UPDATE_SEED, null);
+  }
+
+  /**
+   * Wraps the given WritableMemory, which holds a sketch created by
+   * {@link #DirectCpcSketch(int, long, WritableMemory, MemoryRequestServer)}.
+   * @param srcMem the WritableMemory that holds the sketch
+   * @param seed the seed used to create the sketch
+   * @param memReqSvr the MemoryRequestServer to request a larger WritableMemory when srcMem is
+   * full, or null if the sketch must not grow beyond srcMem
+   * @return a DirectCpcSketch backed by the given WritableMemory
+   */
+  public static DirectCpcSketch writableWrap(final WritableMemory srcMem, final long seed,
+      final MemoryRequestServer memReqSvr) {
+    return new DirectCpcSketch(srcMem, seed, memReqSvr);
+  }
+
+  /**
+   * Returns the size in bytes of a WritableMemory that holds a sketch with the given lgK
+   * without growing in nearly all cases: the preamble, the sliding window of K bytes and a table
+   * of surprising values with room for 3K/8 values.
+   * @param lgK the given log_base2 of k
+   * @return the size in bytes of a WritableMemory for a sketch with the given lgK
+   */
+  public static int getUpdatableBytes(final int lgK) {
+    checkLgK(lgK);
+    return (int) (getPairsStart(lgK) + ((long) Integer.BYTES << (lgK - 1)));
+  }
+
+  /**
+   * Returns the best estimate of the cardinality of the sketch.
+   * @return the best estimate of the cardinality of the sketch.
+   */
+  public double getEstimate() {
+    return getHipEstAccum();
+  }
+
+  /**
+   * Returns the best estimate of the lower bound of the confidence interval given <i>kappa</i>,
+   * the number of standard deviations from the mean.
+   * @param kappa the given number of standard deviations from the mean: 1, 2 or 3.
+   * @return the best estimate of the lower bound of the confidence interval given <i>kappa</i>.
+   */
+  public double getLowerBound(final int kappa) {
+    return CpcConfidence.getHipConfidenceLB(lgK, getNumCoupons(), getHipEstAccum(), kappa);
+  }
+
+  /**
+   * Returns the best estimate of the upper bound of the confidence interval given <i>kappa</i>,
+   * the number of standard deviations from the mean.
+   * @param kappa the given number of standard deviations from the mean: 1, 2 or 3.
+   * @return the best estimate of the upper bound of the confidence interval given <i>kappa</i>.
+   */
+  public double getUpperBound(final int kappa) {
+    return CpcConfidence.getHipConfidenceUB(lgK, getNumCoupons(), getHipEstAccum(), kappa);
+  }
+
+  /**
+   * Return the parameter LgK.
+   * @return the parameter LgK.
+   */
+  public int getLgK() {
+    return lgK;
+  }
+
+  /**
+   * Returns the memory that holds this sketch. This is the memory given to the constructor, or
+   * the memory last obtained from the MemoryRequestServer if the sketch has outgrown it.
+   * @return the memory that holds this sketch
+   */
+  public WritableMemory getMemory() {
+    return wmem;
+  }
+
+  /**
+   * Return true if this sketch is empty
+   * @return true if this sketch is empty
+   */
+  public boolean isEmpty() {
+    return getNumCoupons() == 0;
+  }
+
+  /**
+   * Resets this sketch to empty but retains the original LgK and Seed.
+   */
+  public void reset() {
+    putNumCoupons(0);
+    putFiCol(0);
+    putWindowOffset(0);
+    putFlags(HIP_FLAG_MASK);
+    wmem.putInt(NUM_PAIRS_INT, 0);
+    wmem.putByte(LG_SIZE_INTS_BYTE, (byte) 0);
+    putKxp(1 << lgK);
+    putHipEstAccum(0);
+  }
+
+  /**
+   * Returns a copy of this sketch as a CpcSketch on the java heap, for example to give it to a
+   * {@link CpcUnion}.
+   * @return a copy of this sketch as a CpcSketch on the java heap
+   */
+  public CpcSketch toCpcSketch() {
+    return heapify(wmem, seed);
+  }
+
+  /**
+   * Return this sketch as a compressed byte array, identical to that of the equivalent CpcSketch.
+   * @return this sketch as a compressed byte array.
+   */
+  public byte[] toByteArray() {
+    return toCpcSketch().toByteArray();
+  }
+
+  /**
+   * Present the given long as a potential unique item.
+   *
+   * @param datum The given long datum.
+   */
+  public void update(final long datum) {
+    hash128(datum, seed, hashOut); //same as hash(new long[] { datum }, seed)
+    hashUpdate(hashOut[0], hashOut[1]);
+  }
+
+  /**
+   * Present the given double (or float) datum as a potential unique item,
+   * as {@link CpcSketch#update(double)} does.
+   *
+   * @param datum The given double datum.
+   */
+  public void update(final double datum) {
+    final double d = (datum == 0.0) ? 0.0 : datum; // canonicalize -0.0, 0.0
+    hash128(Double.doubleToLongBits(d), seed, hashOut); // canonicalize all NaN forms
+    hashUpdate(hashOut[0], hashOut[1]);
+  }
+
+  /**
+   * Present the given String as a potential unique item, encoded as UTF-8.
+   * If the string is null or empty no update attempt is made and the method returns.
+   *
+   * @param datum The given String.
+   */
+  public void update(final String datum) {
+    if ((datum == null) || datum.isEmpty()) { return; }
+    final byte[] data = datum.getBytes(UTF_8);
+    final long[] arr = hash(data, seed);
+    hashUpdate(arr[0], arr[1]);
+  }
+
+  /**
+   * Present the given byte array as a potential unique item.
+   * If the byte array is null or empty no update attempt is made and the method returns.
+   *
+   * @param data The given byte array.
+   */
+  public void update(final byte[] data) {
+    if ((data == null) || (data.length == 0)) { return; }
+    final long[] arr = hash(data, seed);
+    hashUpdate(arr[0], arr[1]);
+  }
+
+  /**
+   * Present the given char array as a potential unique item.
+   * If the char array is null or empty no update attempt is made and the method returns.
+   *
+   * @param data The given char array.
+   */
+  public void update(final char[] data) {
+    if ((data == null) || (data.length == 0)) { return; }
+    final long[] arr = hash(data, seed);
+    hashUpdate(arr[0], arr[1]);
+  }
+
+  /**
+   * Present the given integer array as a potential unique item.
+   * If the integer array is null or empty no update attempt is made and the method returns.
+   *
+   * @param data The given int array.
+   */
+  public void update(final int[] data) {
+    if ((data == null) || (data.length == 0)) { return; }
+    final long[] arr = hash(data, seed);
+    hashUpdate(arr[0], arr[1]);
+  }
+
+  /**
+   * Present the given long array as a potential unique item.
+   * If the long array is null or empty no update attempt is made and the method returns.
+   *
+   * @param data The given long array.
+   */
+  public void update(final long[] data) {
+    if ((data == null) || (data.length == 0)) { return; }
+    final long[] arr = hash(data, seed);
+    hashUpdate(arr[0], arr[1]);
+  }
+
+  /**
+   * Return a human-readable string summary of this sketch
+   */
+  @Override
+  public String toString() {
+    return toCpcSketch().toString();
+  }
+
+  /**
+   * Returns a CpcSketch on the java heap from the given Memory, which holds an updatable image
+   * of a DirectCpcSketch.
+   * @param mem the given Memory
+   * @param seed the seed used to create the sketch
+   * @return a CpcSketch on the java heap
+   */
+  static CpcSketch heapify(final Memory mem, final long seed) {
+    checkUpdatableImage(mem, seed);
+    final int lgK = PreambleUtil.getLgK(mem);
+    final int k = 1 << lgK;
+    final CpcSketch sketch = new CpcSketch(lgK, seed);
+    sketch.numCoupons = mem.getLong(NUM_COUPONS_LONG);
+    if (sketch.numCoupons == 0) { return sketch; }
+    sketch.fiCol = PreambleUtil.getFiCol(mem);
+    sketch.windowOffset = mem.getByte(WINDOW_OFFSET_BYTE);
+    sketch.kxp = mem.getDouble(KXP_DOUBLE);
+    sketch.hipEstAccum = mem.getDouble(HIP_ACCUM_DOUBLE);
+    if (PreambleUtil.hasWindow(mem)) {
+      sketch.slidingWindow = new byte[k];
+      mem.getByteArray(WINDOW_START, sketch.slidingWindow, 0, k);
+    }
+    final int lgSizeInts = mem.getByte(LG_SIZE_INTS_BYTE);
+    final int[] slots = new int[1 << lgSizeInts];
+    mem.getIntArray(getPairsStart(lgK), slots, 0, slots.length);
+    sketch.pairTable =
+        PairTable.newInstanceFromSlots(slots, lgSizeInts, 6 + lgK, mem.getInt(NUM_PAIRS_INT));
+    return sketch;
+  }
+
+  //Same as CpcSketch.hashUpdate()
+  void hashUpdate(final long hash0, final long hash1) {
+    int col = Long.numberOfLeadingZeros(hash1);
+    if (col < getFiCol()) { return; } // important speed optimization
+    if (col > 63) { col = 63; } // clip so that 0 <= col <= 63
+    final long c = getNumCoupons();
+    if (c == 0) { initTable(MIN_LG_SIZE_INTS); } // EMPTY to SPARSE
+    final long k = 1L << lgK;
+    final int row = (int) (hash0 & (k - 1L));
+    int rowCol = (row << 6) | col;
+
+    // Avoid the hash table's "empty" value which is (2^26 -1, 63) (all ones) by changing it
+    // to the pair (2^26 - 2, 63), which effectively merges the two cells.
+    if (rowCol == -1) { rowCol ^= (1 << 6); } //set the LSB of row to 0
+
+    if ((c << 5) < (3L * k)) { updateSparse(rowCol); }
+    else { updateWindowed(rowCol); }
+  }
+
+  private void updateSparse(final int rowCol) {
+    final int k = 1 << lgK;
+    if (maybeInsert(rowCol)) {
+      final long numCoupons = getNumCoupons() + 1;
+      putNumCoupons(numCoupons);
+      updateHip(rowCol);
+      if ((numCoupons << 5) >= (3L * k)) { promoteSparseToWindowed(); } // C >= 3K/32
+    }
+  }
+
+  //Same as CpcSketch.updateWindowed(), the flavor is HYBRID, PINNED, or SLIDING.
+  private void updateWindowed(final int rowCol) {
+    final int windowOffset = getWindowOffset();
+    final int k = 1 << lgK;
+    final int w8pre = windowOffset << 3;
+    boolean isNovel = false; //novel if new coupon
+    final int col = rowCol & 63;
+
+    if (col < windowOffset) { // track the surprising 0's "before" the window
+      isNovel = maybeDelete(rowCol); // inverted logic
+    }
+    else if (col < (windowOffset + 8)) { // track the 8 bits inside the window
+      final long offset = WINDOW_START + (rowCol >>> 6);
+      final byte oldBits = wmem.getByte(offset);
+      final byte newBits = (byte) (oldBits | (1 << (col - windowOffset)));
+      if (newBits != oldBits) {
+        wmem.putByte(offset, newBits);
+        isNovel = true;
+      }
+    }
+    else { // track the surprising 1's "after" the window
+      isNovel = maybeInsert(rowCol); // normal logic
+    }
+
+    if (isNovel) {
+      final long numCoupons = getNumCoupons() + 1;
+      putNumCoupons(numCoupons);
+      updateHip(rowCol);
+      if ((numCoupons << 3) >= ((27L + w8pre) * k)) {
+        modifyOffset(windowOffset + 1);
+      }
+    }
+  }
+
+  private void updateHip(final int rowCol) {
+    final int k = 1 << lgK;
+    final int col = rowCol & 63;
+    final double kxp = getKxp();
+    putHipEstAccum(getHipEstAccum() + (k / kxp));
+    putKxp(kxp - invPow2(col + 1)); // notice the "+1"
+  }
+
+  //In terms of flavor, this promotes SPARSE to HYBRID.
+  private void promoteSparseToWindowed() {
+    final int k = 1 << lgK;
+    final int[] oldSlots = getSlots();
+    wmem.clear(WINDOW_START, k);
+    putFlags(HIP_FLAG_MASK | WINDOW_FLAG_MASK);
+    initTable(MIN_LG_SIZE_INTS);
+    for (int i = 0; i < oldSlots.length; i++) {
+      final int rowCol = oldSlots[i];
+      if (rowCol != -1) {
+        final int col = rowCol & 63;
+        if (col < 8) {
+          final long offset = WINDOW_START + (rowCol >>> 6);
+          wmem.putByte(offset, (byte) (wmem.getByte(offset) | (1 << col)));
+        } else {
+          final boolean isNovel = maybeInsert(rowCol);
+          assert isNovel;
+        }
+      }
+    }
+  }
+
+  //Same as CpcSketch.modifyOffset(), moves the sliding window to the new offset, oldOffset + 1
+  private void modifyOffset(final int newOffset) {
+    assert ((newOffset >= 0) && (newOffset <= 56));
+    final int k = 1 << lgK;
+    final long[] bitMatrix = getBitMatrix();
+
+    // refresh the KXP register on every 8th window shift.
+    if ((newOffset & 0x7) == 0) { putKxp(CpcSketch.computeKxp(lgK, bitMatrix)); }
+
+    initTable(getLgSizeInts()); //clear, keeping the size
+    final long maskForClearingWindow = (0XFFL << newOffset) ^ -1L;
+    final long maskForFlippingEarlyZone = (1L << newOffset) - 1L;
+    long allSurprisesORed = 0;
+
+    for (int i = 0; i < k; i++) {
+      long pattern = bitMatrix[i];
+      wmem.putByte(WINDOW_START + i, (byte) ((pattern >>> newOffset) & 0XFFL));
+      pattern &= maskForClearingWindow;
+      // The following line converts surprising 0's to 1's in the "early zone",
+      // (and vice versa, which is essential for this procedure's O(k) time cost).
+      pattern ^= maskForFlippingEarlyZone;
+      allSurprisesORed |= pattern; // a cheap way to recalculate fiCol
+      while (pattern != 0) {
+        final int col = Long.numberOfTrailingZeros(pattern);
+        pattern = pattern ^ (1L << col); // erase the 1.
+        final int rowCol = (i << 6) | col;
+        final boolean isNovel = maybeInsert(rowCol);
+        assert isNovel;
+      }
+    }
+    putWindowOffset(newOffset);
+    putFiCol(Math.min(Long.numberOfTrailingZeros(allSurprisesORed), newOffset));
+  }
+
+  //Same as CpcUtil.bitMatrixOfSketch()
+  private long[] getBitMatrix() {
+    final int k = 1 << lgK;
+    final int offset = getWindowOffset();
+    final long[] matrix = new long[k];
+    Arrays.fill(matrix, (1L << offset) - 1L);
+    if ((getFlags() & WINDOW_FLAG_MASK) != 0) {
+      for (int i = 0; i < k; i++) {
+        matrix[i] |= ((wmem.getByte(WINDOW_START + i) & 0XFFL) << offset);
+      }
+    }
+    for (final int rowCol : getSlots()) {
+      if (rowCol != -1) { matrix[rowCol >>> 6] ^= (1L << (rowCol & 63)); }
+    }
+    return matrix;
+  }
+
+  //TABLE OF SURPRISING VALUES, same as PairTable
+
+  private int[] getSlots() {
+    final int[] slots = new int[1 << getLgSizeInts()];
+    wmem.getIntArray(pairsStart, slots, 0, slots.length);
+    return slots;
+  }
+
+  //Empties the table with the given size, growing the memory if required
+  private void initTable(final int lgSizeInts) {
+    final long bytes = (long) Integer.BYTES << lgSizeInts;
+    if ((pairsStart + bytes) > wmem.getCapacity()) { grow(pairsStart + bytes); }
+    wmem.fill(pairsStart, bytes, (byte) -1);
+    wmem.putByte(LG_SIZE_INTS_BYTE, (byte) lgSizeInts);
+    wmem.putInt(NUM_PAIRS_INT, 0);
+  }
+
+  //Returns the slot of the given item, or of the empty slot where it belongs
+  private long probe(final int item) {
+    final int lgSizeInts = getLgSizeInts();
+    final int mask = (1 << lgSizeInts) - 1;
+    int probe = item >>> (validBits - lgSizeInts);
+    int fetched = wmem.getInt(pairsStart + ((long) probe << 2));
+    while ((fetched != item) && (fetched != -1)) {
+      probe = (probe + 1) & mask;
+      fetched = wmem.getInt(pairsStart + ((long) probe << 2));
+    }
+    return pairsStart + ((long) probe << 2);
+  }
+
+  private void mustInsert(final int item) {
+    final long slot = probe(item);
+    if (wmem.getInt(slot) == item) {
+      throw new SketchesStateException("PairTable mustInsert() failed");
+    }
+    wmem.putInt(slot, item);
+  }
+
+  private boolean maybeInsert(final int item) {
+    final long slot = probe(item);
+    if (wmem.getInt(slot) == item) { return false; }
+    wmem.putInt(slot, item);
+    final int numPairs = wmem.getInt(NUM_PAIRS_INT) + 1;
+    wmem.putInt(NUM_PAIRS_INT, numPairs);
+    while ((UPSIZE_DENOM * numPairs) > (UPSIZE_NUMER * (1 << getLgSizeInts()))) {
+      rebuild(getLgSizeInts() + 1);
+    }
+    return true;
+  }
+
+  private boolean maybeDelete(final int item) {
+    long slot = probe(item);
+    if (wmem.getInt(slot) == -1) { return false; }
+    wmem.putInt(slot, -1);
+    final int numPairs = wmem.getInt(NUM_PAIRS_INT) - 1;
+    wmem.putInt(NUM_PAIRS_INT, numPairs);
+
+    // re-insert all items between the freed slot and the next empty slot
+    final long tableEnd = pairsStart + ((long) Integer.BYTES << getLgSizeInts());
+    slot = (slot + Integer.BYTES == tableEnd) ? pairsStart : slot + Integer.BYTES;
+    int fetched = wmem.getInt(slot);
+    while (fetched != -1) {
+      wmem.putInt(slot, -1);
+      mustInsert(fetched);
+      slot = (slot + Integer.BYTES == tableEnd) ? pairsStart : slot + Integer.BYTES;
+      fetched = wmem.getInt(slot);
+    }
+
+    // shrink if necessary
+    while (((DOWNSIZE_DENOM * numPairs) < (DOWNSIZE_NUMER * (1 << getLgSizeInts())))
+        && (getLgSizeInts() > MIN_LG_SIZE_INTS)) {
+      rebuild(getLgSizeInts() - 1);
+    }
+    return true;
+  }
+
+  private void rebuild(final int newLgSizeInts) {
+    final int numPairs = wmem.getInt(NUM_PAIRS_INT);
+    final int[] oldSlots = getSlots();
+    initTable(newLgSizeInts);
+    for (final int item : oldSlots) {
+      if (item != -1) { mustInsert(item); }
+    }
+    wmem.putInt(NUM_PAIRS_INT, numPairs);
+  }
+
+  //Moves this sketch to a larger memory from the MemoryRequestServer
+  private void grow(final long minBytes) {
+    if (memReqSvr == null) {
+      throw new SketchesArgumentException(
+          "A request for more memory has been denied, "
+          + "or a MemoryRequestServer has not been provided. Must abort. ");
+    }
+    final long reqBytes = Math.max(minBytes, 2 * wmem.getCapacity());
+    final WritableMemory newMem = memReqSvr.request(wmem, reqBytes);
+    final long usedBytes = pairsStart + ((long) Integer.BYTES << getLgSizeInts());
+    wmem.copyTo(0, newMem, 0, Math.min(usedBytes, wmem.getCapacity()));
+    memReqSvr.requestClose(wmem, newMem);
+    wmem = newMem;
+  }
+
+  private static void checkUpdatableImage(final Memory mem, final long seed) {
+    if (mem.getCapacity() < WINDOW_START) {
+      throw new SketchesArgumentException("Memory too small for a DirectCpcSketch.");
+    }
+    if ((PreambleUtil.getPreInts(mem) != PRE_INTS) || (PreambleUtil.getSerVer(mem) != SER_VER)
+        || (PreambleUtil.getFamily(mem) != Family.CPC) || PreambleUtil.isCompressed(mem)) {
+      throw new SketchesArgumentException(
+          "Possible corruption: Memory does not hold an updatable CpcSketch.");
+    }
+    final int lgK = PreambleUtil.getLgK(mem);
+    checkLgK(lgK);
+    final int lgSizeInts = mem.getByte(LG_SIZE_INTS_BYTE);
+    final long minBytes = getPairsStart(lgK) + ((long) Integer.BYTES << lgSizeInts);
+    if (mem.getCapacity() < minBytes) {
+      throw new SketchesArgumentException("Possible corruption: Memory capacity must be at least "
+          + minBytes + ": " + mem.getCapacity());
+    }
+    ThetaUtil.checkSeedHashes(ThetaUtil.computeSeedHash(seed), PreambleUtil.getSeedHash(mem));
+  }
+
+  private static long getPairsStart(final int lgK) {
+    return ((WINDOW_START + (1L << lgK)) + 7) & ~7L;
+  }
+
+  private long getNumCoupons() {
+    return wmem.getLong(NUM_COUPONS_LONG);
+  }
+
+  private void putNumCoupons(final long numCoupons) {
+    wmem.putLong(NUM_COUPONS_LONG, numCoupons);
+  }
+
+  private int getFiCol() {
+    return wmem.getByte(PreambleUtil.getLoFieldOffset(PreambleUtil.LoField.FI_COL));
+  }
+
+  private void putFiCol(final int fiCol) {
+    wmem.putByte(PreambleUtil.getLoFieldOffset(PreambleUtil.LoField.FI_COL), (byte) fiCol);
+  }
+
+  private int getWindowOffset() {
+    return wmem.getByte(WINDOW_OFFSET_BYTE);
+  }
+
+  private void putWindowOffset(final int windowOffset) {
+    wmem.putByte(WINDOW_OFFSET_BYTE, (byte) windowOffset);
+  }
+
+  private int getFlags() {
+    return wmem.getByte(FLAGS_BYTE) & 0XFF;
+  }
+
+  private void putFlags(final int flags) {
+    wmem.putByte(FLAGS_BYTE, (byte) flags);
+  }
+
+  private int getLgSizeInts() {
+    return wmem.getByte(LG_SIZE_INTS_BYTE);
+  }
+
+  private double getKxp() {
+    return wmem.getDouble(KXP_DOUBLE);
+  }
+
+  private void putKxp(final double kxp) {
+    wmem.putDouble(KXP_DOUBLE, kxp);
+  }
+
+  private double getHipEstAccum() {
+    return wmem.getDouble(HIP_ACCUM_DOUBLE);
+  }
+
+  private void putHipEstAccum(final double hipEstAccum) {
+    wmem.putDouble(HIP_ACCUM_DOUBLE, hipEstAccum);
+  }
+
+}
@@ -76,6 +76,16 @@ final class PairTable {
     return table;
   }
 
+  //Factory, adopts the given slots, which must be a valid table of the given size
+  static PairTable newInstanceFromSlots(final int[] slots, final int lgSizeInts,
+      final int numValidBits, final int numPairs) {
+    final PairTable table = new PairTable(lgSizeInts, numValidBits);
+    rtAssertEquals(slots.length, 1 << lgSizeInts);
+    table.slotsArr = slots;
+    table.numPairs = numPairs;
+    return table;
+  }
+
   PairTable clear() {
     Arrays.fill(slotsArr, -1);
     numPairs = 0;
@@ -83,6 +83,54 @@ public final class MurmurHash3 implements Serializable {
     return hashState.finalMix128(key, 0, Long.BYTES);
   }
 
+  /**
+   * Returns the first 64 bits of the 128-bit hash of the given long.
+   * This is identical to <i>hash(key, seed)[0]</i> but does not allocate the result array,
+   * which makes it suitable for tight loops over columns of longs.
+   *
+   * @param key The input long.
+   * @param seed A long valued seed.
+   * @return the first 64 bits of the 128-bit hash of the input.
+   */
+  public static long hash64(final long key, final long seed) {
+    long h1 = seed ^ HashState.mixK1(key);
+    long h2 = seed; //the second block of a long key is zero, and mixK2(0) == 0
+    h1 ^= Long.BYTES;
+    h2 ^= Long.BYTES;
+    h1 += h2;
+    h2 += h1;
+    h1 = HashState.finalMix64(h1);
+    h2 = HashState.finalMix64(h2);
+    return h1 + h2;
+  }
+
+  /**
+   * Hash the given long into the given array.
+   * This is identical to <i>hash(key, seed)</i> but writes the result into the caller's array
+   * instead of allocating one, which makes it suitable for tight loops over columns of longs.
+   *
+   * @param key The input long.
+   * @param seed A long valued seed.
+   * @param hashOut an array of at least 2 longs that receives the 128-bit hash of the input.
+   * @return hashOut
+   */
+  public static long[] hash128(final long key, final long seed, final long[] hashOut) {
+    //the final mix of HashState on local longs, see hash64(long, long)
+    long h1 = seed ^ HashState.mixK1(key);
+    long h2 = seed;
+    h1 ^= Long.BYTES;
+    h2 ^= Long.BYTES;
+    h1 += h2;
+    h2 += h1;
+    h1 = HashState.finalMix64(h1);
+    h2 = HashState.finalMix64(h2);
+    h1 += h2;
+    h2 += h1;
+    hashOut[0] = h1;
+    hashOut[1] = h2;
+    return hashOut;
+  }
+
   //--Hash of long[]-------------------------------------------------------
   /**
    * Hash the given long[] array.
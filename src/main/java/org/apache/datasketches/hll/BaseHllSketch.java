@@ -20,13 +20,16 @@
 package org.apache.datasketches.hll;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.datasketches.common.Util.checkBounds;
 import static org.apache.datasketches.hash.MurmurHash3.hash;
+import static org.apache.datasketches.hash.MurmurHash3.hash128;
 import static org.apache.datasketches.hll.HllUtil.HLL_HIP_RSE_FACTOR;
 import static org.apache.datasketches.hll.HllUtil.HLL_NON_HIP_RSE_FACTOR;
 import static org.apache.datasketches.hll.HllUtil.KEY_BITS_26;
 import static org.apache.datasketches.hll.HllUtil.KEY_MASK_26;
 
 import java.nio.ByteBuffer;
+import java.util.Objects;
 
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.thetacommon.ThetaUtil;
@@ -39,8 +42,24 @@ import org.apache.datasketches.thetacommon.ThetaUtil;
  */
 abstract class BaseHllSketch {
 
+  /**
+   * The number of items hashed together by the batch update methods before their coupons are
+   * applied.
+   */
+  static final int BATCH_BLOCK_SIZE = 256;
+
   abstract void couponUpdate(int coupon);
 
+  /**
+   * Applies the first count coupons of the given block in order. Subclasses may override this
+   * with a faster path that has the same result.
+   * @param coupons the given block of coupons
+   * @param count the number of valid coupons in the block
+   */
+  void couponUpdateBlock(final int[] coupons, final int count) {
+    for (int i = 0; i < count; i++) { couponUpdate(coupons[i]); }
+  }
+
   /**
    * Gets the size in bytes of the current sketch when serialized using
    * <i>toCompactByteArray()</i>.
@@ -401,7 +420,88 @@ abstract class BaseHllSketch {
     couponUpdate(coupon(hash(data, ThetaUtil.DEFAULT_UPDATE_SEED)));
   }
 
-  private static final int coupon(final long[] hash) {
+  /**
+   * Present this sketch with each of the given longs as a separate item.
+   * This is equivalent to, but faster than, calling {@link #update(long)} for each item in the
+   * given range: the items are hashed in blocks, and each block of coupons is applied together.
+   *
+   * <p>Note: this is not the same as {@link #update(long[])}, which treats the whole array as a
+   * single item.</p>
+   *
+   * @param items the given array of long items
+   * @param offset the index of the first item to update with
+   * @param length the number of items to update with
+   */
+  public void updateBatch(final long[] items, final int offset, final int length) {
+    Objects.requireNonNull(items, "Items must not be null");
+    checkBounds(offset, length, items.length);
+    if (length == 0) { return; }
+    final long[] hash = new long[2];
+    final int[] coupons = new int[Math.min(length, BATCH_BLOCK_SIZE)];
+    for (int i = 0; i < length; i += BATCH_BLOCK_SIZE) {
+      final int count = Math.min(BATCH_BLOCK_SIZE, length - i);
+      final int base = offset + i;
+      for (int j = 0; j < count; j++) {
+        coupons[j] = coupon(hash128(items[base + j], ThetaUtil.DEFAULT_UPDATE_SEED, hash));
+      }
+      couponUpdateBlock(coupons, count);
+    }
+  }
+
+  /**
+   * Present this sketch with each of the given doubles as a separate item.
+   * This is equivalent to, but faster than, calling {@link #update(double)} for each item in the
+   * given range, including its canonicalization of -0.0 and NaN.
+   *
+   * @param items the given array of double items
+   * @param offset the index of the first item to update with
+   * @param length the number of items to update with
+   */
+  public void updateBatch(final double[] items, final int offset, final int length) {
+    Objects.requireNonNull(items, "Items must not be null");
+    checkBounds(offset, length, items.length);
+    if (length == 0) { return; }
+    final long[] hash = new long[2];
+    final int[] coupons = new int[Math.min(length, BATCH_BLOCK_SIZE)];
+    for (int i = 0; i < length; i += BATCH_BLOCK_SIZE) {
+      final int count = Math.min(BATCH_BLOCK_SIZE, length - i);
+      final int base = offset + i;
+      for (int j = 0; j < count; j++) {
+        final double d = (items[base + j] == 0.0) ? 0.0 : items[base + j];
+        coupons[j] = coupon(hash128(Double.doubleToLongBits(d), ThetaUtil.DEFAULT_UPDATE_SEED,
+            hash));
+      }
+      couponUpdateBlock(coupons, count);
+    }
+  }
+
+  /**
+   * Present this sketch with each of the given byte arrays as a separate item.
+   * This is equivalent to, but faster than, calling {@link #update(byte[])} for each item in the
+   * given range. As with {@link #update(byte[])}, null or empty byte arrays are ignored.
+   *
+   * @param items the given array of binary items
+   * @param offset the index of the first item to update with
+   * @param length the number of items to update with
+   */
+  public void updateBatch(final byte[][] items, final int offset, final int length) {
+    Objects.requireNonNull(items, "Items must not be null");
+    checkBounds(offset, length, items.length);
+    if (length == 0) { return; }
+    final int[] coupons = new int[Math.min(length, BATCH_BLOCK_SIZE)];
+    for (int i = 0; i < length; i += BATCH_BLOCK_SIZE) {
+      final int end = offset + Math.min(i + BATCH_BLOCK_SIZE, length);
+      int count = 0;
+      for (int j = offset + i; j < end; j++) {
+        final byte[] datum = items[j];
+        if ((datum == null) || (datum.length == 0)) { continue; }
+        coupons[count++] = coupon(hash(datum, ThetaUtil.DEFAULT_UPDATE_SEED));
+      }
+      couponUpdateBlock(coupons, count);
+    }
+  }
+
+  static final int coupon(final long[] hash) {
     final int addr26 = (int) ((hash[0] & KEY_MASK_26));
     final int lz = Long.numberOfLeadingZeros(hash[1]);
     final int value = ((lz > 62 ? 62 : lz) + 1);
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.datasketches.common.Util.LS;
+import static org.apache.datasketches.common.Util.checkBounds;
+import static org.apache.datasketches.hash.MurmurHash3.hash;
+import static org.apache.datasketches.hash.MurmurHash3.hash128;
+import static org.apache.datasketches.hll.BaseHllSketch.coupon;
+import static org.apache.datasketches.hll.HllUtil.KEY_BITS_26;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.datasketches.thetacommon.ThetaUtil;
+
+/**
+ * An HLL sketch on the java heap that can be updated directly by any number of threads, for
+ * example by the threads of a collector, without a lock and without one sketch per thread.
+ *
+ * <p>The sketch starts in HLL mode with the HLL_8 layout: one byte register per slot, held four
+ * to an int in an <i>AtomicIntegerArray</i>. An update raises its register with a
+ * compare-and-swap of the int that holds it, so writers never block each other and an update
+ * that cannot raise its register is a single read. Items are hashed exactly as
+ * {@link HllSketch} hashes them, so the registers are the same as those of an HllSketch in HLL
+ * mode given the same items in any order.</p>
+ *
+ * <p>Reads take a snapshot of the registers as an HLL_8 {@link HllSketch}, see
+ * {@link #getResult()}, without blocking writers. A snapshot taken while writers are active
+ * holds each register as it was at some point during the copy. Because updates arrive in no
+ * particular order, the snapshot is marked out-of-order and estimates with the composite
+ * estimator, which is also used by the union. Snapshots can be given to a {@link Union}.</p>
+ *
+ * <p>The sketch never uses the sparse LIST or SET modes, so it uses 2^lgConfigK bytes from the
+ * start. The {@link #reset()} method is not atomic with respect to concurrent updates.</p>
+ */
+public final class ConcurrentHllSketch {
+  private final int lgConfigK;
+  private final AtomicIntegerArray regs; //4 registers per int, slot j in byte (j & 3) of int j / 4
+
+  /**
+   * Constructs a new, empty concurrent sketch.
+   * @param lgConfigK The Log2 of K for the target HLL sketch. This value must be
+   * between 4 and 21 inclusively.
+   */
+  public ConcurrentHllSketch(final int lgConfigK) {
+    this.lgConfigK = HllUtil.checkLgK(lgConfigK);
+    regs = new AtomicIntegerArray((1 << lgConfigK) >>> 2);
+  }
+
+  /**
+   * Present the given long as a potential unique item.
+   * @param datum The given long datum.
+   */
+  public void update(final long datum) {
+    couponUpdate(coupon(hash(datum, ThetaUtil.DEFAULT_UPDATE_SEED)));
+  }
+
+  /**
+   * Present the given double (or float) datum as a potential unique item, as
+   * {@link HllSketch#update(double)} does.
+   * @param datum The given double datum.
+   */
+  public void update(final double datum) {
+    final double d = (datum == 0.0) ? 0.0 : datum; // canonicalize -0.0, 0.0
+    update(Double.doubleToLongBits(d));
+  }
+
+  /**
+   * Present the given String as a potential unique item, encoded as UTF-8.
+   * If the string is null or empty no update attempt is made and the method returns.
+   * @param datum The given String.
+   */
+  public void update(final String datum) {
+    if ((datum == null) || datum.isEmpty()) { return; }
+    couponUpdate(coupon(hash(datum.getBytes(UTF_8), ThetaUtil.DEFAULT_UPDATE_SEED)));
+  }
+
+  /**
+   * Present the given byte array as a potential unique item.
+   * If the byte array is null or empty no update attempt is made and the method returns.
+   * @param data The given byte array.
+   */
+  public void update(final byte[] data) {
+    if ((data == null) || (data.length == 0)) { return; }
+    couponUpdate(coupon(hash(data, ThetaUtil.DEFAULT_UPDATE_SEED)));
+  }
+
+  /**
+   * Present this sketch with each of the given longs as a separate item, as
+   * {@link HllSketch#updateBatch(long[], int, int)} does.
+   * @param items the given array of long items
+   * @param offset the index of the first item to update with
+   * @param length the number of items to update with
+   */
+  public void updateBatch(final long[] items, final int offset, final int length) {
+    Objects.requireNonNull(items, "Items must not be null");
+    checkBounds(offset, length, items.length);
+    final long[] hash = new long[2];
+    for (int i = offset; i < (offset + length); i++) {
+      couponUpdate(coupon(hash128(items[i], ThetaUtil.DEFAULT_UPDATE_SEED, hash)));
+    }
+  }
+
+  /**
+   * Returns the configured lgK of this sketch.
+   * @return the configured lgK of this sketch.
+   */
+  public int getLgConfigK() {
+    return lgConfigK;
+  }
+
+  /**
+   * Returns the composite estimate of a snapshot of this sketch.
+   * @return the composite estimate of a snapshot of this sketch.
+   */
+  public double getEstimate() {
+    return getResult().getCompositeEstimate();
+  }
+
+  /**
+   * Returns a snapshot of this sketch as a new HLL_8 HllSketch on the heap, which is out-of-order
+   * and estimates with the composite estimator. Writers are not blocked. If no register has been
+   * set the snapshot is an empty sketch.
+   * @return a snapshot of this sketch
+   */
+  public HllSketch getResult() {
+    final Hll8Array arr = new Hll8Array(lgConfigK);
+    final byte[] bytes = arr.hllByteArr;
+    boolean empty = true;
+    for (int i = 0; i < regs.length(); i++) {
+      final int word = regs.get(i);
+      if (word == 0) { continue; }
+      empty = false;
+      final int j = i << 2;
+      bytes[j] = (byte) word;
+      bytes[j + 1] = (byte) (word >>> 8);
+      bytes[j + 2] = (byte) (word >>> 16);
+      bytes[j + 3] = (byte) (word >>> 24);
+    }
+    if (empty) { return new HllSketch(lgConfigK, TgtHllType.HLL_8); }
+    arr.putOutOfOrder(true);
+    RegisterMerge.rebuildCurMinNumKxQ(arr);
+    return new HllSketch(arr);
+  }
+
+  /**
+   * Returns a snapshot of this sketch, see {@link #getResult()}, as the given TgtHllType.
+   * @param tgtHllType the TgtHllType enum
+   * @return a snapshot of this sketch as the given TgtHllType
+   */
+  public HllSketch getResult(final TgtHllType tgtHllType) {
+    final HllSketch result = getResult();
+    return (tgtHllType == TgtHllType.HLL_8) ? result : result.copyAs(tgtHllType);
+  }
+
+  /**
+   * Resets to empty. This is not atomic with respect to concurrent updates.
+   */
+  public void reset() {
+    for (int i = 0; i < regs.length(); i++) { regs.set(i, 0); }
+  }
+
+  //Raises the register of the coupon to its value, if larger. Only the int that holds the
+  //register is contended.
+  void couponUpdate(final int coupon) {
+    final int slot = coupon & ((1 << lgConfigK) - 1);
+    final int value = coupon >>> KEY_BITS_26;
+    final int index = slot >>> 2;
+    final int shift = (slot & 3) << 3;
+    int word = regs.get(index);
+    while (((word >>> shift) & 0xFF) < value) {
+      final int newWord = (word & ~(0xFF << shift)) | (value << shift);
+      if (regs.compareAndSet(index, word, newWord)) { return; }
+      word = regs.get(index);
+    }
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("### CONCURRENT HLL SKETCH SUMMARY: ").append(LS);
+    sb.append("  Log Config K   : ").append(lgConfigK).append(LS);
+    sb.append("  Estimate       : ").append(getEstimate()).append(LS);
+    sb.append("### END CONCURRENT HLL SKETCH SUMMARY").append(LS);
+    return sb.toString();
+  }
+}
@@ -36,10 +36,17 @@ class Conversions {
     final Hll4Array hll4Array = new Hll4Array(lgConfigK);
     hll4Array.putOutOfOrder(srcAbsHllArr.isOutOfOrder());
 
-    //1st pass: compute starting curMin and numAtCurMin:
-    final int pair = curMinAndNum(srcAbsHllArr);
-    final int curMin = HllUtil.getPairValue(pair);
-    final int numAtCurMin = HllUtil.getPairLow26(pair);
+    //1st pass, only if the source does not know them: compute starting curMin and numAtCurMin
+    final int curMin;
+    final int numAtCurMin;
+    if (hasCurMinAndNum(srcAbsHllArr)) {
+      curMin = srcAbsHllArr.getCurMin();
+      numAtCurMin = srcAbsHllArr.getNumAtCurMin();
+    } else {
+      final int pair = curMinAndNum(srcAbsHllArr);
+      curMin = HllUtil.getPairValue(pair);
+      numAtCurMin = HllUtil.getPairLow26(pair);
+    }
 
     //2nd pass: Must know curMin to create AuxHashMap.
     //Populate KxQ registers, build AuxHashMap if needed
@@ -68,6 +75,21 @@ class Conversions {
     return hll4Array;
   }
 
+  /**
+   * Returns true if the curMin and numAtCurMin of the given array are exact, so that they need
+   * not be computed by {@link #curMinAndNum(AbstractHllArray)}. HLL_4 always tracks them exactly.
+   * HLL_6 and HLL_8, including the union gadget, keep curMin at 0 and numAtCurMin as the number
+   * of zero slots, which is exact while there are any.
+   *
+   * @param absHllArr an instance of AbstractHllArray
+   * @return true if the curMin and numAtCurMin of the given array are exact
+   */
+  static final boolean hasCurMinAndNum(final AbstractHllArray absHllArr) {
+    if (absHllArr.isRebuildCurMinNumKxQFlag()) { return false; }
+    if (absHllArr.getTgtHllType() == TgtHllType.HLL_4) { return true; }
+    return (absHllArr.getCurMin() == 0) && (absHllArr.getNumAtCurMin() > 0);
+  }
+
   /**
    * This returns curMin and numAtCurMin as a pair and will be correct independent of the TgtHllType
    * of the input AbstractHllArray.
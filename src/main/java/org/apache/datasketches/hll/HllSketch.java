@@ -568,4 +568,24 @@ public class HllSketch extends BaseHllSketch {
     hllSketchImpl = hllSketchImpl.couponUpdate(coupon);
   }
 
+  @Override
+  //Coupons go through the mode switch until the sketch is in HLL mode, which it never leaves.
+  //From then on, a coupon whose value is not above curMin cannot change any register and is
+  //skipped without touching the array.
+  void couponUpdateBlock(final int[] coupons, final int count) {
+    int i = 0;
+    while ((i < count) && (hllSketchImpl.getCurMode() != CurMode.HLL)) {
+      couponUpdate(coupons[i++]);
+    }
+    if (i == count) { return; }
+    final HllSketchImpl hllArr = hllSketchImpl; //couponUpdate in HLL mode always returns this
+    int curMin = ((AbstractHllArray) hllArr).getCurMin();
+    for ( ; i < count; i++) {
+      final int coupon = coupons[i];
+      if ((coupon >>> KEY_BITS_26) <= curMin) { continue; }
+      hllArr.couponUpdate(coupon);
+      curMin = ((AbstractHllArray) hllArr).getCurMin();
+    }
+  }
+
 }
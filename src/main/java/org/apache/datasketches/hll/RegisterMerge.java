@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.common.Util.invPow2;
+import static org.apache.datasketches.hll.HllUtil.VAL_MASK_6;
+import static org.apache.datasketches.hll.PreambleUtil.HLL_BYTE_ARR_START;
+
+import java.nio.ByteOrder;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * Word-parallel kernels used by the union to max-merge the registers of a sketch in HLL mode into
+ * the HLL_8 registers of the gadget, eight registers per 64-bit word, and to rebuild curMin,
+ * numAtCurMin and the KxQ registers of an HLL_8 array in a single pass.
+ *
+ * <p>The merge kernels record each register they raise in a {@link Stats}, so that the gadget
+ * keeps its KxQ registers and its number of zero registers incrementally, as an HLL_8 sketch does
+ * on update, and never has to rebuild them from its registers.</p>
+ *
+ * <p>Register values are at most 63, so the high bit of every byte is free and a bytewise max
+ * needs no carries across bytes. Packed HLL_4 and HLL_6 registers are first widened to one byte
+ * per register, a word at a time. The HLL_4 exceptions are widened as AUX_TOKEN + curMin, which
+ * is a lower bound of their true values, and are then applied from the aux map in bulk.</p>
+ *
+ * <p>All kernels read the registers as little-endian words, whatever the byte order of the
+ * given Memory.</p>
+ */
+final class RegisterMerge {
+  private static final long HI_BITS = 0x8080_8080_8080_8080L;
+  private static final long LO_BITS = 0x0101_0101_0101_0101L;
+  private static final long LO_NIBBLES = 0x0F0F_0F0F_0F0F_0F0FL;
+
+  private RegisterMerge() {}
+
+  /**
+   * Returns a little-endian, read-only view of the registers of the given array, starting at
+   * offset zero.
+   * @param arr the given heap or direct HLL array
+   * @return a view of its registers
+   */
+  static Memory registers(final AbstractHllArray arr) {
+    final Memory mem = arr.isMemory()
+        ? ((DirectHllArray) arr).mem.region(HLL_BYTE_ARR_START, arr.getHllByteArrBytes())
+        : Memory.wrap(((HllArray) arr).hllByteArr);
+    return (mem.getTypeByteOrder() == ByteOrder.LITTLE_ENDIAN)
+        ? mem : mem.region(0, mem.getCapacity(), ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Returns a little-endian, writable view of the registers of the given array, starting at
+   * offset zero.
+   * @param arr the given heap or writable direct HLL array
+   * @return a view of its registers
+   */
+  static WritableMemory writableRegisters(final AbstractHllArray arr) {
+    final WritableMemory wmem = arr.isMemory()
+        ? ((DirectHllArray) arr).wmem.writableRegion(HLL_BYTE_ARR_START, arr.getHllByteArrBytes())
+        : WritableMemory.writableWrap(((HllArray) arr).hllByteArr);
+    return (wmem.getTypeByteOrder() == ByteOrder.LITTLE_ENDIAN)
+        ? wmem : wmem.writableRegion(0, wmem.getCapacity(), ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Max-merges HLL_8 source registers into the target registers [lo, hi), folding the source if
+   * it is larger than the target: target register j takes the max of source registers
+   * j, j + tgtK, j + 2 tgtK, ...
+   * @param src the source registers
+   * @param srcK the number of source registers
+   * @param tgt the HLL_8 target registers
+   * @param tgtK the number of target registers, at most srcK
+   * @param lo the first target register, a multiple of 8
+   * @param hi one past the last target register, a multiple of 8
+   * @param stats records the raised target registers
+   */
+  static void mergeHll8(final Memory src, final int srcK, final WritableMemory tgt,
+      final int tgtK, final int lo, final int hi, final Stats stats) {
+    for (int chunk = 0; chunk < srcK; chunk += tgtK) {
+      for (int j = lo; j < hi; j += 8) {
+        maxWord(src.getLong(chunk + j), tgt, j, stats);
+      }
+    }
+  }
+
+  /**
+   * Max-merges packed HLL_6 source registers into the target registers, folding the source if
+   * it is larger than the target.
+   * @param src the source registers, four per three bytes
+   * @param srcK the number of source registers
+   * @param tgt the HLL_8 target registers
+   * @param tgtK the number of target registers, at most srcK
+   * @param stats records the raised target registers
+   */
+  static void mergeHll6(final Memory src, final int srcK, final WritableMemory tgt,
+      final int tgtK, final Stats stats) {
+    for (int chunk = 0; chunk < srcK; chunk += tgtK) {
+      for (int j = 0; j < tgtK; j += 8) {
+        final long offset = ((chunk + j) >>> 3) * 6L; //8 registers in 6 bytes
+        final long packed = (src.getInt(offset) & 0xFFFF_FFFFL)
+            | ((src.getShort(offset + 4) & 0xFFFFL) << 32);
+        maxWord(widen6(packed), tgt, j, stats);
+      }
+    }
+  }
+
+  /**
+   * Max-merges packed HLL_4 source registers and their exceptions into the target registers,
+   * folding the source if it is larger than the target.
+   * @param src the source nibbles, two per byte
+   * @param srcK the number of source registers
+   * @param curMin the curMin of the source
+   * @param auxHashMap the exceptions of the source, may be null if there are none
+   * @param tgt the HLL_8 target registers
+   * @param tgtK the number of target registers, at most srcK
+   * @param stats records the raised target registers
+   */
+  static void mergeHll4(final Memory src, final int srcK, final int curMin,
+      final AuxHashMap auxHashMap, final WritableMemory tgt, final int tgtK, final Stats stats) {
+    final long curMins = curMin * LO_BITS;
+    for (int chunk = 0; chunk < srcK; chunk += tgtK) {
+      for (int j = 0; j < tgtK; j += 16) {
+        final long nibbles = src.getLong((chunk + j) >>> 1); //16 registers
+        final long even = nibbles & LO_NIBBLES;
+        final long odd = (nibbles >>> 4) & LO_NIBBLES;
+        final long regs0 = interleave(even & 0xFFFF_FFFFL, odd & 0xFFFF_FFFFL) + curMins;
+        final long regs1 = interleave(even >>> 32, odd >>> 32) + curMins;
+        maxWord(regs0, tgt, j, stats);
+        maxWord(regs1, tgt, j + 8, stats);
+      }
+    }
+    if (auxHashMap == null) { return; }
+    final int tgtMask = tgtK - 1;
+    final PairIterator itr = auxHashMap.getIterator();
+    while (itr.nextValid()) {
+      final int j = itr.getSlot() & tgtMask;
+      final int value = itr.getValue();
+      final int oldValue = tgt.getByte(j);
+      if (value > oldValue) {
+        tgt.putByte(j, (byte) value);
+        stats.raise(oldValue, value);
+      }
+    }
+  }
+
+  /**
+   * Rebuilds curMin, numAtCurMin and the KxQ registers of the given HLL_8 array from its
+   * registers in one pass, in the same order and with the same arithmetic as a pass of its
+   * iterator. HipAccum is not affected.
+   * @param arr the given heap or direct HLL_8 array
+   */
+  static void rebuildCurMinNumKxQ(final AbstractHllArray arr) {
+    final Memory regs = registers(arr);
+    final int k = 1 << arr.getLgConfigK();
+    int curMin = 64;
+    int numAtCurMin = 0;
+    double kxq0 = k;
+    double kxq1 = 0;
+    for (int j = 0; j < k; j += 8) {
+      final long word = regs.getLong(j);
+      if (word == 0) { //8 registers at zero, which add nothing to KxQ
+        if (curMin > 0) {
+          curMin = 0;
+          numAtCurMin = 8;
+        } else {
+          numAtCurMin += 8;
+        }
+        continue;
+      }
+      for (int shift = 0; shift < 64; shift += 8) {
+        final int v = (int) (word >>> shift) & VAL_MASK_6;
+        if (v > 0) {
+          if (v < 32) { kxq0 += invPow2(v) - 1.0; }
+          else        { kxq1 += invPow2(v) - 1.0; }
+        }
+        if (v > curMin) { continue; }
+        if (v < curMin) {
+          curMin = v;
+          numAtCurMin = 1;
+        } else {
+          numAtCurMin++;
+        }
+      }
+    }
+    arr.putKxQ0(kxq0);
+    arr.putKxQ1(kxq1);
+    arr.putCurMin(curMin);
+    arr.putNumAtCurMin(numAtCurMin);
+    arr.putRebuildCurMinNumKxQFlag(false);
+  }
+
+  //Raises the target word at the given offset to the bytewise max with the given word.
+  private static void maxWord(final long word, final WritableMemory tgt, final int offset,
+      final Stats stats) {
+    final long oldWord = tgt.getLong(offset);
+    final long newWord = max8(word, oldWord);
+    if (newWord == oldWord) { return; }
+    tgt.putLong(offset, newWord);
+    for (int shift = 0; shift < 64; shift += 8) {
+      final int oldValue = (int) (oldWord >>> shift) & 0xFF;
+      final int newValue = (int) (newWord >>> shift) & 0xFF;
+      if (newValue != oldValue) { stats.raise(oldValue, newValue); }
+    }
+  }
+
+  //Bytewise max of two words of eight registers, each less than 128.
+  //(a | 0x80) - b cannot borrow across bytes and keeps the high bit exactly where a >= b.
+  static long max8(final long a, final long b) {
+    final long aGe = ((((a | HI_BITS) - b) & HI_BITS) >>> 7) * 0xFF;
+    return (a & aGe) | (b & ~aGe);
+  }
+
+  //Interleaves the 4 bytes of each of the given 32 bit values, even bytes first.
+  private static long interleave(final long even, final long odd) {
+    return spread(even) | (spread(odd) << 8);
+  }
+
+  //Spreads the 4 bytes of the given 32 bit value to the even bytes of a word.
+  private static long spread(final long x) {
+    long t = (x | (x << 16)) & 0x0000_FFFF_0000_FFFFL;
+    t = (t | (t << 8)) & 0x00FF_00FF_00FF_00FFL;
+    return t;
+  }
+
+  //Widens 8 packed 6 bit registers, low bits first, to one register per byte.
+  private static long widen6(final long packed) {
+    long t = (packed & 0xFF_FFFFL) | ((packed & 0xFFFF_FF00_0000L) << 8);
+    t = (t & 0x0000_0FFF_0000_0FFFL) | ((t & 0x00FF_F000_00FF_F000L) << 4);
+    t = (t & 0x003F_003F_003F_003FL) | ((t & 0x0FC0_0FC0_0FC0_0FC0L) << 2);
+    return t;
+  }
+
+  /**
+   * The changes that a merge makes to the KxQ registers and to the number of zero registers of
+   * its target.
+   */
+  static final class Stats {
+    private double kxq0;
+    private double kxq1;
+    private int numZerosRaised;
+
+    //Records a register raised from oldValue to newValue, as the KxQ update of a sketch does.
+    void raise(final int oldValue, final int newValue) {
+      if (oldValue < 32) { kxq0 -= invPow2(oldValue); }
+      else               { kxq1 -= invPow2(oldValue); }
+      if (newValue < 32) { kxq0 += invPow2(newValue); }
+      else               { kxq1 += invPow2(newValue); }
+      if (oldValue == 0) { numZerosRaised++; }
+    }
+
+    Stats add(final Stats that) {
+      kxq0 += that.kxq0;
+      kxq1 += that.kxq1;
+      numZerosRaised += that.numZerosRaised;
+      return this;
+    }
+
+    /**
+     * Applies the changes to the given HLL_8 target. As for any HLL_8 array, curMin stays 0 and
+     * numAtCurMin counts the zero registers, which is all the estimators need.
+     * @param tgt the HLL_8 target of the merge
+     */
+    void applyTo(final AbstractHllArray tgt) {
+      tgt.putKxQ0(tgt.getKxQ0() + kxq0);
+      tgt.putKxQ1(tgt.getKxQ1() + kxq1);
+      if (tgt.getCurMin() == 0) { tgt.putNumAtCurMin(tgt.getNumAtCurMin() - numZerosRaised); }
+    }
+  }
+}
@@ -19,15 +19,18 @@
 
 package org.apache.datasketches.hll;
 
-import static org.apache.datasketches.common.Util.invPow2;
-import static org.apache.datasketches.hll.HllUtil.AUX_TOKEN;
 import static org.apache.datasketches.hll.HllUtil.EMPTY;
-import static org.apache.datasketches.hll.HllUtil.loNibbleMask;
-import static org.apache.datasketches.hll.PreambleUtil.HLL_BYTE_ARR_START;
 import static org.apache.datasketches.hll.PreambleUtil.extractTgtHllType;
 import static org.apache.datasketches.hll.TgtHllType.HLL_4;
 import static org.apache.datasketches.hll.TgtHllType.HLL_8;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableMemory;
@@ -67,6 +70,11 @@ import org.apache.datasketches.memory.WritableMemory;
  * @author Kevin Lang
  */
 public class Union extends BaseHllSketch {
+  //The number of sketches merged sequentially by a single task of updateAll
+  static final int UPDATE_ALL_LEAF_SIZE = 8;
+  //The number of registers merged by a single task when a merge is split across threads
+  static final int MERGE_CHUNK_REGISTERS = 1 << 16;
+
   final int lgMaxK;
   private final HllSketch gadget;
 
@@ -316,7 +324,135 @@ public class Union extends BaseHllSketch {
    * @param sketch the given sketch.
    */
   public void update(final HllSketch sketch) {
-    gadget.hllSketchImpl = unionImpl(sketch, gadget, lgMaxK);
+    update(sketch, false);
+  }
+
+  //Only updateAll sets parallel, as its merges run in the pool it was given
+  private void update(final HllSketch sketch, final boolean parallel) {
+    gadget.hllSketchImpl = unionImpl(sketch, gadget, lgMaxK, parallel);
+  }
+
+  /**
+   * Update this union operator with all of the given sketches, which are merged in parallel on
+   * the given pool. Disjoint groups of the sketches are merged into partial unions, which are then
+   * merged pairwise. Large HLL_8 merges within the pool are also split across threads by
+   * ranges of registers.
+   *
+   * <p>The resulting lgConfigK and registers are the same as updating this union with each sketch
+   * in turn, so is the composite estimate.</p>
+   *
+   * @param sketches the given sketches. Null and empty sketches are ignored.
+   * @param pool the ForkJoinPool that performs the merges, for example
+   * {@link ForkJoinPool#commonPool()}
+   */
+  public void updateAll(final Collection<? extends HllSketch> sketches, final ForkJoinPool pool) {
+    final List<HllSketch> list = new ArrayList<>(sketches.size());
+    for (final HllSketch sk : sketches) {
+      if ((sk != null) && !sk.isEmpty()) { list.add(sk); }
+    }
+    if (list.isEmpty()) { return; }
+    final Union partial = pool.invoke(new UpdateAllTask(list, 0, list.size(), lgMaxK));
+    pool.invoke(ForkJoinTask.adapt(() -> update(partial.gadget, true)));
+  }
+
+  /**
+   * Update this union operator with all of the given serialized sketch images, which are wrapped
+   * in place and merged in parallel on the given pool, as with
+   * {@link #updateAll(Collection, ForkJoinPool)}.
+   *
+   * @param mems the given images of HllSketches, in compact or updatable form
+   * @param pool the ForkJoinPool that performs the merges, for example
+   * {@link ForkJoinPool#commonPool()}
+   */
+  public void updateAllMemory(final Collection<? extends Memory> mems, final ForkJoinPool pool) {
+    final List<HllSketch> list = new ArrayList<>(mems.size());
+    for (final Memory mem : mems) {
+      if (mem != null) { list.add(HllSketch.wrap(mem)); }
+    }
+    updateAll(list, pool);
+  }
+
+  /**
+   * Merges a range of a list of sketches into a new heap union by recursively splitting the
+   * range, so that the halves can be merged in parallel.
+   */
+  private static final class UpdateAllTask extends RecursiveTask<Union> {
+    private static final long serialVersionUID = 1L;
+
+    private final List<HllSketch> sketches;
+    private final int lo;
+    private final int hi;
+    private final int lgMaxK;
+
+    UpdateAllTask(final List<HllSketch> sketches, final int lo, final int hi, final int lgMaxK) {
+      this.sketches = sketches;
+      this.lo = lo;
+      this.hi = hi;
+      this.lgMaxK = lgMaxK;
+    }
+
+    @Override
+    protected Union compute() {
+      if ((hi - lo) <= UPDATE_ALL_LEAF_SIZE) {
+        final Union union = new Union(lgMaxK);
+        for (int i = lo; i < hi; i++) { union.update(sketches.get(i), true); }
+        return union;
+      }
+      final int mid = (lo + hi) >>> 1;
+      final UpdateAllTask left = new UpdateAllTask(sketches, lo, mid, lgMaxK);
+      left.fork();
+      final Union right = new UpdateAllTask(sketches, mid, hi, lgMaxK).compute();
+      final Union union = left.join();
+      union.update(right.gadget, true);
+      return union;
+    }
+  }
+
+  /**
+   * Merges source HLL_8 registers into target HLL_8 registers of the same or a smaller lgK over a
+   * range of target registers, splitting the range in parallel. Each target register takes the
+   * max of the source registers that fold into it, so the tasks never write the same register.
+   */
+  private static final class RegisterMaxTask extends RecursiveTask<RegisterMerge.Stats> {
+    private static final long serialVersionUID = 1L;
+
+    private final Memory srcRegs;
+    private final WritableMemory tgtRegs;
+    private final int srcK;
+    private final int tgtK;
+    private final int lo;
+    private final int hi;
+
+    RegisterMaxTask(final Memory srcRegs, final WritableMemory tgtRegs, final int srcK,
+        final int tgtK, final int lo, final int hi) {
+      this.srcRegs = srcRegs;
+      this.tgtRegs = tgtRegs;
+      this.srcK = srcK;
+      this.tgtK = tgtK;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    //Each task returns the changes it made, which are combined in a fixed order.
+    @Override
+    protected RegisterMerge.Stats compute() {
+      if ((hi - lo) > MERGE_CHUNK_REGISTERS) {
+        final int mid = (lo + hi) >>> 1;
+        final RegisterMaxTask left = new RegisterMaxTask(srcRegs, tgtRegs, srcK, tgtK, lo, mid);
+        left.fork();
+        final RegisterMerge.Stats right =
+            new RegisterMaxTask(srcRegs, tgtRegs, srcK, tgtK, mid, hi).compute();
+        return left.join().add(right);
+      }
+      final RegisterMerge.Stats stats = new RegisterMerge.Stats();
+      RegisterMerge.mergeHll8(srcRegs, srcK, tgtRegs, tgtK, lo, hi, stats);
+      return stats;
+    }
+  }
+
+  //True if an HLL_8 merge of the given target size should be split across threads.
+  private static boolean isParallelMerge(final int tgtK, final boolean parallel) {
+    return parallel && (tgtK > MERGE_CHUNK_REGISTERS);
   }
 
   @Override
@@ -347,11 +483,13 @@ public class Union extends BaseHllSketch {
    * @param source the given incoming sketch, which cannot be modified.
    * @param gadget the given gadget sketch, which has a target of HLL_8 and holds the result.
    * @param lgMaxK the maximum value of log2 K for this union.
+   * @param parallel true if large HLL_8 merges may be split across the threads of the current
+   * ForkJoinPool.
    * @return the union of the two sketches in the form of the internal HllSketchImpl, which is
    * always in HLL_8 form.
    */
   private static HllSketchImpl unionImpl(final HllSketch source, final HllSketch gadget,
-      final int lgMaxK) {
+      final int lgMaxK, final boolean parallel) {
     assert gadget.getTgtHllType() == HLL_8;
     if ((source == null) || source.isEmpty()) {
       return gadget.hllSketchImpl;
@@ -431,7 +569,7 @@ public class Union extends BaseHllSketch {
       case 21://src >  max, src >= gdt, gdtHLL, gdtMemory
       { //Action: forward HLL merge w/autofold, ooof=True
         //merge src(Hll4,6,8,heap/mem,Mode=HLL) -> gdt(Hll8,heap,Mode=HLL)
-        mergeHlltoHLLmode(source, gadget, srcLgK, gadgetLgK, srcIsMem, gdtIsMem);
+        mergeHlltoHLLmode(source, gadget, srcLgK, gadgetLgK, parallel);
         hllSketchImpl = gadget.putOutOfOrderFlag(true).hllSketchImpl;
         break;
       }
@@ -439,7 +577,7 @@ public class Union extends BaseHllSketch {
       { //Action: downsample gdt to srcLgK, forward HLL merge w/autofold, ooof=True
         final HllSketch gdtHll8Heap = downsample(gadget, srcLgK);
         //merge src(Hll4,6,8;heap/mem,Mode=HLL) -> gdt(Hll8,heap,hll)
-        mergeHlltoHLLmode(source, gdtHll8Heap, srcLgK, gadgetLgK, srcIsMem, false);
+        mergeHlltoHLLmode(source, gdtHll8Heap, srcLgK, gadgetLgK, parallel);
         hllSketchImpl = gdtHll8Heap.putOutOfOrderFlag(true).hllSketchImpl;
         break;
       }
@@ -447,7 +585,7 @@ public class Union extends BaseHllSketch {
       { //Action: downsample gdt to srcLgK, forward HLL merge w/autofold, use gdt memory, ooof=True
         final HllSketch gdtHll8Heap = downsample(gadget, srcLgK);
         //merge src(Hll4,6,8;heap/mem;Mode=HLL) -> gdt(Hll8,heap,Mode=HLL)
-        mergeHlltoHLLmode(source, gdtHll8Heap, srcLgK, gadgetLgK, srcIsMem, false);
+        mergeHlltoHLLmode(source, gdtHll8Heap, srcLgK, gadgetLgK, parallel);
         hllSketchImpl = useGadgetMemory(gadget, gdtHll8Heap, true).hllSketchImpl;
         break;
       }
@@ -494,274 +632,37 @@ public class Union extends BaseHllSketch {
         : HllSketch.writableWrap(wmem, false);                        //wrap & return
   }
 
+  //Merges the registers of src (Hll4,6,8; heap/mem; Mode=HLL) into tgt (Hll8; heap/mem; Mode=HLL),
+  //folding src if its lgK is larger. The tgt lgK is min(srcLgK, tgtLgK).
   private static final void mergeHlltoHLLmode(final HllSketch src, final HllSketch tgt,
-      final int srcLgK, final int tgtLgK, final boolean srcIsMem, final boolean tgtIsMem) {
-      final int sw = (tgtIsMem ? 1 : 0) | (srcIsMem ? 2 : 0)
-          | ((srcLgK > tgtLgK) ? 4 : 0) | ((src.getTgtHllType() != HLL_8) ? 8 : 0);
-      final int srcK = 1 << srcLgK;
-
-      switch (sw) {
-        case 0: { //HLL_8, srcLgK=tgtLgK, src=heap, tgt=heap
-          final byte[] srcArr = ((Hll8Array) src.hllSketchImpl).hllByteArr;
-          final byte[] tgtArr = ((Hll8Array) tgt.hllSketchImpl).hllByteArr;
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcArr[i];
-            final byte tgtV = tgtArr[i];
-            tgtArr[i] = (byte) Math.max(srcV, tgtV);
-          }
-          break;
-        }
-        case 1: { //HLL_8, srcLgK=tgtLgK, src=heap, tgt=mem
-          final byte[] srcArr = ((Hll8Array) src.hllSketchImpl).hllByteArr;
-          final WritableMemory tgtMem = tgt.getWritableMemory();
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcArr[i];
-            final byte tgtV = tgtMem.getByte(HLL_BYTE_ARR_START + i);
-            tgtMem.putByte(HLL_BYTE_ARR_START + i, (byte) Math.max(srcV, tgtV));
-          }
-          break;
-        }
-        case 2: { //HLL_8, srcLgK=tgtLgK, src=mem,  tgt=heap
-          final Memory srcMem = src.getMemory();
-          final byte[] tgtArr = ((Hll8Array) tgt.hllSketchImpl).hllByteArr;
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcMem.getByte(HLL_BYTE_ARR_START + i);
-            final byte tgtV = tgtArr[i];
-            tgtArr[i] = (byte) Math.max(srcV, tgtV);
-          }
-          break;
-        }
-        case 3: { //HLL_8, srcLgK=tgtLgK, src=mem,  tgt=mem
-          final Memory srcMem = src.getMemory();
-          final WritableMemory tgtMem = tgt.getWritableMemory();
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcMem.getByte(HLL_BYTE_ARR_START + i);
-            final byte tgtV = tgtMem.getByte(HLL_BYTE_ARR_START + i);
-            tgtMem.putByte(HLL_BYTE_ARR_START + i, (byte) Math.max(srcV, tgtV));
-          }
-          break;
-        }
-        case 4: { //HLL_8, srcLgK>tgtLgK, src=heap, tgt=heap
-          final int tgtKmask = (1 << tgtLgK) - 1;
-          final byte[] srcArr = ((Hll8Array) src.hllSketchImpl).hllByteArr;
-          final byte[] tgtArr = ((Hll8Array) tgt.hllSketchImpl).hllByteArr;
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcArr[i];
-            final int j = i & tgtKmask;
-            final byte tgtV = tgtArr[j];
-            tgtArr[j] = (byte) Math.max(srcV, tgtV);
-          }
-          break;
-        }
-        case 5: { //HLL_8, srcLgK>tgtLgK, src=heap, tgt=mem
-          final int tgtKmask = (1 << tgtLgK) - 1;
-          final byte[] srcArr = ((Hll8Array) src.hllSketchImpl).hllByteArr;
-          final WritableMemory tgtMem = tgt.getWritableMemory();
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcArr[i];
-            final int j = i & tgtKmask;
-            final byte tgtV = tgtMem.getByte(HLL_BYTE_ARR_START + j);
-            tgtMem.putByte(HLL_BYTE_ARR_START + j, (byte) Math.max(srcV, tgtV));
-          }
-          break;
-        }
-        case 6: { //HLL_8, srcLgK>tgtLgK, src=mem,  tgt=heap
-          final int tgtKmask = (1 << tgtLgK) - 1;
-          final Memory srcMem = src.getMemory();
-          final byte[] tgtArr = ((Hll8Array) tgt.hllSketchImpl).hllByteArr;
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcMem.getByte(HLL_BYTE_ARR_START + i);
-            final int j = i & tgtKmask;
-            final byte tgtV = tgtArr[j];
-            tgtArr[j] = (byte) Math.max(srcV, tgtV);
-          }
-          break;
-        }
-        case 7: { //HLL_8, srcLgK>tgtLgK, src=mem,  tgt=mem
-          final int tgtKmask = (1 << tgtLgK) - 1;
-          final Memory srcMem = src.getMemory();
-          final WritableMemory tgtMem = tgt.getWritableMemory();
-          for (int i = 0; i < srcK; i++) {
-            final byte srcV = srcMem.getByte(HLL_BYTE_ARR_START + i);
-            final int j = i & tgtKmask;
-            final byte tgtV = tgtMem.getByte(HLL_BYTE_ARR_START + j);
-            tgtMem.putByte(HLL_BYTE_ARR_START + j, (byte) Math.max(srcV, tgtV));
-          }
-          break;
-        }
-        case 8: case 9:
-        {
-          //!HLL_8, srcLgK=tgtLgK, src=heap, tgt=heap/mem
-          final AbstractHllArray tgtAbsHllArr = (AbstractHllArray)(tgt.hllSketchImpl);
-          if (src.getTgtHllType() == HLL_4) {
-            final Hll4Array src4 = (Hll4Array) src.hllSketchImpl;
-            final AuxHashMap auxHashMap = src4.getAuxHashMap();
-            final int curMin = src4.getCurMin();
-            int i = 0;
-            int j = 0;
-            while (j < srcK) {
-              final byte b = src4.hllByteArr[i++];
-              int value = Byte.toUnsignedInt(b) & loNibbleMask;
-              tgtAbsHllArr.updateSlotNoKxQ(j, value == AUX_TOKEN ? auxHashMap.mustFindValueFor(j) : value + curMin);
-              j++;
-              value = Byte.toUnsignedInt(b) >>> 4;
-              tgtAbsHllArr.updateSlotNoKxQ(j, value == AUX_TOKEN ? auxHashMap.mustFindValueFor(j) : value + curMin);
-              j++;
-            }
-          } else {
-            final Hll6Array src6 = (Hll6Array) src.hllSketchImpl;
-            int i = 0;
-            int j = 0;
-            while (j < srcK) {
-              final byte b1 = src6.hllByteArr[i++];
-              final byte b2 = src6.hllByteArr[i++];
-              final byte b3 = src6.hllByteArr[i++];
-              int value = Byte.toUnsignedInt(b1) & 0x3f;
-              tgtAbsHllArr.updateSlotNoKxQ(j++, value);
-              value = Byte.toUnsignedInt(b1) >>> 6;
-              value |= (Byte.toUnsignedInt(b2) & 0x0f) << 2;
-              tgtAbsHllArr.updateSlotNoKxQ(j++, value);
-              value = Byte.toUnsignedInt(b2) >>> 4;
-              value |= (Byte.toUnsignedInt(b3) & 3) << 4;
-              tgtAbsHllArr.updateSlotNoKxQ(j++, value);
-              value = Byte.toUnsignedInt(b3) >>> 2;
-              tgtAbsHllArr.updateSlotNoKxQ(j++, value);
-            }
-          }
-          break;
-        }
-        case 10: case 11:
-        {
-          //!HLL_8, srcLgK=tgtLgK, src=mem, tgt=heap/mem
-          final AbstractHllArray tgtAbsHllArr = (AbstractHllArray)(tgt.hllSketchImpl);
-          if (src.getTgtHllType() == HLL_4) {
-            final DirectHll4Array src4 = (DirectHll4Array) src.hllSketchImpl;
-            final AuxHashMap auxHashMap = src4.getAuxHashMap();
-            final int curMin = src4.getCurMin();
-            int i = 0;
-            int j = 0;
-            while (j < srcK) {
-              final byte b = src4.mem.getByte(HLL_BYTE_ARR_START + i++);
-              int value = Byte.toUnsignedInt(b) & loNibbleMask;
-              tgtAbsHllArr.updateSlotNoKxQ(j, value == AUX_TOKEN ? auxHashMap.mustFindValueFor(j) : value + curMin);
-              j++;
-              value = Byte.toUnsignedInt(b) >>> 4;
-              tgtAbsHllArr.updateSlotNoKxQ(j, value == AUX_TOKEN ? auxHashMap.mustFindValueFor(j) : value + curMin);
-              j++;
-            }
-          } else {
-            final DirectHll6Array src6 = (DirectHll6Array) src.hllSketchImpl;
-            int i = 0;
-            int offset = HLL_BYTE_ARR_START;
-            while (i < srcK) {
-              final byte b1 = src6.mem.getByte(offset++);
-              final byte b2 = src6.mem.getByte(offset++);
-              final byte b3 = src6.mem.getByte(offset++);
-              int value = Byte.toUnsignedInt(b1) & 0x3f;
-              tgtAbsHllArr.updateSlotNoKxQ(i++, value);
-              value = Byte.toUnsignedInt(b1) >>> 6;
-              value |= (Byte.toUnsignedInt(b2) & 0x0f) << 2;
-              tgtAbsHllArr.updateSlotNoKxQ(i++, value);
-              value = Byte.toUnsignedInt(b2) >>> 4;
-              value |= (Byte.toUnsignedInt(b3) & 3) << 4;
-              tgtAbsHllArr.updateSlotNoKxQ(i++, value);
-              value = Byte.toUnsignedInt(b3) >>> 2;
-              tgtAbsHllArr.updateSlotNoKxQ(i++, value);
-            }
-          }
-          break;
-        }
-        case 12: case 13:
-        {
-          //!HLL_8, srcLgK>tgtLgK, src=heap, tgt=heap/mem
-          final int tgtKmask = (1 << tgtLgK) - 1;
-          final AbstractHllArray tgtAbsHllArr = (AbstractHllArray)(tgt.hllSketchImpl);
-          if (src.getTgtHllType() == HLL_4) {
-            final Hll4Array src4 = (Hll4Array) src.hllSketchImpl;
-            final AuxHashMap auxHashMap = src4.getAuxHashMap();
-            final int curMin = src4.getCurMin();
-            int i = 0;
-            int j = 0;
-            while (j < srcK) {
-              final byte b = src4.hllByteArr[i++];
-              int value = Byte.toUnsignedInt(b) & loNibbleMask;
-              tgtAbsHllArr.updateSlotNoKxQ(j & tgtKmask, value == AUX_TOKEN
-                  ? auxHashMap.mustFindValueFor(j) : value + curMin);
-              j++;
-              value = Byte.toUnsignedInt(b) >>> 4;
-              tgtAbsHllArr.updateSlotNoKxQ(j & tgtKmask, value == AUX_TOKEN
-                  ? auxHashMap.mustFindValueFor(j) : value + curMin);
-              j++;
-            }
-          } else {
-            final Hll6Array src6 = (Hll6Array) src.hllSketchImpl;
-            int i = 0;
-            int j = 0;
-            while (j < srcK) {
-              final byte b1 = src6.hllByteArr[i++];
-              final byte b2 = src6.hllByteArr[i++];
-              final byte b3 = src6.hllByteArr[i++];
-              int value = Byte.toUnsignedInt(b1) & 0x3f;
-              tgtAbsHllArr.updateSlotNoKxQ(j++ & tgtKmask, value);
-              value = Byte.toUnsignedInt(b1) >>> 6;
-              value |= (Byte.toUnsignedInt(b2) & 0x0f) << 2;
-              tgtAbsHllArr.updateSlotNoKxQ(j++ & tgtKmask, value);
-              value = Byte.toUnsignedInt(b2) >>> 4;
-              value |= (Byte.toUnsignedInt(b3) & 3) << 4;
-              tgtAbsHllArr.updateSlotNoKxQ(j++ & tgtKmask, value);
-              value = Byte.toUnsignedInt(b3) >>> 2;
-              tgtAbsHllArr.updateSlotNoKxQ(j++ & tgtKmask, value);
-            }
-          }
-          break;
-        }
-        case 14: case 15:
-        {
-          //!HLL_8, srcLgK>tgtLgK, src=mem, tgt=heap/mem
-          final int tgtKmask = (1 << tgtLgK) - 1;
-          final AbstractHllArray tgtAbsHllArr = (AbstractHllArray)(tgt.hllSketchImpl);
-          if (src.getTgtHllType() == HLL_4) {
-            final DirectHll4Array src4 = (DirectHll4Array) src.hllSketchImpl;
-            final AuxHashMap auxHashMap = src4.getAuxHashMap();
-            final int curMin = src4.getCurMin();
-            int i = 0;
-            int j = 0;
-            while (j < srcK) {
-              final byte b = src4.mem.getByte(HLL_BYTE_ARR_START + i++);
-              int value = Byte.toUnsignedInt(b) & loNibbleMask;
-              tgtAbsHllArr.updateSlotNoKxQ(j & tgtKmask, value == AUX_TOKEN
-                  ? auxHashMap.mustFindValueFor(j) : value + curMin);
-              j++;
-              value = Byte.toUnsignedInt(b) >>> 4;
-              tgtAbsHllArr.updateSlotNoKxQ(j & tgtKmask, value == AUX_TOKEN
-                  ? auxHashMap.mustFindValueFor(j) : value + curMin);
-              j++;
-            }
-          } else {
-            final DirectHll6Array src6 = (DirectHll6Array) src.hllSketchImpl;
-            int i = 0;
-            int offset = HLL_BYTE_ARR_START;
-            while (i < srcK) {
-              final byte b1 = src6.mem.getByte(offset++);
-              final byte b2 = src6.mem.getByte(offset++);
-              final byte b3 = src6.mem.getByte(offset++);
-              int value = Byte.toUnsignedInt(b1) & 0x3f;
-              tgtAbsHllArr.updateSlotNoKxQ(i++ & tgtKmask, value);
-              value = Byte.toUnsignedInt(b1) >>> 6;
-              value |= (Byte.toUnsignedInt(b2) & 0x0f) << 2;
-              tgtAbsHllArr.updateSlotNoKxQ(i++ & tgtKmask, value);
-              value = Byte.toUnsignedInt(b2) >>> 4;
-              value |= (Byte.toUnsignedInt(b3) & 3) << 4;
-              tgtAbsHllArr.updateSlotNoKxQ(i++ & tgtKmask, value);
-              value = Byte.toUnsignedInt(b3) >>> 2;
-              tgtAbsHllArr.updateSlotNoKxQ(i++ & tgtKmask, value);
-            }
-          }
-          break;
+      final int srcLgK, final int tgtLgK, final boolean parallel) {
+    final int srcK = 1 << srcLgK;
+    final int tgtK = 1 << Math.min(srcLgK, tgtLgK);
+    final AbstractHllArray srcArr = (AbstractHllArray) src.hllSketchImpl;
+    final Memory srcRegs = RegisterMerge.registers(srcArr);
+    final AbstractHllArray tgtArr = (AbstractHllArray) tgt.hllSketchImpl;
+    final WritableMemory tgtRegs = RegisterMerge.writableRegisters(tgtArr);
+    RegisterMerge.Stats stats = new RegisterMerge.Stats();
+    switch (src.getTgtHllType()) {
+      case HLL_4: {
+        RegisterMerge.mergeHll4(srcRegs, srcK, srcArr.getCurMin(), srcArr.getAuxHashMap(),
+            tgtRegs, tgtK, stats);
+        break;
+      }
+      case HLL_6: {
+        RegisterMerge.mergeHll6(srcRegs, srcK, tgtRegs, tgtK, stats);
+        break;
+      }
+      default: { //HLL_8
+        if (isParallelMerge(tgtK, parallel)) {
+          stats = new RegisterMaxTask(srcRegs, tgtRegs, srcK, tgtK, 0, tgtK).invoke();
+        } else {
+          RegisterMerge.mergeHll8(srcRegs, srcK, tgtRegs, tgtK, 0, tgtK, stats);
         }
-        default: break; //not possible
+        break;
       }
-      tgt.hllSketchImpl.putRebuildCurMinNumKxQFlag(true);
+    }
+    stats.applyTo(tgtArr); //keeps the estimator state current, no rebuild needed
   }
 
   //Used by union operator. Always copies or downsamples to Heap HLL_8.
@@ -787,39 +688,15 @@ public class Union extends BaseHllSketch {
     return new HllSketch(tgtHllArr);
   }
 
-  //Used to rebuild curMin, numAtCurMin and KxQ registers, due to high performance merge operation
+  //Used to rebuild curMin, numAtCurMin and KxQ registers of images flagged by a merge of an
+  //earlier version, which did not keep them during the merge
   static final void checkRebuildCurMinNumKxQ(final HllSketch sketch) {
     final HllSketchImpl hllSketchImpl = sketch.hllSketchImpl;
     final CurMode curMode = sketch.getCurMode();
     final TgtHllType tgtHllType = sketch.getTgtHllType();
     final boolean rebuild = hllSketchImpl.isRebuildCurMinNumKxQFlag();
     if ( !rebuild || (curMode != CurMode.HLL) || (tgtHllType != HLL_8) ) { return; }
-    final AbstractHllArray absHllArr = (AbstractHllArray)(hllSketchImpl);
-    int curMin = 64;
-    int numAtCurMin = 0;
-    double kxq0 = 1 << absHllArr.getLgConfigK();
-    double kxq1 = 0;
-    final PairIterator itr = absHllArr.iterator();
-    while (itr.nextAll()) {
-      final int v = itr.getValue();
-      if (v > 0) {
-        if (v < 32) { kxq0 += invPow2(v) - 1.0; }
-        else        { kxq1 += invPow2(v) - 1.0; }
-      }
-      if (v > curMin) { continue; }
-      if (v < curMin) {
-        curMin = v;
-        numAtCurMin = 1;
-      } else {
-        numAtCurMin++;
-      }
-    }
-    absHllArr.putKxQ0(kxq0);
-    absHllArr.putKxQ1(kxq1);
-    absHllArr.putCurMin(curMin);
-    absHllArr.putNumAtCurMin(numAtCurMin);
-    absHllArr.putRebuildCurMinNumKxQFlag(false);
-    //HipAccum is not affected
+    RegisterMerge.rebuildCurMinNumKxQ((AbstractHllArray) hllSketchImpl);
   }
 
 }
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hllmap;
+
+import static org.apache.datasketches.common.Util.ceilingIntPowerOf2;
+
+import java.util.concurrent.locks.StampedLock;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+
+/**
+ * A {@link UniqueCountMap} that can be updated and read by any number of threads.
+ *
+ * <p>The keys are partitioned into independent shards by the high bits of the same key hash that
+ * the internal maps use, and each shard is a UniqueCountMap with its own stack of levels guarded
+ * by its own lock. A key and all of its promotions stay within one shard, so threads that update
+ * different shards never contend, and with many more shards than threads the throughput grows
+ * nearly linearly with the number of threads.</p>
+ *
+ * <p>Reads take the read lock of their shard only, so readers never block each other and wait
+ * only for a writer of the same shard. The internal tables of a shard are resized in place, so
+ * a read without any lock could observe a partially built table.</p>
+ *
+ * <p>The estimate of a key depends only on the identifiers of that key, so it is the same as it
+ * would be in a single UniqueCountMap given the same identifiers for the key in the same
+ * order.</p>
+ */
+public final class ConcurrentUniqueCountMap {
+  private static final int INITIAL_NUM_ENTRIES = 1000003;
+  private final int keySizeBytes_;
+  private final int lgNumShards_;
+  private final UniqueCountMap[] shards_;
+  private final StampedLock[] locks_;
+
+  /**
+   * Constructs a ConcurrentUniqueCountMap with an initial capacity of one million entries and
+   * four shards per available processor.
+   * @param keySizeBytes must be at least 4 bytes to have sufficient entropy.
+   */
+  public ConcurrentUniqueCountMap(final int keySizeBytes) {
+    this(INITIAL_NUM_ENTRIES, keySizeBytes, 4 * Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructs a ConcurrentUniqueCountMap with a given initial number of entries and a given
+   * number of shards.
+   *
+   * @param initialNumEntries The initial number of entries of the whole map, which are divided
+   * among the shards.
+   * @param keySizeBytes must be at least 4 bytes to have sufficient entropy
+   * @param numShards the number of shards, which is rounded up to a power of 2. Using several
+   * times more shards than updating threads keeps contention low.
+   */
+  public ConcurrentUniqueCountMap(final int initialNumEntries, final int keySizeBytes,
+      final int numShards) {
+    if (numShards < 1) {
+      throw new SketchesArgumentException("NumShards must be >= 1: " + numShards);
+    }
+    final int shards = ceilingIntPowerOf2(numShards);
+    keySizeBytes_ = keySizeBytes;
+    lgNumShards_ = Integer.numberOfTrailingZeros(shards);
+    shards_ = new UniqueCountMap[shards];
+    locks_ = new StampedLock[shards];
+    for (int i = 0; i < shards; i++) {
+      shards_[i] = new UniqueCountMap(initialNumEntries / shards, keySizeBytes);
+      locks_[i] = new StampedLock();
+    }
+  }
+
+  /**
+   * Updates the map with a given key and identifier and returns the estimate of the number of
+   * unique identifiers encountered so far for the given key.
+   * @param key the given key
+   * @param identifier the given identifier for unique counting associated with the key
+   * @return the estimate of the number of unique identifiers encountered so far for the given key.
+   */
+  public double update(final byte[] key, final byte[] identifier) {
+    if (key == null) { return Double.NaN; }
+    checkMethodKeySize(key);
+    final long[] keyHash = Map.keyHash(key); //once for the shard and all levels of its map
+    final int shard = getShard(keyHash);
+    final StampedLock lock = locks_[shard];
+    final long stamp = lock.writeLock();
+    try {
+      return shards_[shard].update(key, keyHash, identifier);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Retrieves the current estimate of unique count for a given key.
+   * @param key given key
+   * @return estimate of unique count so far
+   */
+  public double getEstimate(final byte[] key) {
+    if (key == null) { return Double.NaN; }
+    checkMethodKeySize(key);
+    final long[] keyHash = Map.keyHash(key);
+    final int shard = getShard(keyHash);
+    final StampedLock lock = locks_[shard];
+    final long stamp = lock.readLock();
+    try {
+      return shards_[shard].getEstimate(key, keyHash);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Returns the upper bound cardinality with respect to {@link #getEstimate(byte[])} associated
+   * with the given key.
+   * @param key the given key
+   * @return the upper bound cardinality with respect to {@link #getEstimate(byte[])} associated
+   * with the given key.
+   */
+  public double getUpperBound(final byte[] key) {
+    if (key == null) { return Double.NaN; }
+    checkMethodKeySize(key);
+    final long[] keyHash = Map.keyHash(key);
+    final int shard = getShard(keyHash);
+    final StampedLock lock = locks_[shard];
+    final long stamp = lock.readLock();
+    try {
+      return shards_[shard].getUpperBound(key, keyHash);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Returns the lower bound cardinality with respect to {@link #getEstimate(byte[])} associated
+   * with the given key.
+   * @param key the given key
+   * @return the lower bound cardinality with respect to {@link #getEstimate(byte[])} associated
+   * with the given key.
+   */
+  public double getLowerBound(final byte[] key) {
+    if (key == null) { return Double.NaN; }
+    checkMethodKeySize(key);
+    final long[] keyHash = Map.keyHash(key);
+    final int shard = getShard(keyHash);
+    final StampedLock lock = locks_[shard];
+    final long stamp = lock.readLock();
+    try {
+      return shards_[shard].getLowerBound(key, keyHash);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Returns the number of active, unique keys across all shards. Each shard is counted at a
+   * different moment while writers are active.
+   * @return the number of active, unique keys across all shards
+   */
+  public int getActiveEntries() {
+    int total = 0;
+    for (int i = 0; i < shards_.length; i++) {
+      final long stamp = locks_[i].readLock();
+      try {
+        total += shards_[i].getActiveEntries();
+      } finally {
+        locks_[i].unlockRead(stamp);
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Returns total bytes used by all internal maps of all shards
+   * @return total bytes used by all internal maps of all shards
+   */
+  public long getMemoryUsageBytes() {
+    long total = 0;
+    for (int i = 0; i < shards_.length; i++) {
+      final long stamp = locks_[i].readLock();
+      try {
+        total += shards_[i].getMemoryUsageBytes();
+      } finally {
+        locks_[i].unlockRead(stamp);
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Returns the number of shards.
+   * @return the number of shards
+   */
+  public int getNumShards() {
+    return shards_.length;
+  }
+
+  /**
+   * Returns the key size in bytes.
+   * @return the key size in bytes
+   */
+  public int getKeySizeBytes() {
+    return keySizeBytes_;
+  }
+
+  //The high bits of the first half of the key hash, which are nearly independent of the index of
+  //the key in the tables of its shard, the remainder of that half modulo a prime
+  private int getShard(final long[] keyHash) {
+    if (lgNumShards_ == 0) { return 0; }
+    return (int) (keyHash[0] >>> (64 - lgNumShards_));
+  }
+
+  private void checkMethodKeySize(final byte[] key) {
+    if (key.length != keySizeBytes_) {
+      throw new SketchesArgumentException("Key size must be " + keySizeBytes_ + " bytes.");
+    }
+  }
+
+}
@@ -22,10 +22,10 @@ package org.apache.datasketches.hllmap;
 import static org.apache.datasketches.common.Util.checkIfIntPowerOf2;
 import static org.apache.datasketches.common.Util.invPow2;
 
-import java.util.Arrays;
-
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.hash.MurmurHash3;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * Implements a key-value map where the value is a hash map of coupons.
@@ -36,6 +36,9 @@ import org.apache.datasketches.hash.MurmurHash3;
  *
  * <p>The inner hash tables are implemented with linear probing or OASH and a load factor of 0.75.
  *
+ * <p>The region holds the keys, the inner hash tables of 16-bit coupons, the counts, and then
+ * the float HIP registers.
+ *
  * @author Lee Rhodes
  * @author Alexander Saydakov
  * @author Kevin Lang
@@ -53,41 +56,54 @@ final class CouponHashMap extends Map {
 
   private int tableEntries_;
   private int capacityEntries_;
-  private int numActiveKeys_;
-  private int numDeletedKeys_;
-
-  //Arrays
-  private byte[] keysArr_;
-  private short[] couponsArr_;
-  private byte[] curCountsArr_; //also acts as a stateArr: 0 empty, 255 deleted
-  private float[] invPow2SumArr_;
-  private float[] hipEstAccumArr_;
-
-  private CouponHashMap(final int keySizeBytes, final int maxCouponsPerKey) {
-    super(keySizeBytes);
+
+  // Offsets of the arrays in the region
+  private long couponsOffset_;
+  private long curCountsOffset_; //also acts as a stateArr: 0 empty, 255 deleted
+  private long invPow2SumOffset_;
+  private long hipEstAccumOffset_;
+
+  private CouponHashMap(final int keySizeBytes, final int maxCouponsPerKey,
+      final MapMemory memory, final int level) {
+    super(keySizeBytes, memory, level);
     maxCouponsPerKey_ = maxCouponsPerKey;
     capacityCouponsPerKey_ = (int)(maxCouponsPerKey * INNER_LOAD_FACTOR);
     entrySizeBytes_ = keySizeBytes + (maxCouponsPerKey * Short.BYTES) + 1 + 4 + 4;
   }
 
   static CouponHashMap getInstance(final int keySizeBytes, final int maxCouponsPerKey) {
+    return getInstance(keySizeBytes, maxCouponsPerKey, MapMemory.HEAP, 0);
+  }
+
+  static CouponHashMap getInstance(final int keySizeBytes, final int maxCouponsPerKey,
+      final MapMemory memory, final int level) {
     checkMaxCouponsPerKey(maxCouponsPerKey);
     final int tableEntries = COUPON_MAP_MIN_NUM_ENTRIES;
 
-    final CouponHashMap map = new CouponHashMap(keySizeBytes, maxCouponsPerKey);
-    map.tableEntries_ = tableEntries;
-    map.capacityEntries_ = (int)(tableEntries * COUPON_MAP_GROW_TRIGGER_FACTOR);
-    map.numActiveKeys_ = 0;
-    map.numDeletedKeys_ = 0;
-
-    map.keysArr_ = new byte[tableEntries * keySizeBytes];
-    map.couponsArr_ = new short[tableEntries * maxCouponsPerKey];
-    map.curCountsArr_ = new byte[tableEntries];
-    map.invPow2SumArr_ = new float[tableEntries];
-    map.hipEstAccumArr_ = new float[tableEntries];
+    final CouponHashMap map = new CouponHashMap(keySizeBytes, maxCouponsPerKey, memory, level);
+    map.setRegion(map.newRegion(tableEntries, map.getRegionBytes(tableEntries)));
+    return map;
+  }
+
+  static CouponHashMap wrapInstance(final WritableMemory region, final int keySizeBytes,
+      final int maxCouponsPerKey, final MapMemory memory, final int level) {
+    checkMaxCouponsPerKey(maxCouponsPerKey);
+    final CouponHashMap map = new CouponHashMap(keySizeBytes, maxCouponsPerKey, memory, level);
+    map.setRegion(region);
     return map;
   }
 
+  @Override
+  void setRegion(final WritableMemory region) {
+    region_ = region;
+    tableEntries_ = region.getInt(TABLE_ENTRIES_INT);
+    capacityEntries_ = (int)(tableEntries_ * COUPON_MAP_GROW_TRIGGER_FACTOR);
+    couponsOffset_ = MAP_HEADER_BYTES + ((long) tableEntries_ * keySizeBytes_);
+    curCountsOffset_ = couponsOffset_ + ((long) tableEntries_ * maxCouponsPerKey_ * Short.BYTES);
+    invPow2SumOffset_ = align8(curCountsOffset_ + tableEntries_);
+    hipEstAccumOffset_ = invPow2SumOffset_ + ((long) tableEntries_ * Float.BYTES);
+  }
+
   @Override
   double update(final byte[] key, final short coupon) {
     final int entryIndex = findOrInsertKey(key);
@@ -96,44 +112,62 @@ final class CouponHashMap extends Map {
 
   @Override
   double update(final int entryIndex, final short coupon) {
-    final int couponMapArrEntryIndex = entryIndex * maxCouponsPerKey_;
+    final long couponMapOffset = couponAreaOffset(entryIndex);
 
     int innerCouponIndex = (coupon & 0xFFFF) % maxCouponsPerKey_;
 
-    while (couponsArr_[couponMapArrEntryIndex + innerCouponIndex] != 0) {
-      if (couponsArr_[couponMapArrEntryIndex + innerCouponIndex] == coupon) {
-        return hipEstAccumArr_[entryIndex]; //duplicate, returns the estimate
+    short innerCoupon;
+    while ((innerCoupon = region_.getShort(couponMapOffset + (innerCouponIndex << 1))) != 0) {
+      if (innerCoupon == coupon) {
+        return getHipEstAccum(entryIndex); //duplicate, returns the estimate
       }
       innerCouponIndex = (innerCouponIndex + 1) % maxCouponsPerKey_; //linear search
     }
-    if (((curCountsArr_[entryIndex] + 1) & BYTE_MASK) > capacityCouponsPerKey_) {
+    final int curCount = getCurCount(entryIndex);
+    if (((curCount + 1) & BYTE_MASK) > capacityCouponsPerKey_) {
       //returns the negative estimate, as signal to promote
-      return -hipEstAccumArr_[entryIndex];
+      return -getHipEstAccum(entryIndex);
     }
 
-    couponsArr_[couponMapArrEntryIndex + innerCouponIndex] = coupon; //insert
-    curCountsArr_[entryIndex]++;
+    region_.putShort(couponMapOffset + (innerCouponIndex << 1), coupon); //insert
+    putCurCount(entryIndex, curCount + 1);
     //hip +=  k/qt; qt -= 1/2^(val);
-    hipEstAccumArr_[entryIndex] += COUPON_K / invPow2SumArr_[entryIndex];
-    invPow2SumArr_[entryIndex] -= invPow2(coupon16Value(coupon));
-    return hipEstAccumArr_[entryIndex]; //returns the estimate
+    final float invPow2Sum = region_.getFloat(invPow2SumOffset(entryIndex));
+    final float hipEstAccum = getHipEstAccum(entryIndex) + (COUPON_K / invPow2Sum);
+    region_.putFloat(hipEstAccumOffset(entryIndex), hipEstAccum);
+    updateMaxEstimate(hipEstAccum);
+    region_.putFloat(invPow2SumOffset(entryIndex),
+        (float) (invPow2Sum - invPow2(coupon16Value(coupon))));
+    return hipEstAccum; //returns the estimate
   }
 
   @Override
-  double getEstimate(final byte[] key) {
-    final int index = findKey(key);
+  double getEstimate(final byte[] key, final long[] hash) {
+    final int index = findKey(key, hash);
     if (index < 0) { return 0; }
-    return hipEstAccumArr_[index];
+    return getHipEstAccum(index);
+  }
+
+  @Override
+  double getEntryEstimate(final int entryIndex) {
+    final byte curCount = region_.getByte(curCountsOffset_ + entryIndex);
+    if ((curCount == 0) || (curCount == DELETED_KEY_MARKER)) { return 0; }
+    return getHipEstAccum(entryIndex);
   }
 
   @Override
-  double getUpperBound(final byte[] key) {
-    return getEstimate(key) * (1 + RSE);
+  double getMaxEstimate() {
+    return region_.getFloat(MAX_ESTIMATE_FLOAT);
   }
 
   @Override
-  double getLowerBound(final byte[] key) {
-    return getEstimate(key) * (1 - RSE);
+  double getUpperBound(final byte[] key, final long[] hash) {
+    return getEstimate(key, hash) * (1 + RSE);
+  }
+
+  @Override
+  double getLowerBound(final byte[] key, final long[] hash) {
+    return getEstimate(key, hash) * (1 - RSE);
   }
 
   @Override
@@ -141,77 +175,88 @@ final class CouponHashMap extends Map {
     if (entryIndex < 0) {
       throw new SketchesArgumentException("Key not found.");
     }
-    hipEstAccumArr_[entryIndex] = (float) estimate;
+    region_.putFloat(hipEstAccumOffset(entryIndex), (float) estimate);
+    updateMaxEstimate((float) estimate);
+  }
+
+  //The estimates of keys only grow while they are in this map, so the largest estimate so far is
+  //kept in the header, where it survives deletes and resizes.
+  private void updateMaxEstimate(final float estimate) {
+    if (estimate > region_.getFloat(MAX_ESTIMATE_FLOAT)) {
+      region_.putFloat(MAX_ESTIMATE_FLOAT, estimate);
+    }
   }
 
   /**
    * Returns entryIndex if the given key is found. If not found, returns one's complement index
    * of an empty slot for insertion, which may be over a deleted key.
    * @param key the given key
+   * @param hash the hash of the key, see {@link Map#keyHash(byte[])}
    * @return the entryIndex
    */
   @Override
-  int findKey(final byte[] key) {
-    final long[] hash = MurmurHash3.hash(key, SEED);
+  int findKey(final byte[] key, final long[] hash) {
     int entryIndex = getIndex(hash[0], tableEntries_);
     int firstDeletedIndex = -1;
     final int loopIndex = entryIndex;
     do {
-      if (curCountsArr_[entryIndex] == 0) {
+      final byte curCount = region_.getByte(curCountsOffset_ + entryIndex);
+      if (curCount == 0) {
         return firstDeletedIndex == -1 ? ~entryIndex : ~firstDeletedIndex; // found empty or deleted
       }
-      if (curCountsArr_[entryIndex] == DELETED_KEY_MARKER) {
+      if (curCount == DELETED_KEY_MARKER) {
         if (firstDeletedIndex == -1) {
           firstDeletedIndex = entryIndex;
         }
-      } else if (Map.arraysEqual(keysArr_, entryIndex * keySizeBytes_, key, 0, keySizeBytes_)) {
+      } else if (isKeyAt(key, entryIndex)) {
         return entryIndex; // found key
       }
-      entryIndex = (entryIndex + getStride(hash[1], tableEntries_)) % tableEntries_;
+      entryIndex = (int) ((entryIndex + (long) getStride(hash[1], tableEntries_)) % tableEntries_);
     } while (entryIndex != loopIndex);
     throw new SketchesArgumentException("Key not found and no empty slots!");
   }
 
   @Override
-  int findOrInsertKey(final byte[] key) {
-    int entryIndex = findKey(key);
+  int findOrInsertKey(final byte[] key, final long[] hash) {
+    int entryIndex = findKey(key, hash);
     if (entryIndex < 0) { //key not found
       entryIndex = ~entryIndex;
-      if (curCountsArr_[entryIndex] == DELETED_KEY_MARKER) { // reusing slot from a deleted key
-        Arrays.fill(couponsArr_, entryIndex * maxCouponsPerKey_,
-            (entryIndex + 1) *  maxCouponsPerKey_, (short) 0);
-        curCountsArr_[entryIndex] = 0;
-        numDeletedKeys_--;
+      if (region_.getByte(curCountsOffset_ + entryIndex) == DELETED_KEY_MARKER) {
+        // reusing slot from a deleted key
+        region_.clear(couponAreaOffset(entryIndex), (long) maxCouponsPerKey_ * Short.BYTES);
+        putCurCount(entryIndex, 0);
+        region_.putInt(DELETED_ENTRIES_INT, getDeletedEntries() - 1);
       }
-      if ((numActiveKeys_ + numDeletedKeys_) >= capacityEntries_) {
+      if ((getActiveEntries() + getDeletedEntries()) >= capacityEntries_) {
         resize();
-        entryIndex = ~findKey(key);
+        entryIndex = ~findKey(key, hash);
         assert entryIndex >= 0;
       }
       //insert new key
-      System.arraycopy(key, 0, keysArr_, entryIndex * keySizeBytes_, keySizeBytes_);
+      putKey(entryIndex, key);
       //initialize HIP:  qt <- k; hip <- 0;
-      invPow2SumArr_[entryIndex] = COUPON_K;
-      hipEstAccumArr_[entryIndex] = 0;
-      numActiveKeys_++;
+      region_.putFloat(invPow2SumOffset(entryIndex), COUPON_K);
+      region_.putFloat(hipEstAccumOffset(entryIndex), 0);
+      region_.putInt(ACTIVE_ENTRIES_INT, getActiveEntries() + 1);
     }
     return entryIndex;
   }
 
   @Override
   void deleteKey(final int entryIndex) {
-    curCountsArr_[entryIndex] = DELETED_KEY_MARKER;
-    numActiveKeys_--;
-    numDeletedKeys_++;
-    if ((numActiveKeys_ > COUPON_MAP_MIN_NUM_ENTRIES)
-        && (numActiveKeys_ < (tableEntries_ * COUPON_MAP_SHRINK_TRIGGER_FACTOR))) {
+    region_.putByte(curCountsOffset_ + entryIndex, DELETED_KEY_MARKER);
+    final int numActiveKeys = getActiveEntries() - 1;
+    region_.putInt(ACTIVE_ENTRIES_INT, numActiveKeys);
+    region_.putInt(DELETED_ENTRIES_INT, getDeletedEntries() + 1);
+    if ((numActiveKeys > COUPON_MAP_MIN_NUM_ENTRIES)
+        && (numActiveKeys < (tableEntries_ * COUPON_MAP_SHRINK_TRIGGER_FACTOR))) {
       resize();
     }
   }
 
   @Override
   CouponsIterator getCouponsIterator(final int entryIndex) {
-    return new CouponsIterator(couponsArr_, entryIndex * maxCouponsPerKey_, maxCouponsPerKey_);
+    return new CouponsIterator(region_, couponAreaOffset(entryIndex), maxCouponsPerKey_);
   }
 
   @Override
@@ -231,28 +276,22 @@ final class CouponHashMap extends Map {
 
   @Override
   int getCurrentCountEntries() {
-    return numActiveKeys_ + numDeletedKeys_;
+    return getActiveEntries() + getDeletedEntries();
   }
 
   @Override
   long getMemoryUsageBytes() {
-    final long arrays = keysArr_.length
-        + ((long) couponsArr_.length * Short.BYTES)
-        + curCountsArr_.length
-        + ((long) invPow2SumArr_.length * Float.BYTES)
-        + ((long) hipEstAccumArr_.length * Float.BYTES);
-    final long other = 4 * 5;
-    return arrays + other;
+    return region_.getCapacity();
   }
 
   @Override
   int getActiveEntries() {
-    return numActiveKeys_;
+    return region_.getInt(ACTIVE_ENTRIES_INT);
   }
 
   @Override
   int getDeletedEntries() {
-    return numDeletedKeys_;
+    return region_.getInt(DELETED_ENTRIES_INT);
   }
 
   @Override
@@ -274,40 +313,67 @@ final class CouponHashMap extends Map {
     }
   }
 
+  private float getHipEstAccum(final int entryIndex) {
+    return region_.getFloat(hipEstAccumOffset(entryIndex));
+  }
+
+  private int getCurCount(final int entryIndex) {
+    return region_.getByte(curCountsOffset_ + entryIndex) & BYTE_MASK;
+  }
+
+  private void putCurCount(final int entryIndex, final int curCount) {
+    region_.putByte(curCountsOffset_ + entryIndex, (byte) curCount);
+  }
+
+  private long couponAreaOffset(final int entryIndex) {
+    return couponsOffset_ + ((long) entryIndex * maxCouponsPerKey_ * Short.BYTES);
+  }
+
+  private long invPow2SumOffset(final int entryIndex) {
+    return invPow2SumOffset_ + ((long) entryIndex * Float.BYTES);
+  }
+
+  private long hipEstAccumOffset(final int entryIndex) {
+    return hipEstAccumOffset_ + ((long) entryIndex * Float.BYTES);
+  }
+
+  private long getRegionBytes(final int tableEntries) {
+    final long countsEnd = MAP_HEADER_BYTES
+        + ((long) tableEntries * (keySizeBytes_ + (maxCouponsPerKey_ * Short.BYTES) + 1));
+    return align8(countsEnd) + ((long) tableEntries * 2 * Float.BYTES);
+  }
+
   private void resize() {
-    final byte[] oldKeysArr = keysArr_;
-    final short[] oldCouponMapArr = couponsArr_;
-    final byte[] oldCurCountsArr = curCountsArr_;
-    final float[] oldInvPow2SumArr = invPow2SumArr_;
-    final float[] oldHipEstAccumArr = hipEstAccumArr_;
-    final int oldNumEntries = tableEntries_;
-    tableEntries_ = Math.max(
-      nextPrime((int) (numActiveKeys_ / COUPON_MAP_TARGET_FILL_FACTOR)),
+    final int newTableEntries = Math.max(
+      nextPrime((int) (getActiveEntries() / COUPON_MAP_TARGET_FILL_FACTOR)),
       COUPON_MAP_MIN_NUM_ENTRIES
     );
-    capacityEntries_ = (int)(tableEntries_ * COUPON_MAP_GROW_TRIGGER_FACTOR);
-    keysArr_ = new byte[tableEntries_ * keySizeBytes_];
-    couponsArr_ = new short[tableEntries_ * maxCouponsPerKey_];
-    curCountsArr_ = new byte[tableEntries_];
-    invPow2SumArr_ = new float[tableEntries_];
-    hipEstAccumArr_ = new float[tableEntries_];
-    numActiveKeys_ = 0;
-    numDeletedKeys_ = 0;
+    final WritableMemory newRegion = newRegion(newTableEntries, getRegionBytes(newTableEntries));
+    //the old region is read after the allocation, which may have moved it
+    final Memory oldRegion = region_;
+    final int oldNumEntries = tableEntries_;
+    final long oldCouponsOffset = couponsOffset_;
+    final long oldCurCountsOffset = curCountsOffset_;
+    final long oldInvPow2SumOffset = invPow2SumOffset_;
+    final long oldHipEstAccumOffset = hipEstAccumOffset_;
+    setRegion(newRegion); //no active or deleted keys
+    region_.putFloat(MAX_ESTIMATE_FLOAT, oldRegion.getFloat(MAX_ESTIMATE_FLOAT));
+    final long couponAreaBytes = (long) maxCouponsPerKey_ * Short.BYTES;
     for (int i = 0; i < oldNumEntries; i++) {
-      if ((oldCurCountsArr[i] != 0) && (oldCurCountsArr[i] != DELETED_KEY_MARKER)) {
-        //extract an old valid key
-        final byte[] key =
-            Arrays.copyOfRange(oldKeysArr, i * keySizeBytes_, (i * keySizeBytes_) + keySizeBytes_);
-        //insert the key and get its index
-        final int index = insertKey(key);
+      final byte oldCurCount = oldRegion.getByte(oldCurCountsOffset + i);
+      if ((oldCurCount != 0) && (oldCurCount != DELETED_KEY_MARKER)) {
+        //extract an old valid key, insert the key and get its index
+        final int index = insertKey(getKey(oldRegion, i));
         //copy the coupons array into that index
-        System.arraycopy(oldCouponMapArr, i * maxCouponsPerKey_, couponsArr_,
-            index * maxCouponsPerKey_, maxCouponsPerKey_);
+        oldRegion.copyTo(oldCouponsOffset + (i * couponAreaBytes), region_,
+            couponAreaOffset(index), couponAreaBytes);
         //transfer the count
-        curCountsArr_[index] = oldCurCountsArr[i];
+        region_.putByte(curCountsOffset_ + index, oldCurCount);
         //transfer the HIP registers
-        invPow2SumArr_[index] = oldInvPow2SumArr[i];
-        hipEstAccumArr_[index] = oldHipEstAccumArr[i];
+        region_.putFloat(invPow2SumOffset(index),
+            oldRegion.getFloat(oldInvPow2SumOffset + ((long) i * Float.BYTES)));
+        region_.putFloat(hipEstAccumOffset(index),
+            oldRegion.getFloat(oldHipEstAccumOffset + ((long) i * Float.BYTES)));
       }
     }
   }
@@ -319,12 +385,12 @@ final class CouponHashMap extends Map {
     int entryIndex = getIndex(hash[0], tableEntries_);
     final int loopIndex = entryIndex;
     do {
-      if (curCountsArr_[entryIndex] == 0) {
-        System.arraycopy(key, 0, keysArr_, entryIndex * keySizeBytes_, keySizeBytes_);
-        numActiveKeys_++;
+      if (region_.getByte(curCountsOffset_ + entryIndex) == 0) {
+        putKey(entryIndex, key);
+        region_.putInt(ACTIVE_ENTRIES_INT, getActiveEntries() + 1);
         return entryIndex;
       }
-      entryIndex = (entryIndex + getStride(hash[1], tableEntries_)) % tableEntries_;
+      entryIndex = (int) ((entryIndex + (long) getStride(hash[1], tableEntries_)) % tableEntries_);
     } while (entryIndex != loopIndex);
     throw new SketchesArgumentException("Key not found and no empty slots!");
   }
@@ -19,10 +19,10 @@
 
 package org.apache.datasketches.hllmap;
 
-import java.util.Arrays;
-
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.hash.MurmurHash3;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * Implements a key-value map where the value is a simple array of coupons. Search operations are a
@@ -32,6 +32,8 @@ import org.apache.datasketches.hash.MurmurHash3;
  * <p>The map is implemented as a prime-sized, Open Address, Double Hash, with deletes and a 1-bit
  * state array. The size of this map can grow or shrink.
  *
+ * <p>The region holds the keys, then the arrays of 16-bit coupons, then the state array.
+ *
  * @author Lee Rhodes
  * @author Alexander Saydakov
  * @author Kevin Lang
@@ -43,13 +45,10 @@ final class CouponTraverseMap extends Map {
 
   private int tableEntries_;
   private int capacityEntries_;
-  private int numActiveKeys_;
-  private int numDeletedKeys_;
   private double entrySizeBytes_;
 
-  //Arrays
-  private byte[] keysArr_;
-  private short[] couponsArr_;
+  // Offsets of the arrays in the region
+  private long couponsOffset_;
 
   /**
    * <ul><li>State: 0: Empty always, don't need to look at 1st coupon. Coupons could be dirty.</li>
@@ -57,27 +56,45 @@ final class CouponTraverseMap extends Map {
    * If first coupon != 0 means valid entry; first coupon == 0: dirty (we set to 0 when deleted)</li>
    * </ul>
    */
-  private byte[] stateArr_;
+  private long stateOffset_;
 
-  private CouponTraverseMap(final int keySizeBytes, final int maxCouponsPerKey) {
-    super(keySizeBytes);
+  private CouponTraverseMap(final int keySizeBytes, final int maxCouponsPerKey,
+      final MapMemory memory, final int level) {
+    super(keySizeBytes, memory, level);
     maxCouponsPerKey_ = maxCouponsPerKey;
   }
 
   static CouponTraverseMap getInstance(final int keySizeBytes, final int maxCouponsPerKey) {
-    final CouponTraverseMap map = new CouponTraverseMap(keySizeBytes, maxCouponsPerKey);
-    map.tableEntries_ = COUPON_MAP_MIN_NUM_ENTRIES;
-    map.capacityEntries_ = (int)(map.tableEntries_ * COUPON_MAP_GROW_TRIGGER_FACTOR);
-    map.numActiveKeys_ = 0;
-    map.numDeletedKeys_ = 0;
-    map.entrySizeBytes_ = updateEntrySizeBytes(map.tableEntries_, keySizeBytes, maxCouponsPerKey);
-
-    map.keysArr_ = new byte[COUPON_MAP_MIN_NUM_ENTRIES * keySizeBytes];
-    map.couponsArr_ = new short[COUPON_MAP_MIN_NUM_ENTRIES * maxCouponsPerKey];
-    map.stateArr_ = new byte[COUPON_MAP_MIN_NUM_ENTRIES_ARR_SIZE];
+    return getInstance(keySizeBytes, maxCouponsPerKey, MapMemory.HEAP, 0);
+  }
+
+  static CouponTraverseMap getInstance(final int keySizeBytes, final int maxCouponsPerKey,
+      final MapMemory memory, final int level) {
+    final CouponTraverseMap map =
+        new CouponTraverseMap(keySizeBytes, maxCouponsPerKey, memory, level);
+    map.setRegion(map.newRegion(COUPON_MAP_MIN_NUM_ENTRIES,
+        map.getRegionBytes(COUPON_MAP_MIN_NUM_ENTRIES)));
     return map;
   }
 
+  static CouponTraverseMap wrapInstance(final WritableMemory region, final int keySizeBytes,
+      final int maxCouponsPerKey, final MapMemory memory, final int level) {
+    final CouponTraverseMap map =
+        new CouponTraverseMap(keySizeBytes, maxCouponsPerKey, memory, level);
+    map.setRegion(region);
+    return map;
+  }
+
+  @Override
+  void setRegion(final WritableMemory region) {
+    region_ = region;
+    tableEntries_ = region.getInt(TABLE_ENTRIES_INT);
+    capacityEntries_ = (int)(tableEntries_ * COUPON_MAP_GROW_TRIGGER_FACTOR);
+    entrySizeBytes_ = updateEntrySizeBytes(tableEntries_, keySizeBytes_, maxCouponsPerKey_);
+    couponsOffset_ = MAP_HEADER_BYTES + ((long) tableEntries_ * keySizeBytes_);
+    stateOffset_ = couponsOffset_ + ((long) tableEntries_ * maxCouponsPerKey_ * Short.BYTES);
+  }
+
   @Override //used for test
   double update(final byte[] key, final short coupon) {
     final int entryIndex = findOrInsertKey(key);
@@ -86,15 +103,16 @@ final class CouponTraverseMap extends Map {
 
   @Override
   double update(final int entryIndex, final short value) {
-    final int offset = entryIndex * maxCouponsPerKey_;
+    final long offset = couponAreaOffset(entryIndex);
     boolean wasFound = false;
     for (int i = 0; i < maxCouponsPerKey_; i++) {
-      if (couponsArr_[offset + i] == 0) {
+      final short coupon = region_.getShort(offset + (i << 1));
+      if (coupon == 0) {
         if (wasFound) { return i; }
-        couponsArr_[offset + i] = value;
+        region_.putShort(offset + (i << 1), value);
         return i + 1;
       }
-      if (couponsArr_[offset + i] == value) {
+      if (coupon == value) {
         wasFound = true;
       }
     }
@@ -103,84 +121,96 @@ final class CouponTraverseMap extends Map {
   }
 
   @Override
-  double getEstimate(final byte[] key) {
-    final int entryIndex = findKey(key);
+  double getEstimate(final byte[] key, final long[] hash) {
+    final int entryIndex = findKey(key, hash);
     if (entryIndex < 0) { return 0; }
     return getCouponCount(entryIndex);
   }
 
   @Override
-  double getUpperBound(final byte[] key) {
-    return getEstimate(key) * (1 + RSE);
+  double getEntryEstimate(final int entryIndex) {
+    if (isBitClear(region_, stateOffset_, entryIndex)) { return 0; }
+    return getCouponCount(entryIndex); //zero if deleted
+  }
+
+  @Override
+  double getMaxEstimate() {
+    return maxCouponsPerKey_;
   }
 
   @Override
-  double getLowerBound(final byte[] key) {
-    return getEstimate(key) * (1 - RSE);
+  double getUpperBound(final byte[] key, final long[] hash) {
+    return getEstimate(key, hash) * (1 + RSE);
+  }
+
+  @Override
+  double getLowerBound(final byte[] key, final long[] hash) {
+    return getEstimate(key, hash) * (1 - RSE);
   }
 
   /**
    * Returns entryIndex if the given key is found. If not found, returns one's complement entryIndex
    * of an empty slot for insertion, which may be over a deleted key.
    * @param key the given key
+   * @param hash the hash of the key, see {@link Map#keyHash(byte[])}
    * @return the entryIndex
    */
   @Override
-  int findKey(final byte[] key) {
-    final long[] hash = MurmurHash3.hash(key, SEED);
+  int findKey(final byte[] key, final long[] hash) {
     int entryIndex = getIndex(hash[0], tableEntries_);
     int firstDeletedIndex = -1;
     final int loopIndex = entryIndex;
     do {
-      if (isBitClear(stateArr_, entryIndex)) {
+      if (isBitClear(region_, stateOffset_, entryIndex)) {
         return firstDeletedIndex == -1 ? ~entryIndex : ~firstDeletedIndex; // found empty or deleted
       }
-      if (couponsArr_[entryIndex * maxCouponsPerKey_] == 0) { //found deleted
+      if (region_.getShort(couponAreaOffset(entryIndex)) == 0) { //found deleted
         if (firstDeletedIndex == -1) { firstDeletedIndex = entryIndex; }
-      } else if (Map.arraysEqual(keysArr_, entryIndex * keySizeBytes_, key, 0, keySizeBytes_)) {
+      } else if (isKeyAt(key, entryIndex)) {
         return entryIndex; // found key
       }
-      entryIndex = (entryIndex + getStride(hash[1], tableEntries_)) % tableEntries_;
+      entryIndex = (int) ((entryIndex + (long) getStride(hash[1], tableEntries_)) % tableEntries_);
     } while (entryIndex != loopIndex);
     throw new SketchesArgumentException("Key not found and no empty slots!");
   }
 
   @Override
-  int findOrInsertKey(final byte[] key) {
-    int entryIndex = findKey(key);
+  int findOrInsertKey(final byte[] key, final long[] hash) {
+    int entryIndex = findKey(key, hash);
     if (entryIndex < 0) {
       entryIndex = ~entryIndex;
-      if (isBitSet(stateArr_, entryIndex)) { // reusing slot from a deleted key
+      if (isBitSet(region_, stateOffset_, entryIndex)) { // reusing slot from a deleted key
         clearCouponArea(entryIndex);
-        numDeletedKeys_--;
+        region_.putInt(DELETED_ENTRIES_INT, getDeletedEntries() - 1);
       }
-      if ((numActiveKeys_ + numDeletedKeys_ + 1) > capacityEntries_) {
+      if ((getActiveEntries() + getDeletedEntries() + 1) > capacityEntries_) {
         resize();
-        entryIndex = ~findKey(key);
+        entryIndex = ~findKey(key, hash);
         assert entryIndex >= 0;
       }
-      System.arraycopy(key, 0, keysArr_, entryIndex * keySizeBytes_, keySizeBytes_);
-      setBit(stateArr_, entryIndex);
-      numActiveKeys_++;
+      putKey(entryIndex, key);
+      setBit(region_, stateOffset_, entryIndex);
+      region_.putInt(ACTIVE_ENTRIES_INT, getActiveEntries() + 1);
     }
     return entryIndex;
   }
 
   @Override
   void deleteKey(final int entryIndex) {
-    couponsArr_[entryIndex * maxCouponsPerKey_] = 0;
-    numActiveKeys_--;
-    numDeletedKeys_++;
-    if ((numActiveKeys_ > COUPON_MAP_MIN_NUM_ENTRIES)
-        && (numActiveKeys_ < (tableEntries_ * COUPON_MAP_SHRINK_TRIGGER_FACTOR))) {
+    region_.putShort(couponAreaOffset(entryIndex), (short) 0);
+    final int numActiveKeys = getActiveEntries() - 1;
+    region_.putInt(ACTIVE_ENTRIES_INT, numActiveKeys);
+    region_.putInt(DELETED_ENTRIES_INT, getDeletedEntries() + 1);
+    if ((numActiveKeys > COUPON_MAP_MIN_NUM_ENTRIES)
+        && (numActiveKeys < (tableEntries_ * COUPON_MAP_SHRINK_TRIGGER_FACTOR))) {
       resize();
     }
   }
 
   private int getCouponCount(final int entryIndex) {
-    final int offset = entryIndex * maxCouponsPerKey_;
+    final long offset = couponAreaOffset(entryIndex);
     for (int i = 0; i < maxCouponsPerKey_; i++) {
-      if (couponsArr_[offset + i] == 0) {
+      if (region_.getShort(offset + (i << 1)) == 0) {
         return i;
       }
     }
@@ -189,7 +219,7 @@ final class CouponTraverseMap extends Map {
 
   @Override
   CouponsIterator getCouponsIterator(final int entryIndex) {
-    return new CouponsIterator(couponsArr_, entryIndex * maxCouponsPerKey_, maxCouponsPerKey_);
+    return new CouponsIterator(region_, couponAreaOffset(entryIndex), maxCouponsPerKey_);
   }
 
   @Override
@@ -209,24 +239,22 @@ final class CouponTraverseMap extends Map {
 
   @Override
   int getCurrentCountEntries() {
-    return numActiveKeys_ + numDeletedKeys_;
+    return getActiveEntries() + getDeletedEntries();
   }
 
   @Override
   long getMemoryUsageBytes() {
-    return keysArr_.length
-        + ((long)couponsArr_.length * Short.BYTES)
-        + stateArr_.length + (4L * Integer.BYTES);
+    return region_.getCapacity();
   }
 
   @Override
   int getActiveEntries() {
-    return numActiveKeys_;
+    return region_.getInt(ACTIVE_ENTRIES_INT);
   }
 
   @Override
   int getDeletedEntries() {
-    return numDeletedKeys_;
+    return region_.getInt(DELETED_ENTRIES_INT);
   }
 
   @Override
@@ -240,31 +268,26 @@ final class CouponTraverseMap extends Map {
   }
 
   private void resize() { //can grow or shrink
-    final byte[] oldKeysArr = keysArr_;
-    final short[] oldCouponsArr = couponsArr_;
-    final byte[] oldStateArr = stateArr_;
-    final int oldSizeKeys = tableEntries_;
-    tableEntries_ = Math.max(
-      nextPrime((int) (numActiveKeys_ / COUPON_MAP_TARGET_FILL_FACTOR)),
+    final int newTableEntries = Math.max(
+      nextPrime((int) (getActiveEntries() / COUPON_MAP_TARGET_FILL_FACTOR)),
       COUPON_MAP_MIN_NUM_ENTRIES
     );
-    capacityEntries_ = (int)(tableEntries_ * COUPON_MAP_GROW_TRIGGER_FACTOR);
-    numActiveKeys_ = 0;
-    numDeletedKeys_ = 0;
-    entrySizeBytes_ = updateEntrySizeBytes(tableEntries_, keySizeBytes_, maxCouponsPerKey_);
-
-    keysArr_ = new byte[tableEntries_ * keySizeBytes_];
-    couponsArr_ = new short[tableEntries_ * maxCouponsPerKey_];
-    stateArr_ = new byte[(int) Math.ceil(tableEntries_ / 8.0)];
+    final WritableMemory newRegion = newRegion(newTableEntries, getRegionBytes(newTableEntries));
+    //the old region is read after the allocation, which may have moved it
+    final Memory oldRegion = region_;
+    final int oldSizeKeys = tableEntries_;
+    final long oldCouponsOffset = couponsOffset_;
+    final long oldStateOffset = stateOffset_;
+    setRegion(newRegion); //no active or deleted keys
 
     //move data
+    final long couponAreaBytes = (long) maxCouponsPerKey_ * Short.BYTES;
     for (int i = 0; i < oldSizeKeys; i++) {
-      if (isBitSet(oldStateArr, i) && (oldCouponsArr[i * maxCouponsPerKey_] != 0)) {
-        final byte[] key =
-            Arrays.copyOfRange(oldKeysArr, i * keySizeBytes_, (i * keySizeBytes_) + keySizeBytes_);
-        final int index = insertKey(key);
-        System.arraycopy(oldCouponsArr, i * maxCouponsPerKey_, couponsArr_,
-            index * maxCouponsPerKey_, maxCouponsPerKey_);
+      final long oldCouponAreaOffset = oldCouponsOffset + (i * couponAreaBytes);
+      if (isBitSet(oldRegion, oldStateOffset, i)
+          && (oldRegion.getShort(oldCouponAreaOffset) != 0)) {
+        final int index = insertKey(getKey(oldRegion, i));
+        oldRegion.copyTo(oldCouponAreaOffset, region_, couponAreaOffset(index), couponAreaBytes);
       }
     }
   }
@@ -275,22 +298,29 @@ final class CouponTraverseMap extends Map {
     int entryIndex = getIndex(hash[0], tableEntries_);
     final int loopIndex = entryIndex;
     do {
-      if (isBitClear(stateArr_, entryIndex)) {
-        System.arraycopy(key, 0, keysArr_, entryIndex * keySizeBytes_, keySizeBytes_);
-        setBit(stateArr_, entryIndex);
-        numActiveKeys_++;
+      if (isBitClear(region_, stateOffset_, entryIndex)) {
+        putKey(entryIndex, key);
+        setBit(region_, stateOffset_, entryIndex);
+        region_.putInt(ACTIVE_ENTRIES_INT, getActiveEntries() + 1);
         return entryIndex;
       }
-      entryIndex = (entryIndex + getStride(hash[1], tableEntries_)) % tableEntries_;
+      entryIndex = (int) ((entryIndex + (long) getStride(hash[1], tableEntries_)) % tableEntries_);
     } while (entryIndex != loopIndex);
     throw new SketchesArgumentException("Key not found and no empty slots!");
   }
 
   private void clearCouponArea(final int entryIndex) {
-    final int couponAreaIndex = entryIndex * maxCouponsPerKey_;
-    for (int i = 0; i < maxCouponsPerKey_; i++) {
-      couponsArr_[couponAreaIndex + i] = 0;
-    }
+    region_.clear(couponAreaOffset(entryIndex), (long) maxCouponsPerKey_ * Short.BYTES);
+  }
+
+  private long couponAreaOffset(final int entryIndex) {
+    return couponsOffset_ + ((long) entryIndex * maxCouponsPerKey_ * Short.BYTES);
+  }
+
+  private long getRegionBytes(final int tableEntries) {
+    return MAP_HEADER_BYTES
+        + ((long) tableEntries * (keySizeBytes_ + (maxCouponsPerKey_ * Short.BYTES)))
+        + bitArrayBytes(tableEntries);
   }
 
   private static final double updateEntrySizeBytes(final int tableEntries, final int keySizeBytes,
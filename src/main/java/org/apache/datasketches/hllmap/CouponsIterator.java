@@ -19,6 +19,8 @@
 
 package org.apache.datasketches.hllmap;
 
+import org.apache.datasketches.memory.Memory;
+
 /**
  * Common iterator class for maps that need one.
  *
@@ -26,15 +28,15 @@ package org.apache.datasketches.hllmap;
  */
 class CouponsIterator {
 
-  private final int offset_;
+  private final long offset_;
   private final int maxEntries_;
-  private final short[] couponsArr_;
+  private final Memory mem_;
   private int index_;
 
-  CouponsIterator(final short[] couponsArr, final int offset, final int maxEntries) {
-    offset_ = offset;
+  CouponsIterator(final Memory mem, final long offsetBytes, final int maxEntries) {
+    offset_ = offsetBytes;
     maxEntries_ = maxEntries;
-    couponsArr_ = couponsArr;
+    mem_ = mem;
     index_ = -1;
   }
 
@@ -45,7 +47,7 @@ class CouponsIterator {
   boolean next() {
     index_++;
     while (index_ < maxEntries_) {
-      if (couponsArr_[offset_ + index_] != 0) { return true; }
+      if (mem_.getShort(offset_ + ((long) index_ << 1)) != 0) { return true; }
       index_++;
     }
     return false;
@@ -56,7 +58,7 @@ class CouponsIterator {
    * @return the value at the current index.
    */
   short getValue() {
-    return couponsArr_[offset_ + index_];
+    return mem_.getShort(offset_ + ((long) index_ << 1));
   }
 
 }
@@ -23,11 +23,11 @@ import static java.lang.Math.log;
 import static java.lang.Math.sqrt;
 import static org.apache.datasketches.common.Util.invPow2;
 
-import java.util.Arrays;
-
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.common.SuppressFBWarnings;
 import org.apache.datasketches.hash.MurmurHash3;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * Implements a key-value map where the value is a compact HLL sketch of size k.
@@ -40,6 +40,8 @@ import org.apache.datasketches.hash.MurmurHash3;
  * estimators and the early estimators in this implementation are quite novel and provide superior
  * error performance over most other HLL implementations.
  *
+ * <p>The region holds the keys, the state array, the HLL arrays, and then the double registers.
+ *
  * @author Lee Rhodes
  * @author KevinLang
  * @author Alexander Saydakov
@@ -47,7 +49,6 @@ import org.apache.datasketches.hash.MurmurHash3;
 final class HllMap extends Map {
   private static final double LOAD_FACTOR = 15.0 / 16.0;
   private static final int HLL_INIT_NUM_ENTRIES = 157;
-  private static final int HLL_INIT_NUM_ENTRIES_ARR_SIZE = (int) Math.ceil(HLL_INIT_NUM_ENTRIES / 8.0);
   private static final float HLL_RESIZE_FACTOR = 2.0F;
   private static final double RSE = sqrt(log(2.0)) / 32.0;
   private final int k_;
@@ -55,47 +56,61 @@ final class HllMap extends Map {
 
   private int tableEntries_;      //Full size of the table
   private int capacityEntries_;   //max capacity entries defined by Load factor
-  private int curCountEntries_;   //current count of valid entries
   private float growthFactor_;    //e.g., 1.2 to 2.0
   private double entrySizeBytes_;
 
-  //Arrays
-  private byte[] keysArr_; //keys of zero are allowed
-  private long[] arrOfHllArr_;
-  private double[] invPow2SumHiArr_;
-  private double[] invPow2SumLoArr_;
-  private double[] hipEstAccumArr_;
-  private byte[] stateArr_;
+  // Offsets of the arrays in the region, keys of zero are allowed
+  private long stateOffset_;
+  private long arrOfHllArrOffset_;
+  private long invPow2SumHiOffset_;
+  private long invPow2SumLoOffset_;
+  private long hipEstAccumOffset_;
 
   /**
    * Private constructor used to set all finals
    * @param keySizeBytes size of key in bytes
    * @param k size of HLL sketch
+   * @param memory supplies the region of this map
+   * @param level the level of this map
    */
-  private HllMap(final int keySizeBytes, final int k) {
-    super(keySizeBytes);
+  private HllMap(final int keySizeBytes, final int k, final MapMemory memory, final int level) {
+    super(keySizeBytes, memory, level);
     k_ = k;
     hllArrLongs_ = (k / 10) + 1;
+    growthFactor_ = HLL_RESIZE_FACTOR;
   }
 
   static HllMap getInstance(final int keySizeBytes, final int k) {
+    return getInstance(keySizeBytes, k, MapMemory.HEAP, 0);
+  }
+
+  static HllMap getInstance(final int keySizeBytes, final int k, final MapMemory memory,
+      final int level) {
+    final HllMap map = new HllMap(keySizeBytes, k, memory, level);
+    map.setRegion(map.newRegion(HLL_INIT_NUM_ENTRIES, map.getRegionBytes(HLL_INIT_NUM_ENTRIES)));
+    return map;
+  }
 
-    final HllMap map = new HllMap(keySizeBytes, k);
-    map.tableEntries_ = HLL_INIT_NUM_ENTRIES;
-    map.capacityEntries_ = (int)(HLL_INIT_NUM_ENTRIES * LOAD_FACTOR);
-    map.curCountEntries_ = 0;
-    map.growthFactor_ = HLL_RESIZE_FACTOR;
-    map.entrySizeBytes_ = updateEntrySizeBytes(map.tableEntries_, keySizeBytes, map.hllArrLongs_);
-
-    map.keysArr_ = new byte[HLL_INIT_NUM_ENTRIES * map.keySizeBytes_];
-    map.arrOfHllArr_ = new long[HLL_INIT_NUM_ENTRIES * map.hllArrLongs_];
-    map.invPow2SumHiArr_ = new double[HLL_INIT_NUM_ENTRIES];
-    map.invPow2SumLoArr_ = new double[HLL_INIT_NUM_ENTRIES];
-    map.hipEstAccumArr_ = new double[HLL_INIT_NUM_ENTRIES];
-    map.stateArr_ = new byte[HLL_INIT_NUM_ENTRIES_ARR_SIZE];
+  static HllMap wrapInstance(final WritableMemory region, final int keySizeBytes, final int k,
+      final MapMemory memory, final int level) {
+    final HllMap map = new HllMap(keySizeBytes, k, memory, level);
+    map.setRegion(region);
     return map;
   }
 
+  @Override
+  void setRegion(final WritableMemory region) {
+    region_ = region;
+    tableEntries_ = region.getInt(TABLE_ENTRIES_INT);
+    capacityEntries_ = (int)(tableEntries_ * LOAD_FACTOR);
+    entrySizeBytes_ = updateEntrySizeBytes(tableEntries_, keySizeBytes_, hllArrLongs_);
+    stateOffset_ = MAP_HEADER_BYTES + ((long) tableEntries_ * keySizeBytes_);
+    arrOfHllArrOffset_ = align8(stateOffset_ + bitArrayBytes(tableEntries_));
+    invPow2SumHiOffset_ = arrOfHllArrOffset_ + ((long) tableEntries_ * hllArrLongs_ * Long.BYTES);
+    invPow2SumLoOffset_ = invPow2SumHiOffset_ + ((long) tableEntries_ * Double.BYTES);
+    hipEstAccumOffset_ = invPow2SumLoOffset_ + ((long) tableEntries_ * Double.BYTES);
+  }
+
   @Override
   double update(final byte[] key, final short coupon) {
     final int entryIndex = findOrInsertKey(key);
@@ -105,74 +120,127 @@ final class HllMap extends Map {
   @Override
   double update(final int entryIndex, final short coupon) {
     updateHll(entryIndex, coupon); //update HLL array, updates HIP
-    return hipEstAccumArr_[entryIndex];
+    return region_.getDouble(hipEstAccumOffset(entryIndex));
   }
 
   @Override
   double getEstimate(final byte[] key) {
     if (key == null) { return Double.NaN; }
-    final int entryIndex = findKey(key);
+    return getEstimate(key, keyHash(key));
+  }
+
+  @Override
+  double getEstimate(final byte[] key, final long[] hash) {
+    final int entryIndex = findKey(key, hash);
     if (entryIndex < 0) {
       return 0;
     }
-    return hipEstAccumArr_[entryIndex];
+    return region_.getDouble(hipEstAccumOffset(entryIndex));
+  }
+
+  @Override
+  double getEntryEstimate(final int entryIndex) {
+    if (isBitClear(region_, stateOffset_, entryIndex)) { return 0; }
+    return region_.getDouble(hipEstAccumOffset(entryIndex));
   }
 
   @Override
-  double getUpperBound(final byte[] key) {
-    return getEstimate(key) * (1 + RSE);
+  double getMaxEstimate() {
+    // not tracked, this is the top level
+    return Double.POSITIVE_INFINITY;
   }
 
   @Override
-  double getLowerBound(final byte[] key) {
-    return getEstimate(key) * (1 - RSE);
+  double getUpperBound(final byte[] key, final long[] hash) {
+    return getEstimate(key, hash) * (1 + RSE);
+  }
+
+  @Override
+  double getLowerBound(final byte[] key, final long[] hash) {
+    return getEstimate(key, hash) * (1 - RSE);
   }
 
   @Override
   void updateEstimate(final int entryIndex, final double estimate) {
-    hipEstAccumArr_[entryIndex] = estimate;
+    region_.putDouble(hipEstAccumOffset(entryIndex), estimate);
+  }
+
+  /**
+   * Merges the HLL array of the given entry of the given map into the HLL array of the given
+   * entry of this map. The HIP accumulators of two streams cannot be combined, so the estimate of
+   * the entry is recomputed from the merged HLL array and the HIP accumulator continues from there
+   * with later updates.
+   * @param entryIndex the index of the entry of this map
+   * @param src the map that holds the entry to merge
+   * @param srcIndex the index of the entry to merge
+   */
+  @SuppressFBWarnings(value = "IM_MULTIPLYING_RESULT_OF_IREM", justification = "False Positive")
+  void merge(final int entryIndex, final HllMap src, final int srcIndex) {
+    double invPow2SumHi = 0;
+    double invPow2SumLo = 0;
+    int numZeros = 0;
+    for (int longIdx = 0; longIdx < hllArrLongs_; longIdx++) {
+      final long hllLongOffset = hllLongOffset(entryIndex, longIdx);
+      final long hllLong = region_.getLong(hllLongOffset);
+      final long srcLong = src.region_.getLong(src.hllLongOffset(srcIndex, longIdx));
+      long newLong = 0;
+      for (int hllIdx = longIdx * 10; hllIdx < Math.min((longIdx + 1) * 10, k_); hllIdx++) {
+        final int shift = ((hllIdx % 10) * 6) & SIX_BIT_MASK;
+        final int value = (int) Math.max((hllLong >>> shift) & SIX_BIT_MASK,
+            (srcLong >>> shift) & SIX_BIT_MASK);
+        if (value == 0) { numZeros++; }
+        if (value < 32) { invPow2SumHi += invPow2(value); }
+        else            { invPow2SumLo += invPow2(value); }
+        newLong |= ((long) value) << shift;
+      }
+      region_.putLong(hllLongOffset, newLong);
+    }
+    region_.putDouble(invPow2SumHiOffset(entryIndex), invPow2SumHi);
+    region_.putDouble(invPow2SumLoOffset(entryIndex), invPow2SumLo);
+    region_.putDouble(hipEstAccumOffset(entryIndex),
+        getRawEstimate(invPow2SumHi + invPow2SumLo, numZeros));
   }
 
   /**
    * Returns the entry index for the given key given the array of keys, if found.
    * Otherwise, returns the one's complement of first empty entry found;
    * @param key the key to search for
+   * @param hash the hash of the key, see {@link Map#keyHash(byte[])}
    * @return the entry index of the given key, or the one's complement of the index if not found.
    */
   @Override
-  final int findKey(final byte[] key) {
-    final int keyLen = key.length;
-    final long[] hash = MurmurHash3.hash(key, SEED);
+  int findKey(final byte[] key, final long[] hash) {
     int entryIndex  = getIndex(hash[0], tableEntries_);
     final int stride = getStride(hash[1], tableEntries_);
     final int loopIndex = entryIndex;
 
     do {
-      if (isBitClear(stateArr_, entryIndex)) { //check if slot is empty
+      if (isBitClear(region_, stateOffset_, entryIndex)) { //check if slot is empty
         return ~entryIndex;
       }
-      if (arraysEqual(key, 0, keysArr_, entryIndex * keyLen, keyLen)) { //check for key match
+      if (isKeyAt(key, entryIndex)) { //check for key match
         return entryIndex;
       }
-      entryIndex = (entryIndex + stride) % tableEntries_;
+      entryIndex = (int) ((entryIndex + (long) stride) % tableEntries_);
     } while (entryIndex != loopIndex);
     throw new SketchesArgumentException("Key not found and no empty slots!");
   }
 
   @Override
-  int findOrInsertKey(final byte[] key) {
-    int entryIndex = findKey(key);
+  int findOrInsertKey(final byte[] key, final long[] hash) {
+    int entryIndex = findKey(key, hash);
     if (entryIndex < 0) { //key not found, initialize new row
       entryIndex = ~entryIndex;
-      System.arraycopy(key, 0, keysArr_, entryIndex * keySizeBytes_, keySizeBytes_);
-      setBit(stateArr_, entryIndex);
-      invPow2SumHiArr_[entryIndex] = k_;
-      invPow2SumLoArr_[entryIndex] = 0;
-      hipEstAccumArr_[entryIndex] = 0;
-      curCountEntries_++;
-      if (curCountEntries_ > capacityEntries_) {
+      putKey(entryIndex, key);
+      setBit(region_, stateOffset_, entryIndex);
+      region_.putDouble(invPow2SumHiOffset(entryIndex), k_);
+      region_.putDouble(invPow2SumLoOffset(entryIndex), 0);
+      region_.putDouble(hipEstAccumOffset(entryIndex), 0);
+      final int curCountEntries = getCurrentCountEntries() + 1;
+      region_.putInt(ACTIVE_ENTRIES_INT, curCountEntries);
+      if (curCountEntries > capacityEntries_) {
         resize();
-        entryIndex = findKey(key);
+        entryIndex = findKey(key, hash);
         assert entryIndex >= 0;
       }
     }
@@ -196,19 +264,12 @@ final class HllMap extends Map {
 
   @Override
   int getCurrentCountEntries() {
-    return curCountEntries_;
+    return region_.getInt(ACTIVE_ENTRIES_INT);
   }
 
   @Override
   long getMemoryUsageBytes() {
-    final long arrays = keysArr_.length
-        + ((long) arrOfHllArr_.length * Long.BYTES)
-        + ((long) invPow2SumLoArr_.length * Double.BYTES)
-        + ((long) invPow2SumHiArr_.length * Double.BYTES)
-        + ((long) hipEstAccumArr_.length * Double.BYTES)
-        + stateArr_.length;
-    final long other = (5L * Integer.BYTES) + Float.BYTES + Double.BYTES;
-    return arrays + other;
+    return region_.getCapacity();
   }
 
   @Override
@@ -231,7 +292,7 @@ final class HllMap extends Map {
 
   @Override
   int getActiveEntries() {
-    return curCountEntries_;
+    return getCurrentCountEntries();
   }
 
   @Override
@@ -244,21 +305,19 @@ final class HllMap extends Map {
    * Only used by resize, where it is known that the key does not exist in the table.
    * Throws an exception if no empty slots.
    * @param key the given key
-   * @param tableEntries prime size of table
-   * @param stateArr the valid bit array
    * @return the first empty slot for the given key
    */
-  private static final int findEmpty(final byte[] key, final int tableEntries, final byte[] stateArr) {
+  private int findEmpty(final byte[] key) {
     final long[] hash = MurmurHash3.hash(key, SEED);
-    int entryIndex  = getIndex(hash[0], tableEntries);
-    final int stride = getStride(hash[1], tableEntries);
+    int entryIndex  = getIndex(hash[0], tableEntries_);
+    final int stride = getStride(hash[1], tableEntries_);
     final int loopIndex = entryIndex;
 
     do {
-      if (isBitClear(stateArr, entryIndex)) { //check if slot is empty
+      if (isBitClear(region_, stateOffset_, entryIndex)) { //check if slot is empty
         return entryIndex;
       }
-      entryIndex = (entryIndex + stride) % tableEntries;
+      entryIndex = (int) ((entryIndex + (long) stride) % tableEntries_);
     } while (entryIndex != loopIndex);
     throw new SketchesArgumentException("No empty slots.");
   }
@@ -272,67 +331,101 @@ final class HllMap extends Map {
     final int longIdx = hllIdx / 10;
     final int shift = ((hllIdx % 10) * 6) & SIX_BIT_MASK;
 
-    long hllLong = arrOfHllArr_[(entryIndex * hllArrLongs_) + longIdx];
+    final long hllLongOffset = hllLongOffset(entryIndex, longIdx);
+    long hllLong = region_.getLong(hllLongOffset);
     final int oldValue = (int)(hllLong >>> shift) & SIX_BIT_MASK;
     if (newValue <= oldValue) { return false; }
     // newValue > oldValue
 
     //update hipEstAccum BEFORE updating invPow2Sum
-    final double invPow2Sum = invPow2SumHiArr_[entryIndex] + invPow2SumLoArr_[entryIndex];
-    final double oneOverQ = k_ / invPow2Sum;
-    hipEstAccumArr_[entryIndex] += oneOverQ;
+    final long hiOffset = invPow2SumHiOffset(entryIndex);
+    final long loOffset = invPow2SumLoOffset(entryIndex);
+    double invPow2SumHi = region_.getDouble(hiOffset);
+    double invPow2SumLo = region_.getDouble(loOffset);
+    final double oneOverQ = k_ / (invPow2SumHi + invPow2SumLo);
+    final long hipOffset = hipEstAccumOffset(entryIndex);
+    region_.putDouble(hipOffset, region_.getDouble(hipOffset) + oneOverQ);
 
     //update invPow2Sum
-    if (oldValue < 32) { invPow2SumHiArr_[entryIndex] -= invPow2(oldValue); }
-    else               { invPow2SumLoArr_[entryIndex] -= invPow2(oldValue); }
-    if (newValue < 32) { invPow2SumHiArr_[entryIndex] += invPow2(newValue); }
-    else               { invPow2SumLoArr_[entryIndex] += invPow2(newValue); }
+    if (oldValue < 32) { invPow2SumHi -= invPow2(oldValue); }
+    else               { invPow2SumLo -= invPow2(oldValue); }
+    if (newValue < 32) { invPow2SumHi += invPow2(newValue); }
+    else               { invPow2SumLo += invPow2(newValue); }
+    region_.putDouble(hiOffset, invPow2SumHi);
+    region_.putDouble(loOffset, invPow2SumLo);
 
     //insert the new value
     hllLong &= ~(0X3FL << shift);  //zero out the 6-bit field
     hllLong |=  ((long)newValue) << shift; //insert
-    arrOfHllArr_[(entryIndex * hllArrLongs_) + longIdx] = hllLong;
+    region_.putLong(hllLongOffset, hllLong);
     return true;
   }
 
   private final void resize() {
     final int newTableEntries = nextPrime((int)(tableEntries_ * growthFactor_));
-    final int newCapacityEntries = (int)(newTableEntries * LOAD_FACTOR);
-
-    final byte[] newKeysArr = new byte[newTableEntries * keySizeBytes_];
-    final long[] newArrOfHllArr = new long[newTableEntries * hllArrLongs_];
-    final double[] newInvPow2Sum1 = new double[newTableEntries];
-    final double[] newInvPow2Sum2 = new double[newTableEntries];
-    final double[] newHipEstAccum = new double[newTableEntries];
-    final byte[] newStateArr = new byte[(int) Math.ceil(newTableEntries / 8.0)];
-
-    for (int oldIndex = 0; oldIndex < tableEntries_; oldIndex++) {
-      if (isBitClear(stateArr_, oldIndex)) { continue; }
+    final WritableMemory newRegion = newRegion(newTableEntries, getRegionBytes(newTableEntries));
+    //the old region is read after the allocation, which may have moved it
+    final Memory oldRegion = region_;
+    final int oldTableEntries = tableEntries_;
+    final long oldStateOffset = stateOffset_;
+    final long oldArrOfHllArrOffset = arrOfHllArrOffset_;
+    final long oldInvPow2SumHiOffset = invPow2SumHiOffset_;
+    final long oldInvPow2SumLoOffset = invPow2SumLoOffset_;
+    final long oldHipEstAccumOffset = hipEstAccumOffset_;
+    setRegion(newRegion);
+    //curCountEntries, growthFactor unchanged
+    region_.putInt(ACTIVE_ENTRIES_INT, oldRegion.getInt(ACTIVE_ENTRIES_INT));
+
+    final long hllArrBytes = (long) hllArrLongs_ * Long.BYTES;
+    for (int oldIndex = 0; oldIndex < oldTableEntries; oldIndex++) {
+      if (isBitClear(oldRegion, oldStateOffset, oldIndex)) { continue; }
       // extract an old key
-      final byte[] key =
-          Arrays.copyOfRange(keysArr_, oldIndex * keySizeBytes_, (oldIndex + 1) * keySizeBytes_);
-      final int newIndex = findEmpty(key, newTableEntries, newStateArr);
-      System.arraycopy(key, 0, newKeysArr, newIndex * keySizeBytes_, keySizeBytes_); //put key
+      final byte[] key = getKey(oldRegion, oldIndex);
+      final int newIndex = findEmpty(key);
+      putKey(newIndex, key);
       //put the rest of the row
-      System.arraycopy(arrOfHllArr_, oldIndex * hllArrLongs_, newArrOfHllArr,
-          newIndex * hllArrLongs_, hllArrLongs_);
-      newInvPow2Sum1[newIndex] = invPow2SumHiArr_[oldIndex];
-      newInvPow2Sum2[newIndex] = invPow2SumLoArr_[oldIndex];
-      newHipEstAccum[newIndex] = hipEstAccumArr_[oldIndex];
-      setBit(newStateArr, newIndex);
+      oldRegion.copyTo(oldArrOfHllArrOffset + (oldIndex * hllArrBytes), region_,
+          arrOfHllArrOffset_ + (newIndex * hllArrBytes), hllArrBytes);
+      final long oldDoubleOffset = (long) oldIndex * Double.BYTES;
+      region_.putDouble(invPow2SumHiOffset(newIndex),
+          oldRegion.getDouble(oldInvPow2SumHiOffset + oldDoubleOffset));
+      region_.putDouble(invPow2SumLoOffset(newIndex),
+          oldRegion.getDouble(oldInvPow2SumLoOffset + oldDoubleOffset));
+      region_.putDouble(hipEstAccumOffset(newIndex),
+          oldRegion.getDouble(oldHipEstAccumOffset + oldDoubleOffset));
+      setBit(region_, stateOffset_, newIndex);
     }
-    //restore into sketch
-    tableEntries_ = newTableEntries;
-    capacityEntries_ = newCapacityEntries;
-    //curCountEntries_, growthFactor_  unchanged
-    entrySizeBytes_ = updateEntrySizeBytes(tableEntries_, keySizeBytes_, hllArrLongs_);
+  }
+
+  //Linear counting while it is the better estimator, otherwise the raw HLL estimator
+  private double getRawEstimate(final double invPow2Sum, final int numZeros) {
+    final double rawEst = ((0.7213 / (1.0 + (1.079 / k_))) * k_ * k_) / invPow2Sum;
+    if ((numZeros > 0) && (rawEst <= (2.5 * k_))) {
+      return k_ * log((double) k_ / numZeros);
+    }
+    return rawEst;
+  }
+
+  private long hllLongOffset(final int entryIndex, final int longIdx) {
+    return arrOfHllArrOffset_ + ((((long) entryIndex * hllArrLongs_) + longIdx) * Long.BYTES);
+  }
+
+  private long invPow2SumHiOffset(final int entryIndex) {
+    return invPow2SumHiOffset_ + ((long) entryIndex * Double.BYTES);
+  }
+
+  private long invPow2SumLoOffset(final int entryIndex) {
+    return invPow2SumLoOffset_ + ((long) entryIndex * Double.BYTES);
+  }
+
+  private long hipEstAccumOffset(final int entryIndex) {
+    return hipEstAccumOffset_ + ((long) entryIndex * Double.BYTES);
+  }
 
-    keysArr_ = newKeysArr;
-    arrOfHllArr_ = newArrOfHllArr;
-    invPow2SumHiArr_ = newInvPow2Sum1; //init to k
-    invPow2SumLoArr_ = newInvPow2Sum2; //init to 0
-    hipEstAccumArr_ = newHipEstAccum;  //init to 0
-    stateArr_ = newStateArr;
+  private long getRegionBytes(final int tableEntries) {
+    final long stateEnd = MAP_HEADER_BYTES + ((long) tableEntries * keySizeBytes_)
+        + bitArrayBytes(tableEntries);
+    return align8(stateEnd) + ((long) tableEntries * (hllArrLongs_ + 3) * Long.BYTES);
   }
 
   private static final double updateEntrySizeBytes(final int tableEntries, final int keySizeBytes,
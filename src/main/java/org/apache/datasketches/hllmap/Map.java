@@ -22,10 +22,17 @@ package org.apache.datasketches.hllmap;
 import java.math.BigInteger;
 
 import org.apache.datasketches.hash.MurmurHash3;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * Base class and API for all the maps.
  *
+ * <p>Each map holds its table in a region of memory, which starts with a header of
+ * {@link #MAP_HEADER_BYTES} followed by the keys. The rest of the layout is up to the map.
+ * The region comes from a {@link MapMemory}, on the heap or in the memory of a direct
+ * {@link UniqueCountMap}, so a map can be wrapped again from its region without a rebuild.</p>
+ *
  * @author Lee Rhodes
  * @author Alexander Saydakov
  * @author Kevin Lang
@@ -44,12 +51,69 @@ abstract class Map {
   static final double COUPON_MAP_SHRINK_TRIGGER_FACTOR = 0.5;
   static final double COUPON_MAP_GROW_TRIGGER_FACTOR = 15.0 / 16.0;
   static final double COUPON_MAP_TARGET_FILL_FACTOR = 2.0 / 3.0;
-  static final int COUPON_MAP_MIN_NUM_ENTRIES_ARR_SIZE = (int)Math.ceil(COUPON_MAP_MIN_NUM_ENTRIES / 8.0);
+
+  // Layout of the header of a region
+  static final int TABLE_ENTRIES_INT = 0;
+  static final int ACTIVE_ENTRIES_INT = 4;
+  static final int DELETED_ENTRIES_INT = 8;
+  static final int MAX_ESTIMATE_FLOAT = 12;
+  static final int MAP_HEADER_BYTES = 16;
 
   final int keySizeBytes_;
+  final MapMemory memory_;
+  final int level_;
+  WritableMemory region_;
 
-  Map(final int keySizeBytes) {
+  Map(final int keySizeBytes, final MapMemory memory, final int level) {
     keySizeBytes_ = keySizeBytes;
+    memory_ = memory;
+    level_ = level;
+  }
+
+  /**
+   * Points this map at the given region, which holds its table.
+   * @param region the given region
+   */
+  abstract void setRegion(WritableMemory region);
+
+  /**
+   * Returns a new, zeroed region for a table with the given number of entries, which has the
+   * number of entries in its header. Any region may be moved by this call, including the
+   * current region of this map.
+   * @param tableEntries the number of entries of the new table
+   * @param bytes the size of the new region in bytes
+   * @return a new region
+   */
+  final WritableMemory newRegion(final int tableEntries, final long bytes) {
+    final WritableMemory region = memory_.allocate(level_, bytes);
+    region.putInt(TABLE_ENTRIES_INT, tableEntries);
+    return region;
+  }
+
+  final boolean isKeyAt(final byte[] key, final int entryIndex) {
+    final long offset = MAP_HEADER_BYTES + ((long) entryIndex * keySizeBytes_);
+    for (int i = 0; i < keySizeBytes_; i++) {
+      if (key[i] != region_.getByte(offset + i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  final void putKey(final int entryIndex, final byte[] key) {
+    region_.putByteArray(MAP_HEADER_BYTES + ((long) entryIndex * keySizeBytes_), key, 0,
+        keySizeBytes_);
+  }
+
+  final byte[] getKey(final int entryIndex) {
+    return getKey(region_, entryIndex);
+  }
+
+  final byte[] getKey(final Memory region, final int entryIndex) {
+    final byte[] key = new byte[keySizeBytes_];
+    region.getByteArray(MAP_HEADER_BYTES + ((long) entryIndex * keySizeBytes_), key, 0,
+        keySizeBytes_);
+    return key;
   }
 
   /**
@@ -77,7 +141,17 @@ abstract class Map {
    * @param key the given key
    * @return the estimate of the cardinality of identifiers associated with the given key.
    */
-  abstract double getEstimate(byte[] key);
+  double getEstimate(final byte[] key) {
+    return getEstimate(key, keyHash(key));
+  }
+
+  /**
+   * Same as {@link #getEstimate(byte[])}, given the hash of the key.
+   * @param key the given key
+   * @param hash the hash of the key, see {@link #keyHash(byte[])}
+   * @return the estimate of the cardinality of identifiers associated with the given key.
+   */
+  abstract double getEstimate(byte[] key, long[] hash);
 
   /**
    * Update the internal estimate at the given index
@@ -93,7 +167,11 @@ abstract class Map {
    * @return the upper bound cardinality with respect to {@link #getEstimate(byte[])} associated
    * with the given key.
    */
-  abstract double getUpperBound(byte[] key);
+  final double getUpperBound(final byte[] key) {
+    return getUpperBound(key, keyHash(key));
+  }
+
+  abstract double getUpperBound(byte[] key, long[] hash);
 
   /**
    * Returns the lower bound cardinality with respect to {@link #getEstimate(byte[])} associated
@@ -102,11 +180,37 @@ abstract class Map {
    * @return the lower bound cardinality with respect to {@link #getEstimate(byte[])} associated
    * with the given key.
    */
-  abstract double getLowerBound(byte[] key);
+  final double getLowerBound(final byte[] key) {
+    return getLowerBound(key, keyHash(key));
+  }
 
-  abstract int findKey(byte[] key);
+  abstract double getLowerBound(byte[] key, long[] hash);
 
-  abstract int findOrInsertKey(byte[] key);
+  /**
+   * Returns the estimate of the key at the given index, or zero if no key is active at the index.
+   * Used to scan the keys of this map.
+   * @param index the given index
+   * @return the estimate of the key at the given index, or zero.
+   */
+  abstract double getEntryEstimate(int index);
+
+  /**
+   * Returns an upper bound of the estimates of all keys that are, or have been, in this map.
+   * @return an upper bound of the estimates of the keys of this map
+   */
+  abstract double getMaxEstimate();
+
+  final int findKey(final byte[] key) {
+    return findKey(key, keyHash(key));
+  }
+
+  abstract int findKey(byte[] key, long[] hash);
+
+  final int findOrInsertKey(final byte[] key) {
+    return findOrInsertKey(key, keyHash(key));
+  }
+
+  abstract int findOrInsertKey(byte[] key, long[] hash);
 
   abstract CouponsIterator getCouponsIterator(int index);
 
@@ -138,29 +242,6 @@ abstract class Map {
    */
   void deleteKey(final int index) {}
 
-  /**
-   * Returns <code>true</code> if the two specified sub-arrays of bytes are <i>equal</i> to one another.
-   * Two arrays are considered equal if all corresponding pairs of elements in the two arrays are
-   * equal. In other words, two arrays are equal if and only if they contain the same elements
-   * in the same order.
-   *
-   * @param a one sub-array to be tested for equality
-   * @param offsetA the offset in bytes of the start of sub-array <i>a</i>.
-   * @param b the other sub-array to be tested for equality
-   * @param offsetB the offset in bytes of the start of sub-array <i>b</i>.
-   * @param length the length in bytes of the two sub-arrays.
-   * @return <code>true</code> if the two sub-arrays are equal
-   */
-  static final boolean arraysEqual(final byte[] a, final int offsetA, final byte[] b,
-      final int offsetB, final int length) {
-    for (int i = 0; i < length; i++) {
-      if (a[i + offsetA] != b[i + offsetB]) {
-        return false;
-      }
-    }
-    return true;
-  }
-
   /**
    * Returns the HLL array index and value as a 16-bit coupon given the identifier to be hashed
    * and k.
@@ -175,6 +256,16 @@ abstract class Map {
     return (value << 10) | hllIdx;
   }
 
+  /**
+   * Returns the hash of the given key, which every level of a map uses to find the key. A caller
+   * that goes through several levels computes it once and passes it down.
+   * @param key the given key
+   * @return the 128-bit hash of the key
+   */
+  static final long[] keyHash(final byte[] key) {
+    return MurmurHash3.hash(key, SEED);
+  }
+
   static final int coupon16Value(final int coupon) {
     return (coupon >>> 10) & SIX_BIT_MASK;
   }
@@ -187,28 +278,31 @@ abstract class Map {
     return (int) ((hash >>> 1) % (tableEntries - 2L) + 1L);
   }
 
-  static boolean isBitSet(final byte[] byteArr, final int bitIndex) {
-    final int byteIndex = bitIndex / 8;
-    final int mask = 1 << (bitIndex % 8);
-    return (byteArr[byteIndex] & mask) > 0;
+  static boolean isBitSet(final Memory mem, final long offset, final int bitIndex) {
+    final int mask = 1 << (bitIndex & 7);
+    return (mem.getByte(offset + (bitIndex >>> 3)) & mask) != 0;
+  }
+
+  static boolean isBitClear(final Memory mem, final long offset, final int bitIndex) {
+    return !isBitSet(mem, offset, bitIndex);
+  }
+
+  static void clearBit(final WritableMemory mem, final long offset, final int bitIndex) {
+    final long byteOffset = offset + (bitIndex >>> 3);
+    mem.putByte(byteOffset, (byte) (mem.getByte(byteOffset) & ~(1 << (bitIndex & 7))));
   }
 
-  static boolean isBitClear(final byte[] byteArr, final int bitIndex) {
-    final int byteIndex = bitIndex / 8;
-    final int mask = 1 << (bitIndex % 8);
-    return (byteArr[byteIndex] & mask) == 0;
+  static void setBit(final WritableMemory mem, final long offset, final int bitIndex) {
+    final long byteOffset = offset + (bitIndex >>> 3);
+    mem.putByte(byteOffset, (byte) (mem.getByte(byteOffset) | (1 << (bitIndex & 7))));
   }
 
-  static void clearBit(final byte[] byteArr, final int index) {
-    final int byteIndex = index / 8;
-    final int mask = 1 << (index % 8);
-    byteArr[byteIndex] &= ~mask;
+  static long bitArrayBytes(final int bits) {
+    return (bits + 7L) >>> 3;
   }
 
-  static void setBit(final byte[] bits, final int index) {
-    final int byteIndex = index / 8;
-    final int mask = 1 << (index % 8);
-    bits[byteIndex] |= mask;
+  static long align8(final long bytes) {
+    return (bytes + 7L) & ~7L;
   }
 
   /**
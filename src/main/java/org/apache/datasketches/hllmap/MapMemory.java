@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hllmap;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.MemoryRequestServer;
+import org.apache.datasketches.memory.WritableMemory;
+
+/**
+ * Supplies the regions of memory that hold the tables of the internal maps.
+ *
+ * <p>On the heap each region is a separate WritableMemory. A direct {@link UniqueCountMap} keeps
+ * all of its regions in one WritableMemory, which may be off-heap or memory-mapped, behind a
+ * header with the offset and size of the region of each level. Regions are carved from the end
+ * of the used space. The space of a region that has been replaced by a resize is reclaimed only
+ * when the memory runs out, at which point the live regions are compacted into a larger
+ * WritableMemory obtained from the MemoryRequestServer given to the map. Without one the map
+ * cannot grow, so a memory-mapped map is never moved silently onto the heap.</p>
+ *
+ * <p>The serialized form of a map is the same, with the regions packed one after the other, so it
+ * can be heapified or wrapped as a direct map.</p>
+ *
+ * <p>Header layout, all little-endian:</p>
+ * <pre>
+ * Byte 0       : Serialization version
+ * Byte 1       : Number of levels
+ * Bytes 4-7    : Key size in bytes
+ * Bytes 8-15   : End of the used space
+ * Bytes 16+    : For each level, the offset and the size in bytes of its region, or zeros
+ * </pre>
+ */
+final class MapMemory {
+  static final int SER_VER = 1;
+  private static final int SER_VER_BYTE = 0;
+  private static final int NUM_LEVELS_BYTE = 1;
+  private static final int KEY_SIZE_BYTES_INT = 4;
+  private static final int END_OFFSET_LONG = 8;
+  private static final int LEVELS_START = 16;
+  private static final int LEVEL_BYTES = 16;
+
+  /** Allocates each region on the java heap */
+  static final MapMemory HEAP = new MapMemory(null, null, null);
+
+  private final Map[] maps_;
+  private WritableMemory wmem_;
+  private final MemoryRequestServer memReqSvr_;
+
+  private MapMemory(final WritableMemory wmem, final MemoryRequestServer memReqSvr,
+      final Map[] maps) {
+    wmem_ = wmem;
+    memReqSvr_ = memReqSvr;
+    maps_ = maps;
+  }
+
+  /**
+   * Initializes the header of the given memory for an empty direct map.
+   * @param wmem the memory to hold all levels of the map
+   * @param memReqSvr the MemoryRequestServer to request more memory, or null if the map must not
+   * grow beyond wmem.
+   * @param maps the levels of the map, which are re-pointed when the regions move
+   * @param keySizeBytes the key size in bytes
+   * @return a new MapMemory for the given memory
+   */
+  static MapMemory initialize(final WritableMemory wmem, final MemoryRequestServer memReqSvr,
+      final Map[] maps, final int keySizeBytes) {
+    final long headerBytes = getHeaderBytes(maps.length);
+    if (wmem.getCapacity() < headerBytes) {
+      throw new SketchesArgumentException(
+          "Memory capacity must be at least " + headerBytes + ": " + wmem.getCapacity());
+    }
+    putHeader(wmem, maps.length, keySizeBytes);
+    return new MapMemory(wmem, memReqSvr, maps);
+  }
+
+  /**
+   * Checks the header of the given memory, which holds a direct map.
+   * @param wmem the memory that holds all levels of the map
+   * @param memReqSvr the MemoryRequestServer to request more memory, or null if the map must not
+   * grow beyond wmem.
+   * @param maps the levels of the map, which are re-pointed when the regions move
+   * @return a new MapMemory for the given memory
+   */
+  static MapMemory wrap(final WritableMemory wmem, final MemoryRequestServer memReqSvr,
+      final Map[] maps) {
+    checkHeader(wmem, maps.length);
+    return new MapMemory(wmem, memReqSvr, maps);
+  }
+
+  /**
+   * Checks the header of the given memory, which holds a direct or a serialized map.
+   * @param mem the memory that holds all levels of the map
+   * @param numLevels the expected number of levels
+   */
+  static void checkHeader(final Memory mem, final int numLevels) {
+    final long headerBytes = getHeaderBytes(numLevels);
+    if (mem.getCapacity() < headerBytes) {
+      throw new SketchesArgumentException("Memory too small for a UniqueCountMap.");
+    }
+    final int serVer = mem.getByte(SER_VER_BYTE);
+    if (serVer != SER_VER) {
+      throw new SketchesArgumentException("Possible corruption: Invalid serialization version: "
+          + serVer);
+    }
+    final int memLevels = mem.getByte(NUM_LEVELS_BYTE);
+    if (memLevels != numLevels) {
+      throw new SketchesArgumentException("Possible corruption: Invalid number of levels: "
+          + memLevels);
+    }
+    final long end = mem.getLong(END_OFFSET_LONG);
+    if ((end < headerBytes) || (end > mem.getCapacity())) {
+      throw new SketchesArgumentException("Possible corruption: Invalid end of used space: " + end);
+    }
+  }
+
+  static int getKeySizeBytes(final Memory mem) {
+    return mem.getInt(KEY_SIZE_BYTES_INT);
+  }
+
+  /**
+   * Returns the offset of the region of the given level in the given memory, or zero if the
+   * level has none.
+   * @param mem the memory that holds all levels of the map
+   * @param level the given level
+   * @return the offset of the region of the given level, or zero.
+   */
+  static long getRegionOffset(final Memory mem, final int level) {
+    final long offset = mem.getLong(levelOffset(level));
+    if ((offset != 0)
+        && ((offset + getRegionBytes(mem, level)) > mem.getLong(END_OFFSET_LONG))) {
+      throw new SketchesArgumentException("Possible corruption: Invalid region of level " + level);
+    }
+    return offset;
+  }
+
+  static long getRegionBytes(final Memory mem, final int level) {
+    return mem.getLong(levelOffset(level) + Long.BYTES);
+  }
+
+  /**
+   * Serializes the given levels in the format of a direct map, with the regions of the levels
+   * packed one after the other.
+   * @param maps the levels of the map
+   * @param keySizeBytes the key size in bytes
+   * @return the serialized map
+   */
+  static byte[] toByteArray(final Map[] maps, final int keySizeBytes) {
+    long bytes = getHeaderBytes(maps.length);
+    for (int level = 0; level < maps.length; level++) {
+      if (maps[level] != null) { bytes += Map.align8(maps[level].region_.getCapacity()); }
+    }
+    if (bytes > Integer.MAX_VALUE) {
+      throw new SketchesArgumentException(
+          "Map too large for a byte array, use a direct UniqueCountMap: " + bytes);
+    }
+    final byte[] byteArr = new byte[(int) bytes];
+    final WritableMemory wmem = WritableMemory.writableWrap(byteArr);
+    putHeader(wmem, maps.length, keySizeBytes);
+    long end = getHeaderBytes(maps.length);
+    for (int level = 0; level < maps.length; level++) {
+      if (maps[level] == null) { continue; }
+      final Memory region = maps[level].region_;
+      final long regionBytes = Map.align8(region.getCapacity());
+      region.copyTo(0, wmem, end, region.getCapacity());
+      wmem.putLong(levelOffset(level), end);
+      wmem.putLong(levelOffset(level) + Long.BYTES, regionBytes);
+      end += regionBytes;
+    }
+    wmem.putLong(END_OFFSET_LONG, end);
+    return byteArr;
+  }
+
+  /**
+   * Returns the region of the given level, or null if the level has none.
+   * @param level the given level
+   * @return the region of the given level, or null.
+   */
+  WritableMemory getRegion(final int level) {
+    final long offset = getRegionOffset(wmem_, level);
+    if (offset == 0) { return null; }
+    return wmem_.writableRegion(offset, getRegionBytes(wmem_, level));
+  }
+
+  /**
+   * Returns a new, zeroed region of the given size, which becomes the region of the given level.
+   * The current region of the level stays valid until the next allocation, but any region may be
+   * moved by this call, so a map must re-read its region after allocating.
+   * @param level the level that the region is for
+   * @param bytes the size of the region in bytes
+   * @return a new, zeroed region.
+   */
+  WritableMemory allocate(final int level, final long bytes) {
+    if (wmem_ == null) {
+      if (bytes > Integer.MAX_VALUE) {
+        throw new SketchesArgumentException(
+            "Map level too large for the heap, use a direct UniqueCountMap: " + bytes);
+      }
+      return WritableMemory.allocate((int) bytes);
+    }
+    final long alignedBytes = Map.align8(bytes);
+    if ((wmem_.getLong(END_OFFSET_LONG) + alignedBytes) > wmem_.getCapacity()) {
+      compact(alignedBytes);
+    }
+    final long offset = wmem_.getLong(END_OFFSET_LONG);
+    wmem_.putLong(END_OFFSET_LONG, offset + alignedBytes);
+    wmem_.putLong(levelOffset(level), offset);
+    wmem_.putLong(levelOffset(level) + Long.BYTES, alignedBytes);
+    final WritableMemory region = wmem_.writableRegion(offset, alignedBytes);
+    region.clear();
+    return region;
+  }
+
+  /**
+   * Returns the memory that holds all levels, or null if the levels are on the heap.
+   * @return the memory that holds all levels, or null.
+   */
+  WritableMemory getMemory() {
+    return wmem_;
+  }
+
+  //Moves the live regions to the start of a new memory with room for the given bytes.
+  private void compact(final long bytes) {
+    final long headerBytes = getHeaderBytes(maps_.length);
+    long liveBytes = headerBytes;
+    for (int level = 0; level < maps_.length; level++) {
+      liveBytes += wmem_.getLong(levelOffset(level) + Long.BYTES);
+    }
+    //Only an explicit server: the one of wmem could move a mapped map onto the heap
+    if (memReqSvr_ == null) {
+      throw new SketchesArgumentException(
+          "A request for more memory has been denied, "
+          + "or a MemoryRequestServer has not been provided. Must abort. ");
+    }
+    final long reqBytes = Math.max(wmem_.getCapacity(), 2 * (liveBytes + bytes));
+    final WritableMemory newMem = memReqSvr_.request(wmem_, reqBytes);
+
+    wmem_.copyTo(0, newMem, 0, headerBytes);
+    long end = headerBytes;
+    for (int level = 0; level < maps_.length; level++) {
+      final long offset = wmem_.getLong(levelOffset(level));
+      if (offset == 0) { continue; }
+      final long regionBytes = wmem_.getLong(levelOffset(level) + Long.BYTES);
+      wmem_.copyTo(offset, newMem, end, regionBytes);
+      newMem.putLong(levelOffset(level), end);
+      if (maps_[level] != null) { maps_[level].setRegion(newMem.writableRegion(end, regionBytes)); }
+      end += regionBytes;
+    }
+    newMem.putLong(END_OFFSET_LONG, end);
+
+    memReqSvr_.requestClose(wmem_, newMem);
+    wmem_ = newMem;
+  }
+
+  private static void putHeader(final WritableMemory wmem, final int numLevels,
+      final int keySizeBytes) {
+    final long headerBytes = getHeaderBytes(numLevels);
+    wmem.clear(0, headerBytes);
+    wmem.putByte(SER_VER_BYTE, (byte) SER_VER);
+    wmem.putByte(NUM_LEVELS_BYTE, (byte) numLevels);
+    wmem.putInt(KEY_SIZE_BYTES_INT, keySizeBytes);
+    wmem.putLong(END_OFFSET_LONG, headerBytes);
+  }
+
+  private static long getHeaderBytes(final int numLevels) {
+    return LEVELS_START + ((long) numLevels * LEVEL_BYTES);
+  }
+
+  private static int levelOffset(final int level) {
+    return LEVELS_START + (level * LEVEL_BYTES);
+  }
+
+}
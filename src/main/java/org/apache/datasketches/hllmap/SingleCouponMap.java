@@ -19,10 +19,10 @@
 
 package org.apache.datasketches.hllmap;
 
-import java.util.Arrays;
-
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.hash.MurmurHash3;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * Implements a key-value map where the value is a single coupon or a map reference.
@@ -30,6 +30,8 @@ import org.apache.datasketches.hash.MurmurHash3;
  * This map is implemented with a prime sized Open Address, Double Hash, with a 1-bit state array,
  * which indicates the contents of the value.
  *
+ * <p>The region holds the keys, then the 16-bit coupons, then the state array.
+ *
  * @author Lee Rhodes
  * @author Alexander Saydakov
  * @author Kevin Lang
@@ -39,12 +41,10 @@ final class SingleCouponMap extends Map {
 
   private int tableEntries_;
   private int capacityEntries_;
-  private int curCountEntries_;
   private double entrySizeBytes_;
 
-  // Arrays
-  private byte[] keysArr_;
-  private short[] couponsArr_;
+  // Offsets of the arrays in the region
+  private long couponsOffset_;
 
   /**
    * <ul><li>state: 0: empty or valid; empty if coupon is 0, otherwise valid.</li>
@@ -52,27 +52,41 @@ final class SingleCouponMap extends Map {
    * reference instead.</li>
    * </ul>
    */
-  private byte[] stateArr_;
+  private long stateOffset_;
 
-  private SingleCouponMap(final int keySizeBytes) {
-    super(keySizeBytes);
+  private SingleCouponMap(final int keySizeBytes, final MapMemory memory, final int level) {
+    super(keySizeBytes, memory, level);
   }
 
   static SingleCouponMap getInstance(final int initialNumEntries, final int keySizeBytes) {
-    final int tableEntries = nextPrime(initialNumEntries);
+    return getInstance(initialNumEntries, keySizeBytes, MapMemory.HEAP, 0);
+  }
 
-    final SingleCouponMap map = new SingleCouponMap(keySizeBytes);
-    map.tableEntries_ = tableEntries;
-    map.capacityEntries_ = (int)(tableEntries * COUPON_MAP_GROW_TRIGGER_FACTOR);
-    map.curCountEntries_ = 0;
-    map.entrySizeBytes_ = updateEntrySizeBytes(tableEntries, keySizeBytes);
+  static SingleCouponMap getInstance(final int initialNumEntries, final int keySizeBytes,
+      final MapMemory memory, final int level) {
+    final int tableEntries = nextPrime(initialNumEntries);
+    final SingleCouponMap map = new SingleCouponMap(keySizeBytes, memory, level);
+    map.setRegion(map.newRegion(tableEntries, getRegionBytes(tableEntries, keySizeBytes)));
+    return map;
+  }
 
-    map.keysArr_ = new byte[tableEntries * map.keySizeBytes_];
-    map.couponsArr_ = new short[tableEntries];
-    map.stateArr_ = new byte[(int) Math.ceil(tableEntries / 8.0)];
+  static SingleCouponMap wrapInstance(final WritableMemory region, final int keySizeBytes,
+      final MapMemory memory, final int level) {
+    final SingleCouponMap map = new SingleCouponMap(keySizeBytes, memory, level);
+    map.setRegion(region);
     return map;
   }
 
+  @Override
+  void setRegion(final WritableMemory region) {
+    region_ = region;
+    tableEntries_ = region.getInt(TABLE_ENTRIES_INT);
+    capacityEntries_ = (int)(tableEntries_ * COUPON_MAP_GROW_TRIGGER_FACTOR);
+    entrySizeBytes_ = updateEntrySizeBytes(tableEntries_, keySizeBytes_);
+    couponsOffset_ = MAP_HEADER_BYTES + ((long) tableEntries_ * keySizeBytes_);
+    stateOffset_ = couponsOffset_ + ((long) tableEntries_ * Short.BYTES);
+  }
+
   @Override
   double update(final byte[] key, final short coupon) {
     final int entryIndex = findOrInsertKey(key);
@@ -81,35 +95,47 @@ final class SingleCouponMap extends Map {
 
   @Override
   double update(final int entryIndex, final short coupon) {
-    if (couponsArr_[entryIndex] == 0) {
-      couponsArr_[entryIndex] = coupon;
+    final long couponOffset = couponOffset(entryIndex);
+    final short curCoupon = region_.getShort(couponOffset);
+    if (curCoupon == 0) {
+      region_.putShort(couponOffset, coupon);
       return 1;
     }
     if (isCoupon(entryIndex)) {
-      if (couponsArr_[entryIndex] == coupon) { //duplicate
+      if (curCoupon == coupon) { //duplicate
         return 1;
       }
       return 0; // signal to promote
     }
-    return -couponsArr_[entryIndex]; // negative level number
+    return -curCoupon; // negative level number
   }
 
   @Override
-  double getEstimate(final byte[] key) {
-    final int entryIndex = findKey(key);
+  double getEstimate(final byte[] key, final long[] hash) {
+    final int entryIndex = findKey(key, hash);
     if (entryIndex < 0) { return 0; }
     if (isCoupon(entryIndex)) { return 1; }
     return -getCoupon(entryIndex); // negative: level #, zero: signal to promote
   }
 
   @Override
-  double getUpperBound(final byte[] key) {
-    return getEstimate(key) * (1 + RSE);
+  double getEntryEstimate(final int entryIndex) {
+    return ((getCoupon(entryIndex) != 0) && isCoupon(entryIndex)) ? 1 : 0;
+  }
+
+  @Override
+  double getMaxEstimate() {
+    return 1;
   }
 
   @Override
-  double getLowerBound(final byte[] key) {
-    return getEstimate(key) * (1 - RSE);
+  double getUpperBound(final byte[] key, final long[] hash) {
+    return getEstimate(key, hash) * (1 + RSE);
+  }
+
+  @Override
+  double getLowerBound(final byte[] key, final long[] hash) {
+    return getEstimate(key, hash) * (1 - RSE);
   }
 
   /**
@@ -117,46 +143,46 @@ final class SingleCouponMap extends Map {
    * If not found, returns one's complement entryIndex
    * of an empty slot for insertion, which may be over a deleted key.
    * @param key the given key
+   * @param hash the hash of the key, see {@link Map#keyHash(byte[])}
    * @return the entryIndex
    */
   @Override
-  int findKey(final byte[] key) {
-    final long[] hash = MurmurHash3.hash(key, SEED);
+  int findKey(final byte[] key, final long[] hash) {
     int entryIndex = getIndex(hash[0], tableEntries_);
     final int stride = getStride(hash[1], tableEntries_);
     final int loopIndex = entryIndex;
 
     do {
-      if (couponsArr_[entryIndex] == 0) {
+      if (getCoupon(entryIndex) == 0) {
         return ~entryIndex; //empty
       }
-      if (Map.arraysEqual(key, 0, keysArr_, entryIndex * keySizeBytes_, keySizeBytes_)) {
+      if (isKeyAt(key, entryIndex)) {
         return entryIndex;
       }
-      entryIndex = (entryIndex + stride) % tableEntries_;
+      entryIndex = (int) ((entryIndex + (long) stride) % tableEntries_);
     } while (entryIndex != loopIndex);
     throw new SketchesArgumentException("Key not found and no empty slots!");
   }
 
   @Override
-  int findOrInsertKey(final byte[] key) {
-    int entryIndex = findKey(key);
+  int findOrInsertKey(final byte[] key, final long[] hash) {
+    int entryIndex = findKey(key, hash);
     if (entryIndex < 0) {
-      if (curCountEntries_ + 1 > capacityEntries_) {
+      if ((getCurrentCountEntries() + 1) > capacityEntries_) {
         resize();
-        entryIndex = findKey(key);
+        entryIndex = findKey(key, hash);
         assert entryIndex < 0;
       }
       entryIndex = ~entryIndex;
-      System.arraycopy(key, 0, keysArr_, entryIndex * keySizeBytes_, keySizeBytes_);
-      curCountEntries_++;
+      putKey(entryIndex, key);
+      region_.putInt(ACTIVE_ENTRIES_INT, getCurrentCountEntries() + 1);
     }
     return entryIndex;
   }
 
   @Override
   CouponsIterator getCouponsIterator(final int entryIndex) {
-    return new CouponsIterator(couponsArr_, entryIndex, 1);
+    return new CouponsIterator(region_, couponOffset(entryIndex), 1);
   }
 
   @Override
@@ -171,7 +197,7 @@ final class SingleCouponMap extends Map {
 
   @Override
   int getActiveEntries() {
-    return curCountEntries_;
+    return getCurrentCountEntries();
   }
 
   @Override
@@ -180,25 +206,25 @@ final class SingleCouponMap extends Map {
   }
 
   boolean isCoupon(final int entryIndex) {
-    return !isBitSet(stateArr_, entryIndex);
+    return !isBitSet(region_, stateOffset_, entryIndex);
   }
 
   short getCoupon(final int entryIndex) {
-    return couponsArr_[entryIndex];
+    return region_.getShort(couponOffset(entryIndex));
   }
 
   void setCoupon(final int entryIndex, final short coupon, final boolean isLevel) {
-    couponsArr_[entryIndex] = coupon;
+    region_.putShort(couponOffset(entryIndex), coupon);
     if (isLevel) {
-      setBit(stateArr_, entryIndex);
+      setBit(region_, stateOffset_, entryIndex);
     } else {
-      clearBit(stateArr_, entryIndex);
+      clearBit(region_, stateOffset_, entryIndex);
     }
   }
 
   void setLevel(final int entryIndex, final int level) {
-    couponsArr_[entryIndex] = (short) level;
-    setBit(stateArr_, entryIndex);
+    region_.putShort(couponOffset(entryIndex), (short) level);
+    setBit(region_, stateOffset_, entryIndex);
   }
 
   @Override
@@ -218,56 +244,61 @@ final class SingleCouponMap extends Map {
 
   @Override
   int getCurrentCountEntries() {
-    return curCountEntries_;
+    return region_.getInt(ACTIVE_ENTRIES_INT);
   }
 
   @Override
   long getMemoryUsageBytes() {
-    final long arrays = keysArr_.length
-        + (long)couponsArr_.length * Short.BYTES
-        + stateArr_.length;
-    final long other = 4 * 4 + 8;
-    return arrays + other;
+    return region_.getCapacity();
+  }
+
+  private long couponOffset(final int entryIndex) {
+    return couponsOffset_ + ((long) entryIndex * Short.BYTES);
   }
 
   private void resize() {
-    final byte[] oldKeysArr = keysArr_;
-    final short[] oldCouponsArr = couponsArr_;
-    final byte[] oldStateArr = stateArr_;
+    final int curCountEntries = getCurrentCountEntries();
+    final int newTableEntries = nextPrime((int) (curCountEntries / COUPON_MAP_TARGET_FILL_FACTOR));
+    final WritableMemory newRegion =
+        newRegion(newTableEntries, getRegionBytes(newTableEntries, keySizeBytes_));
+    //the old region is read after the allocation, which may have moved it
+    final Memory oldRegion = region_;
     final int oldTableEntries = tableEntries_;
-    tableEntries_ = nextPrime((int) (curCountEntries_ / COUPON_MAP_TARGET_FILL_FACTOR));
-    capacityEntries_ = (int)(tableEntries_ * COUPON_MAP_GROW_TRIGGER_FACTOR);
-    keysArr_ = new byte[tableEntries_ * keySizeBytes_];
-    couponsArr_ = new short[tableEntries_];
-    stateArr_ = new byte[(int) Math.ceil(tableEntries_ / 8.0)];
-    entrySizeBytes_ = updateEntrySizeBytes(tableEntries_, keySizeBytes_);
+    final long oldCouponsOffset = couponsOffset_;
+    final long oldStateOffset = stateOffset_;
+    setRegion(newRegion);
+    region_.putInt(ACTIVE_ENTRIES_INT, curCountEntries);
     //move the data
     for (int i = 0; i < oldTableEntries; i++) {
-      if (oldCouponsArr[i] != 0) {
-        final byte[] key =
-            Arrays.copyOfRange(oldKeysArr, i * keySizeBytes_, i * keySizeBytes_ + keySizeBytes_);
-        insertEntry(key, oldCouponsArr[i], isBitSet(oldStateArr, i));
+      final short coupon = oldRegion.getShort(oldCouponsOffset + ((long) i * Short.BYTES));
+      if (coupon != 0) {
+        insertEntry(getKey(oldRegion, i), coupon, isBitSet(oldRegion, oldStateOffset, i));
       }
     }
   }
 
   // for internal use during resize, so no resize check here
-  private void insertEntry(final byte[] key, final int coupon, final boolean setStateOne) {
+  private void insertEntry(final byte[] key, final short coupon, final boolean setStateOne) {
     final long[] hash = MurmurHash3.hash(key, SEED);
     int entryIndex = getIndex(hash[0], tableEntries_);
     final int stride = getStride(hash[1], tableEntries_);
     final int loopIndex = entryIndex;
     do {
-      if (couponsArr_[entryIndex] == 0) {
-        System.arraycopy(key, 0, keysArr_, entryIndex * keySizeBytes_, keySizeBytes_);
-        setCoupon(entryIndex, (short)coupon, setStateOne);
+      if (getCoupon(entryIndex) == 0) {
+        putKey(entryIndex, key);
+        setCoupon(entryIndex, coupon, setStateOne);
         return;
       }
-      entryIndex = (entryIndex + stride) % tableEntries_;
+      entryIndex = (int) ((entryIndex + (long) stride) % tableEntries_);
     } while (entryIndex != loopIndex);
     throw new SketchesArgumentException("Key not found and no empty slots!");
   }
 
+  private static long getRegionBytes(final int tableEntries, final int keySizeBytes) {
+    return MAP_HEADER_BYTES + ((long) tableEntries * (keySizeBytes + Short.BYTES))
+        + bitArrayBytes(tableEntries);
+  }
+
   private static final double updateEntrySizeBytes(final int tableEntries, final int keySizeBytes) {
     final double byteFraction = Math.ceil(tableEntries / 8.0) / tableEntries;
     return keySizeBytes + Short.BYTES + byteFraction;
@@ -19,7 +19,15 @@
 
 package org.apache.datasketches.hllmap;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
 import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.MemoryRequestServer;
+import org.apache.datasketches.memory.WritableMemory;
 
 /**
  * This is a real-time, key-value HLL mapping sketch that tracks approximate unique counts of
@@ -66,6 +74,15 @@ import org.apache.datasketches.common.SketchesArgumentException;
  * <p>All the intermediate maps support deletes and can dynamically grow and shrink as required by
  * the input stream.
  *
+ * <p>The internal maps can be kept on the java heap, or all together in a single WritableMemory,
+ * which may be off-heap or memory-mapped, so that a map with hundreds of millions of keys does not
+ * burden the garbage collector. Such a direct map grows by requesting a larger WritableMemory from
+ * the MemoryRequestServer it was given, compacting its internal maps as it moves. Without a
+ * MemoryRequestServer it cannot grow, which is what a memory-mapped map usually wants. Because
+ * the memory holds the complete state of the map, a memory-mapped map is persisted by a single
+ * flush of the mapping and can be reopened with {@link #writableWrap(WritableMemory)} without any
+ * rebuild.
+ *
  * <p>The sketch estimator algorithms are unbiased with a Relative Standard Error (RSE)
  * of about 2.6% with 68% confidence, or equivalently, about 5.2% with a 95% confidence.
  *
@@ -92,6 +109,9 @@ public class UniqueCountMap {
   /** TraverseCouponMap or HashCouponMap instances */
   private final Map[] maps_;
 
+  /** Supplies the memory of the internal maps */
+  private final MapMemory memory_;
+
   /**
    * Constructs a UniqueCountMap with an initial capacity of one million entries.
    * @param keySizeBytes must be at least 4 bytes to have sufficient entropy.
@@ -112,7 +132,100 @@ public class UniqueCountMap {
     final int initEntries = Math.max(initialNumEntries, MIN_INITIAL_NUM_ENTRIES);
     keySizeBytes_ = keySizeBytes;
     maps_ = new Map[NUM_LEVELS]; // includes base level and top level
-    maps_[0] = SingleCouponMap.getInstance(initEntries, keySizeBytes);
+    memory_ = MapMemory.HEAP;
+    maps_[0] = SingleCouponMap.getInstance(initEntries, keySizeBytes, memory_, 0);
+  }
+
+  /**
+   * Constructs a direct UniqueCountMap with a given initial number of entries, which keeps all
+   * of its internal maps in the given WritableMemory. The previous contents of the memory are
+   * lost.
+   *
+   * @param initialNumEntries The initial number of entries provides a tradeoff between
+   * wasted space, if too high, and wasted time resizing the table, if too low.
+   * @param keySizeBytes must be at least 4 bytes to have sufficient entropy
+   * @param dstMem the destination WritableMemory, which may be off-heap or memory-mapped
+   * @param memReqSvr the MemoryRequestServer to request a larger WritableMemory when dstMem is
+   * full, or null if the map must not grow beyond dstMem. The MemoryRequestServer of dstMem
+   * itself is not used.
+   */
+  public UniqueCountMap(final int initialNumEntries, final int keySizeBytes,
+      final WritableMemory dstMem, final MemoryRequestServer memReqSvr) {
+    checkConstructorKeySize(keySizeBytes);
+    final int initEntries = Math.max(initialNumEntries, MIN_INITIAL_NUM_ENTRIES);
+    keySizeBytes_ = keySizeBytes;
+    maps_ = new Map[NUM_LEVELS]; // includes base level and top level
+    memory_ = MapMemory.initialize(dstMem, memReqSvr, maps_, keySizeBytes);
+    maps_[0] = SingleCouponMap.getInstance(initEntries, keySizeBytes, memory_, 0);
+  }
+
+  private UniqueCountMap(final WritableMemory srcMem, final MemoryRequestServer memReqSvr) {
+    keySizeBytes_ = MapMemory.getKeySizeBytes(srcMem);
+    checkConstructorKeySize(keySizeBytes_);
+    maps_ = new Map[NUM_LEVELS]; // includes base level and top level
+    memory_ = MapMemory.wrap(srcMem, memReqSvr, maps_);
+    for (int level = 0; level < NUM_LEVELS; level++) {
+      final WritableMemory region = memory_.getRegion(level);
+      if (region != null) { maps_[level] = wrapMapForLevel(level, region); }
+    }
+    if (maps_[0] == null) {
+      throw new SketchesArgumentException("Possible corruption: No base map.");
+    }
+  }
+
+  private UniqueCountMap(final Memory srcMem) {
+    MapMemory.checkHeader(srcMem, NUM_LEVELS);
+    keySizeBytes_ = MapMemory.getKeySizeBytes(srcMem);
+    checkConstructorKeySize(keySizeBytes_);
+    maps_ = new Map[NUM_LEVELS]; // includes base level and top level
+    memory_ = MapMemory.HEAP;
+    for (int level = 0; level < NUM_LEVELS; level++) {
+      final long offset = MapMemory.getRegionOffset(srcMem, level);
+      if (offset == 0) { continue; }
+      final long bytes = MapMemory.getRegionBytes(srcMem, level);
+      final WritableMemory region = memory_.allocate(level, bytes);
+      srcMem.copyTo(offset, region, 0, bytes);
+      maps_[level] = wrapMapForLevel(level, region);
+    }
+    if (maps_[0] == null) {
+      throw new SketchesArgumentException("Possible corruption: No base map.");
+    }
+  }
+
+  /**
+   * Heapifies the given Memory, which holds a map serialized by {@link #toByteArray()} or a
+   * direct map, into a new UniqueCountMap on the java heap.
+   * @param srcMem the Memory that holds the map
+   * @return a new UniqueCountMap on the java heap
+   */
+  public static UniqueCountMap heapify(final Memory srcMem) {
+    return new UniqueCountMap(srcMem);
+  }
+
+  /**
+   * Wraps a direct UniqueCountMap around the given WritableMemory, which holds a map created by
+   * {@link #UniqueCountMap(int, int, WritableMemory, MemoryRequestServer)}, for example after a
+   * restart. Nothing is rebuilt. The map cannot grow beyond the given memory.
+   * @param srcMem the WritableMemory that holds the map
+   * @return a UniqueCountMap backed by the given WritableMemory
+   */
+  public static UniqueCountMap writableWrap(final WritableMemory srcMem) {
+    return writableWrap(srcMem, null);
+  }
+
+  /**
+   * Wraps a direct UniqueCountMap around the given WritableMemory, which holds a map created by
+   * {@link #UniqueCountMap(int, int, WritableMemory, MemoryRequestServer)}, for example after a
+   * restart, or a writable copy of a map serialized by {@link #toByteArray()}. Nothing is rebuilt.
+   * @param srcMem the WritableMemory that holds the map
+   * @param memReqSvr the MemoryRequestServer to request a larger WritableMemory when srcMem is
+   * full, or null if the map must not grow beyond srcMem. The MemoryRequestServer of srcMem
+   * itself is not used.
+   * @return a UniqueCountMap backed by the given WritableMemory
+   */
+  public static UniqueCountMap writableWrap(final WritableMemory srcMem,
+      final MemoryRequestServer memReqSvr) {
+    return new UniqueCountMap(srcMem, memReqSvr);
   }
 
   /**
@@ -125,22 +238,65 @@ public class UniqueCountMap {
   public double update(final byte[] key, final byte[] identifier) {
     if (key == null) { return Double.NaN; }
     checkMethodKeySize(key);
-    if (identifier == null) { return getEstimate(key); }
-    final short coupon = (short) Map.coupon16(identifier);
+    return update(key, Map.keyHash(key), identifier);
+  }
 
-    final int baseMapIndex = maps_[0].findOrInsertKey(key);
-    final double baseMapEstimate = maps_[0].update(baseMapIndex, coupon);
-    if (baseMapEstimate > 0) { return baseMapEstimate; }
-    final int level = -(int) baseMapEstimate; // base map is level 0
-    if (level == 0) {
-      return promote(key, coupon, maps_[0], baseMapIndex, level, baseMapIndex, 0);
+  //The key must be of the right size. The hash is that of Map.keyHash(key).
+  double update(final byte[] key, final long[] keyHash, final byte[] identifier) {
+    if (identifier == null) { return getEstimate(key, keyHash); }
+    return couponUpdate(key, keyHash, (short) Map.coupon16(identifier));
+  }
+
+  /**
+   * Merges the given map into this map, so that the estimate of each key becomes the estimate of
+   * the union of the identifiers of that key in both maps. Keys of the given map that are not yet
+   * in this map are added. The given map is not changed.
+   *
+   * <p>Below the final HLL map the identifiers of a key are held as coupons, which are replayed
+   * into this map as updates, promoting the key as required. A key in the final HLL map of the
+   * given map is promoted to the final HLL map of this map and the HLL arrays are merged. The
+   * estimate of such a key is then recomputed from the merged HLL array, since the HIP estimators
+   * of two maps cannot be combined, and its error is about 3.3% instead of 2.6%.</p>
+   *
+   * @param that the map to merge into this map, which must have the same key size
+   */
+  public void merge(final UniqueCountMap that) {
+    if ((that == null) || (that == this)) { return; }
+    if (that.keySizeBytes_ != keySizeBytes_) {
+      throw new SketchesArgumentException("Key size must be " + keySizeBytes_ + " bytes: "
+          + that.keySizeBytes_);
+    }
+    final SingleCouponMap thatBaseMap = (SingleCouponMap) that.maps_[0];
+    final int hllLevel = NUM_LEVELS - 1;
+    for (int thatBaseMapIndex = 0; thatBaseMapIndex < thatBaseMap.getTableEntries();
+        thatBaseMapIndex++) {
+      final short coupon = thatBaseMap.getCoupon(thatBaseMapIndex);
+      if (coupon == 0) { continue; }
+      final byte[] key = thatBaseMap.getKey(thatBaseMapIndex);
+      final long[] keyHash = Map.keyHash(key);
+      if (thatBaseMap.isCoupon(thatBaseMapIndex)) {
+        couponUpdate(key, keyHash, coupon);
+        continue;
+      }
+      final Map thatMap = that.maps_[coupon];
+      final int thatIndex = thatMap.findKey(key, keyHash);
+      if (coupon < hllLevel) {
+        final CouponsIterator it = thatMap.getCouponsIterator(thatIndex);
+        while (it.next()) { couponUpdate(key, keyHash, it.getValue()); }
+      } else {
+        final int index = promoteToHll(key, keyHash);
+        ((HllMap) maps_[hllLevel]).merge(index, (HllMap) thatMap, thatIndex);
+      }
     }
+  }
 
-    final Map map = maps_[level];
-    final int index = map.findOrInsertKey(key);
-    final double estimate = map.update(index, coupon);
-    if (estimate > 0) { return estimate; }
-    return promote(key, coupon, map, index, level, baseMapIndex, -estimate);
+  /**
+   * Returns an iterator over the keys of this map and their estimates. The iterator must not be
+   * used after this map has been updated.
+   * @return an iterator over the keys of this map and their estimates
+   */
+  public UniqueCountMapIterator iterator() {
+    return new UniqueCountMapIterator(this);
   }
 
   /**
@@ -151,12 +307,17 @@ public class UniqueCountMap {
   public double getEstimate(final byte[] key) {
     if (key == null) { return Double.NaN; }
     checkMethodKeySize(key);
-    final double est = maps_[0].getEstimate(key);
+    return getEstimate(key, Map.keyHash(key));
+  }
+
+  //The key must be of the right size. The hash is that of Map.keyHash(key).
+  double getEstimate(final byte[] key, final long[] keyHash) {
+    final double est = maps_[0].getEstimate(key, keyHash);
     if (est >= 0.0) { return est; }
     //key has been promoted
     final int level = -(int)est;
     final Map map = maps_[level];
-    return map.getEstimate(key);
+    return map.getEstimate(key, keyHash);
   }
 
   /**
@@ -169,12 +330,17 @@ public class UniqueCountMap {
   public double getUpperBound(final byte[] key) {
     if (key == null) { return Double.NaN; }
     checkMethodKeySize(key);
-    final double est = maps_[0].getEstimate(key);
+    return getUpperBound(key, Map.keyHash(key));
+  }
+
+  //The key must be of the right size. The hash is that of Map.keyHash(key).
+  double getUpperBound(final byte[] key, final long[] keyHash) {
+    final double est = maps_[0].getEstimate(key, keyHash);
     if (est >= 0.0) { return est; }
     //key has been promoted
     final int level = -(int)est;
     final Map map = maps_[level];
-    return map.getUpperBound(key);
+    return map.getUpperBound(key, keyHash);
   }
 
   /**
@@ -187,12 +353,75 @@ public class UniqueCountMap {
   public double getLowerBound(final byte[] key) {
     if (key == null) { return Double.NaN; }
     checkMethodKeySize(key);
-    final double est = maps_[0].getEstimate(key);
+    return getLowerBound(key, Map.keyHash(key));
+  }
+
+  //The key must be of the right size. The hash is that of Map.keyHash(key).
+  double getLowerBound(final byte[] key, final long[] keyHash) {
+    final double est = maps_[0].getEstimate(key, keyHash);
     if (est >= 0.0) { return est; }
     //key has been promoted
     final int level = -(int)est;
     final Map map = maps_[level];
-    return map.getLowerBound(key);
+    return map.getLowerBound(key, keyHash);
+  }
+
+  /**
+   * Returns the given number of keys with the largest estimates, in descending order of estimate,
+   * or all keys if there are fewer. Ties are broken arbitrarily.
+   *
+   * <p>The internal maps are scanned from the final HLL map down. Each internal map keeps an upper
+   * bound of the estimates of its keys, so the scan stops as soon as no key of a lower map can
+   * enter the result. Because heavy keys are promoted up, the result usually comes from the HLL
+   * map and a few intermediate maps, without scanning the many keys with few identifiers.</p>
+   *
+   * @param k the number of keys to return, at least one
+   * @return the rows of the given number of keys with the largest estimates
+   */
+  public Row[] getTopK(final int k) {
+    if (k < 1) {
+      throw new SketchesArgumentException("K must be >= 1: " + k);
+    }
+    final double[] maxEstimateUpTo = getMaxEstimateUpTo();
+    final PriorityQueue<Row> heap = new PriorityQueue<>(k); //smallest estimate at the head
+    for (int level = NUM_LEVELS - 1; level >= 0; level--) {
+      if ((heap.size() == k) && (heap.peek().estimate >= maxEstimateUpTo[level])) { break; }
+      final Map map = maps_[level];
+      if (map == null) { continue; }
+      for (int index = 0; index < map.getTableEntries(); index++) {
+        final double estimate = map.getEntryEstimate(index);
+        if (estimate <= 0) { continue; }
+        if (heap.size() < k) {
+          heap.add(new Row(map.getKey(index), estimate));
+        } else if (estimate > heap.peek().estimate) {
+          heap.poll();
+          heap.add(new Row(map.getKey(index), estimate));
+        }
+      }
+    }
+    return sortDescending(new ArrayList<>(heap));
+  }
+
+  /**
+   * Returns the keys with estimates greater than the given threshold, in descending order of
+   * estimate. Only the internal maps that may hold such keys are scanned, see
+   * {@link #getTopK(int)}.
+   * @param threshold the given threshold
+   * @return the rows of the keys with estimates greater than the given threshold
+   */
+  public Row[] getKeysAbove(final double threshold) {
+    final List<Row> rows = new ArrayList<>();
+    for (int level = NUM_LEVELS - 1; level >= 0; level--) {
+      final Map map = maps_[level];
+      if ((map == null) || (map.getMaxEstimate() <= threshold)) { continue; }
+      for (int index = 0; index < map.getTableEntries(); index++) {
+        final double estimate = map.getEntryEstimate(index);
+        if ((estimate > 0) && (estimate > threshold)) { //zero for no active key
+          rows.add(new Row(map.getKey(index), estimate));
+        }
+      }
+    }
+    return sortDescending(rows);
   }
 
   /**
@@ -239,6 +468,39 @@ public class UniqueCountMap {
     return (double) (getMemoryUsageBytes() - getKeyMemoryUsageBytes()) / getActiveEntries();
   }
 
+  /**
+   * Returns true if this map keeps its internal maps in a WritableMemory.
+   * @return true if this map keeps its internal maps in a WritableMemory.
+   */
+  public boolean hasMemory() {
+    return memory_.getMemory() != null;
+  }
+
+  /**
+   * Returns the memory that holds this map, or null if this map is on the java heap. This is the
+   * memory given to the constructor, or the memory last obtained from the MemoryRequestServer if
+   * the map has outgrown it.
+   * @return the memory that holds this map, or null.
+   */
+  public Memory getMemory() {
+    return memory_.getMemory();
+  }
+
+  /**
+   * Serializes this map as a byte array, which holds the header and the tables of the internal
+   * maps one after the other in the format of a direct map. The byte array can be heapified with
+   * {@link #heapify(Memory)}, or wrapped as a direct map with {@link #writableWrap(WritableMemory)}.
+   *
+   * <p>This is not a compact form. Each table is copied whole, including its empty and deleted
+   * slots, so the byte array is as large as the tables rather than proportional to the number of
+   * live keys. Copying the tables keeps the byte array in the format of a direct map, so that it
+   * can be wrapped without rebuilding any table.</p>
+   * @return this map serialized as a byte array
+   */
+  public byte[] toByteArray() {
+    return MapMemory.toByteArray(maps_, keySizeBytes_);
+  }
+
   /**
    * Returns the number of active internal maps so far.
    * Only the base map is initialized in the constructor, so this method would return 1.
@@ -263,6 +525,15 @@ public class UniqueCountMap {
     return maps_[0];
   }
 
+  /**
+   * Returns the map of the given level. It may be null.
+   * @param level the given level
+   * @return the map of the given level
+   */
+  Map getMap(final int level) {
+    return maps_[level];
+  }
+
   /**
    * Returns the top-level HllMap. It may be null.
    * @return the top-level HllMap.
@@ -312,14 +583,47 @@ public class UniqueCountMap {
     return sb.toString();
   }
 
+  //Element i is an upper bound of the estimates of the keys in the maps below level i + 1
+  private double[] getMaxEstimateUpTo() {
+    final double[] maxEstimateUpTo = new double[NUM_LEVELS];
+    double max = 0;
+    for (int level = 0; level < NUM_LEVELS; level++) {
+      if (maps_[level] != null) { max = Math.max(max, maps_[level].getMaxEstimate()); }
+      maxEstimateUpTo[level] = max;
+    }
+    return maxEstimateUpTo;
+  }
+
+  private static Row[] sortDescending(final List<Row> rows) {
+    Collections.sort(rows, Collections.reverseOrder());
+    return rows.toArray(new Row[0]);
+  }
+
   private void setLevelInBaseMap(final int index, final int level) {
     ((SingleCouponMap) maps_[0]).setLevel(index, level);
   }
 
-  private double promote(final byte[] key, final short coupon, final Map fromMap, final int fromIndex,
-      final int fromLevel, final int baseMapIndex, final double estimate) {
+  private double couponUpdate(final byte[] key, final long[] keyHash, final short coupon) {
+    final int baseMapIndex = maps_[0].findOrInsertKey(key, keyHash);
+    final double baseMapEstimate = maps_[0].update(baseMapIndex, coupon);
+    if (baseMapEstimate > 0) { return baseMapEstimate; }
+    final int level = -(int) baseMapEstimate; // base map is level 0
+    if (level == 0) {
+      return promote(key, keyHash, coupon, maps_[0], baseMapIndex, level, baseMapIndex, 0);
+    }
+
+    final Map map = maps_[level];
+    final int index = map.findOrInsertKey(key, keyHash);
+    final double estimate = map.update(index, coupon);
+    if (estimate > 0) { return estimate; }
+    return promote(key, keyHash, coupon, map, index, level, baseMapIndex, -estimate);
+  }
+
+  private double promote(final byte[] key, final long[] keyHash, final short coupon,
+      final Map fromMap, final int fromIndex, final int fromLevel, final int baseMapIndex,
+      final double estimate) {
     final Map newMap = getMapForLevel(fromLevel + 1);
-    final int newMapIndex = newMap.findOrInsertKey(key);
+    final int newMapIndex = newMap.findOrInsertKey(key, keyHash);
     final CouponsIterator it = fromMap.getCouponsIterator(fromIndex);
     while (it.next()) {
       final double est = newMap.update(newMapIndex, it.getValue());
@@ -333,20 +637,64 @@ public class UniqueCountMap {
     return newEstimate;
   }
 
+  //Moves the given key with its coupons straight to the final HLL map, as promote does one level
+  //at a time, and returns its index there. The key is inserted if it is new.
+  private int promoteToHll(final byte[] key, final long[] keyHash) {
+    final int hllLevel = NUM_LEVELS - 1;
+    final Map hllMap = getMapForLevel(hllLevel);
+    final SingleCouponMap baseMap = (SingleCouponMap) maps_[0];
+    final int baseMapIndex = baseMap.findOrInsertKey(key, keyHash);
+    final short baseCoupon = baseMap.getCoupon(baseMapIndex);
+    if ((baseCoupon == hllLevel) && !baseMap.isCoupon(baseMapIndex)) {
+      return hllMap.findKey(key, keyHash);
+    }
+    final int hllIndex;
+    if ((baseCoupon == 0) || baseMap.isCoupon(baseMapIndex)) {
+      hllIndex = hllMap.findOrInsertKey(key, keyHash);
+      if (baseCoupon != 0) { hllMap.update(hllIndex, baseCoupon); }
+    } else {
+      final Map fromMap = maps_[baseCoupon];
+      final int fromIndex = fromMap.findKey(key, keyHash);
+      final double estimate = fromMap.getEstimate(key, keyHash);
+      hllIndex = hllMap.findOrInsertKey(key, keyHash);
+      final CouponsIterator it = fromMap.getCouponsIterator(fromIndex);
+      while (it.next()) { hllMap.update(hllIndex, it.getValue()); }
+      fromMap.deleteKey(fromIndex);
+      hllMap.updateEstimate(hllIndex, estimate);
+    }
+    setLevelInBaseMap(baseMapIndex, hllLevel);
+    return hllIndex;
+  }
+
   private Map getMapForLevel(final int level) {
     if (maps_[level] == null) {
       final int newLevelCapacity = 1 << level;
       if (level <= NUM_TRAVERSE_MAPS) {
-        maps_[level] = CouponTraverseMap.getInstance(keySizeBytes_, newLevelCapacity);
+        maps_[level] =
+            CouponTraverseMap.getInstance(keySizeBytes_, newLevelCapacity, memory_, level);
       } else if (level < (maps_.length - 1)) {
-        maps_[level] = CouponHashMap.getInstance(keySizeBytes_, newLevelCapacity);
+        maps_[level] = CouponHashMap.getInstance(keySizeBytes_, newLevelCapacity, memory_, level);
       } else {
-        maps_[level] = HllMap.getInstance(keySizeBytes_, HLL_K);
+        maps_[level] = HllMap.getInstance(keySizeBytes_, HLL_K, memory_, level);
       }
     }
     return maps_[level];
   }
 
+  private Map wrapMapForLevel(final int level, final WritableMemory region) {
+    if (level == 0) {
+      return SingleCouponMap.wrapInstance(region, keySizeBytes_, memory_, level);
+    }
+    final int levelCapacity = 1 << level;
+    if (level <= NUM_TRAVERSE_MAPS) {
+      return CouponTraverseMap.wrapInstance(region, keySizeBytes_, levelCapacity, memory_, level);
+    }
+    if (level < (maps_.length - 1)) {
+      return CouponHashMap.wrapInstance(region, keySizeBytes_, levelCapacity, memory_, level);
+    }
+    return HllMap.wrapInstance(region, keySizeBytes_, HLL_K, memory_, level);
+  }
+
   private static final void checkConstructorKeySize(final int keySizeBytes) {
     if (keySizeBytes < 4) {
       throw new SketchesArgumentException("KeySizeBytes must be >= 4: " + keySizeBytes);
@@ -359,4 +707,61 @@ public class UniqueCountMap {
     }
   }
 
+  /**
+   * A key of the map and its estimate, as returned by {@link #getTopK(int)} and
+   * {@link #getKeysAbove(double)}.
+   */
+  public static final class Row implements Comparable<Row> {
+    final byte[] key;
+    final double estimate;
+
+    Row(final byte[] key, final double estimate) {
+      this.key = key;
+      this.estimate = estimate;
+    }
+
+    /**
+     * @return the key
+     */
+    public byte[] getKey() { return key; }
+
+    /**
+     * @return the estimate of the number of unique identifiers of the key
+     */
+    public double getEstimate() { return estimate; }
+
+    /**
+     * This compareTo is strictly limited to the estimate and does not imply any ordering of the
+     * keys.
+     * @param that the other row to compare to.
+     * @return a negative integer, zero, or a positive integer as this.getEstimate() is less than,
+     * equal to, or greater than that.getEstimate().
+     */
+    @Override
+    public int compareTo(final Row that) {
+      return Double.compare(estimate, that.estimate);
+    }
+
+    /**
+     * This equals is computed only from the estimate, consistent with compareTo(Row).
+     * @param that the other row to determine equality with.
+     * @return true if this.getEstimate() equals ((Row)that).getEstimate().
+     */
+    @Override
+    public boolean equals(final Object that) {
+      if (this == that) { return true; }
+      if (!(that instanceof Row)) { return false; }
+      return compareTo((Row) that) == 0;
+    }
+
+    /**
+     * This hashCode is computed only from the estimate, consistent with equals(Object).
+     * @return the hashCode computed from getEstimate().
+     */
+    @Override
+    public int hashCode() {
+      return Double.hashCode(estimate);
+    }
+  }
+
 }
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hllmap;
+
+/**
+ * Iterates over the keys of a {@link UniqueCountMap} and their estimates, in no particular order.
+ * The keys are streamed from the base map, which holds all keys, so no intermediate collection is
+ * built. The iterator must not be used after the map has been updated.
+ *
+ * <p>Typical usage:</p>
+ * <pre>
+ * UniqueCountMapIterator it = map.iterator();
+ * while (it.next()) {
+ *   process(it.getKey(), it.getEstimate());
+ * }
+ * </pre>
+ */
+public final class UniqueCountMapIterator {
+  private final UniqueCountMap map_;
+  private final SingleCouponMap baseMap_;
+  private int index_;
+  private byte[] key_;
+
+  UniqueCountMapIterator(final UniqueCountMap map) {
+    map_ = map;
+    baseMap_ = (SingleCouponMap) map.getBaseMap();
+    index_ = -1;
+  }
+
+  /**
+   * Advances to the next key.
+   * @return true if there is a next key
+   */
+  public boolean next() {
+    while (++index_ < baseMap_.getTableEntries()) {
+      if (baseMap_.getCoupon(index_) != 0) {
+        key_ = baseMap_.getKey(index_);
+        return true;
+      }
+    }
+    key_ = null;
+    return false;
+  }
+
+  /**
+   * Returns the current key. The returned array is not reused by the iterator.
+   * @return the current key
+   */
+  public byte[] getKey() {
+    return key_;
+  }
+
+  /**
+   * Returns the estimate of the number of unique identifiers of the current key.
+   * @return the estimate of the number of unique identifiers of the current key
+   */
+  public double getEstimate() {
+    if (baseMap_.isCoupon(index_)) { return 1; }
+    return map_.getMap(baseMap_.getCoupon(index_)).getEstimate(key_);
+  }
+
+}
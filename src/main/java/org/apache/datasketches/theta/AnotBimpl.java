@@ -20,6 +20,8 @@
 package org.apache.datasketches.theta;
 
 import static org.apache.datasketches.common.Util.exactLog2OfLong;
+import static org.apache.datasketches.theta.CompactOperations.aNotBOrdered;
+import static org.apache.datasketches.theta.CompactOperations.isOrderedCompact;
 import static org.apache.datasketches.thetacommon.HashOperations.convertToHashTable;
 import static org.apache.datasketches.thetacommon.HashOperations.hashSearch;
 
@@ -129,12 +131,19 @@ final class AnotBimpl extends AnotB {
     ThetaUtil.checkSeedHashes(skB.getSeedHash(), seedHash_);
     //Both skA & skB are not empty
 
-    //process A
-    final long[] hashArrA = getHashArrA(skA);
-    final int countA = hashArrA.length;
+    final long[] hashArrOut; //out is a new array
+    if (isOrderedCompact(skA) && isOrderedCompact(skB)) {
+      //Both ordered compact: merge the two sorted caches without building a hash table
+      hashArrOut = aNotBOrdered(skA.getCache(), skA.getRetainedEntries(true),
+          skB.getCache(), skB.getRetainedEntries(true), minThetaLong);
+    } else {
+      //process A
+      final long[] hashArrA = getHashArrA(skA);
+      final int countA = hashArrA.length;
 
-    //process B
-    final long[] hashArrOut = getResultHashArr(minThetaLong, countA, hashArrA, skB); //out is clone
+      //process B
+      hashArrOut = getResultHashArr(minThetaLong, countA, hashArrA, skB);
+    }
     final int countOut = hashArrOut.length;
     final boolean empty = countOut == 0 && minThetaLong == Long.MAX_VALUE;
 
@@ -20,6 +20,8 @@
 package org.apache.datasketches.theta;
 
 import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
 
 public class BitPacking {
 
@@ -206,6 +208,54 @@ public class BitPacking {
     }
   }
 
+  // pack given number of bits from a block of 64 64-bit values into Memory
+  // the block occupies exactly bits longs, so it is written one whole big-endian long at a time
+  // the bit layout is identical to that of 8 consecutive blocks of 8
+  // we assume that higher bits (which we are not packing) are zeros
+
+  static void packBitsBlock64(final long[] values, final int i, final WritableMemory mem,
+      final long offsetBytes, final int bits) {
+    long word = 0;
+    int filled = 0; // bits already filled in word, starting from the most significant
+    long offset = offsetBytes;
+    for (int j = 0; j < 64; j++) {
+      final long value = values[i + j];
+      final int free = 64 - filled;
+      if (bits < free) {
+        word |= value << (free - bits);
+        filled += bits;
+      } else {
+        word |= value >>> (bits - free);
+        mem.putLong(offset, Long.reverseBytes(word));
+        offset += Long.BYTES;
+        filled = bits - free;
+        word = (filled == 0) ? 0 : value << (64 - filled);
+      }
+    }
+  }
+
+  static void unpackBitsBlock64(final long[] values, final int i, final Memory mem,
+      final long offsetBytes, final int bits) {
+    final int shift = 64 - bits;
+    long word = Long.reverseBytes(mem.getLong(offsetBytes));
+    long offset = offsetBytes;
+    int used = 0; // bits of word already consumed, starting from the most significant
+    int wordsLeft = bits - 1;
+    for (int j = 0; j < 64; j++) {
+      long value = (word << used) >>> shift;
+      used += bits;
+      if (used >= 64) {
+        used -= 64;
+        if (wordsLeft-- > 0) {
+          offset += Long.BYTES;
+          word = Long.reverseBytes(mem.getLong(offset));
+          if (used > 0) { value |= word >>> (64 - used); }
+        }
+      }
+      values[i + j] = value;
+    }
+  }
+
   static void packBits1(final long[] values, final int i, final byte[] buf, final int off) {
     buf[off] = (byte) (values[i + 0] << 7);
     buf[off] |= values[i + 1] << 6;
@@ -463,7 +513,7 @@ public class BitPacking {
 
     buf[off++] = (byte) (values[i + 3] >>> 4);
 
-    buf[off] = (byte) (values[i + 3] >>> 4);
+    buf[off] = (byte) (values[i + 3] << 4);
     buf[off++] |= values[i + 4] >>> 9;
 
     buf[off++] = (byte) (values[i + 4] >>> 1);
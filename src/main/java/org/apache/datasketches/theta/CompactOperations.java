@@ -173,6 +173,7 @@ final class CompactOperations {
     if (srcCompactFlag) {
       hashArr = new long[curCount];
       srcMem.getLongArray(srcPreLongs << 3, hashArr, 0, curCount);
+      if (dstOrderedOut && !srcOrderedFlag) { Arrays.sort(hashArr); }
     } else { //update sketch, thus hashTable form
       final int srcCacheLen = 1 << srcLgArrLongs;
       final long[] tempHashArr = new long[srcCacheLen];
@@ -380,5 +381,145 @@ final class CompactOperations {
       final long thetaLong) {
     return !empty && (curCount == 1) && (thetaLong == Long.MAX_VALUE);
   }
-}
 
+  /**
+   * The size ratio of the two ordered inputs above which the merge kernels gallop through the
+   * larger input instead of stepping through it one entry at a time.
+   */
+  static final int GALLOP_RATIO = 16;
+
+  /**
+   * Returns true if the given sketch is a compact sketch whose retained hashes are sorted in
+   * ascending order, whether on the heap or in Memory.
+   * @param sketch the given sketch
+   * @return true if the given sketch can be consumed by the ordered merge kernels.
+   */
+  static final boolean isOrderedCompact(final Sketch sketch) {
+    return (sketch instanceof CompactSketch) && sketch.isOrdered();
+  }
+
+  /**
+   * Intersects two ordered compact hash arrays by a linear merge, or by galloping through the
+   * larger array when the counts differ by more than {@link #GALLOP_RATIO}.
+   * @param hashArrA the ordered hashes of the first input. It is not modified.
+   * @param countA the number of valid entries in <i>hashArrA</i>
+   * @param hashArrB the ordered hashes of the second input. It is not modified.
+   * @param countB the number of valid entries in <i>hashArrB</i>
+   * @param thetaLong only hashes less than this are retained
+   * @return a new ordered and compact array of the common hashes less than <i>thetaLong</i>
+   */
+  static final long[] intersectOrdered(final long[] hashArrA, final int countA,
+      final long[] hashArrB, final int countB, final long thetaLong) {
+    if (countA > countB) { return intersectOrdered(hashArrB, countB, hashArrA, countA, thetaLong); }
+    //countA <= countB
+    final long[] out = new long[countA];
+    final boolean gallop = (long) countA * GALLOP_RATIO < countB;
+    int outCount = 0;
+    int i = 0;
+    int j = 0;
+    while ((i < countA) && (j < countB)) {
+      final long hashA = hashArrA[i];
+      if (hashA >= thetaLong) { break; }
+      if (gallop) { j = gallopSearch(hashArrB, j, countB, hashA); }
+      else { while ((j < countB) && (hashArrB[j] < hashA)) { j++; } }
+      if (j == countB) { break; }
+      if (hashArrB[j] == hashA) {
+        out[outCount++] = hashA;
+        j++;
+      }
+      i++;
+    }
+    return (outCount == countA) ? out : Arrays.copyOf(out, outCount);
+  }
+
+  /**
+   * Counts the hashes common to two ordered compact hash arrays by a linear merge, or by
+   * galloping through the larger array when the counts differ by more than
+   * {@link #GALLOP_RATIO}. Nothing is allocated.
+   * @param hashArrA the ordered hashes of the first input. It is not modified.
+   * @param countA the number of entries of <i>hashArrA</i> to consider
+   * @param hashArrB the ordered hashes of the second input. It is not modified.
+   * @param countB the number of entries of <i>hashArrB</i> to consider
+   * @return the number of hashes common to both inputs
+   */
+  static final int intersectCountOrdered(final long[] hashArrA, final int countA,
+      final long[] hashArrB, final int countB) {
+    if (countA > countB) { return intersectCountOrdered(hashArrB, countB, hashArrA, countA); }
+    //countA <= countB
+    final boolean gallop = (long) countA * GALLOP_RATIO < countB;
+    int count = 0;
+    int j = 0;
+    for (int i = 0; (i < countA) && (j < countB); i++) {
+      final long hashA = hashArrA[i];
+      if (gallop) { j = gallopSearch(hashArrB, j, countB, hashA); }
+      else { while ((j < countB) && (hashArrB[j] < hashA)) { j++; } }
+      if ((j < countB) && (hashArrB[j] == hashA)) {
+        count++;
+        j++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Computes A and not B of two ordered compact hash arrays by a linear merge, or by galloping
+   * through B when it is much larger than A.
+   * @param hashArrA the ordered hashes of A. It is not modified.
+   * @param countA the number of valid entries in <i>hashArrA</i>
+   * @param hashArrB the ordered hashes of B. It is not modified.
+   * @param countB the number of valid entries in <i>hashArrB</i>
+   * @param thetaLong only hashes less than this are retained
+   * @return a new ordered and compact array of the hashes of A less than <i>thetaLong</i>
+   * that are not in B
+   */
+  static final long[] aNotBOrdered(final long[] hashArrA, final int countA,
+      final long[] hashArrB, final int countB, final long thetaLong) {
+    final long[] out = new long[countA];
+    final boolean gallop = (long) countA * GALLOP_RATIO < countB;
+    int outCount = 0;
+    int j = 0;
+    for (int i = 0; i < countA; i++) {
+      final long hashA = hashArrA[i];
+      if (hashA >= thetaLong) { break; }
+      if (gallop) { j = gallopSearch(hashArrB, j, countB, hashA); }
+      else { while ((j < countB) && (hashArrB[j] < hashA)) { j++; } }
+      if ((j < countB) && (hashArrB[j] == hashA)) {
+        j++;
+      } else {
+        out[outCount++] = hashA;
+      }
+    }
+    return (outCount == countA) ? out : Arrays.copyOf(out, outCount);
+  }
+
+  /**
+   * Returns the index of the first entry of the ordered array in the range [from, to) that is
+   * greater than or equal to the given hash, or <i>to</i> if there is none. The range is probed
+   * at exponentially growing strides before a binary search over the final stride.
+   * @param hashArr the ordered array
+   * @param from the first index of the range to search
+   * @param to one past the last index of the range to search
+   * @param hash the hash to search for
+   * @return the index of the first entry not less than <i>hash</i>
+   */
+  static final int gallopSearch(final long[] hashArr, final int from, final int to,
+      final long hash) {
+    if ((from >= to) || (hashArr[from] >= hash)) { return from; }
+    //hashArr[lo] < hash
+    int lo = from;
+    int step = 1;
+    int hi = from + 1;
+    while ((hi < to) && (hashArr[hi] < hash)) {
+      lo = hi;
+      step <<= 1;
+      hi = ((long) lo + step < to) ? lo + step : to;
+    }
+    //hashArr[lo] < hash <= hashArr[hi], or hi == to
+    while (lo + 1 < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (hashArr[mid] < hash) { lo = mid; }
+      else { hi = mid; }
+    }
+    return hi;
+  }
+}
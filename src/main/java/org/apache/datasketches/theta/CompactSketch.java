@@ -129,7 +129,8 @@ public abstract class CompactSketch extends Sketch {
    * The wrap operation enables fast read-only merging and access to all the public read-only API.
    *
    * <p>Only "Direct" Serialization Version 3 (i.e, OpenSource) sketches that have
-   * been explicitly stored as direct sketches can be wrapped.
+   * been explicitly stored as direct sketches, and Serialization Version 4 (compressed) sketches,
+   * can be wrapped. A wrapped compressed sketch decodes its hash values during iteration.
    * Wrapping earlier serial version sketches will result in a heapify operation.
    * These early versions were never designed to "wrap".</p>
    *
@@ -155,7 +156,8 @@ public abstract class CompactSketch extends Sketch {
    * The wrap operation enables fast read-only merging and access to all the public read-only API.
    *
    * <p>Only "Direct" Serialization Version 3 (i.e, OpenSource) sketches that have
-   * been explicitly stored as direct sketches can be wrapped.
+   * been explicitly stored as direct sketches, and Serialization Version 4 (compressed) sketches,
+   * can be wrapped. A wrapped compressed sketch decodes its hash values during iteration.
    * Wrapping earlier serial version sketches will result in a heapify operation.
    * These early versions were never designed to "wrap".</p>
    *
@@ -187,9 +189,9 @@ public abstract class CompactSketch extends Sketch {
     final short seedHash = ThetaUtil.computeSeedHash(seed);
 
     if (serVer == 4) {
-      // not wrapping the compressed format since currently we cannot take advantage of
-      // decompression during iteration because set operations reach into memory directly
-      return heapifyV4(srcMem, seed, enforceSeed);
+      // the compressed format is decoded during iteration, which is how set operations read it
+      return DirectCompactCompressedSketch.wrapInstance(srcMem,
+          enforceSeed ? seedHash : (short) extractSeedHash(srcMem));
     }
     else if (serVer == 3) {
       if (PreambleUtil.isEmptyFlag(srcMem)) {
@@ -270,7 +272,7 @@ public abstract class CompactSketch extends Sketch {
     return Long.numberOfLeadingZeros(ored);
   }
 
-  private static int wholeBytesToHoldBits(final int bits) {
+  static int wholeBytesToHoldBits(final int bits) {
     return (bits >>> 3) + ((bits & 7) > 0 ? 1 : 0);
   }
 
@@ -304,10 +306,19 @@ public abstract class CompactSketch extends Sketch {
       numEntries >>>= 8;
     }
     long previous = 0;
-    final long[] deltas = new long[8];
+    final long[] deltas = new long[64];
     final HashIterator it = iterator();
     int i;
-    for (i = 0; i + 7 < getRetainedEntries(); i += 8) {
+    for (i = 0; i + 63 < getRetainedEntries(); i += 64) {
+      for (int j = 0; j < 64; j++) {
+        it.next();
+        deltas[j] = it.get() - previous;
+        previous = it.get();
+      }
+      BitPacking.packBitsBlock64(deltas, 0, mem, offsetBytes, entryBits);
+      offsetBytes += entryBits << 3;
+    }
+    for (; i + 7 < getRetainedEntries(); i += 8) {
       for (int j = 0; j < 8; j++) {
         it.next();
         deltas[j] = it.get() - previous;
@@ -347,9 +358,13 @@ public abstract class CompactSketch extends Sketch {
       numEntries |= Byte.toUnsignedInt(srcMem.getByte(offsetBytes++)) << (i << 3);
     }
     final long[] entries = new long[numEntries];
-    final byte[] bytes = new byte[entryBits]; // temporary buffer for unpacking
     int i;
-    for (i = 0; i + 7 < numEntries; i += 8) {
+    for (i = 0; i + 63 < numEntries; i += 64) {
+      BitPacking.unpackBitsBlock64(entries, i, srcMem, offsetBytes, entryBits);
+      offsetBytes += entryBits << 3;
+    }
+    final byte[] bytes = new byte[entryBits]; // temporary buffer for unpacking
+    for (; i + 7 < numEntries; i += 8) {
       srcMem.getByteArray(offsetBytes, bytes, 0, entryBits);
       BitPacking.unpackBitsBlock8(entries, i, bytes, 0, entryBits);
       offsetBytes += entryBits;
@@ -19,11 +19,14 @@
 
 package org.apache.datasketches.theta;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.datasketches.common.ResizeFactor;
+import org.apache.datasketches.common.SketchesStateException;
 import org.apache.datasketches.common.SuppressFBWarnings;
 
 /**
@@ -40,7 +43,15 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
     implements ConcurrentSharedThetaSketch {
 
   // The propagation thread
-  private volatile ExecutorService executorService_;
+  private volatile Executor executor_;
+
+  // The executor supplied by the user, or null if the ConcurrentPropagationService pool is used
+  private final Executor propagationExecutor_;
+
+  // The number of background propagations submitted and not yet completed
+  private final AtomicLong pendingPropagations_;
+
+  private volatile boolean closed_;
 
   //A flag to coordinate between several eager propagation threads
   private final AtomicBoolean sharedPropagationInProgress_;
@@ -65,10 +76,12 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
    * @param lgNomLongs <a href="{@docRoot}/resources/dictionary.html#lgNomLogs">See lgNomLongs</a>.
    * @param seed       <a href="{@docRoot}/resources/dictionary.html#seed">See seed</a>
    * @param maxConcurrencyError the max error value including error induced by concurrency
+   * @param propagationExecutor the executor for background propagations, or null to use the
+   * internal propagation pool
    *
    */
   ConcurrentHeapQuickSelectSketch(final int lgNomLongs, final long seed,
-      final double maxConcurrencyError) {
+      final double maxConcurrencyError, final Executor propagationExecutor) {
     super(lgNomLongs, seed, 1.0F, //p
         ResizeFactor.X1, //rf,
         false); //unionGadget
@@ -79,11 +92,13 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
         maxConcurrencyError);
     sharedPropagationInProgress_ = new AtomicBoolean(false);
     epoch_ = 0;
+    propagationExecutor_ = propagationExecutor;
+    pendingPropagations_ = new AtomicLong();
     initBgPropagationService();
   }
 
   ConcurrentHeapQuickSelectSketch(final UpdateSketch sketch, final long seed,
-      final double maxConcurrencyError) {
+      final double maxConcurrencyError, final Executor propagationExecutor) {
     super(sketch.getLgNomLongs(), seed, 1.0F, //p
         ResizeFactor.X1, //rf,
         false); //unionGadget
@@ -92,6 +107,8 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
         maxConcurrencyError);
     sharedPropagationInProgress_ = new AtomicBoolean(false);
     epoch_ = 0;
+    propagationExecutor_ = propagationExecutor;
+    pendingPropagations_ = new AtomicLong();
     initBgPropagationService();
     for (final long hashIn : sketch.getCache()) {
       propagate(hashIn);
@@ -149,6 +166,11 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
     throw new UnsupportedOperationException(msg);
   }
 
+  @Override
+  void hashUpdateBlock(final long[] hashes, final int count) {
+    hashUpdateEach(hashes, count);
+  }
+
   //ConcurrentSharedThetaSketch declarations
 
   @Override
@@ -182,9 +204,14 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
 
   @Override
   public void awaitBgPropagationTermination() {
+    if (propagationExecutor_ != null) { //never shut down an executor owned by the user
+      awaitPropagation();
+      return;
+    }
+    final ExecutorService executorService = (ExecutorService) executor_;
     try {
-      executorService_.shutdown();
-      while (!executorService_.awaitTermination(1, TimeUnit.MILLISECONDS)) {
+      executorService.shutdown();
+      while (!executorService.awaitTermination(1, TimeUnit.MILLISECONDS)) {
         Thread.sleep(1);
       }
     } catch (final InterruptedException e) {
@@ -194,12 +221,41 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
 
   @Override
   public void initBgPropagationService() {
-    executorService_ = ConcurrentPropagationService.getExecutorService(Thread.currentThread().getId());
+    executor_ = (propagationExecutor_ != null) ? propagationExecutor_
+        : ConcurrentPropagationService.getExecutorService(Thread.currentThread().getId());
+  }
+
+  @Override
+  public void awaitPropagation() {
+    try {
+      while (pendingPropagations_.get() > 0) {
+        Thread.sleep(1);
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public void close() {
+    if (closed_) { return; }
+    closed_ = true;
+    //drain only the propagations of this sketch; the pool executors are shared by all sketches
+    awaitPropagation();
+  }
+
+  @Override
+  public boolean isClosed() {
+    return closed_;
   }
 
   @Override
   public boolean propagate(final AtomicBoolean localPropagationInProgress,
                            final Sketch sketchIn, final long singleHash) {
+    if (closed_) {
+      localPropagationInProgress.set(false);
+      throw new SketchesStateException("The concurrent shared sketch has been closed.");
+    }
     final long epoch = epoch_;
     if ((singleHash != NOT_SINGLE_HASH)                 //namely, is a single hash and
         && (getRetainedEntries(false) < exactLimit_)) { //a small sketch then propagate myself (blocking)
@@ -218,7 +274,25 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
     // otherwise, be nonblocking, let background thread do the work
     final ConcurrentBackgroundThetaPropagation job = new ConcurrentBackgroundThetaPropagation(
         this, localPropagationInProgress, sketchIn, singleHash, epoch);
-    executorService_.execute(job);
+    pendingPropagations_.incrementAndGet();
+    if (closed_) {
+      pendingPropagations_.decrementAndGet();
+      localPropagationInProgress.set(false);
+      throw new SketchesStateException("The concurrent shared sketch has been closed.");
+    }
+    try {
+      executor_.execute(() -> {
+        try {
+          job.run();
+        } finally {
+          pendingPropagations_.decrementAndGet();
+        }
+      });
+    } catch (final RuntimeException e) {
+      pendingPropagations_.decrementAndGet();
+      localPropagationInProgress.set(false);
+      throw e;
+    }
     return true;
   }
 
@@ -253,14 +327,18 @@ final class ConcurrentHeapQuickSelectSketch extends HeapQuickSelectSketch
   private void advanceEpoch() {
     awaitBgPropagationTermination();
     startEagerPropagation();
-    ConcurrentPropagationService.resetExecutorService(Thread.currentThread().getId());
+    if (propagationExecutor_ == null) {
+      ConcurrentPropagationService.resetExecutorService(Thread.currentThread().getId());
+    }
     //no inspection NonAtomicOperationOnVolatileField
     // this increment of a volatile field is done within the scope of the propagation
     // synchronization and hence is done by a single thread
     // Ignore a FindBugs warning
     epoch_++;
     endPropagation(null, true);
-    initBgPropagationService();
+    if (!closed_) {
+      initBgPropagationService();
+    }
   }
 
 }
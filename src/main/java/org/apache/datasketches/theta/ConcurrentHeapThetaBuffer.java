@@ -220,4 +220,10 @@ final class ConcurrentHeapThetaBuffer extends HeapQuickSelectSketch {
     return state;
   }
 
+  //Every hash must go through hashUpdate(long) so that the buffer propagates when it fills up.
+  @Override
+  void hashUpdateBlock(final long[] hashes, final int count) {
+    hashUpdateEach(hashes, count);
+  }
+
 }
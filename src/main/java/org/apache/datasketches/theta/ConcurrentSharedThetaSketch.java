@@ -30,7 +30,7 @@ import org.apache.datasketches.memory.WritableMemory;
  *
  * @author eshcar
  */
-interface ConcurrentSharedThetaSketch {
+interface ConcurrentSharedThetaSketch extends ConcurrentThetaSketch {
 
   long NOT_SINGLE_HASH = -1L;
   double MIN_ERROR = 0.0000001;
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+/**
+ * The lifecycle API of a concurrent shared theta sketch built by
+ * {@link UpdateSketchBuilder#buildShared()} or {@link UpdateSketchBuilder#buildShared(
+ * org.apache.datasketches.memory.WritableMemory)}. The shared sketch returned by the builder can
+ * be cast to this interface.
+ *
+ * <p>Background propagations from the local buffers run on the Executor given to
+ * {@link UpdateSketchBuilder#setPropagationExecutor(java.util.concurrent.Executor)}, or on the
+ * internal propagation pool if none was given. The sketch never shuts down a caller-supplied
+ * Executor; its owner remains responsible for it.</p>
+ */
+public interface ConcurrentThetaSketch extends AutoCloseable {
+
+  /**
+   * Blocks until every background propagation submitted so far has completed.
+   * Updates that are propagated concurrently with this call may or may not be waited for.
+   */
+  void awaitPropagation();
+
+  /**
+   * Drains the pending background propagations of this sketch. No further propagations are
+   * accepted after this call, but the sketch can still be queried. The executors of the internal
+   * propagation pool are shared by all concurrent sketches and are not shut down.
+   */
+  @Override
+  void close();
+
+  /**
+   * Returns true if {@link #close()} has been called.
+   * @return true if {@link #close()} has been called.
+   */
+  boolean isClosed();
+}
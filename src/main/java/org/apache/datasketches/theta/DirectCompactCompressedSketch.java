@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import static org.apache.datasketches.theta.CompactOperations.componentsToCompact;
+import static org.apache.datasketches.theta.CompactOperations.computeCompactPreLongs;
+import static org.apache.datasketches.theta.PreambleUtil.extractEntryBitsV4;
+import static org.apache.datasketches.theta.PreambleUtil.extractNumEntriesBytesV4;
+import static org.apache.datasketches.theta.PreambleUtil.extractPreLongs;
+import static org.apache.datasketches.theta.PreambleUtil.extractSeedHash;
+import static org.apache.datasketches.theta.PreambleUtil.extractThetaLongV4;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.thetacommon.ThetaUtil;
+
+/**
+ * An off-heap (Direct), compact, compressed, read-only sketch. The internal hash array is always
+ * ordered and is stored as bit-packed deltas between successive hash values.
+ *
+ * <p>This sketch can only be associated with a Serialization Version 4 format binary image.
+ * The hash values are decoded on the fly by its {@link #iterator()}, so set operations can consume
+ * it in a single pass without decompressing it into an array first.</p>
+ *
+ * <p>This implementation uses data in a given Memory that is owned and managed by the caller.</p>
+ */
+class DirectCompactCompressedSketch extends DirectCompactSketch {
+
+  /**
+   * Construct this sketch with the given memory.
+   * @param mem Read-only Memory object.
+   */
+  DirectCompactCompressedSketch(final Memory mem) {
+    super(mem);
+  }
+
+  /**
+   * Wraps the given Memory, which must be a SerVer 4, compressed, CompactSketch image.
+   * Must check the validity of the Memory before calling.
+   * @param srcMem <a href="{@docRoot}/resources/dictionary.html#mem">See Memory</a>
+   * @param seedHash The update seedHash.
+   * <a href="{@docRoot}/resources/dictionary.html#seedHash">See Seed Hash</a>.
+   * @return this sketch
+   */
+  static DirectCompactCompressedSketch wrapInstance(final Memory srcMem, final short seedHash) {
+    ThetaUtil.checkSeedHashes((short) extractSeedHash(srcMem), seedHash);
+    return new DirectCompactCompressedSketch(srcMem);
+  }
+
+  //Sketch Overrides
+
+  @Override
+  public CompactSketch compact(final boolean dstOrdered, final WritableMemory dstMem) {
+    return componentsToCompact(getThetaLong(), getRetainedEntries(true), getSeedHash(), isEmpty(),
+        true, true, dstOrdered, dstMem, getCache());
+  }
+
+  @Override
+  public int getCompactBytes() {
+    return (getCompactPreambleLongs() + getRetainedEntries(true)) << 3;
+  }
+
+  @Override
+  public int getCurrentBytes() {
+    final int entryBits = extractEntryBitsV4(mem_);
+    return dataOffsetBytes() + wholeBytesToHoldBits(getRetainedEntries(true) * entryBits);
+  }
+
+  @Override
+  public double getEstimate() {
+    return Sketch.estimate(getThetaLong(), getRetainedEntries(true));
+  }
+
+  @Override
+  public int getRetainedEntries(final boolean valid) { //compact is always valid
+    final int numEntriesBytes = extractNumEntriesBytesV4(mem_);
+    int offsetBytes = extractPreLongs(mem_) << 3;
+    int numEntries = 0;
+    for (int i = 0; i < numEntriesBytes; i++) {
+      numEntries |= Byte.toUnsignedInt(mem_.getByte(offsetBytes++)) << (i << 3);
+    }
+    return numEntries;
+  }
+
+  @Override
+  public long getThetaLong() {
+    return (extractPreLongs(mem_) > 1) ? extractThetaLongV4(mem_) : Long.MAX_VALUE;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return PreambleUtil.isEmptyFlag(mem_);
+  }
+
+  @Override
+  public boolean isOrdered() {
+    return true;
+  }
+
+  @Override
+  public HashIterator iterator() {
+    return new MemoryCompactCompressedHashIterator(mem_, dataOffsetBytes(),
+        extractEntryBitsV4(mem_), getRetainedEntries(true));
+  }
+
+  @Override
+  public byte[] toByteArray() {
+    return compact(true, null).toByteArray();
+  }
+
+  @Override
+  public byte[] toByteArrayCompressed() {
+    final byte[] byteArrOut = new byte[getCurrentBytes()];
+    mem_.getByteArray(0, byteArrOut, 0, byteArrOut.length);
+    return byteArrOut;
+  }
+
+  //restricted methods
+
+  @Override
+  long[] getCache() {
+    final long[] cache = new long[getRetainedEntries(true)];
+    final HashIterator it = iterator();
+    int i = 0;
+    while (it.next()) { cache[i++] = it.get(); }
+    return cache;
+  }
+
+  @Override
+  int getCompactPreambleLongs() {
+    return computeCompactPreLongs(isEmpty(), getRetainedEntries(true), getThetaLong());
+  }
+
+  //Offset of the packed deltas: the preamble followed by the bytes of the number of entries
+  private int dataOffsetBytes() {
+    return (extractPreLongs(mem_) << 3) + extractNumEntriesBytesV4(mem_);
+  }
+}
@@ -35,8 +35,11 @@ import static org.apache.datasketches.theta.UpdateReturnState.InsertedCountIncre
 import static org.apache.datasketches.theta.UpdateReturnState.InsertedCountIncrementedResized;
 import static org.apache.datasketches.theta.UpdateReturnState.RejectedDuplicate;
 import static org.apache.datasketches.theta.UpdateReturnState.RejectedOverTheta;
+import static org.apache.datasketches.thetacommon.QuickSelect.select;
 import static org.apache.datasketches.thetacommon.QuickSelect.selectExcludingZeros;
 
+import java.util.Arrays;
+
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.ResizeFactor;
 import org.apache.datasketches.memory.Memory;
@@ -49,6 +52,12 @@ import org.apache.datasketches.thetacommon.ThetaUtil;
  * @author Kevin Lang
  */
 class HeapQuickSelectSketch extends HeapUpdateSketch {
+  //Work done per update in incremental mode. A rebuild leaves room for 7k/8 inserts before the
+  // next one. Migrating 2k slots takes k/4 updates and clearing them k/32, so each phase
+  // normally completes before it is needed.
+  private static final int MIGRATION_SLOTS = 8;
+  private static final int CLEAR_SLOTS = 64;
+
   private final Family MY_FAMILY;
 
   private final int preambleLongs_;
@@ -60,11 +69,31 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
 
   private long[] cache_;
 
+  //Incremental mode: a resize or rebuild installs a new, empty cache_ and migrates the prior
+  // table, srcCache_, into it a few slots per update instead of all at once. At full size the
+  // two tables are reused in turn: after a migration the prior table is cleared a few slots per
+  // update and becomes spareCache_, the target of the next rebuild. The retained hashes are also
+  // logged densely, so the update that crosses the threshold selects the new theta over the log
+  // without allocating, copying or skipping empty slots.
+  private final boolean incremental_;
+  //Bucketed mode: cache_ uses the cache-line bucketed layout of HashOperations instead of OADH.
+  private final boolean bucketed_;
+  private long[] cacheView_; //OADH view of the retained hashes returned by getCache(), or null
+  private long[] srcCache_; //null unless a migration is in progress
+  private int srcLgArrLongs_;
+  private int migrateCursor_;
+  private long[] spareCache_; //full size, clear below clearCursor_; null until full size
+  private int clearCursor_;
+  private long[] retainedLog_; //retained hashes in arrival order, only at full size
+  private int logCount_;
+
   private HeapQuickSelectSketch(final int lgNomLongs, final long seed, final float p,
       final ResizeFactor rf, final int preambleLongs, final Family family) {
     super(lgNomLongs, seed, p, rf);
     preambleLongs_ = preambleLongs;
     MY_FAMILY = family;
+    incremental_ = false;
+    bucketed_ = false;
   }
 
   /**
@@ -79,7 +108,28 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
    */
   HeapQuickSelectSketch(final int lgNomLongs, final long seed, final float p,
       final ResizeFactor rf, final boolean unionGadget) {
+    this(lgNomLongs, seed, p, rf, unionGadget, false, false);
+  }
+
+  /**
+   * Construct a new sketch instance on the java heap.
+   *
+   * @param lgNomLongs <a href="{@docRoot}/resources/dictionary.html#lgNomLogs">See lgNomLongs</a>.
+   * @param seed <a href="{@docRoot}/resources/dictionary.html#seed">See seed</a>
+   * @param p <a href="{@docRoot}/resources/dictionary.html#p">See Sampling Probability, <i>p</i></a>
+   * @param rf <a href="{@docRoot}/resources/dictionary.html#resizeFactor">See Resize Factor</a>
+   * @param unionGadget true if this sketch is implementing the Union gadget function.
+   * Otherwise, it is behaving as a normal QuickSelectSketch.
+   * @param incremental true if a resize or rebuild should rehash the prior hash table over the
+   * following updates rather than all at once.
+   * @param bucketed true if the hash table should use the cache-line bucketed layout.
+   */
+  HeapQuickSelectSketch(final int lgNomLongs, final long seed, final float p,
+      final ResizeFactor rf, final boolean unionGadget, final boolean incremental,
+      final boolean bucketed) {
     super(lgNomLongs, seed, p, rf);
+    incremental_ = incremental;
+    bucketed_ = bucketed;
 
     //Choose family, preambleLongs
     if (unionGadget) {
@@ -92,11 +142,12 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
     }
 
     lgArrLongs_ = ThetaUtil.startingSubMultiple(lgNomLongs + 1, rf.lg(), ThetaUtil.MIN_LG_ARR_LONGS);
-    hashTableThreshold_ = setHashTableThreshold(lgNomLongs, lgArrLongs_);
+    hashTableThreshold_ = hashTableThreshold(lgArrLongs_);
     curCount_ = 0;
     thetaLong_ = (long)(p * LONG_MAX_VALUE_AS_DOUBLE);
     empty_ = true; //other flags: bigEndian = readOnly = compact = ordered = false;
     cache_ = new long[1 << lgArrLongs_];
+    if (incremental_ && (lgArrLongs_ > lgNomLongs)) { allocateFullSizeBuffers(); }
   }
 
   /**
@@ -166,7 +217,12 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
 
   @Override
   public HashIterator iterator() {
-    return new HeapHashIterator(cache_, thetaLong_);
+    if (srcCache_ == null) { return new HeapHashIterator(cache_, thetaLong_); }
+    //the hashes not yet migrated follow those of cache_
+    final int pending = srcCache_.length - migrateCursor_;
+    final long[] both = Arrays.copyOf(cache_, cache_.length + pending);
+    System.arraycopy(srcCache_, migrateCursor_, both, cache_.length, pending);
+    return new HeapHashIterator(both, thetaLong_);
   }
 
   @Override
@@ -178,26 +234,39 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
 
   @Override
   public UpdateSketch rebuild() {
+    finishMigration();
     if (getRetainedEntries(true) > (1 << getLgNomLongs())) {
       quickSelectAndRebuild();
+      cacheView_ = null;
+      if (retainedLog_ != null) { relogCache(); }
     }
     return this;
   }
 
   @Override
   public void reset() {
+    if ((srcCache_ != null) && (srcCache_.length == cache_.length)) { //a rebuild was migrating
+      spareCache_ = srcCache_;
+      clearCursor_ = 0;
+    }
+    srcCache_ = null;
+    cacheView_ = null;
+    if (spareCache_ != null) { clearSpare(spareCache_.length); }
+    logCount_ = 0;
     final ResizeFactor rf = getResizeFactor();
     final int lgArrLongsSM = ThetaUtil.startingSubMultiple(lgNomLongs_ + 1, rf.lg(), ThetaUtil.MIN_LG_ARR_LONGS);
     if (lgArrLongsSM == lgArrLongs_) {
       final int arrLongs = cache_.length;
       assert (1 << lgArrLongs_) == arrLongs;
-      java.util.Arrays.fill(cache_,  0L);
+      Arrays.fill(cache_,  0L);
     }
     else {
       cache_ = new long[1 << lgArrLongsSM];
       lgArrLongs_ = lgArrLongsSM;
+      spareCache_ = null;
+      retainedLog_ = null;
     }
-    hashTableThreshold_ = setHashTableThreshold(lgNomLongs_, lgArrLongs_);
+    hashTableThreshold_ = hashTableThreshold(lgArrLongs_);
     empty_ = true;
     curCount_ = 0;
     thetaLong_ =  (long)(getP() * LONG_MAX_VALUE_AS_DOUBLE);
@@ -207,7 +276,23 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
 
   @Override
   long[] getCache() {
-    return cache_;
+    if (!bucketed_ && (srcCache_ == null)) { return cache_; }
+    //Callers and the serialized form expect a single table in the OADH layout. The first read
+    // fills cacheView_, which later reads return until an insert or rebuild changes the retained
+    // hashes. Reads leave the retained hashes, theta and any migration in progress unchanged.
+    if (cacheView_ != null) { return cacheView_; }
+    final long[] hashTable = bucketed_ ? new long[cache_.length] : cache_.clone();
+    if (bucketed_) { HashOperations.hashArrayInsert(cache_, hashTable, lgArrLongs_, thetaLong_); }
+    if (srcCache_ != null) { //add the hashes not yet migrated
+      for (int i = migrateCursor_; i < srcCache_.length; i++) {
+        final long hash = srcCache_[i];
+        if ((hash != 0) && (hash < thetaLong_)) {
+          HashOperations.hashInsertOnly(hashTable, lgArrLongs_, hash);
+        }
+      }
+    }
+    cacheView_ = hashTable;
+    return hashTable;
   }
 
   @Override
@@ -237,6 +322,7 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
 
   @Override
   UpdateReturnState hashUpdate(final long hash) {
+    if (incremental_) { return incrementalHashUpdate(hash); }
     HashOperations.checkHashCorruption(hash);
     empty_ = false;
 
@@ -246,11 +332,12 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
     }
 
     //The duplicate test
-    if (HashOperations.hashSearchOrInsert(cache_, lgArrLongs_, hash) >= 0) {
+    if (searchOrInsert(cache_, lgArrLongs_, hash) >= 0) {
       return RejectedDuplicate; //Duplicate, not inserted
     }
     //insertion occurred, must increment curCount
     curCount_++;
+    cacheView_ = null;
 
     if (isOutOfSpace(curCount_)) { //we need to do something, we are out of space
       //must rebuild or resize
@@ -266,6 +353,43 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
     return InsertedCountIncremented;
   }
 
+  @Override
+  void hashUpdateBlock(final long[] hashes, final int count) {
+    if (count == 0) { return; }
+    if (incremental_) {
+      for (int i = 0; i < count; i++) { incrementalHashUpdate(hashes[i]); }
+      return;
+    }
+    empty_ = false;
+    cacheView_ = null;
+    //Screen the block against the current theta, compacting the survivors to the front.
+    long thetaLong = thetaLong_;
+    int survivors = 0;
+    for (int i = 0; i < count; i++) {
+      final long hash = hashes[i];
+      HashOperations.checkHashCorruption(hash);
+      hashes[survivors] = hash;
+      survivors += HashOperations.continueCondition(thetaLong, hash) ? 0 : 1;
+    }
+    //Insert the survivors. Theta can only decrease during a rebuild, so recheck it after one.
+    for (int i = 0; i < survivors; i++) {
+      final long hash = hashes[i];
+      if ((hash >= thetaLong)
+          || (searchOrInsert(cache_, lgArrLongs_, hash) >= 0)) {
+        continue;
+      }
+      curCount_++;
+      if (curCount_ > hashTableThreshold_) {
+        if (lgArrLongs_ <= lgNomLongs_) {
+          resizeCache();
+        } else {
+          quickSelectAndRebuild();
+          thetaLong = thetaLong_;
+        }
+      }
+    }
+  }
+
   @Override
   boolean isDirty() {
     return false;
@@ -276,6 +400,156 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
     return numEntries > hashTableThreshold_;
   }
 
+  //Same as hashUpdate() but a resize or rebuild only starts a migration, which later updates
+  // advance by MIGRATION_SLOTS slots each. While migrating, the retained hashes below theta are
+  // those in cache_ plus those in srcCache_ not yet migrated, so curCount_ stays exact.
+  private UpdateReturnState incrementalHashUpdate(final long hash) {
+    HashOperations.checkHashCorruption(hash);
+    empty_ = false;
+    advance();
+
+    //The over-theta test
+    if (HashOperations.continueCondition(thetaLong_, hash)) {
+      return RejectedOverTheta;
+    }
+
+    //The duplicate test. A hash not yet migrated is only in srcCache_.
+    if ((srcCache_ != null) && (search(srcCache_, srcLgArrLongs_, hash) >= 0)) {
+      return RejectedDuplicate;
+    }
+    if (searchOrInsert(cache_, lgArrLongs_, hash) >= 0) {
+      return RejectedDuplicate;
+    }
+    curCount_++;
+    cacheView_ = null;
+    if (retainedLog_ != null) { retainedLog_[logCount_++] = hash; }
+
+    if (isOutOfSpace(curCount_)) {
+      if (lgArrLongs_ <= lgNomLongs_) {
+        finishMigration(); //only if the migration fell behind, which MIGRATION_SLOTS prevents
+        startResize();
+        return InsertedCountIncrementedResized;
+      }
+      startRebuild();
+      return InsertedCountIncrementedRebuilt;
+    }
+    return InsertedCountIncremented;
+  }
+
+  //Does a bounded step of the pending work: the migration, then clearing the spare table.
+  private void advance() {
+    if (srcCache_ != null) {
+      migrate(MIGRATION_SLOTS);
+    } else if ((spareCache_ != null) && (clearCursor_ < spareCache_.length)) {
+      clearSpare(CLEAR_SLOTS);
+    }
+  }
+
+  //Installs a larger, empty cache_ and makes the current one the migration source.
+  // Theta and count don't change. Allocates the reused buffers on reaching full size.
+  private void startResize() {
+    final int lgResizeFactor = max(min(getResizeFactor().lg(), lgNomLongs_ + 1 - lgArrLongs_), 1);
+    srcCache_ = cache_;
+    srcLgArrLongs_ = lgArrLongs_;
+    migrateCursor_ = 0;
+    lgArrLongs_ += lgResizeFactor;
+    cache_ = new long[1 << lgArrLongs_];
+    hashTableThreshold_ = hashTableThreshold(lgArrLongs_);
+    if (lgArrLongs_ > lgNomLongs_) { allocateFullSizeBuffers(); }
+  }
+
+  private void allocateFullSizeBuffers() {
+    spareCache_ = new long[1 << lgArrLongs_];
+    clearCursor_ = spareCache_.length;
+    retainedLog_ = new long[hashTableThreshold_ + 1];
+    logCount_ = 0; //the migration, if any, logs the hashes of the prior table
+  }
+
+  //Selects the new theta over the log of all retained hashes, exactly as quickSelectAndRebuild()
+  // does over the cache, then installs the spare table as an empty cache_ and makes the current
+  // one the migration source. Any phase that fell behind is completed here.
+  private void startRebuild() {
+    finishMigration();
+    clearSpare(spareCache_.length);
+    assert logCount_ == curCount_ : "log: " + logCount_ + ", curCount: " + curCount_;
+    final int k = 1 << lgNomLongs_;
+    thetaLong_ = select(retainedLog_, 0, logCount_ - 1, k); //the (k+1)th smallest
+    curCount_ = k;
+    srcCache_ = cache_;
+    srcLgArrLongs_ = lgArrLongs_;
+    migrateCursor_ = 0;
+    cache_ = spareCache_;
+    spareCache_ = null;
+    cacheView_ = null;
+    logCount_ = 0;
+    //hashTableThreshold stays the same
+  }
+
+  //Moves up to the given number of slots of srcCache_ into cache_, dropping hashes at or
+  // above theta. The hashes are distinct from those inserted since the migration started.
+  private void migrate(final int slots) {
+    final long[] src = srcCache_;
+    final int end = (int) min((long) migrateCursor_ + slots, src.length);
+    for (int i = migrateCursor_; i < end; i++) {
+      final long hash = src[i];
+      if ((hash != 0) && (hash < thetaLong_)) {
+        insertOnly(cache_, lgArrLongs_, hash);
+        if (retainedLog_ != null) { retainedLog_[logCount_++] = hash; }
+      }
+    }
+    migrateCursor_ = end;
+    if (end == src.length) {
+      srcCache_ = null;
+      if (src.length == cache_.length) { //the prior table of a rebuild becomes the spare
+        spareCache_ = src;
+        clearCursor_ = 0;
+      }
+    }
+  }
+
+  //Completes any migration in progress so that cache_ alone holds the retained hashes.
+  private void finishMigration() {
+    if (srcCache_ != null) { migrate(srcCache_.length); }
+  }
+
+  private void clearSpare(final int slots) {
+    final int end = (int) min((long) clearCursor_ + slots, spareCache_.length);
+    Arrays.fill(spareCache_, clearCursor_, end, 0L);
+    clearCursor_ = end;
+  }
+
+  //Refills the log from cache_ after a stop-the-world rebuild
+  private void relogCache() {
+    logCount_ = 0;
+    for (int i = 0; i < cache_.length; i++) {
+      if (cache_[i] != 0) { retainedLog_[logCount_++] = cache_[i]; }
+    }
+  }
+
+  //Hash table operations in the layout of this sketch
+
+  private int searchOrInsert(final long[] hashTable, final int lgArrLongs, final long hash) {
+    return bucketed_ ? HashOperations.hashSearchOrInsertBucketed(hashTable, lgArrLongs, hash)
+        : HashOperations.hashSearchOrInsert(hashTable, lgArrLongs, hash);
+  }
+
+  private int search(final long[] hashTable, final int lgArrLongs, final long hash) {
+    return bucketed_ ? HashOperations.hashSearchBucketed(hashTable, lgArrLongs, hash)
+        : HashOperations.hashSearch(hashTable, lgArrLongs, hash);
+  }
+
+  private int insertOnly(final long[] hashTable, final int lgArrLongs, final long hash) {
+    return bucketed_ ? HashOperations.hashInsertOnlyBucketed(hashTable, lgArrLongs, hash)
+        : HashOperations.hashInsertOnly(hashTable, lgArrLongs, hash);
+  }
+
+  private int arrayInsert(final long[] srcArr, final long[] hashTable, final int lgArrLongs,
+      final long thetaLong) {
+    return bucketed_
+        ? HashOperations.hashArrayInsertBucketed(srcArr, hashTable, lgArrLongs, thetaLong)
+        : HashOperations.hashArrayInsert(srcArr, hashTable, lgArrLongs, thetaLong);
+  }
+
   //Must resize. Changes lgArrLongs_, cache_, hashTableThreshold;
   // theta and count don't change.
   // Used by hashUpdate()
@@ -287,13 +561,13 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
     lgArrLongs_ += lgResizeFactor; // new arr size
 
     final long[] tgtArr = new long[1 << lgArrLongs_];
-    final int newCount = HashOperations.hashArrayInsert(cache_, tgtArr, lgArrLongs_, thetaLong_);
+    final int newCount = arrayInsert(cache_, tgtArr, lgArrLongs_, thetaLong_);
 
     assert newCount == curCount_;  //Assumes no dirty values.
     curCount_ = newCount;
 
     cache_ = tgtArr;
-    hashTableThreshold_ = setHashTableThreshold(lgNomLongs_, lgArrLongs_);
+    hashTableThreshold_ = hashTableThreshold(lgArrLongs_);
   }
 
   //array stays the same size. Changes theta and thus count
@@ -306,11 +580,19 @@ class HeapQuickSelectSketch extends HeapUpdateSketch {
 
     // now we rebuild to clean up dirty data, update count, reconfigure as a hash table
     final long[] tgtArr = new long[arrLongs];
-    curCount_ = HashOperations.hashArrayInsert(cache_, tgtArr, lgArrLongs_, thetaLong_);
+    curCount_ = arrayInsert(cache_, tgtArr, lgArrLongs_, thetaLong_);
     cache_ = tgtArr;
     //hashTableThreshold stays the same
   }
 
+  //The rebuild threshold of the bucketed layout is lower than that of the OADH layout
+  private int hashTableThreshold(final int lgArrLongs) {
+    if (bucketed_ && (lgArrLongs > lgNomLongs_)) {
+      return (int) Math.floor(ThetaUtil.BUCKETED_REBUILD_THRESHOLD * (1 << lgArrLongs));
+    }
+    return setHashTableThreshold(lgNomLongs_, lgArrLongs);
+  }
+
   /**
    * Returns the cardinality limit given the current size of the hash table array.
    *
@@ -108,10 +108,17 @@ abstract class HeapUpdateSketch extends UpdateSketch {
   //Used by HeapAlphaSketch and HeapQuickSelectSketch / Theta UpdateSketch
   byte[] toByteArray(final int preLongs, final byte familyID) {
     if (isDirty()) { rebuild(); }
-    checkIllegalCurCountAndEmpty(isEmpty(), getRetainedEntries(true));
+    return toByteArray(preLongs, familyID, getLgArrLongs(), getRetainedEntries(true),
+        getThetaLong(), isEmpty(), getCache());
+  }
+
+  //Used by LockFreeQuickSelectSketch, which must serialize a consistent snapshot of its state
+  byte[] toByteArray(final int preLongs, final byte familyID, final int lgArrLongs,
+      final int curCount, final long thetaLongIn, final boolean empty, final long[] cache) {
+    checkIllegalCurCountAndEmpty(empty, curCount);
     final int preBytes = (preLongs << 3) & 0X3F; //24 bytes
-    final int dataBytes = getCurrentDataLongs() << 3;
-    final byte[] byteArrOut = new byte[preBytes + dataBytes];
+    final int arrLongs = 1 << lgArrLongs;
+    final byte[] byteArrOut = new byte[preBytes + (arrLongs << 3)];
     final WritableMemory memOut = WritableMemory.writableWrap(byteArrOut);
 
     //preamble first 8 bytes. Note: only compact can be reduced to 8 bytes.
@@ -121,22 +128,19 @@ abstract class HeapUpdateSketch extends UpdateSketch {
     insertSerVer(memOut, SER_VER);             //byte 1
     insertFamilyID(memOut, familyID);          //byte 2
     insertLgNomLongs(memOut, getLgNomLongs()); //byte 3
-    insertLgArrLongs(memOut, getLgArrLongs()); //byte 4
+    insertLgArrLongs(memOut, lgArrLongs);      //byte 4
     insertSeedHash(memOut, getSeedHash());     //bytes 6 & 7
 
-    insertCurCount(memOut, this.getRetainedEntries(true));
+    insertCurCount(memOut, curCount);
     insertP(memOut, getP());
-    final long thetaLong =
-        correctThetaOnCompact(isEmpty(), getRetainedEntries(true), getThetaLong());
+    final long thetaLong = correctThetaOnCompact(empty, curCount, thetaLongIn);
     insertThetaLong(memOut, thetaLong);
 
     //Flags: BigEnd=0, ReadOnly=0, Empty=X, compact=0, ordered=0
-    final byte flags = isEmpty() ? (byte) EMPTY_FLAG_MASK : 0;
+    final byte flags = empty ? (byte) EMPTY_FLAG_MASK : 0;
     insertFlags(memOut, flags);
 
     //Data
-    final int arrLongs = 1 << getLgArrLongs();
-    final long[] cache = getCache();
     memOut.putLongArray(preBytes, cache, 0, arrLongs); //load byteArrOut
 
     return byteArrOut;
@@ -20,6 +20,8 @@
 package org.apache.datasketches.theta;
 
 import static java.lang.Math.min;
+import static org.apache.datasketches.theta.CompactOperations.intersectOrdered;
+import static org.apache.datasketches.theta.CompactOperations.isOrderedCompact;
 import static org.apache.datasketches.theta.PreambleUtil.EMPTY_FLAG_MASK;
 import static org.apache.datasketches.theta.PreambleUtil.FAMILY_BYTE;
 import static org.apache.datasketches.theta.PreambleUtil.FLAGS_BYTE;
@@ -218,6 +220,17 @@ class IntersectionImpl extends Intersection {
      final WritableMemory dstMem) {
     if (wmem_ != null && readOnly_) { throw new SketchesReadOnlyException(); }
     hardReset();
+    if (a != null && b != null && !a.isEmpty() && !b.isEmpty()
+        && isOrderedCompact(a) && isOrderedCompact(b)) {
+      //Both ordered compact: merge the two sorted caches without building a hash table
+      ThetaUtil.checkSeedHashes(seedHash_, a.getSeedHash());
+      ThetaUtil.checkSeedHashes(seedHash_, b.getSeedHash());
+      final long minThetaLong = min(a.getThetaLong(), b.getThetaLong());
+      final long[] hashArrOut = intersectOrdered(a.getCache(), a.getRetainedEntries(true),
+          b.getCache(), b.getRetainedEntries(true), minThetaLong);
+      return CompactOperations.componentsToCompact(minThetaLong, hashArrOut.length, seedHash_,
+          false, true, true, dstOrdered, dstMem, hashArrOut);
+    }
     intersect(a);
     intersect(b);
     final CompactSketch csk = getResult(dstOrdered, dstMem);
@@ -288,7 +301,7 @@ class IntersectionImpl extends Intersection {
       else { //On the heap, allocate a HT
         hashTable_ = new long[1 << lgArrLongs_];
       }
-      moveDataToTgt(sketchIn.getCache(), curCount_);
+      moveDataToTgt(sketchIn.iterator(), curCount_);
     } //end of state 5
 
     //state 7
@@ -424,8 +437,6 @@ class IntersectionImpl extends Intersection {
   private void performIntersect(final Sketch sketchIn) {
     // curCount and input data are nonzero, match against HT
     assert curCount_ > 0 && !empty_;
-    final long[] cacheIn = sketchIn.getCache();
-    final int arrLongsIn = cacheIn.length;
     final long[] hashTable;
     if (wmem_ != null) {
       final int htLen = 1 << lgArrLongs_;
@@ -438,10 +449,12 @@ class IntersectionImpl extends Intersection {
     final long[] matchSet = new long[ min(curCount_, sketchIn.getRetainedEntries(true)) ];
 
     int matchSetCount = 0;
+    //the iterator reads the input in place, decoding compressed images on the fly
+    final HashIterator it = sketchIn.iterator();
     if (sketchIn.isOrdered()) {
       //ordered compact, which enables early stop
-      for (int i = 0; i < arrLongsIn; i++ ) {
-        final long hashIn = cacheIn[i];
+      while (it.next()) {
+        final long hashIn = it.get();
         //if (hashIn <= 0L) continue;  //<= 0 should not happen
         if (hashIn >= thetaLong_) {
           break; //early stop assumes that hashes in input sketch are ordered!
@@ -453,8 +466,8 @@ class IntersectionImpl extends Intersection {
     }
     else {
       //either unordered compact or hash table
-      for (int i = 0; i < arrLongsIn; i++ ) {
-        final long hashIn = cacheIn[i];
+      while (it.next()) {
+        final long hashIn = it.get();
         if (hashIn <= 0L || hashIn >= thetaLong_) { continue; }
         final int foundIdx = hashSearch(hashTable, lgArrLongs_, hashIn);
         if (foundIdx == -1) { continue; }
@@ -473,7 +486,7 @@ class IntersectionImpl extends Intersection {
     }
 
     if (curCount_ > 0) {
-      moveDataToTgt(matchSet, matchSetCount); //move matchSet to target
+      moveDataToTgt(new HeapCompactHashIterator(matchSet), matchSetCount); //move matchSet to target
     } else {
       if (thetaLong_ == Long.MAX_VALUE) {
         empty_ = true;
@@ -481,22 +494,21 @@ class IntersectionImpl extends Intersection {
     }
   }
 
-  private void moveDataToTgt(final long[] arr, final int count) {
-    final int arrLongsIn = arr.length;
+  private void moveDataToTgt(final HashIterator it, final int count) {
     int tmpCnt = 0;
     if (wmem_ != null) { //Off Heap puts directly into mem
       final int preBytes = CONST_PREAMBLE_LONGS << 3;
       final int lgArrLongs = lgArrLongs_;
       final long thetaLong = thetaLong_;
-      for (int i = 0; i < arrLongsIn; i++ ) {
-        final long hashIn = arr[i];
+      while (it.next()) {
+        final long hashIn = it.get();
         if (continueCondition(thetaLong, hashIn)) { continue; }
         hashInsertOnlyMemory(wmem_, lgArrLongs, hashIn, preBytes);
         tmpCnt++;
       }
     } else { //On Heap. Assumes HT exists and is large enough
-      for (int i = 0; i < arrLongsIn; i++ ) {
-        final long hashIn = arr[i];
+      while (it.next()) {
+        final long hashIn = it.get();
         if (continueCondition(thetaLong_, hashIn)) { continue; }
         hashInsertOnly(hashTable_, lgArrLongs_, hashIn);
         tmpCnt++;
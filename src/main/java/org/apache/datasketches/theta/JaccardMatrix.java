@@ -0,0 +1,463 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import static java.lang.Math.min;
+import static org.apache.datasketches.common.Util.LONG_MAX_VALUE_AS_DOUBLE;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.datasketches.common.BoundsOnRatiosInSampledSets;
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.thetacommon.ThetaUtil;
+
+/**
+ * The pairwise Jaccard similarity indices and containments, with bounds, of a list of Theta
+ * Sketches, as computed by {@link JaccardSimilarity#jaccardMatrix(List, ForkJoinPool)} or, keeping
+ * only the pairs whose Jaccard estimate reaches a threshold, by
+ * {@link JaccardSimilarity#jaccardMatrix(List, double, ForkJoinPool)}.
+ *
+ * <p>Each pair <i>(i, j)</i> with <i>i &lt; j</i> holds the same {LowerBound, Estimate,
+ * UpperBound} as {@link JaccardSimilarity#jaccard(Sketch, Sketch)} of sketches <i>i</i> and
+ * <i>j</i>. The hashes of every sketch are ordered once, after which each pair only needs a
+ * merge count of the two ordered arrays below the smaller of the two thetas. No union or
+ * intersection is built, except for pairs too large for a union of their combined entries.</p>
+ *
+ * <p>The same counts give the containment of each sketch of a pair in the other, the fraction
+ * of the distinct items of one that are also in the other, with bounds from
+ * {@link BoundsOnRatiosInSampledSets}. See {@link #containment(int, int)}.</p>
+ *
+ * <p>The stored pairs are in the order of <i>(i, j)</i>. A dense matrix stores every pair.</p>
+ */
+public final class JaccardMatrix {
+  private static final double[] ZEROS = {0.0, 0.0, 0.0}; // LB, Estimate, UB
+  private static final double[] ONES = {1.0, 1.0, 1.0};
+
+  //The number of rows computed directly by a single task
+  private static final int LEAF_ROWS = 4;
+
+  private final int numSketches_;
+  private final boolean[] nullSketch_;
+  private final long[] thetaLongs_;
+  private final Pairs pairs_;
+
+  private JaccardMatrix(final int numSketches, final boolean[] nullSketch, final long[] thetaLongs,
+      final Pairs pairs) {
+    numSketches_ = numSketches;
+    nullSketch_ = nullSketch;
+    thetaLongs_ = thetaLongs;
+    pairs_ = pairs;
+  }
+
+  /**
+   * Computes the matrix. Called by JaccardSimilarity.
+   * @param sketches the given sketches. Null entries are allowed.
+   * @param threshold the smallest estimate of a stored pair, or NaN for a dense matrix
+   * @param pool the ForkJoinPool that computes the rows in parallel
+   * @return the matrix
+   */
+  static JaccardMatrix compute(final List<? extends Sketch> sketches, final double threshold,
+      final ForkJoinPool pool) {
+    final boolean dense = Double.isNaN(threshold);
+    final int n = sketches.size();
+    final long numPairs = ((long) n * (n - 1)) / 2;
+    if (dense && (numPairs > Integer.MAX_VALUE - 8)) {
+      throw new SketchesArgumentException("Too many sketches for a dense matrix: " + n);
+    }
+    final Inputs in = new Inputs(sketches);
+    if (dense) {
+      final Pairs pairs = new Pairs((int) numPairs, false);
+      pairs.count = (int) numPairs;
+      pool.invoke(new RowsTask(in, 0, n, threshold, null, pairs));
+      return new JaccardMatrix(n, in.nullSketch, in.thetaLongs, pairs);
+    }
+    final Pairs[] rows = new Pairs[n];
+    pool.invoke(new RowsTask(in, 0, n, threshold, rows, null));
+    int len = 0;
+    for (final Pairs row : rows) { len += row.count; }
+    final Pairs pairs = new Pairs(len, true);
+    for (final Pairs row : rows) { pairs.append(row); }
+    return new JaccardMatrix(n, in.nullSketch, in.thetaLongs, pairs);
+  }
+
+  /**
+   * Returns the number of sketches, which is the number of rows and columns.
+   * @return the number of sketches
+   */
+  public int getNumSketches() {
+    return numSketches_;
+  }
+
+  /**
+   * Returns true if only the pairs whose estimate reaches the threshold are stored.
+   * @return true if only the pairs whose estimate reaches the threshold are stored
+   */
+  public boolean isSparse() {
+    return pairs_.keys != null;
+  }
+
+  /**
+   * Returns the number of stored pairs <i>(i, j)</i> with <i>i &lt; j</i>.
+   * @return the number of stored pairs
+   */
+  public int getNumPairs() {
+    return pairs_.count;
+  }
+
+  /**
+   * Returns the row <i>i</i> of the stored pair at the given position.
+   * @param pair the position of the stored pair, from zero to {@link #getNumPairs()} - 1
+   * @return the row of the stored pair
+   */
+  public int getRow(final int pair) {
+    checkPair(pair);
+    if (pairs_.keys != null) { return (int) (pairs_.keys[pair] >>> 32); }
+    int lo = 0; //the last row that starts at or before the pair
+    int hi = numSketches_ - 1;
+    while (lo < hi) {
+      final int mid = (lo + hi + 1) >>> 1;
+      if (rowStart(mid) <= pair) { lo = mid; }
+      else { hi = mid - 1; }
+    }
+    return lo;
+  }
+
+  /**
+   * Returns the column <i>j</i> of the stored pair at the given position.
+   * @param pair the position of the stored pair, from zero to {@link #getNumPairs()} - 1
+   * @return the column of the stored pair
+   */
+  public int getColumn(final int pair) {
+    if (pairs_.keys != null) {
+      checkPair(pair);
+      return (int) pairs_.keys[pair];
+    }
+    final int row = getRow(pair);
+    return (int) (pair - rowStart(row)) + row + 1;
+  }
+
+  /**
+   * Returns the lower bound of the Jaccard index of the stored pair at the given position.
+   * @param pair the position of the stored pair, from zero to {@link #getNumPairs()} - 1
+   * @return the lower bound of the Jaccard index
+   */
+  public double getLowerBound(final int pair) {
+    checkPair(pair);
+    return pairs_.lb[pair];
+  }
+
+  /**
+   * Returns the estimate of the Jaccard index of the stored pair at the given position.
+   * @param pair the position of the stored pair, from zero to {@link #getNumPairs()} - 1
+   * @return the estimate of the Jaccard index
+   */
+  public double getEstimate(final int pair) {
+    checkPair(pair);
+    return pairs_.est[pair];
+  }
+
+  /**
+   * Returns the upper bound of the Jaccard index of the stored pair at the given position.
+   * @param pair the position of the stored pair, from zero to {@link #getNumPairs()} - 1
+   * @return the upper bound of the Jaccard index
+   */
+  public double getUpperBound(final int pair) {
+    checkPair(pair);
+    return pairs_.ub[pair];
+  }
+
+  /**
+   * Returns the number of retained hashes that the two sketches of the stored pair at the given
+   * position have in common, below the smaller of their thetas.
+   * @param pair the position of the stored pair, from zero to {@link #getNumPairs()} - 1
+   * @return the number of common retained hashes
+   */
+  public int getIntersectionCount(final int pair) {
+    checkPair(pair);
+    return pairs_.countI[pair];
+  }
+
+  /**
+   * Returns the Jaccard index of sketches <i>i</i> and <i>j</i> in any order, as
+   * {@link JaccardSimilarity#jaccard(Sketch, Sketch)} would.
+   * @param i the index of one sketch
+   * @param j the index of the other sketch
+   * @return a double array {LowerBound, Estimate, UpperBound} of the Jaccard index, or null if
+   * the matrix is sparse and the pair is below the threshold
+   */
+  public double[] jaccard(final int i, final int j) {
+    checkSketches(i, j);
+    if (i == j) { return nullSketch_[i] ? ZEROS.clone() : ONES.clone(); }
+    final int pair = findPair(i, j);
+    if (pair < 0) { return null; }
+    return new double[] {pairs_.lb[pair], pairs_.est[pair], pairs_.ub[pair]};
+  }
+
+  /**
+   * Returns the containment of sketch <i>i</i> in sketch <i>j</i>, the fraction of the distinct
+   * items of <i>i</i> that are also in <i>j</i>. Unlike the Jaccard index it is not symmetric.
+   * The estimate is the number of common retained hashes over the number of retained hashes of
+   * <i>i</i>, both below the smaller of the two thetas, and the bounds are those of
+   * {@link BoundsOnRatiosInSampledSets} for these counts at that theta. This is the same as
+   * {@link org.apache.datasketches.thetacommon.BoundsOnRatiosInThetaSketchedSets} gives for
+   * sketch <i>i</i> and the intersection of the two sketches. If sketch <i>i</i> retains no
+   * hashes below that theta, the result is {0, 0.5, 1}, and if either sketch is null it is
+   * {0, 0, 0}.
+   * @param i the index of the contained sketch
+   * @param j the index of the containing sketch
+   * @return a double array {LowerBound, Estimate, UpperBound} of the containment, or null if
+   * the matrix is sparse and the pair is below the threshold
+   */
+  public double[] containment(final int i, final int j) {
+    checkSketches(i, j);
+    if (i == j) { return nullSketch_[i] ? ZEROS.clone() : ONES.clone(); }
+    final int pair = findPair(i, j);
+    if (pair < 0) { return null; }
+    if (nullSketch_[i] || nullSketch_[j]) { return ZEROS.clone(); }
+    final long countA = (i < j) ? pairs_.countA[pair] : pairs_.countB[pair];
+    final long countI = pairs_.countI[pair];
+    final double f = min(thetaLongs_[i], thetaLongs_[j]) / LONG_MAX_VALUE_AS_DOUBLE;
+    return new double[] {
+        BoundsOnRatiosInSampledSets.getLowerBoundForBoverA(countA, countI, f),
+        BoundsOnRatiosInSampledSets.getEstimateOfBoverA(countA, countI),
+        BoundsOnRatiosInSampledSets.getUpperBoundForBoverA(countA, countI, f)};
+  }
+
+  //restricted
+
+  private long rowStart(final int row) { //position of the pair (row, row + 1) in a dense matrix
+    return ((long) row * numSketches_) - (((long) row * (row + 1)) / 2);
+  }
+
+  //Returns the position of the pair of two distinct sketches in any order, or -1 if not stored
+  private int findPair(final int i, final int j) {
+    final int row = min(i, j);
+    final int col = Math.max(i, j);
+    if (pairs_.keys == null) { return (int) (rowStart(row) + (col - row - 1)); }
+    final int pair = Arrays.binarySearch(pairs_.keys, ((long) row << 32) | col);
+    return (pair < 0) ? -1 : pair;
+  }
+
+  private void checkSketches(final int i, final int j) {
+    if ((i < 0) || (j < 0) || (i >= numSketches_) || (j >= numSketches_)) {
+      throw new SketchesArgumentException("Sketch index out of range: " + i + ", " + j);
+    }
+  }
+
+  private void checkPair(final int pair) {
+    if ((pair < 0) || (pair >= pairs_.count)) {
+      throw new SketchesArgumentException("Pair index out of range: " + pair);
+    }
+  }
+
+  //The ordered hashes, counts and thetas of all sketches, computed once.
+  private static final class Inputs {
+    final List<? extends Sketch> sketches;
+    final boolean[] nullSketch;
+    final boolean[] empty;
+    final long[][] hashes;
+    final long[] thetaLongs;
+
+    Inputs(final List<? extends Sketch> sketches) {
+      this.sketches = sketches;
+      final int n = sketches.size();
+      nullSketch = new boolean[n];
+      empty = new boolean[n];
+      hashes = new long[n][];
+      thetaLongs = new long[n];
+      for (int i = 0; i < n; i++) {
+        final Sketch sk = sketches.get(i);
+        nullSketch[i] = sk == null;
+        if (sk == null) { continue; }
+        empty[i] = sk.isEmpty();
+        thetaLongs[i] = sk.getThetaLong();
+        hashes[i] = empty[i] ? new long[0] : sk.compact(true, null).getCache();
+      }
+    }
+
+    //Writes {LB, Estimate, UB} of the pair (i, j) into out, the same as JaccardSimilarity.jaccard,
+    // and {countI, countA, countB} below the smaller theta into counts.
+    void jaccard(final int i, final int j, final double[] out, final int[] counts) {
+      final Sketch skA = sketches.get(i);
+      final Sketch skB = sketches.get(j);
+      if (nullSketch[i] || nullSketch[j]) {
+        System.arraycopy(ZEROS, 0, out, 0, 3);
+        Arrays.fill(counts, 0);
+        return;
+      }
+      final long[] hashArrA = hashes[i];
+      final long[] hashArrB = hashes[j];
+      final int countA = hashArrA.length;
+      final int countB = hashArrB.length;
+      final long thetaLongA = thetaLongs[i];
+      final long thetaLongB = thetaLongs[j];
+      final long thetaLong = min(thetaLongA, thetaLongB);
+      final int numA = CompactOperations.gallopSearch(hashArrA, 0, countA, thetaLong);
+      final int numB = CompactOperations.gallopSearch(hashArrB, 0, countB, thetaLong);
+      final int countI = CompactOperations.intersectCountOrdered(hashArrA, numA, hashArrB, numB);
+      final int countU = (numA + numB) - countI;
+      counts[0] = countI;
+      counts[1] = numA;
+      counts[2] = numB;
+
+      final double[] corner = (skA == skB) ? ONES
+          : (empty[i] && empty[j]) ? ONES
+          : (empty[i] || empty[j]) ? ZEROS
+          : null;
+      if (corner != null) {
+        System.arraycopy(corner, 0, out, 0, 3);
+        return;
+      }
+      if ((long) countA + countB > (1 << ThetaUtil.MAX_LG_NOM_LONGS)) {
+        //the union of JaccardSimilarity would be cut back to its maximum k
+        System.arraycopy(JaccardSimilarity.jaccard(skA, skB), 0, out, 0, 3);
+        return;
+      }
+
+      //Check for identical data
+      if ((countU == countA) && (countU == countB) && (thetaLongA == thetaLongB)) {
+        System.arraycopy(ONES, 0, out, 0, 3);
+        return;
+      }
+      if (countU <= 0) {
+        out[0] = 0.0;
+        out[1] = 0.5;
+        out[2] = 1.0;
+        return;
+      }
+      final double f = thetaLong / LONG_MAX_VALUE_AS_DOUBLE;
+      out[0] = BoundsOnRatiosInSampledSets.getLowerBoundForBoverA(countU, countI, f);
+      out[1] = (double) countI / (double) countU;
+      out[2] = BoundsOnRatiosInSampledSets.getUpperBoundForBoverA(countU, countI, f);
+    }
+  }
+
+  //Stored pairs: the Jaccard bounds and the counts below the smaller theta. Those of a dense
+  // matrix are written in place, those of a sparse one are added row by row.
+  private static final class Pairs {
+    int count;
+    long[] keys; //(i << 32) | j of each pair, null if dense
+    double[] lb;
+    double[] est;
+    double[] ub;
+    int[] countI;
+    int[] countA;
+    int[] countB;
+
+    Pairs(final int capacity, final boolean sparse) {
+      keys = sparse ? new long[capacity] : null;
+      lb = new double[capacity];
+      est = new double[capacity];
+      ub = new double[capacity];
+      countI = new int[capacity];
+      countA = new int[capacity];
+      countB = new int[capacity];
+    }
+
+    void set(final int pair, final double[] jac, final int[] counts) {
+      lb[pair] = jac[0];
+      est[pair] = jac[1];
+      ub[pair] = jac[2];
+      countI[pair] = counts[0];
+      countA[pair] = counts[1];
+      countB[pair] = counts[2];
+    }
+
+    void add(final long key, final double[] jac, final int[] counts) {
+      if (count == keys.length) {
+        final int len = 2 * count;
+        keys = Arrays.copyOf(keys, len);
+        lb = Arrays.copyOf(lb, len);
+        est = Arrays.copyOf(est, len);
+        ub = Arrays.copyOf(ub, len);
+        countI = Arrays.copyOf(countI, len);
+        countA = Arrays.copyOf(countA, len);
+        countB = Arrays.copyOf(countB, len);
+      }
+      keys[count] = key;
+      set(count, jac, counts);
+      count++;
+    }
+
+    void append(final Pairs other) {
+      final int n = other.count;
+      System.arraycopy(other.keys, 0, keys, count, n);
+      System.arraycopy(other.lb, 0, lb, count, n);
+      System.arraycopy(other.est, 0, est, count, n);
+      System.arraycopy(other.ub, 0, ub, count, n);
+      System.arraycopy(other.countI, 0, countI, count, n);
+      System.arraycopy(other.countA, 0, countA, count, n);
+      System.arraycopy(other.countB, 0, countB, count, n);
+      count += n;
+    }
+  }
+
+  //Computes the rows [lo, hi) by recursively splitting the range. A dense matrix is written in
+  // place, a sparse one row by row.
+  private static final class RowsTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Inputs in;
+    private final int lo;
+    private final int hi;
+    private final double threshold;
+    private final transient Pairs[] rows;
+    private final transient Pairs pairs;
+
+    RowsTask(final Inputs in, final int lo, final int hi, final double threshold,
+        final Pairs[] rows, final Pairs pairs) {
+      this.in = in;
+      this.lo = lo;
+      this.hi = hi;
+      this.threshold = threshold;
+      this.rows = rows;
+      this.pairs = pairs;
+    }
+
+    @Override
+    protected void compute() {
+      if ((hi - lo) > LEAF_ROWS) {
+        final int mid = (lo + hi) >>> 1;
+        invokeAll(new RowsTask(in, lo, mid, threshold, rows, pairs),
+            new RowsTask(in, mid, hi, threshold, rows, pairs));
+        return;
+      }
+      final int n = in.hashes.length;
+      final double[] jac = new double[3];
+      final int[] counts = new int[3];
+      for (int i = lo; i < hi; i++) {
+        final Pairs row = (rows == null) ? null : new Pairs(8, true);
+        int pair = (int) (((long) i * n) - (((long) i * (i + 1)) / 2));
+        for (int j = i + 1; j < n; j++) {
+          in.jaccard(i, j, jac, counts);
+          if (row == null) {
+            pairs.set(pair++, jac, counts);
+          } else if (jac[1] >= threshold) {
+            row.add(((long) i << 32) | j, jac, counts);
+          }
+        }
+        if (rows != null) { rows[i] = row; }
+      }
+    }
+  }
+}
@@ -26,6 +26,10 @@ import static org.apache.datasketches.thetacommon.BoundsOnRatiosInThetaSketchedS
 import static org.apache.datasketches.thetacommon.BoundsOnRatiosInThetaSketchedSets.getLowerBoundForBoverA;
 import static org.apache.datasketches.thetacommon.BoundsOnRatiosInThetaSketchedSets.getUpperBoundForBoverA;
 
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.thetacommon.ThetaUtil;
 
 /**
@@ -95,6 +99,43 @@ public final class JaccardSimilarity {
     return new double[] {lb, est, ub};
   }
 
+  /**
+   * Computes the Jaccard similarity index with upper and lower bounds of every pair of the given
+   * sketches. Each pair gets the same result as {@link #jaccard(Sketch, Sketch)}, but the hashes of
+   * each sketch are ordered only once and each pair is computed by merging two ordered arrays,
+   * without building a union and an intersection. The rows are computed in parallel on the given
+   * pool. The same counts also give the containment of each sketch of a pair in the other, see
+   * {@link JaccardMatrix#containment(int, int)}.
+   *
+   * @param sketches the given sketches. Null entries are allowed.
+   * @param pool the ForkJoinPool that computes the rows, for example
+   * {@link ForkJoinPool#commonPool()}
+   * @return the dense matrix of all pairs
+   */
+  public static JaccardMatrix jaccardMatrix(final List<? extends Sketch> sketches,
+      final ForkJoinPool pool) {
+    return JaccardMatrix.compute(sketches, Double.NaN, pool);
+  }
+
+  /**
+   * Computes the Jaccard similarity index with upper and lower bounds of every pair of the given
+   * sketches, as {@link #jaccardMatrix(List, ForkJoinPool)} does, but keeps only the pairs whose
+   * estimate is at least the given threshold.
+   *
+   * @param sketches the given sketches. Null entries are allowed.
+   * @param threshold a real value between zero and one.
+   * @param pool the ForkJoinPool that computes the rows, for example
+   * {@link ForkJoinPool#commonPool()}
+   * @return the sparse matrix of the pairs whose estimate is at least the threshold
+   */
+  public static JaccardMatrix jaccardMatrix(final List<? extends Sketch> sketches,
+      final double threshold, final ForkJoinPool pool) {
+    if (!(threshold >= 0.0) || (threshold > 1.0)) {
+      throw new SketchesArgumentException("Threshold must be between zero and one: " + threshold);
+    }
+    return JaccardMatrix.compute(sketches, threshold, pool);
+  }
+
   /**
    * Returns true if the two given sketches have exactly the same hash values and the same
    * theta values. Thus, they are equivalent.
@@ -0,0 +1,435 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.apache.datasketches.common.Util.LONG_MAX_VALUE_AS_DOUBLE;
+import static org.apache.datasketches.theta.UpdateReturnState.InsertedCountIncremented;
+import static org.apache.datasketches.theta.UpdateReturnState.InsertedCountIncrementedRebuilt;
+import static org.apache.datasketches.theta.UpdateReturnState.InsertedCountIncrementedResized;
+import static org.apache.datasketches.theta.UpdateReturnState.RejectedDuplicate;
+import static org.apache.datasketches.theta.UpdateReturnState.RejectedOverTheta;
+import static org.apache.datasketches.thetacommon.QuickSelect.selectExcludingZeros;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.datasketches.common.Family;
+import org.apache.datasketches.common.ResizeFactor;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.thetacommon.HashOperations;
+import org.apache.datasketches.thetacommon.ThetaUtil;
+
+/**
+ * A QuickSelect sketch on the java heap that can be updated directly by any number of threads
+ * without per-thread local buffers or background propagation threads.
+ *
+ * <p>The hash table is an open address, double hash (OADH) table held in an
+ * <i>AtomicLongArray</i>. A hash is inserted by a compare-and-swap of an empty slot, so concurrent
+ * writers never block each other. The table, its theta and its count are published together as
+ * one immutable-shaped snapshot, which allows the estimate to be read without any locks.</p>
+ *
+ * <p>When the count crosses the table threshold, the writer that crosses it creates the next
+ * table: a larger one with the same theta, or one of the same size whose theta is the (k+1)th
+ * smallest of the hashes it copies from the current table. Other writers may still be inserting
+ * while the copy is taken, so the new theta, and thus the retained set, can differ from those of
+ * a {@link HeapQuickSelectSketch} fed the same hashes in some sequential order. The old table is
+ * then migrated into the next one in chunks. Migrating a chunk freezes its empty slots, so that no
+ * further inserts can land there, and re-inserts its hashes below the new theta. Any writer that
+ * finds a migration pending migrates a chunk before its own insert, and a writer whose probe meets
+ * a frozen slot inserts into the next table directly, so no writer ever waits for another. The
+ * next table is published once all chunks have been migrated.</p>
+ *
+ * <p>The serialized form is identical to that of the QuickSelect family, so a serialized image
+ * can be heapified or wrapped as an ordinary UpdateSketch. The {@link #compact()},
+ * {@link #toByteArray()} and {@link #iterator()} methods first complete any pending migration and
+ * then copy the published table slot by slot. A copy taken while no writer is active is exact. A
+ * copy taken during concurrent updates is consistent only per slot: it holds the hashes below
+ * theta of every update that completed before the copy began, and possibly some of those that
+ * ran during it, so it need not match the state after any sequential order of the updates. The {@link #reset()} method is not atomic with
+ * respect to concurrent updates.</p>
+ */
+final class LockFreeQuickSelectSketch extends HeapUpdateSketch {
+  //Marks a slot that was empty when the table was frozen for a rebuild. Hashes are never negative.
+  private static final long FROZEN = -1L;
+  private static final int INSERTED = 0;
+  private static final int DUPLICATE = 1;
+  private static final int RETRY = 2;
+  //The number of slots migrated at a time by one thread
+  private static final int MIGRATION_CHUNK_LONGS = 256;
+
+  private final int preambleLongs_;
+  private final AtomicReference<Table> table_;
+  private volatile boolean empty_;
+
+  /**
+   * Construct a new sketch instance on the java heap.
+   *
+   * @param lgNomLongs <a href="{@docRoot}/resources/dictionary.html#lgNomLogs">See lgNomLongs</a>.
+   * @param seed <a href="{@docRoot}/resources/dictionary.html#seed">See seed</a>
+   * @param p <a href="{@docRoot}/resources/dictionary.html#p">See Sampling Probability, <i>p</i></a>
+   * @param rf <a href="{@docRoot}/resources/dictionary.html#resizeFactor">See Resize Factor</a>
+   */
+  LockFreeQuickSelectSketch(final int lgNomLongs, final long seed, final float p,
+      final ResizeFactor rf) {
+    super(lgNomLongs, seed, p, rf);
+    preambleLongs_ = Family.QUICKSELECT.getMinPreLongs();
+    table_ = new AtomicReference<>(initialTable());
+    empty_ = true;
+  }
+
+  //Sketch
+
+  @Override
+  public CompactSketch compact(final boolean dstOrdered, final WritableMemory dstMem) {
+    final Snapshot snap = snapshot();
+    return CompactOperations.componentsToCompact(snap.thetaLong, snap.curCount, getSeedHash(),
+        snap.empty, false, false, dstOrdered, dstMem, snap.cache);
+  }
+
+  @Override
+  public double getEstimate() {
+    final Table t = table_.get();
+    return Sketch.estimate(t.thetaLong, t.count.get());
+  }
+
+  @Override
+  public Family getFamily() {
+    return Family.QUICKSELECT;
+  }
+
+  @Override
+  public int getRetainedEntries(final boolean valid) {
+    return table_.get().count.get();
+  }
+
+  @Override
+  public long getThetaLong() {
+    return empty_ ? Long.MAX_VALUE : table_.get().thetaLong;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return empty_;
+  }
+
+  @Override
+  public HashIterator iterator() {
+    final Snapshot snap = snapshot();
+    return new HeapHashIterator(snap.cache, snap.thetaLong);
+  }
+
+  @Override
+  public byte[] toByteArray() {
+    final Snapshot snap = snapshot();
+    return toByteArray(preambleLongs_, (byte) Family.QUICKSELECT.getID(), snap.lgArrLongs,
+        snap.curCount, snap.thetaLong, snap.empty, snap.cache);
+  }
+
+  //UpdateSketch
+
+  @Override
+  public UpdateSketch rebuild() {
+    final Table t = completeMigrations();
+    if ((t.count.get() > (1 << lgNomLongs_)) && t.rebuilding.compareAndSet(false, true)) {
+      ensureNext(t);
+      migrate(t, true);
+    }
+    completeMigrations();
+    return this;
+  }
+
+  @Override
+  public void reset() {
+    table_.set(initialTable());
+    empty_ = true;
+  }
+
+  //restricted methods
+
+  @Override
+  long[] getCache() {
+    return snapshot().cache;
+  }
+
+  @Override
+  int getCompactPreambleLongs() {
+    final Snapshot snap = snapshot();
+    return CompactOperations.computeCompactPreLongs(snap.empty, snap.curCount, snap.thetaLong);
+  }
+
+  @Override
+  int getCurrentPreambleLongs() {
+    return preambleLongs_;
+  }
+
+  @Override
+  int getLgArrLongs() {
+    return table_.get().lgArrLongs;
+  }
+
+  @Override
+  WritableMemory getMemory() {
+    return null;
+  }
+
+  @Override
+  UpdateReturnState hashUpdate(final long hash) {
+    HashOperations.checkHashCorruption(hash);
+    if (empty_) { empty_ = false; }
+    final Table t = table_.get();
+    if (t.next.get() != null) { migrate(t, false); } //help a pending migration by one chunk
+    return insert(t, hash);
+  }
+
+  @Override
+  boolean isDirty() {
+    return false;
+  }
+
+  @Override
+  boolean isOutOfSpace(final int numEntries) {
+    return numEntries > table_.get().threshold;
+  }
+
+  private Table initialTable() {
+    final int lgArrLongs = ThetaUtil.startingSubMultiple(lgNomLongs_ + 1, getResizeFactor().lg(),
+        ThetaUtil.MIN_LG_ARR_LONGS);
+    return new Table(new long[1 << lgArrLongs], lgArrLongs, (long) (getP() * LONG_MAX_VALUE_AS_DOUBLE),
+        0, lgNomLongs_);
+  }
+
+  //Inserts the hash into the first table of the chain starting at t that can still take it.
+  private UpdateReturnState insert(final Table table, final long hash) {
+    Table t = table;
+    while (true) {
+      //The over-theta test
+      if (HashOperations.continueCondition(t.thetaLong, hash)) {
+        return RejectedOverTheta;
+      }
+      final int result = t.insert(hash);
+      if (result == DUPLICATE) {
+        return RejectedDuplicate;
+      }
+      if (result == INSERTED) {
+        if (t.count.incrementAndGet() > t.threshold) {
+          return startMigration(t);
+        }
+        return InsertedCountIncremented;
+      }
+      //RETRY: the probe met a frozen slot or the table is full. Either way the hash is not in t
+      // and can never be added to it, so help the migration along and move on to the next table.
+      final Table next = ensureNext(t);
+      migrate(t, false);
+      t = next;
+    }
+  }
+
+  //Only the single thread that wins the rebuilding flag of the given table starts the migration.
+  // The others return immediately; their hashes are in the table and will be migrated.
+  private UpdateReturnState startMigration(final Table t) {
+    if (!t.rebuilding.compareAndSet(false, true)) {
+      return InsertedCountIncremented;
+    }
+    final UpdateReturnState state = (t.lgArrLongs <= lgNomLongs_)
+        ? InsertedCountIncrementedResized : InsertedCountIncrementedRebuilt;
+    ensureNext(t);
+    migrate(t, true);
+    return state;
+  }
+
+  //Returns the next table of t, creating it if necessary. Creating it takes no lock: if several
+  // threads get here together, each builds a candidate and the first to install it wins.
+  private Table ensureNext(final Table t) {
+    final Table next = t.next.get();
+    if (next != null) { return next; }
+    final Table candidate;
+    if (t.lgArrLongs <= lgNomLongs_) { //resize, theta does not change
+      final int lgDeltaLongs = (lgNomLongs_ + 1) - t.lgArrLongs;
+      final int lgArrLongs = t.lgArrLongs + max(min(getResizeFactor().lg(), lgDeltaLongs), 1);
+      candidate = new Table(new long[1 << lgArrLongs], lgArrLongs, t.thetaLong, 0, lgNomLongs_);
+    } else { //already at target size, quick select a new theta
+      final long[] hashes = t.copyHashes();
+      int nonZeros = 0;
+      for (final long hash : hashes) { if (hash != 0) { nonZeros++; } }
+      final int pivot = (1 << lgNomLongs_) + 1; //k + 1
+      final long thetaLong = (nonZeros >= pivot)
+          ? selectExcludingZeros(hashes, nonZeros, pivot)
+          : t.thetaLong;
+      candidate = new Table(new long[1 << t.lgArrLongs], t.lgArrLongs, thetaLong, 0, lgNomLongs_);
+    }
+    t.next.compareAndSet(null, candidate);
+    return t.next.get();
+  }
+
+  //Migrates chunks of t into its next table: one chunk, or all chunks not yet claimed.
+  private void migrate(final Table t, final boolean all) {
+    final Table next = t.next.get();
+    do {
+      final int chunk = t.claimedChunks.getAndIncrement();
+      if (chunk >= t.numChunks) { return; }
+      migrateChunk(t, next, chunk);
+    } while (all);
+  }
+
+  //Migrating a chunk is idempotent, since a hash that is already in the next table is rejected
+  // as a duplicate. This allows a thread to complete chunks that other threads have claimed.
+  private void migrateChunk(final Table t, final Table next, final int chunk) {
+    final int start = chunk * t.chunkLongs;
+    for (int i = start; i < (start + t.chunkLongs); i++) {
+      long hash = t.slots.get(i);
+      if (hash == 0) {
+        if (t.slots.compareAndSet(i, 0L, FROZEN)) { continue; }
+        hash = t.slots.get(i); //a writer got in first
+      }
+      if (hash > 0) { insert(next, hash); }
+    }
+    if (t.migrated.compareAndSet(chunk, 0, 1)
+        && (t.migratedChunks.incrementAndGet() == t.numChunks)) {
+      publish();
+    }
+  }
+
+  //Publishes the newest table whose predecessors have all been migrated.
+  private void publish() {
+    Table t = table_.get();
+    while (t.migratedChunks.get() == t.numChunks) {
+      table_.compareAndSet(t, t.next.get());
+      t = table_.get();
+    }
+  }
+
+  //Completes any pending migrations, including chunks claimed by other threads, and returns the
+  // published table.
+  private Table completeMigrations() {
+    Table t = table_.get();
+    while (t.next.get() != null) {
+      final Table next = t.next.get();
+      for (int chunk = 0; chunk < t.numChunks; chunk++) {
+        if (t.migrated.get(chunk) == 0) { migrateChunk(t, next, chunk); }
+      }
+      t = table_.get();
+    }
+    return t;
+  }
+
+  //Returns a copy of the published table with frozen slots cleared, consistent per slot.
+  private Snapshot snapshot() {
+    final Table t = completeMigrations();
+    final boolean empty = empty_;
+    final int arrLongs = 1 << t.lgArrLongs;
+    final long[] cache = new long[arrLongs];
+    int count = 0;
+    for (int i = 0; i < arrLongs; i++) {
+      final long hash = t.slots.get(i);
+      if ((hash > 0) && (hash < t.thetaLong)) {
+        cache[i] = hash;
+        count++;
+      }
+    }
+    return new Snapshot(cache, t.lgArrLongs, empty ? Long.MAX_VALUE : t.thetaLong, count, empty);
+  }
+
+  /**
+   * One generation of the hash table. Its size and theta never change. Slots only ever move
+   * from empty to a hash, or from empty to FROZEN during the migration to the next table.
+   */
+  private static final class Table {
+    final AtomicLongArray slots;
+    final int lgArrLongs;
+    final long thetaLong;
+    final int threshold;
+    final AtomicInteger count;
+    final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    final AtomicReference<Table> next = new AtomicReference<>();
+    final int chunkLongs;
+    final int numChunks;
+    final AtomicInteger claimedChunks = new AtomicInteger();
+    final AtomicIntegerArray migrated; //1 for each chunk that has been migrated
+    final AtomicInteger migratedChunks = new AtomicInteger();
+
+    Table(final long[] hashTable, final int lgArrLongs, final long thetaLong, final int curCount,
+        final int lgNomLongs) {
+      slots = new AtomicLongArray(hashTable);
+      this.lgArrLongs = lgArrLongs;
+      this.thetaLong = thetaLong;
+      threshold = HeapQuickSelectSketch.setHashTableThreshold(lgNomLongs, lgArrLongs);
+      count = new AtomicInteger(curCount);
+      chunkLongs = min(1 << lgArrLongs, MIGRATION_CHUNK_LONGS);
+      numChunks = (1 << lgArrLongs) / chunkLongs;
+      migrated = new AtomicIntegerArray(numChunks);
+    }
+
+    //Same probe sequence as HashOperations.hashSearchOrInsert, but inserts by CAS.
+    int insert(final long hash) {
+      final int arrayMask = (1 << lgArrLongs) - 1;
+      final int stride = (2 * (int) ((hash >>> lgArrLongs) & HashOperations.STRIDE_MASK)) + 1;
+      int curProbe = (int) (hash & arrayMask);
+      final int loopIndex = curProbe;
+      do {
+        long arrVal = slots.get(curProbe);
+        if ((arrVal == 0) && slots.compareAndSet(curProbe, 0L, hash)) {
+          return INSERTED;
+        }
+        if (arrVal == 0) { arrVal = slots.get(curProbe); } //lost the race, see who won
+        if (arrVal == hash) {
+          return DUPLICATE;
+        }
+        if (arrVal == FROZEN) {
+          return RETRY;
+        }
+        curProbe = (curProbe + stride) & arrayMask;
+      } while (curProbe != loopIndex);
+      return RETRY; //full, which can only happen while a migration is pending
+    }
+
+    //Returns a copy of the hashes, with zeros for empty and frozen slots.
+    long[] copyHashes() {
+      final int arrLongs = 1 << lgArrLongs;
+      final long[] hashes = new long[arrLongs];
+      for (int i = 0; i < arrLongs; i++) {
+        final long hash = slots.get(i);
+        hashes[i] = (hash > 0) ? hash : 0;
+      }
+      return hashes;
+    }
+  }
+
+  private static final class Snapshot {
+    final long[] cache;
+    final int lgArrLongs;
+    final long thetaLong;
+    final int curCount;
+    final boolean empty;
+
+    Snapshot(final long[] cache, final int lgArrLongs, final long thetaLong, final int curCount,
+        final boolean empty) {
+      this.cache = cache;
+      this.lgArrLongs = lgArrLongs;
+      this.thetaLong = thetaLong;
+      this.curCount = curCount;
+      this.empty = empty;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import static org.apache.datasketches.theta.CompactSketch.wholeBytesToHoldBits;
+
+import org.apache.datasketches.memory.Memory;
+
+/**
+ * Decodes the bit-packed deltas of a Serialization Version 4 compact sketch image one block of
+ * 64 entries at a time, then one block of eight, so the hash values are never materialized as a
+ * whole array.
+ */
+class MemoryCompactCompressedHashIterator implements HashIterator {
+  private final Memory mem;
+  private final int entryBits;
+  private final int numEntries;
+  private final int numBlock64Entries; //entries decoded in whole blocks of 64
+  private final int numBlockEntries; //entries packed in whole blocks of 8
+  private final long[] deltas;
+  private final byte[] buffer;
+  private long offsetBytes;
+  private int bufOffsetBytes;
+  private int bufOffsetBits;
+  private int index;
+  private long hash;
+
+  MemoryCompactCompressedHashIterator(final Memory mem, final long offsetBytes, final int entryBits,
+      final int numEntries) {
+    this.mem = mem;
+    this.entryBits = entryBits;
+    this.numEntries = numEntries;
+    numBlock64Entries = numEntries & ~63;
+    numBlockEntries = numEntries & ~7;
+    deltas = new long[64];
+    buffer = new byte[entryBits]; //a block of 8 entries occupies entryBits bytes
+    this.offsetBytes = offsetBytes;
+    index = -1;
+    hash = 0;
+  }
+
+  @Override
+  public long get() {
+    return hash;
+  }
+
+  @Override
+  public boolean next() {
+    if (++index >= numEntries) { return false; }
+    if (index < numBlock64Entries) {
+      final int i = index & 63;
+      if (i == 0) {
+        BitPacking.unpackBitsBlock64(deltas, 0, mem, offsetBytes, entryBits);
+        offsetBytes += entryBits << 3;
+      }
+      hash += deltas[i];
+      return true;
+    }
+    if (index < numBlockEntries) {
+      final int i = index & 7;
+      if (i == 0) {
+        mem.getByteArray(offsetBytes, buffer, 0, entryBits);
+        BitPacking.unpackBitsBlock8(deltas, 0, buffer, 0, entryBits);
+        offsetBytes += entryBits;
+      }
+      hash += deltas[i];
+      return true;
+    }
+    if (index == numBlockEntries) { //the remaining fewer than 8 entries are packed bit by bit
+      mem.getByteArray(offsetBytes, buffer, 0, wholeBytesToHoldBits((numEntries - index) * entryBits));
+      bufOffsetBytes = 0;
+      bufOffsetBits = 0;
+    }
+    BitPacking.unpackBits(deltas, 0, entryBits, buffer, bufOffsetBytes, bufOffsetBits);
+    bufOffsetBytes += (bufOffsetBits + entryBits) >>> 3;
+    bufOffsetBits = (bufOffsetBits + entryBits) & 7;
+    hash += deltas[0];
+    return true;
+  }
+
+}
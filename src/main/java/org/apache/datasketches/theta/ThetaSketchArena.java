@@ -0,0 +1,573 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import java.util.Arrays;
+
+import org.apache.datasketches.common.Family;
+import org.apache.datasketches.common.ResizeFactor;
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.common.SketchesStateException;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.MemoryRequestServer;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.thetacommon.ThetaUtil;
+
+/**
+ * A keyed pool of QuickSelect theta sketches that all live in one WritableMemory region, which
+ * can be off-heap or a memory-mapped file. Each key owns a slot holding a Direct QuickSelect
+ * sketch, so no per-sketch heap objects or Memory objects are retained and the only heap
+ * structures are a primitive key-to-slot index and the lists of freed slots.
+ *
+ * <p>Slots come in size classes, one per hash table size. A new sketch starts in the smallest
+ * class allowed by the Resize Factor, and when its hash table must grow the sketch is moved to a
+ * slot of the next class and its old slot is freed for reuse. With Resize Factor X1 every slot
+ * holds a full-sized hash table and sketches never move.</p>
+ *
+ * <p>The layout of the region is also the serialized form of the arena:</p>
+ * <pre>
+ * Long || Start Byte Adr:
+ * Adr:
+ *      ||    7   |    6   |    5   |    4   |    3   |    2   |    1   |     0              |
+ *  0   ||    Seed Hash    | lgNom  | SerVer |          Magic (0x41524E41, "ANRA")           |
+ *
+ *      ||   15   |   14   |   13   |   12   |   11   |   10   |    9   |     8              |
+ *  1   ||        (unused)          |  lgRF  |          Live Slots                           |
+ *
+ *      ||   23   |   22   |   21   |   20   |   19   |   18   |   17   |    16              |
+ *  2   ||               (unused)            |          p (float)                            |
+ *
+ *      ||   31   |   30   |   29   |   28   |   27   |   26   |   25   |    24              |
+ *  3   ||                          High Water Mark (bytes)                                  |
+ *
+ *  4   ||  Slot: Key (long), Live Flag (int), lgArrLongs (int), Direct QuickSelect sketch ...  |
+ *      ||  Slot ...                                                                          |
+ * </pre>
+ *
+ * <p>Only the region up to the high water mark is in use, so
+ * {@link #serializeTo(WritableMemory)} writes just that prefix and
+ * {@link #writableWrap(WritableMemory, long, MemoryRequestServer)} resumes an arena from it.</p>
+ *
+ * <p>The region grows only through a MemoryRequestServer given explicitly to the arena. Any
+ * server attached to the Memory itself is ignored. An arena without one, for example over a
+ * memory-mapped file, never moves: a request that needs more than its capacity throws a
+ * SketchesArgumentException.</p>
+ *
+ * <p>The sketches returned by {@link #get(long)} and {@link #getOrCreate(long)} are views of the
+ * current region. They remain valid only until the next call to {@link #getOrCreate(long)},
+ * {@link #remove(long)} or {@link #compact()}, or until an update through another view grows
+ * the region, any of which may move slots.</p>
+ *
+ * <p>This class is not thread safe.</p>
+ */
+public final class ThetaSketchArena {
+  static final int ARENA_MAGIC = 0x41524E41;
+  static final int ARENA_SER_VER = 1;
+
+  private static final int MAGIC_INT = 0;
+  private static final int SER_VER_BYTE = 4;
+  private static final int LG_NOM_LONGS_BYTE = 5;
+  private static final int SEED_HASH_SHORT = 6;
+  private static final int LIVE_SLOTS_INT = 8;
+  private static final int LG_RF_BYTE = 12;
+  private static final int P_FLOAT = 16;
+  private static final int HIGH_WATER_LONG = 24;
+  static final int ARENA_PREAMBLE_BYTES = 32;
+
+  private static final int SLOT_KEY_LONG = 0;
+  private static final int SLOT_LIVE_INT = 8;
+  private static final int SLOT_LG_ARR_LONGS_INT = 12;
+  static final int SLOT_PREAMBLE_BYTES = 16;
+
+  private static final int SKETCH_PREAMBLE_BYTES = Family.QUICKSELECT.getMinPreLongs() << 3;
+  private static final int MIN_LG_INDEX_LONGS = 4;
+
+  private final int lgNomLongs_;
+  private final int lgRF_;
+  private final long seed_;
+  private final float p_;
+  private final MemoryRequestServer memReqSvr_; //null if the region cannot grow
+  private WritableMemory wmem_;
+  private WritableMemory retiredMem_; //old region kept open until a moving sketch has copied
+  private long highWater_; //bytes handed out since the last compact
+  private int liveSlots_;
+  private final long[][] freeSlots_; //per lgArrLongs, stacks of freed slot offsets
+  private final int[] numFree_;
+  private long[] indexKeys_; //open addressing key-to-slot index, linear probing
+  private long[] indexOffsets_; //slot offset, 0 is an empty index entry
+  private int lgIndexLongs_;
+
+  private ThetaSketchArena(
+      final int lgNomLongs,
+      final int lgRF,
+      final long seed,
+      final float p,
+      final WritableMemory wmem,
+      final MemoryRequestServer memReqSvr) {
+    lgNomLongs_ = lgNomLongs;
+    lgRF_ = lgRF;
+    seed_ = seed;
+    p_ = p;
+    wmem_ = wmem;
+    memReqSvr_ = memReqSvr;
+    freeSlots_ = new long[lgNomLongs + 2][];
+    numFree_ = new int[lgNomLongs + 2];
+    lgIndexLongs_ = MIN_LG_INDEX_LONGS;
+    indexKeys_ = new long[1 << lgIndexLongs_];
+    indexOffsets_ = new long[1 << lgIndexLongs_];
+  }
+
+  /**
+   * Initializes a new, empty arena in the given WritableMemory. Called by
+   * {@link UpdateSketchBuilder#buildArena(WritableMemory)}.
+   * @param lgNomLongs <a href="{@docRoot}/resources/dictionary.html#lgNomLongs">See lgNomLongs</a>
+   * @param seed <a href="{@docRoot}/resources/dictionary.html#seed">See Update Hash Seed</a>
+   * @param p <a href="{@docRoot}/resources/dictionary.html#p">See Sampling Probability, <i>p</i></a>
+   * @param rf <a href="{@docRoot}/resources/dictionary.html#resizeFactor">See Resize Factor</a>
+   * @param dstMem the region for the arena.
+   * @param memReqSvr the MemoryRequestServer used to grow the region, or null if the region must
+   * never grow. The server of the given Memory is not used.
+   * @return a new, empty arena
+   */
+  static ThetaSketchArena newInstance(final int lgNomLongs, final long seed, final float p,
+      final ResizeFactor rf, final WritableMemory dstMem, final MemoryRequestServer memReqSvr) {
+    if (dstMem == null) {
+      throw new SketchesArgumentException("The arena Memory must not be null.");
+    }
+    if (dstMem.getCapacity() < ARENA_PREAMBLE_BYTES) {
+      throw new SketchesArgumentException("Memory capacity is too small: "
+          + dstMem.getCapacity() + " < " + ARENA_PREAMBLE_BYTES);
+    }
+    final ThetaSketchArena arena =
+        new ThetaSketchArena(lgNomLongs, rf.lg(), seed, p, dstMem, memReqSvr);
+    dstMem.putInt(MAGIC_INT, ARENA_MAGIC);
+    dstMem.putByte(SER_VER_BYTE, (byte) ARENA_SER_VER);
+    dstMem.putByte(LG_NOM_LONGS_BYTE, (byte) lgNomLongs);
+    dstMem.putShort(SEED_HASH_SHORT, ThetaUtil.computeSeedHash(seed));
+    dstMem.putInt(LIVE_SLOTS_INT + 4, 0);
+    dstMem.putByte(LG_RF_BYTE, (byte) rf.lg());
+    dstMem.putFloat(P_FLOAT, p);
+    dstMem.putInt(P_FLOAT + 4, 0);
+    arena.highWater_ = ARENA_PREAMBLE_BYTES;
+    arena.writeCounts();
+    return arena;
+  }
+
+  /**
+   * Resumes an arena from the given WritableMemory, which holds an arena region or the output of
+   * {@link #serializeTo(WritableMemory)}, for example a memory-mapped file. The key index and
+   * the lists of freed slots are rebuilt by scanning the slots.
+   * @param srcMem the arena region
+   * @param seed <a href="{@docRoot}/resources/dictionary.html#seed">See Update Hash Seed</a>
+   * @param memReqSvr the MemoryRequestServer used to grow the region, or null if the region must
+   * never grow. The server of the given Memory is not used.
+   * @return an arena backed by the given Memory
+   */
+  public static ThetaSketchArena writableWrap(final WritableMemory srcMem, final long seed,
+      final MemoryRequestServer memReqSvr) {
+    checkArenaPreamble(srcMem, seed);
+    final int lgNomLongs = srcMem.getByte(LG_NOM_LONGS_BYTE) & 0XFF;
+    final int lgRF = srcMem.getByte(LG_RF_BYTE) & 0XFF;
+    final float p = srcMem.getFloat(P_FLOAT);
+    final ThetaSketchArena arena =
+        new ThetaSketchArena(lgNomLongs, lgRF, seed, p, srcMem, memReqSvr);
+    final long highWater = srcMem.getLong(HIGH_WATER_LONG);
+    if ((highWater < ARENA_PREAMBLE_BYTES) || (srcMem.getCapacity() < highWater)) {
+      throw new SketchesArgumentException("Memory capacity is too small for the arena: "
+          + srcMem.getCapacity() + " < " + highWater);
+    }
+    arena.highWater_ = highWater;
+    long offset = ARENA_PREAMBLE_BYTES;
+    while (offset < highWater) {
+      final int lgArrLongs = srcMem.getInt(offset + SLOT_LG_ARR_LONGS_INT);
+      if ((lgArrLongs < ThetaUtil.MIN_LG_ARR_LONGS) || (lgArrLongs > (lgNomLongs + 1))
+          || ((offset + slotBytes(lgArrLongs)) > highWater)) {
+        throw new SketchesArgumentException("Possible corruption: invalid arena slot at "
+            + offset + ", lgArrLongs: " + lgArrLongs);
+      }
+      if (srcMem.getInt(offset + SLOT_LIVE_INT) != 0) {
+        arena.indexInsert(srcMem.getLong(offset + SLOT_KEY_LONG), offset);
+        arena.liveSlots_++;
+      } else {
+        arena.pushFree(lgArrLongs, offset);
+      }
+      offset += slotBytes(lgArrLongs);
+    }
+    return arena;
+  }
+
+  /**
+   * Returns the sketch for the given key, or null if the key has no sketch in this arena.
+   * @param key the given key
+   * @return the sketch for the given key, or null
+   */
+  public UpdateSketch get(final long key) {
+    final long offset = indexFind(key);
+    if (offset < 0) { return null; }
+    return wrapSlot(key, offset);
+  }
+
+  /**
+   * Returns the sketch for the given key, creating a new empty sketch in a slot of the smallest
+   * size class if the key has none. The region grows through the MemoryRequestServer if no slot
+   * of that class is free.
+   * @param key the given key
+   * @return the sketch for the given key
+   */
+  public UpdateSketch getOrCreate(final long key) {
+    final long found = indexFind(key);
+    if (found >= 0) { return wrapSlot(key, found); }
+    final int lgArrLongs = (lgRF_ == 0) ? lgNomLongs_ + 1 : ThetaUtil.MIN_LG_ARR_LONGS;
+    final long offset = allocateSlot(key, lgArrLongs);
+    closeRetiredMemory();
+    liveSlots_++;
+    indexInsert(key, offset);
+    writeCounts();
+    return new DirectQuickSelectSketch(lgNomLongs_, seed_, p_, ResizeFactor.getRF(lgRF_),
+        new SlotMover(key), sketchRegion(offset), false);
+  }
+
+  /**
+   * Returns true if the given key has a sketch in this arena.
+   * @param key the given key
+   * @return true if the given key has a sketch in this arena
+   */
+  public boolean contains(final long key) {
+    return indexFind(key) >= 0;
+  }
+
+  /**
+   * Frees the slot of the given key. The slot is reused by a later sketch of the same size class
+   * and reclaimed by {@link #compact()}.
+   * @param key the given key
+   * @return true if the key had a sketch in this arena
+   */
+  public boolean remove(final long key) {
+    final long offset = indexRemove(key);
+    if (offset < 0) { return false; }
+    freeSlot(offset);
+    liveSlots_--;
+    writeCounts();
+    return true;
+  }
+
+  /**
+   * Slides the live slots down over the freed slots so that the live slots are contiguous from
+   * the start of the region, and lowers the high water mark to their end. This shrinks the
+   * serialized form; the region itself is not released.
+   */
+  public void compact() {
+    long dst = ARENA_PREAMBLE_BYTES;
+    long src = ARENA_PREAMBLE_BYTES;
+    while (src < highWater_) {
+      final long bytes = slotBytes(wmem_.getInt(src + SLOT_LG_ARR_LONGS_INT));
+      if (wmem_.getInt(src + SLOT_LIVE_INT) != 0) {
+        if (dst != src) {
+          wmem_.copyTo(src, wmem_, dst, bytes);
+          indexUpdate(wmem_.getLong(dst + SLOT_KEY_LONG), dst);
+        }
+        dst += bytes;
+      }
+      src += bytes;
+    }
+    highWater_ = dst;
+    Arrays.fill(numFree_, 0);
+    writeCounts();
+  }
+
+  /**
+   * Returns the number of keys that have a sketch in this arena.
+   * @return the number of keys that have a sketch in this arena.
+   */
+  public int size() {
+    return liveSlots_;
+  }
+
+  /**
+   * Returns the number of bytes of the slot of the given key, which is the key and flag preamble
+   * plus the size of its Direct QuickSelect sketch, or zero if the key has no sketch.
+   * @param key the given key
+   * @return the number of bytes of the slot of the given key, or zero
+   */
+  public long getSlotBytes(final long key) {
+    final long offset = indexFind(key);
+    return (offset < 0) ? 0 : slotBytes(wmem_.getInt(offset + SLOT_LG_ARR_LONGS_INT));
+  }
+
+  /**
+   * Returns the number of bytes of a slot of the given size class, which is the key and flag
+   * preamble plus the size of a Direct QuickSelect sketch with a hash table of the given size.
+   * @param lgArrLongs the log2 of the number of hash table entries of the size class
+   * @return the number of bytes of a slot of the given size class
+   */
+  public static long getSlotBytesForClass(final int lgArrLongs) {
+    return slotBytes(lgArrLongs);
+  }
+
+  /**
+   * Returns the number of bytes written by {@link #serializeTo(WritableMemory)}.
+   * @return the number of bytes written by {@link #serializeTo(WritableMemory)}.
+   */
+  public long getSerializedSizeBytes() {
+    return highWater_;
+  }
+
+  /**
+   * Copies the in-use prefix of the region, which is the whole arena, to the given
+   * WritableMemory, for example a memory-mapped file.
+   * It can be resumed with {@link #writableWrap(WritableMemory, long, MemoryRequestServer)}.
+   * @param dstMem the destination, which must hold at least {@link #getSerializedSizeBytes()}
+   * bytes
+   */
+  public void serializeTo(final WritableMemory dstMem) {
+    final long bytes = getSerializedSizeBytes();
+    if (dstMem.getCapacity() < bytes) {
+      throw new SketchesArgumentException(
+          "Memory capacity is too small: " + dstMem.getCapacity() + " < " + bytes);
+    }
+    wmem_.copyTo(0, dstMem, 0, bytes);
+  }
+
+  /**
+   * Returns the current region of this arena. It changes when the region grows.
+   * @return the current region of this arena
+   */
+  public WritableMemory getMemory() {
+    return wmem_;
+  }
+
+  //restricted
+
+  /**
+   * Moves the sketch of one key to a slot of a larger size class when its hash table grows.
+   * The Direct QuickSelect sketch copies and rehashes itself into the returned region between
+   * the two calls, so the old slot, and the old region if the arena grew, stay intact until
+   * {@link #requestClose(WritableMemory, WritableMemory)}.
+   */
+  private final class SlotMover implements MemoryRequestServer {
+    private final long key_;
+    private long oldOffset_ = -1;
+
+    SlotMover(final long key) {
+      key_ = key;
+    }
+
+    @Override
+    public WritableMemory request(final WritableMemory currentWritableMemory,
+        final long capacityBytes) {
+      final long oldOffset = indexFind(key_);
+      if (oldOffset < 0) {
+        throw new SketchesStateException("The sketch of key " + key_
+            + " was removed from the arena.");
+      }
+      final int lgArrLongs =
+          Long.numberOfTrailingZeros((capacityBytes - SKETCH_PREAMBLE_BYTES) >>> 3);
+      assert sketchBytes(lgArrLongs) == capacityBytes;
+      final long newOffset = allocateSlot(key_, lgArrLongs);
+      indexUpdate(key_, newOffset);
+      oldOffset_ = oldOffset;
+      return sketchRegion(newOffset);
+    }
+
+    @Override
+    public void requestClose(final WritableMemory memToClose,
+        final WritableMemory newMemory) {
+      freeSlot(oldOffset_);
+      oldOffset_ = -1;
+      writeCounts();
+      closeRetiredMemory();
+    }
+  }
+
+  private DirectQuickSelectSketch wrapSlot(final long key, final long offset) {
+    final DirectQuickSelectSketch sk =
+        DirectQuickSelectSketch.fastWritableWrap(sketchRegion(offset), seed_);
+    sk.memReqSvr_ = new SlotMover(key);
+    return sk;
+  }
+
+  private static long sketchBytes(final int lgArrLongs) {
+    return SKETCH_PREAMBLE_BYTES + (8L << lgArrLongs);
+  }
+
+  private static long slotBytes(final int lgArrLongs) {
+    return SLOT_PREAMBLE_BYTES + sketchBytes(lgArrLongs);
+  }
+
+  private WritableMemory sketchRegion(final long offset) {
+    final int lgArrLongs = wmem_.getInt(offset + SLOT_LG_ARR_LONGS_INT);
+    return wmem_.writableRegion(offset + SLOT_PREAMBLE_BYTES, sketchBytes(lgArrLongs));
+  }
+
+  //returns the offset of a live slot of the given size class for the given key
+  private long allocateSlot(final long key, final int lgArrLongs) {
+    final long offset;
+    if (numFree_[lgArrLongs] > 0) {
+      offset = freeSlots_[lgArrLongs][--numFree_[lgArrLongs]];
+    } else {
+      offset = highWater_;
+      ensureCapacity(highWater_ + slotBytes(lgArrLongs));
+      highWater_ += slotBytes(lgArrLongs);
+    }
+    wmem_.putLong(offset + SLOT_KEY_LONG, key);
+    wmem_.putInt(offset + SLOT_LIVE_INT, 1);
+    wmem_.putInt(offset + SLOT_LG_ARR_LONGS_INT, lgArrLongs);
+    return offset;
+  }
+
+  private void freeSlot(final long offset) {
+    wmem_.putInt(offset + SLOT_LIVE_INT, 0);
+    pushFree(wmem_.getInt(offset + SLOT_LG_ARR_LONGS_INT), offset);
+  }
+
+  private void writeCounts() {
+    wmem_.putInt(LIVE_SLOTS_INT, liveSlots_);
+    wmem_.putLong(HIGH_WATER_LONG, highWater_);
+  }
+
+  private void ensureCapacity(final long reqBytes) {
+    final long curCapBytes = wmem_.getCapacity();
+    if (reqBytes <= curCapBytes) { return; }
+    if (memReqSvr_ == null) {
+      throw new SketchesArgumentException(
+          "A request for more memory has been denied, "
+          + "or a MemoryRequestServer has not been provided. Must abort. "
+          + "Arena capacity: " + curCapBytes + ", required: " + reqBytes);
+    }
+    final long newCapBytes = Math.max(reqBytes, 2 * curCapBytes);
+    final WritableMemory newMem = memReqSvr_.request(wmem_, newCapBytes);
+    wmem_.copyTo(0, newMem, 0, highWater_);
+    closeRetiredMemory();
+    retiredMem_ = wmem_; //closed once no moving sketch still reads from it
+    wmem_ = newMem;
+  }
+
+  private void closeRetiredMemory() {
+    if (retiredMem_ == null) { return; }
+    memReqSvr_.requestClose(retiredMem_, wmem_);
+    retiredMem_ = null;
+  }
+
+  private void pushFree(final int lgArrLongs, final long offset) {
+    if (freeSlots_[lgArrLongs] == null) {
+      freeSlots_[lgArrLongs] = new long[16];
+    } else if (numFree_[lgArrLongs] == freeSlots_[lgArrLongs].length) {
+      freeSlots_[lgArrLongs] = Arrays.copyOf(freeSlots_[lgArrLongs], 2 * numFree_[lgArrLongs]);
+    }
+    freeSlots_[lgArrLongs][numFree_[lgArrLongs]++] = offset;
+  }
+
+  private static void checkArenaPreamble(final Memory srcMem, final long seed) {
+    if (srcMem.getCapacity() < ARENA_PREAMBLE_BYTES) {
+      throw new SketchesArgumentException("Memory capacity is too small: "
+          + srcMem.getCapacity() + " < " + ARENA_PREAMBLE_BYTES);
+    }
+    final int magic = srcMem.getInt(MAGIC_INT);
+    if (magic != ARENA_MAGIC) {
+      throw new SketchesArgumentException("Memory does not hold a ThetaSketchArena: " + magic);
+    }
+    final int serVer = srcMem.getByte(SER_VER_BYTE) & 0XFF;
+    if (serVer != ARENA_SER_VER) {
+      throw new SketchesArgumentException("Unsupported ThetaSketchArena SerVer: " + serVer);
+    }
+    ThetaUtil.checkSeedHashes(srcMem.getShort(SEED_HASH_SHORT), ThetaUtil.computeSeedHash(seed));
+  }
+
+  //key index
+
+  private static int indexHash(final long key) { //MurmurHash3 fmix64
+    long h = key;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return (int) h;
+  }
+
+  private long indexFind(final long key) {
+    final int mask = (1 << lgIndexLongs_) - 1;
+    int i = indexHash(key) & mask;
+    while (indexOffsets_[i] != 0) {
+      if (indexKeys_[i] == key) { return indexOffsets_[i]; }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  private void indexInsert(final long key, final long offset) {
+    if (2 * (liveSlots_ + 1) > (1 << lgIndexLongs_)) { indexResize(lgIndexLongs_ + 1); }
+    final int mask = (1 << lgIndexLongs_) - 1;
+    int i = indexHash(key) & mask;
+    while (indexOffsets_[i] != 0) { i = (i + 1) & mask; }
+    indexKeys_[i] = key;
+    indexOffsets_[i] = offset;
+  }
+
+  private void indexUpdate(final long key, final long offset) {
+    final int mask = (1 << lgIndexLongs_) - 1;
+    int i = indexHash(key) & mask;
+    while (indexKeys_[i] != key || indexOffsets_[i] == 0) { i = (i + 1) & mask; }
+    indexOffsets_[i] = offset;
+  }
+
+  private long indexRemove(final long key) {
+    final int mask = (1 << lgIndexLongs_) - 1;
+    int i = indexHash(key) & mask;
+    while (indexOffsets_[i] != 0) {
+      if (indexKeys_[i] == key) {
+        final long offset = indexOffsets_[i];
+        //backward shift deletion keeps every probe sequence unbroken
+        int hole = i;
+        int j = (i + 1) & mask;
+        while (indexOffsets_[j] != 0) {
+          final int home = indexHash(indexKeys_[j]) & mask;
+          if (((j - home) & mask) >= ((j - hole) & mask)) {
+            indexKeys_[hole] = indexKeys_[j];
+            indexOffsets_[hole] = indexOffsets_[j];
+            hole = j;
+          }
+          j = (j + 1) & mask;
+        }
+        indexOffsets_[hole] = 0;
+        return offset;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  private void indexResize(final int lgIndexLongs) {
+    final long[] oldKeys = indexKeys_;
+    final long[] oldOffsets = indexOffsets_;
+    lgIndexLongs_ = lgIndexLongs;
+    indexKeys_ = new long[1 << lgIndexLongs];
+    indexOffsets_ = new long[1 << lgIndexLongs];
+    final int mask = (1 << lgIndexLongs) - 1;
+    for (int k = 0; k < oldOffsets.length; k++) {
+      if (oldOffsets[k] == 0) { continue; }
+      int i = indexHash(oldKeys[k]) & mask;
+      while (indexOffsets_[i] != 0) { i = (i + 1) & mask; }
+      indexKeys_[i] = oldKeys[k];
+      indexOffsets_[i] = oldOffsets[k];
+    }
+  }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import static org.apache.datasketches.common.Util.LS;
+import static org.apache.datasketches.common.Util.ceilingIntPowerOf2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+
+/**
+ * A theta sketch over a sliding window of time buckets, for example the distinct count of the
+ * last hour, day or week in buckets of one minute.
+ *
+ * <p>Updates go to the current bucket, see {@link #getCurrentBucket()}. At the end of each time
+ * period {@link #advance()} seals the current bucket as an ordered CompactSketch into a ring of
+ * sealed buckets and starts a new one. Once the ring is full, each advance overwrites the oldest
+ * sealed bucket, so eviction is a slot assignment and does no merge work.</p>
+ *
+ * <p>The ring is the leaf level of a segment tree whose inner nodes cache the union of their
+ * leaves as a CompactSketch. An inner node is computed when a query first needs it and
+ * discarded when one of its leaves is overwritten. A query over the most recent <i>w</i> buckets,
+ * {@link #getResult(int)}, covers at most two contiguous ranges of the ring, so it merges
+ * O(log <i>w</i>) cached sketches plus the current bucket, and keeping a window query up to date
+ * recomputes O(log <i>maxBuckets</i>) inner nodes per advance. The inner nodes at most double the
+ * space of the sealed buckets.</p>
+ *
+ * <p>This class is not thread safe.</p>
+ */
+public final class ThetaSlidingWindow {
+  private final int maxBuckets_;
+  private final int ringBuckets_; //sealed buckets, the current bucket is not in the ring
+  private final int treeLeaves_;
+  private final CompactSketch[] nodes_; //segment tree: leaves at treeLeaves_ + slot
+  private final UpdateSketch current_;
+  private final Union union_;
+  private long numSealed_;
+
+  /**
+   * Creates a new, empty window. Called by {@link UpdateSketchBuilder#buildSlidingWindow(int)}.
+   * @param current the empty, on-heap UpdateSketch that is reused as the current bucket. Its
+   * nominal entries and seed configure the unions.
+   * @param maxBuckets the largest window in buckets, including the current bucket.
+   * It must be at least 2.
+   */
+  ThetaSlidingWindow(final UpdateSketch current, final int maxBuckets) {
+    if (maxBuckets < 2) {
+      throw new SketchesArgumentException("maxBuckets must be at least 2: " + maxBuckets);
+    }
+    maxBuckets_ = maxBuckets;
+    ringBuckets_ = maxBuckets - 1;
+    treeLeaves_ = ceilingIntPowerOf2(ringBuckets_);
+    nodes_ = new CompactSketch[2 * treeLeaves_];
+    current_ = current;
+    union_ = SetOperation.builder().setLogNominalEntries(current.getLgNomLongs())
+        .setSeed(current.getSeed()).buildUnion();
+  }
+
+  /**
+   * Returns the sketch of the current bucket, which receives the updates until the next
+   * {@link #advance()}. The same UpdateSketch is reused for every bucket.
+   * @return the sketch of the current bucket
+   */
+  public UpdateSketch getCurrentBucket() {
+    return current_;
+  }
+
+  /**
+   * Seals the current bucket, evicting the oldest sealed bucket if the window is full, and starts
+   * a new, empty current bucket. Call once per time period, including periods without updates.
+   */
+  public void advance() {
+    final int slot = (int) (numSealed_ % ringBuckets_);
+    setLeaf(slot, current_.isEmpty() ? null : current_.compact(true, null));
+    numSealed_++;
+    current_.reset();
+  }
+
+  /**
+   * Returns the union of the most recent buckets as an ordered CompactSketch on the heap.
+   * @param numBuckets the number of buckets in the window, including the current bucket, from 1 to
+   * {@link #getMaxBuckets()}. If fewer buckets have been seen, the window holds all of them.
+   * @return the union of the most recent buckets
+   */
+  public CompactSketch getResult(final int numBuckets) {
+    if ((numBuckets < 1) || (numBuckets > maxBuckets_)) {
+      throw new SketchesArgumentException(
+          "numBuckets must be from 1 to " + maxBuckets_ + ": " + numBuckets);
+    }
+    final int sealed = (int) Math.min(numBuckets - 1, Math.min(numSealed_, ringBuckets_));
+    final List<CompactSketch> parts = new ArrayList<>();
+    if (sealed > 0) {
+      final int start = (int) ((numSealed_ - sealed) % ringBuckets_);
+      final int end = start + sealed;
+      if (end <= ringBuckets_) {
+        collect(start, end, parts);
+      } else {
+        collect(start, ringBuckets_, parts);
+        collect(0, end - ringBuckets_, parts);
+      }
+    }
+    union_.reset();
+    for (final CompactSketch part : parts) { union_.union(part); }
+    union_.union(current_);
+    return union_.getResult();
+  }
+
+  /**
+   * Returns the number of buckets available to a window, including the current bucket. This is
+   * at most {@link #getMaxBuckets()}.
+   * @return the number of buckets available to a window
+   */
+  public int getNumBuckets() {
+    return (int) Math.min(numSealed_, ringBuckets_) + 1;
+  }
+
+  /**
+   * Returns the largest window in buckets, including the current bucket.
+   * @return the largest window in buckets
+   */
+  public int getMaxBuckets() {
+    return maxBuckets_;
+  }
+
+  /**
+   * Removes all buckets.
+   */
+  public void reset() {
+    Arrays.fill(nodes_, null);
+    numSealed_ = 0;
+    current_.reset();
+    union_.reset();
+  }
+
+  //restricted
+
+  //Installs a sealed bucket, null if empty, and discards the cached unions above it. An inner node
+  //is only cached if its children are, so the walk stops at the first node that is not cached.
+  private void setLeaf(final int slot, final CompactSketch sketch) {
+    int node = treeLeaves_ + slot;
+    nodes_[node] = sketch;
+    node >>>= 1;
+    while ((node > 0) && (nodes_[node] != null)) {
+      nodes_[node] = null;
+      node >>>= 1;
+    }
+  }
+
+  //Adds the nodes covering the ring slots [from, to) to the given list, bottom-up.
+  private void collect(final int from, final int to, final List<CompactSketch> parts) {
+    int lo = treeLeaves_ + from;
+    int hi = treeLeaves_ + to;
+    while (lo < hi) {
+      if ((lo & 1) != 0) { addNode(lo++, parts); }
+      if ((hi & 1) != 0) { addNode(--hi, parts); }
+      lo >>>= 1;
+      hi >>>= 1;
+    }
+  }
+
+  private void addNode(final int node, final List<CompactSketch> parts) {
+    final CompactSketch sketch = getNode(node);
+    if (sketch != null) { parts.add(sketch); }
+  }
+
+  //Returns the union of the leaves under the given node, computing and caching inner nodes.
+  //A null leaf is an empty bucket.
+  private CompactSketch getNode(final int node) {
+    if ((node >= treeLeaves_) || (nodes_[node] != null)) { return nodes_[node]; }
+    final CompactSketch left = getNode(2 * node);
+    final CompactSketch right = getNode((2 * node) + 1);
+    union_.reset();
+    if (left != null) { union_.union(left); }
+    if (right != null) { union_.union(right); }
+    nodes_[node] = union_.getResult();
+    return nodes_[node];
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("### ThetaSlidingWindow SUMMARY: ").append(LS);
+    sb.append("   Max Buckets             : ").append(maxBuckets_).append(LS);
+    sb.append("   Buckets Available       : ").append(getNumBuckets()).append(LS);
+    sb.append("   Buckets Sealed          : ").append(numSealed_).append(LS);
+    sb.append("### END SKETCH SUMMARY").append(LS);
+    return sb.toString();
+  }
+}
@@ -19,6 +19,9 @@
 
 package org.apache.datasketches.theta;
 
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableMemory;
@@ -53,6 +56,9 @@ public abstract class Union extends SetOperation {
    * Gets the result of this operation as an ordered CompactSketch on the Java heap.
    * This does not disturb the underlying data structure of the union.
    * Therefore, it is OK to continue updating the union after this operation.
+   *
+   * <p>An on-heap union caches its last result until the next update, union or reset, so
+   * repeated calls without intervening changes return the same CompactSketch.</p>
    * @return the result of this operation as an ordered CompactSketch on the Java heap
    */
   public abstract CompactSketch getResult();
@@ -62,6 +68,10 @@ public abstract class Union extends SetOperation {
    * This does not disturb the underlying data structure of the union.
    * Therefore, it is OK to continue updating the union after this operation.
    *
+   * <p>An on-heap union caches its last result until the next update, union or reset. With a
+   * <i>dstMem</i> the cached result is copied into it, so a caller that polls the result can
+   * reuse the same destination without repeating the selection and sort.</p>
+   *
    * @param dstOrdered
    * <a href="{@docRoot}/resources/dictionary.html#dstOrdered">See Destination Ordered</a>
    *
@@ -72,6 +82,15 @@ public abstract class Union extends SetOperation {
    */
   public abstract CompactSketch getResult(boolean dstOrdered, WritableMemory dstMem);
 
+  /**
+   * Gets the estimate of the result of this operation, which is the same as
+   * <i>getResult().getEstimate()</i>. It is read from the cached result or from the internal
+   * hash table without building a CompactSketch, unless the table holds more than <i>k</i>
+   * entries and must be pulled back to <i>k</i> first.
+   * @return the estimate of the result of this operation
+   */
+  public abstract double getEstimate();
+
   /**
    * Resets this Union. The seed remains intact, everything else reverts back to its virgin state.
    */
@@ -137,6 +156,59 @@ public abstract class Union extends SetOperation {
    */
   public abstract void union(Memory mem);
 
+  /**
+   * Perform a Union operation with <i>this</i> union and all of the given sketches, using the
+   * {@link ForkJoinPool#commonPool() common pool}.
+   *
+   * @param sketches the incoming sketches
+   * @see #unionAll(Iterable, ForkJoinPool)
+   */
+  public void unionAll(final Iterable<? extends Sketch> sketches) {
+    unionAll(sketches, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Perform a Union operation with <i>this</i> union and all of the given sketches.
+   * The sketches are split into sub-batches that are unioned in parallel on the given pool,
+   * then the partial results are combined and unioned into <i>this</i> union.
+   * Ordered compact sketches, including wrapped ones, are merged with a k-way merge that stops
+   * as soon as the result theta is reached. Other sketches are first compacted and ordered.
+   *
+   * <p>The result is the same as if each sketch had been given to {@link #union(Sketch)}.
+   * This method can be repeatedly called.</p>
+   *
+   * <p>Nulls and empty sketches are ignored.</p>
+   *
+   * @param sketches the incoming sketches
+   * @param pool the ForkJoinPool that runs the sub-batches
+   */
+  public abstract void unionAll(Iterable<? extends Sketch> sketches, ForkJoinPool pool);
+
+  /**
+   * Perform a Union operation with <i>this</i> union and all of the given Memory images, using the
+   * {@link ForkJoinPool#commonPool() common pool}.
+   *
+   * @param mems the Memory images of the sketches to be merged
+   * @see #unionAllMemory(List, ForkJoinPool)
+   */
+  public void unionAllMemory(final List<? extends Memory> mems) {
+    unionAllMemory(mems, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Perform a Union operation with <i>this</i> union and all of the given Memory images of
+   * sketches of the Theta Family. Compact images are wrapped, or heapified if they are of an
+   * earlier serialization version, and unioned in parallel as in
+   * {@link #unionAll(Iterable, ForkJoinPool)}. Images of update sketches are unioned one at a time
+   * as in {@link #union(Memory)}.
+   *
+   * <p>Nulls and empty sketches are ignored.</p>
+   *
+   * @param mems the Memory images of the sketches to be merged
+   * @param pool the ForkJoinPool that runs the sub-batches
+   */
+  public abstract void unionAllMemory(List<? extends Memory> mems, ForkJoinPool pool);
+
   /**
    * Update <i>this</i> union with the given long data item.
    *
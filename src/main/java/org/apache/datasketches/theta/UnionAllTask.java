@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import static java.lang.Math.min;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.datasketches.thetacommon.ThetaUtil;
+
+/**
+ * Unions a range of a list of sketches into one ordered CompactSketch of at most k entries by
+ * recursively splitting the range, so that the halves can be unioned in parallel on a
+ * ForkJoinPool. The partial results are combined with the same k-way merge that unions the
+ * sketches of each leaf range.
+ *
+ * @see Union#unionAll(Iterable, java.util.concurrent.ForkJoinPool)
+ */
+final class UnionAllTask extends RecursiveTask<CompactSketch> {
+  private static final long serialVersionUID = 1L;
+
+  //The number of sketches merged directly by a single task
+  static final int LEAF_SIZE = 32;
+
+  private final List<? extends Sketch> sketches;
+  private final int lo;
+  private final int hi;
+  private final int k;
+  private final short seedHash;
+
+  UnionAllTask(final List<? extends Sketch> sketches, final int lo, final int hi, final int k,
+      final short seedHash) {
+    this.sketches = sketches;
+    this.lo = lo;
+    this.hi = hi;
+    this.k = k;
+    this.seedHash = seedHash;
+  }
+
+  @Override
+  protected CompactSketch compute() {
+    if ((hi - lo) <= LEAF_SIZE) {
+      final List<Sketch> ordered = new ArrayList<>(hi - lo);
+      for (int i = lo; i < hi; i++) {
+        final Sketch sk = sketches.get(i);
+        if ((sk == null) || sk.isEmpty()) { continue; }
+        ThetaUtil.checkSeedHashes(seedHash, sk.getSeedHash());
+        ordered.add((sk.isCompact() && sk.isOrdered()) ? sk : sk.compact(true, null));
+      }
+      return mergeOrdered(ordered, k, seedHash);
+    }
+    final int mid = (lo + hi) >>> 1;
+    final UnionAllTask left = new UnionAllTask(sketches, lo, mid, k, seedHash);
+    left.fork();
+    final CompactSketch right = new UnionAllTask(sketches, mid, hi, k, seedHash).compute();
+    return mergeOrdered(Arrays.asList(left.join(), right), k, seedHash);
+  }
+
+  /**
+   * Unions the given ordered compact sketches with a k-way merge of their iterators. The merge
+   * stops at the minimum theta of the inputs or at the (k+1)th distinct hash, which then becomes
+   * the theta of the result, so the remaining entries of the inputs are never read.
+   *
+   * @param sketches ordered compact sketches with the given seedHash
+   * @param k the nominal entries of the result
+   * @param seedHash the seedHash of the result
+   * @return an ordered CompactSketch on the heap with at most k entries
+   */
+  static CompactSketch mergeOrdered(final List<? extends Sketch> sketches, final int k,
+      final short seedHash) {
+    final int n = sketches.size();
+    long thetaLong = Long.MAX_VALUE;
+    boolean empty = true;
+    long maxEntries = 0;
+    for (int i = 0; i < n; i++) {
+      final Sketch sk = sketches.get(i);
+      thetaLong = min(thetaLong, sk.getThetaLong());
+      empty &= sk.isEmpty();
+      maxEntries += sk.getRetainedEntries(true);
+    }
+    final HashIterator[] its = new HashIterator[n];
+    final long[] heads = new long[n];
+    final int[] heap = new int[n]; //min-heap of input indices ordered by their head hash
+    int heapSize = 0;
+    for (int i = 0; i < n; i++) {
+      final HashIterator it = sketches.get(i).iterator();
+      if (it.next() && (it.get() < thetaLong)) {
+        its[i] = it;
+        heads[i] = it.get();
+        heap[heapSize] = i;
+        siftUp(heap, heads, heapSize++);
+      }
+    }
+    final long[] cache = new long[(int) min(k, maxEntries)];
+    int count = 0;
+    long last = 0;
+    while (heapSize > 0) {
+      final int top = heap[0];
+      final long hash = heads[top];
+      if (hash != last) {
+        if (count == k) { //early exit: the (k+1)th distinct hash is the new theta
+          thetaLong = hash;
+          break;
+        }
+        cache[count++] = hash;
+        last = hash;
+      }
+      final HashIterator it = its[top];
+      if (it.next() && (it.get() < thetaLong)) {
+        heads[top] = it.get();
+      } else {
+        heap[0] = heap[--heapSize];
+      }
+      siftDown(heap, heads, heapSize);
+    }
+    final long[] cacheOut = (count == cache.length) ? cache : Arrays.copyOf(cache, count);
+    return new HeapCompactSketch(cacheOut, empty, seedHash, count, thetaLong, true);
+  }
+
+  private static void siftUp(final int[] heap, final long[] heads, final int index) {
+    int i = index;
+    final int item = heap[i];
+    while (i > 0) {
+      final int parent = (i - 1) >>> 1;
+      if (heads[heap[parent]] <= heads[item]) { break; }
+      heap[i] = heap[parent];
+      i = parent;
+    }
+    heap[i] = item;
+  }
+
+  private static void siftDown(final int[] heap, final long[] heads, final int heapSize) {
+    if (heapSize == 0) { return; }
+    int i = 0;
+    final int item = heap[0];
+    while (true) {
+      int child = (2 * i) + 1;
+      if (child >= heapSize) { break; }
+      if (((child + 1) < heapSize) && (heads[heap[child + 1]] < heads[heap[child]])) { child++; }
+      if (heads[item] <= heads[heap[child]]) { break; }
+      heap[i] = heap[child];
+      i = child;
+    }
+    heap[i] = item;
+  }
+}
@@ -22,7 +22,6 @@ package org.apache.datasketches.theta;
 import static java.lang.Math.min;
 import static org.apache.datasketches.theta.PreambleUtil.COMPACT_FLAG_MASK;
 import static org.apache.datasketches.theta.PreambleUtil.ORDERED_FLAG_MASK;
-import static org.apache.datasketches.theta.PreambleUtil.PREAMBLE_LONGS_BYTE;
 import static org.apache.datasketches.theta.PreambleUtil.UNION_THETA_LONG;
 import static org.apache.datasketches.theta.PreambleUtil.clearEmpty;
 import static org.apache.datasketches.theta.PreambleUtil.extractCurCount;
@@ -38,6 +37,10 @@ import static org.apache.datasketches.theta.PreambleUtil.insertUnionThetaLong;
 import static org.apache.datasketches.theta.SingleItemSketch.otherCheckForSingleItem;
 import static org.apache.datasketches.thetacommon.QuickSelect.selectExcludingZeros;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.ResizeFactor;
 import org.apache.datasketches.common.SketchesArgumentException;
@@ -68,6 +71,9 @@ final class UnionImpl extends Union {
   private final short expectedSeedHash_; //eliminates having to compute the seedHash on every union.
   private long unionThetaLong_; //when on-heap, this is the only copy
   private boolean unionEmpty_;  //when on-heap, this is the only copy
+  //The last on-heap result of getResult(). Set to null by every mutation. Only used with an
+  // on-heap gadget, since a Direct gadget may also be changed through another Union of its Memory.
+  private CompactSketch result_;
 
   private UnionImpl(final UpdateSketch gadget, final long seed) {
     gadget_ = gadget;
@@ -232,6 +238,30 @@ final class UnionImpl extends Union {
 
   @Override
   public CompactSketch getResult(final boolean dstOrdered, final WritableMemory dstMem) {
+    if (gadget_.hasMemory()) { return compactResult(dstOrdered, dstMem); }
+    if ((result_ == null) || (dstOrdered && !result_.isOrdered())) {
+      result_ = compactResult(dstOrdered, null);
+    }
+    //copying the cached result into dstMem needs neither a selection nor a sort
+    return (dstMem == null) ? result_ : result_.compact(dstOrdered, dstMem);
+  }
+
+  @Override
+  public double getEstimate() {
+    if (result_ != null) { return result_.getEstimate(); }
+    final int gadgetCurCount = gadget_.getRetainedEntries(true);
+    if (gadgetCurCount > (1 << gadget_.getLgNomLongs())) {
+      return getResult().getEstimate(); //must be pulled back to k, the result is cached
+    }
+    final long curGadgetThetaLong = gadget_.getThetaLong();
+    final long minThetaLong = min(curGadgetThetaLong, getUnionThetaLong());
+    final int curCount = minThetaLong < curGadgetThetaLong
+        ? HashOperations.count(gadget_.getCache(), minThetaLong)
+        : gadgetCurCount;
+    return Sketch.estimate(minThetaLong, curCount);
+  }
+
+  private CompactSketch compactResult(final boolean dstOrdered, final WritableMemory dstMem) {
     final int gadgetCurCount = gadget_.getRetainedEntries(true);
     final int k = 1 << gadget_.getLgNomLongs();
     final long[] gadgetCacheCopy =
@@ -243,8 +273,7 @@ final class UnionImpl extends Union {
         ? selectExcludingZeros(gadgetCacheCopy, gadgetCurCount, k + 1) : curGadgetThetaLong;
 
     //Finalize Theta and curCount
-    final long unionThetaLong = gadget_.hasMemory()
-        ? gadget_.getMemory().getLong(UNION_THETA_LONG) : unionThetaLong_;
+    final long unionThetaLong = getUnionThetaLong();
 
     final long minThetaLong = min(min(curGadgetThetaLong, adjGadgetThetaLong), unionThetaLong);
     final int curCountOut = minThetaLong < curGadgetThetaLong
@@ -260,6 +289,10 @@ final class UnionImpl extends Union {
         minThetaLong, curCountOut, seedHash, empty, true, dstOrdered, dstOrdered, dstMem, compactCacheOut);
   }
 
+  private long getUnionThetaLong() {
+    return gadget_.hasMemory() ? gadget_.getMemory().getLong(UNION_THETA_LONG) : unionThetaLong_;
+  }
+
   @Override
   public boolean isSameResource(final Memory that) {
     return gadget_ instanceof DirectQuickSelectSketchR
@@ -268,6 +301,7 @@ final class UnionImpl extends Union {
 
   @Override
   public void reset() {
+    result_ = null;
     gadget_.reset();
     unionThetaLong_ = gadget_.getThetaLong();
     unionEmpty_ = gadget_.isEmpty();
@@ -281,6 +315,7 @@ final class UnionImpl extends Union {
     if (gadget_.isEmpty() != unionEmpty_) {
       clearEmpty(mem);
       unionEmpty_ = false;
+      result_ = null;
     }
     return gadgetByteArr;
   }
@@ -306,6 +341,7 @@ final class UnionImpl extends Union {
     }
     //sketchIn is valid and not empty
     ThetaUtil.checkSeedHashes(expectedSeedHash_, sketchIn.getSeedHash());
+    result_ = null;
     if (sketchIn instanceof SingleItemSketch) {
       gadget_.hashUpdate(sketchIn.getCache()[0]);
       return;
@@ -317,24 +353,13 @@ final class UnionImpl extends Union {
     final int curCountIn = sketchIn.getRetainedEntries(true);
     if (curCountIn > 0) {
       if (sketchIn.isOrdered() && (sketchIn instanceof CompactSketch)) { //Use early stop
-        //Ordered, thus compact
-        if (sketchIn.hasMemory()) {
-          final Memory skMem = ((CompactSketch) sketchIn).getMemory();
-          final int preambleLongs = skMem.getByte(PREAMBLE_LONGS_BYTE) & 0X3F;
-          for (int i = 0; i < curCountIn; i++ ) {
-            final int offsetBytes = preambleLongs + i << 3;
-            final long hashIn = skMem.getLong(offsetBytes);
-            if (hashIn >= unionThetaLong_) { break; } // "early stop"
-            gadget_.hashUpdate(hashIn); //backdoor update, hash function is bypassed
-          }
-        }
-        else { //sketchIn is on the Java Heap or has array
-          final long[] cacheIn = sketchIn.getCache(); //not a copy!
-          for (int i = 0; i < curCountIn; i++ ) {
-            final long hashIn = cacheIn[i];
-            if (hashIn >= unionThetaLong_) { break; } // "early stop"
-            gadget_.hashUpdate(hashIn); //backdoor update, hash function is bypassed
-          }
+        //Ordered, thus compact. The iterator reads heap arrays and Memory directly and decodes
+        // compressed images on the fly, so no copy of the hash values is made.
+        final HashIterator it = sketchIn.iterator();
+        while (it.next()) {
+          final long hashIn = it.get();
+          if (hashIn >= unionThetaLong_) { break; } // "early stop"
+          gadget_.hashUpdate(hashIn); //backdoor update, hash function is bypassed
         }
       } //End ordered, compact
       else { //either not-ordered compact or Hash Table form. A HT may have dirty values.
@@ -364,9 +389,7 @@ final class UnionImpl extends Union {
     final int serVer = extractSerVer(skMem);
     final int fam = extractFamilyID(skMem);
 
-    if (serVer == 4) { // compressed ordered compact
-      // performance can be improved by decompression while performing the union
-      // potentially only partial decompression might be needed
+    if (serVer == 4) { // compressed ordered compact, decoded while performing the union
       ThetaUtil.checkSeedHashes(expectedSeedHash_, (short) extractSeedHash(skMem));
       final CompactSketch csk = CompactSketch.wrap(skMem);
       union(csk);
@@ -395,10 +418,57 @@ final class UnionImpl extends Union {
     throw new SketchesArgumentException("SerVer is unknown: " + serVer);
   }
 
+  @Override
+  public void unionAll(final Iterable<? extends Sketch> sketches, final ForkJoinPool pool) {
+    final List<Sketch> list = new ArrayList<>();
+    for (final Sketch sk : sketches) {
+      if ((sk != null) && !sk.isEmpty()) { list.add(sk); }
+    }
+    unionAllSketches(list, pool);
+  }
+
+  @Override
+  public void unionAllMemory(final List<? extends Memory> mems, final ForkJoinPool pool) {
+    final List<Sketch> list = new ArrayList<>(mems.size());
+    for (final Memory skMem : mems) {
+      final CompactSketch csk = compactSketchOf(skMem);
+      if (csk == null) {
+        union(skMem); //not a compact image, or empty or garbage
+      } else if (!csk.isEmpty()) {
+        list.add(csk);
+      }
+    }
+    unionAllSketches(list, pool);
+  }
+
+  private void unionAllSketches(final List<Sketch> sketches, final ForkJoinPool pool) {
+    if (sketches.isEmpty()) { return; }
+    final int k = 1 << gadget_.getLgNomLongs();
+    union(pool.invoke(new UnionAllTask(sketches, 0, sketches.size(), k, expectedSeedHash_)));
+  }
+
+  //Returns the given compact image as a CompactSketch, or null if it is not a compact image.
+  private CompactSketch compactSketchOf(final Memory skMem) {
+    if ((skMem == null) || (skMem.getCapacity() < 16)) { return null; }
+    final int serVer = extractSerVer(skMem);
+    if (serVer == 1) { //compact and ordered, no seedHash
+      return ForwardCompatibility.heapify1to3(skMem, expectedSeedHash_);
+    }
+    if (serVer == 2) { //compact and ordered
+      ThetaUtil.checkSeedHashes(expectedSeedHash_, (short)extractSeedHash(skMem));
+      return ForwardCompatibility.heapify2to3(skMem, expectedSeedHash_);
+    }
+    if (((serVer == 3) || (serVer == 4)) && (extractFamilyID(skMem) == Family.COMPACT.getID())) {
+      return CompactSketch.wrap(skMem); //the seedHash is checked by the UnionAllTask
+    }
+    return null;
+  }
+
   //Has seedHash, p, could have 0 entries & theta < 1.0,
   //could be unordered, ordered, compact, or not compact,
   //could be Alpha, QuickSelect, or Compact.
   private void processVer3(final Memory skMem) {
+    result_ = null;
     final int preLongs = extractPreLongs(skMem);
 
     if (preLongs == 1) {
@@ -462,36 +532,43 @@ final class UnionImpl extends Union {
 
   @Override
   public void update(final long datum) {
+    result_ = null;
     gadget_.update(datum);
   }
 
   @Override
   public void update(final double datum) {
+    result_ = null;
     gadget_.update(datum);
   }
 
   @Override
   public void update(final String datum) {
+    result_ = null;
     gadget_.update(datum);
   }
 
   @Override
   public void update(final byte[] data) {
+    result_ = null;
     gadget_.update(data);
   }
 
   @Override
   public void update(final char[] data) {
+    result_ = null;
     gadget_.update(data);
   }
 
   @Override
   public void update(final int[] data) {
+    result_ = null;
     gadget_.update(data);
   }
 
   @Override
   public void update(final long[] data) {
+    result_ = null;
     gadget_.update(data);
   }
 
@@ -42,11 +42,13 @@ import static org.apache.datasketches.theta.PreambleUtil.extractThetaLong;
 import static org.apache.datasketches.theta.PreambleUtil.getMemBytes;
 import static org.apache.datasketches.theta.UpdateReturnState.RejectedNullOrEmpty;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.ResizeFactor;
 import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.hash.MurmurHash3;
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableMemory;
 import org.apache.datasketches.thetacommon.ThetaUtil;
@@ -60,6 +62,11 @@ import org.apache.datasketches.thetacommon.ThetaUtil;
  */
 public abstract class UpdateSketch extends Sketch {
 
+  /**
+   * The number of items hashed together by the batch update methods before they are inserted.
+   */
+  static final int BATCH_BLOCK_SIZE = 256;
+
   UpdateSketch() {}
 
   /**
@@ -323,8 +330,118 @@ public abstract class UpdateSketch extends Sketch {
     return hashUpdate(hash(data, getSeed())[0] >>> 1);
   }
 
+  /**
+   * Present this sketch with each of the given longs as a separate item.
+   * This is equivalent to, but faster than, calling {@link #update(long)} for each item in the
+   * given range: the items are hashed in blocks, and each block is screened against theta before
+   * it is inserted.
+   *
+   * <p>Note: this is not the same as {@link #update(long[])}, which treats the whole array as a
+   * single item.</p>
+   *
+   * @param items the given array of long items
+   * @param offset the index of the first item to update with
+   * @param length the number of items to update with
+   */
+  public void updateBatch(final long[] items, final int offset, final int length) {
+    Objects.requireNonNull(items, "Items must not be null");
+    checkBounds(offset, length, items.length);
+    if (length == 0) { return; }
+    final long seed = getSeed();
+    final long[] hashes = new long[Math.min(length, BATCH_BLOCK_SIZE)];
+    for (int i = 0; i < length; i += BATCH_BLOCK_SIZE) {
+      final int count = Math.min(BATCH_BLOCK_SIZE, length - i);
+      final int base = offset + i;
+      for (int j = 0; j < count; j++) {
+        hashes[j] = MurmurHash3.hash64(items[base + j], seed) >>> 1;
+      }
+      hashUpdateBlock(hashes, count);
+    }
+  }
+
+  /**
+   * Present this sketch with each of the given Strings as a separate item.
+   * This is equivalent to, but faster than, calling {@link #update(String)} for each item in the
+   * given range. As with {@link #update(String)}, null or empty strings are ignored.
+   *
+   * @param items the given array of String items
+   * @param offset the index of the first item to update with
+   * @param length the number of items to update with
+   */
+  public void updateBatch(final String[] items, final int offset, final int length) {
+    Objects.requireNonNull(items, "Items must not be null");
+    checkBounds(offset, length, items.length);
+    if (length == 0) { return; }
+    final long seed = getSeed();
+    final long[] hashes = new long[Math.min(length, BATCH_BLOCK_SIZE)];
+    for (int i = 0; i < length; i += BATCH_BLOCK_SIZE) {
+      final int end = offset + Math.min(i + BATCH_BLOCK_SIZE, length);
+      int count = 0;
+      for (int j = offset + i; j < end; j++) {
+        final String datum = items[j];
+        if ((datum == null) || datum.isEmpty()) { continue; }
+        hashes[count++] = hash(datum.getBytes(UTF_8), seed)[0] >>> 1;
+      }
+      hashUpdateBlock(hashes, count);
+    }
+  }
+
+  /**
+   * Present this sketch with each long in the remaining bytes of the given ByteBuffer as a
+   * separate item. The longs are read in the byte order of the buffer starting at its position,
+   * and each is hashed exactly as {@link #update(long)} would. The position, limit and byte order
+   * of the buffer are not changed.
+   *
+   * @param longs a buffer holding a column of longs. Its remaining bytes must be a multiple of 8.
+   */
+  public void updateBatch(final ByteBuffer longs) {
+    Objects.requireNonNull(longs, "ByteBuffer must not be null");
+    final int remaining = longs.remaining();
+    if ((remaining & 7) != 0) {
+      throw new SketchesArgumentException(
+          "Remaining bytes must be a multiple of 8 (Long.BYTES): " + remaining);
+    }
+    final int length = remaining >>> 3;
+    if (length == 0) { return; }
+    final int pos = longs.position();
+    final long seed = getSeed();
+    final long[] hashes = new long[Math.min(length, BATCH_BLOCK_SIZE)];
+    for (int i = 0; i < length; i += BATCH_BLOCK_SIZE) {
+      final int count = Math.min(BATCH_BLOCK_SIZE, length - i);
+      final int base = pos + (i << 3);
+      for (int j = 0; j < count; j++) {
+        hashes[j] = MurmurHash3.hash64(longs.getLong(base + (j << 3)), seed) >>> 1;
+      }
+      hashUpdateBlock(hashes, count);
+    }
+  }
+
   //restricted methods
 
+  /**
+   * Presents a block of hashes to this sketch, in order, exactly as if each were presented to
+   * {@link #hashUpdate(long)}. Subclasses may override this with a faster loop, but the resulting
+   * state of the sketch must be identical.
+   * The contents of the given array may be overwritten.
+   *
+   * @param hashes the array of hash values, which must already be shifted right by one.
+   * @param count the number of valid hashes at the start of the array
+   */
+  void hashUpdateBlock(final long[] hashes, final int count) {
+    hashUpdateEach(hashes, count);
+  }
+
+  /**
+   * Presents each of the first <i>count</i> hashes to {@link #hashUpdate(long)}.
+   * @param hashes the array of hash values
+   * @param count the number of valid hashes at the start of the array
+   */
+  final void hashUpdateEach(final long[] hashes, final int count) {
+    for (int i = 0; i < count; i++) {
+      hashUpdate(hashes[i]);
+    }
+  }
+
   /**
    * All potential updates converge here.
    * <p>Don't ever call this unless you really know what you are doing!</p>
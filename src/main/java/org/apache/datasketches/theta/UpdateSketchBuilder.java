@@ -23,6 +23,8 @@ import static org.apache.datasketches.common.Util.LS;
 import static org.apache.datasketches.common.Util.TAB;
 import static org.apache.datasketches.common.Util.ceilingIntPowerOf2;
 
+import java.util.concurrent.Executor;
+
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.ResizeFactor;
 import org.apache.datasketches.common.SketchesArgumentException;
@@ -45,9 +47,12 @@ public class UpdateSketchBuilder {
   private Family bFam;
   private float bP;
   private MemoryRequestServer bMemReqSvr;
+  private boolean bIncrementalRebuild;
+  private boolean bCacheLineBuckets;
 
   //Fields for concurrent theta sketch
   private int bNumPoolThreads;
+  private Executor bPropagationExecutor;
   private int bLocalLgNomLongs;
   private boolean bPropagateOrderedCompact;
   private double bMaxConcurrencyError;
@@ -65,11 +70,14 @@ public class UpdateSketchBuilder {
    * be fixed at either {@link ResizeFactor#X1} or {@link ResizeFactor#X2}.</li>
    * <li>MemoryRequestServer (Direct only):
    * {@link org.apache.datasketches.memory.DefaultMemoryRequestServer}.</li>
+   * <li>Incremental Rebuild (QuickSelect on the Java heap only): false</li>
+   * <li>Cache Line Buckets (QuickSelect on the Java heap only): false</li>
    * </ul>
    * Parameters unique to the concurrent sketches only:
    * <ul>
    * <li>Number of local Nominal Entries: 4</li>
    * <li>Concurrent NumPoolThreads: 3</li>
+   * <li>Concurrent PropagationExecutor: null (use the internal pool)</li>
    * <li>Concurrent PropagateOrderedCompact: true</li>
    * <li>Concurrent MaxConcurrencyError: 0</li>
    * </ul>
@@ -81,8 +89,11 @@ public class UpdateSketchBuilder {
     bRF = ResizeFactor.X8;
     bFam = Family.QUICKSELECT;
     bMemReqSvr = new DefaultMemoryRequestServer();
+    bIncrementalRebuild = false;
+    bCacheLineBuckets = false;
     // Default values for concurrent sketch
     bNumPoolThreads = ConcurrentPropagationService.NUM_POOL_THREADS;
+    bPropagationExecutor = null;
     bLocalLgNomLongs = 4; //default is smallest legal QS sketch
     bPropagateOrderedCompact = true;
     bMaxConcurrencyError = 0;
@@ -249,6 +260,57 @@ public class UpdateSketchBuilder {
     return bFam;
   }
 
+  /**
+   * Sets the Incremental Rebuild flag, which applies to QuickSelect sketches on the Java heap.
+   * If true, a resize or rebuild of the hash table installs the new table at once but rehashes
+   * the prior table into it a few slots per following update, rather than all at once. At full
+   * size the two tables are reused in turn, so the update that crosses the threshold neither
+   * allocates nor rehashes; it only selects the new theta with QuickSelect over a dense log of
+   * the retained hashes. Theta, the retained hashes and the estimates are identical to those of
+   * the default mode after every update, and the serialized form is unchanged. Building a Direct
+   * or an Alpha sketch with this flag set throws a SketchesArgumentException.
+   * @param incremental the given value
+   * @return this UpdateSketchBuilder
+   */
+  public UpdateSketchBuilder setIncrementalRebuild(final boolean incremental) {
+    bIncrementalRebuild = incremental;
+    return this;
+  }
+
+  /**
+   * Gets the Incremental Rebuild flag.
+   * @return the Incremental Rebuild flag
+   */
+  public boolean getIncrementalRebuild() {
+    return bIncrementalRebuild;
+  }
+
+  /**
+   * Sets the Cache Line Buckets flag, which applies to QuickSelect sketches on the Java heap.
+   * If true, the hash table is divided into buckets of eight longs, one cache line each, that are
+   * probed linearly, instead of probing with a stride that reaches a new cache line per probe.
+   * This reduces cache misses per update for large sketches. At full size the bucketed table is
+   * rebuilt at 3/4 of its capacity instead of 15/16, so it rebuilds more often and its estimates
+   * are not hash-for-hash identical to those of the default layout. Only the serialized form is
+   * compatible: the table is converted to the standard layout when it is serialized, and
+   * heapifies as an ordinary QuickSelect sketch. Building a Direct or an Alpha sketch with this
+   * flag set throws a SketchesArgumentException.
+   * @param buckets the given value
+   * @return this UpdateSketchBuilder
+   */
+  public UpdateSketchBuilder setCacheLineBuckets(final boolean buckets) {
+    bCacheLineBuckets = buckets;
+    return this;
+  }
+
+  /**
+   * Gets the Cache Line Buckets flag.
+   * @return the Cache Line Buckets flag
+   */
+  public boolean getCacheLineBuckets() {
+    return bCacheLineBuckets;
+  }
+
   /**
    * Set the MemoryRequestServer
    * @param memReqSvr the given MemoryRequestServer
@@ -283,6 +345,32 @@ public class UpdateSketchBuilder {
     return bNumPoolThreads;
   }
 
+  /**
+   * Sets the Executor that runs the background propagations of the concurrent shared sketches
+   * built by this Builder, and of their local buffers. If null, which is the default, the
+   * internal pool of <i>NumPoolThreads</i> single-thread executors is used.
+   *
+   * <p>The Executor remains owned by the caller: closing the shared sketch via
+   * {@link ConcurrentThetaSketch#close()} drains its pending propagations but never shuts the
+   * Executor down. Any Executor may be given, including a virtual-thread-per-task executor on
+   * JDK 21 and later.</p>
+   *
+   * @param executor the given Executor, or null to use the internal pool
+   * @return this UpdateSketchBuilder
+   */
+  public UpdateSketchBuilder setPropagationExecutor(final Executor executor) {
+    bPropagationExecutor = executor;
+    return this;
+  }
+
+  /**
+   * Gets the Executor used for background propagation in the concurrent sketches.
+   * @return the Executor, or null if the internal pool is used
+   */
+  public Executor getPropagationExecutor() {
+    return bPropagationExecutor;
+  }
+
   /**
    * Sets the Propagate Ordered Compact flag to the given value. Used with concurrent sketches.
    *
@@ -356,6 +444,11 @@ public class UpdateSketchBuilder {
     UpdateSketch sketch = null;
     switch (bFam) {
       case ALPHA: {
+        if (bIncrementalRebuild || bCacheLineBuckets) {
+          throw new SketchesArgumentException(
+              "Incremental Rebuild and Cache Line Buckets are only supported for the QuickSelect "
+              + "Family.");
+        }
         if (dstMem == null) {
           sketch = HeapAlphaSketch.newHeapInstance(bLgNomLongs, bSeed, bP, bRF);
         }
@@ -366,7 +459,13 @@ public class UpdateSketchBuilder {
       }
       case QUICKSELECT: {
         if (dstMem == null) {
-          sketch =  new HeapQuickSelectSketch(bLgNomLongs, bSeed, bP, bRF, false);
+          sketch =  new HeapQuickSelectSketch(bLgNomLongs, bSeed, bP, bRF, false,
+              bIncrementalRebuild, bCacheLineBuckets);
+        }
+        else if (bIncrementalRebuild || bCacheLineBuckets) {
+          throw new SketchesArgumentException(
+              "Incremental Rebuild and Cache Line Buckets are only supported for sketches on the "
+              + "Java heap.");
         }
         else {
           sketch = new DirectQuickSelectSketch(
@@ -389,9 +488,13 @@ public class UpdateSketchBuilder {
    * <p>The parameters unique to the shared concurrent sketch are:
    * <ul>
    * <li>Number of Pool Threads (default is 3)</li>
+   * <li>Propagation Executor (default is null, the internal pool)</li>
    * <li>Maximum Concurrency Error</li>
    * </ul>
    *
+   * <p>The returned sketch is also a {@link ConcurrentThetaSketch}, which can drain and close
+   * the background propagation.</p>
+   *
    * <p>Key parameters that are in common with other <i>Theta</i> sketches:
    * <ul>
    * <li>Nominal Entries or Log Nominal Entries (for the shared concurrent sketch)</li>
@@ -411,9 +514,13 @@ public class UpdateSketchBuilder {
    * <p>The parameters unique to the shared concurrent sketch are:
    * <ul>
    * <li>Number of Pool Threads (default is 3)</li>
+   * <li>Propagation Executor (default is null, the internal pool)</li>
    * <li>Maximum Concurrency Error</li>
    * </ul>
    *
+   * <p>The returned sketch is also a {@link ConcurrentThetaSketch}, which can drain and close
+   * the background propagation.</p>
+   *
    * <p>Key parameters that are in common with other <i>Theta</i> sketches:
    * <ul>
    * <li>Nominal Entries or Log Nominal Entries (for the shared concurrent sketch)</li>
@@ -429,9 +536,11 @@ public class UpdateSketchBuilder {
   public UpdateSketch buildShared(final WritableMemory dstMem) {
     ConcurrentPropagationService.NUM_POOL_THREADS = bNumPoolThreads;
     if (dstMem == null) {
-      return new ConcurrentHeapQuickSelectSketch(bLgNomLongs, bSeed, bMaxConcurrencyError);
+      return new ConcurrentHeapQuickSelectSketch(bLgNomLongs, bSeed, bMaxConcurrencyError,
+          bPropagationExecutor);
     } else {
-      return new ConcurrentDirectQuickSelectSketch(bLgNomLongs, bSeed, bMaxConcurrencyError, dstMem);
+      return new ConcurrentDirectQuickSelectSketch(bLgNomLongs, bSeed, bMaxConcurrencyError, dstMem,
+          bPropagationExecutor);
     }
   }
 
@@ -444,9 +553,13 @@ public class UpdateSketchBuilder {
    * <p>The parameters unique to the shared concurrent sketch are:
    * <ul>
    * <li>Number of Pool Threads (default is 3)</li>
+   * <li>Propagation Executor (default is null, the internal pool)</li>
    * <li>Maximum Concurrency Error</li>
    * </ul>
    *
+   * <p>The returned sketch is also a {@link ConcurrentThetaSketch}, which can drain and close
+   * the background propagation.</p>
+   *
    * <p>Key parameters that are in common with other <i>Theta</i> sketches:
    * <ul>
    * <li>Nominal Entries or Log Nominal Entries (for the shared concurrent sketch)</li>
@@ -464,9 +577,11 @@ public class UpdateSketchBuilder {
   public UpdateSketch buildSharedFromSketch(final UpdateSketch sketch, final WritableMemory dstMem) {
     ConcurrentPropagationService.NUM_POOL_THREADS = bNumPoolThreads;
     if (dstMem == null) {
-      return new ConcurrentHeapQuickSelectSketch(sketch, bSeed, bMaxConcurrencyError);
+      return new ConcurrentHeapQuickSelectSketch(sketch, bSeed, bMaxConcurrencyError,
+          bPropagationExecutor);
     } else {
-      return new ConcurrentDirectQuickSelectSketch(sketch, bSeed, bMaxConcurrencyError, dstMem);
+      return new ConcurrentDirectQuickSelectSketch(sketch, bSeed, bMaxConcurrencyError, dstMem,
+          bPropagationExecutor);
     }
   }
 
@@ -492,6 +607,84 @@ public class UpdateSketchBuilder {
         (ConcurrentSharedThetaSketch) shared, bPropagateOrderedCompact, bMaxNumLocalThreads);
   }
 
+  /**
+   * Returns an on-heap QuickSelect UpdateSketch that any number of threads may update directly.
+   * Unlike the shared sketch returned by {@link #buildShared()}, it needs no per-thread local
+   * buffers and no background propagation threads, and its estimate reflects every update that
+   * has completed.
+   *
+   * <p>Key parameters that are in common with other <i>Theta</i> sketches:
+   * <ul>
+   * <li>Nominal Entries or Log Nominal Entries</li>
+   * <li>Seed</li>
+   * <li>Sampling Probability, <i>p</i></li>
+   * <li>Resize Factor</li>
+   * </ul>
+   *
+   * <p>The Family is always QuickSelect, which is also the Family of its serialized form.</p>
+   *
+   * @return an on-heap, lock-free, concurrent UpdateSketch with the current configuration of
+   * the Builder.
+   */
+  public UpdateSketch buildLockFree() {
+    return new LockFreeQuickSelectSketch(bLgNomLongs, bSeed, bP, bRF);
+  }
+
+  /**
+   * Returns a new, empty {@link ThetaSketchArena} in the given WritableMemory, which holds one
+   * Direct QuickSelect UpdateSketch per key. The region may be off-heap or a memory-mapped file.
+   * It never grows, even if the given Memory has a MemoryRequestServer, so a request that needs
+   * more than its capacity throws a SketchesArgumentException. Use
+   * {@link #buildArena(WritableMemory, MemoryRequestServer)} for an arena that can grow.
+   *
+   * <p>Key parameters that are in common with other <i>Theta</i> sketches:
+   * <ul>
+   * <li>Nominal Entries or Log Nominal Entries</li>
+   * <li>Seed</li>
+   * <li>Sampling Probability, <i>p</i></li>
+   * <li>Resize Factor</li>
+   * </ul>
+   *
+   * <p>The Family is always QuickSelect. Each sketch starts in the smallest slot allowed by the
+   * Resize Factor and moves to a larger slot when its hash table grows. The MemoryRequestServer
+   * of this Builder is not used either, so that a region is never moved to the heap by default.</p>
+   *
+   * @param dstMem the initial region of the arena. It cannot be null.
+   * @return a new, empty ThetaSketchArena with the current configuration of the Builder.
+   */
+  public ThetaSketchArena buildArena(final WritableMemory dstMem) {
+    return ThetaSketchArena.newInstance(bLgNomLongs, bSeed, bP, bRF, dstMem, null);
+  }
+
+  /**
+   * Returns a new, empty {@link ThetaSketchArena} in the given WritableMemory that grows through
+   * the given MemoryRequestServer. Otherwise the same as {@link #buildArena(WritableMemory)}.
+   *
+   * @param dstMem the initial region of the arena. It cannot be null.
+   * @param memReqSvr the MemoryRequestServer used to grow the region, or null if the region must
+   * never grow. The server of the given Memory is not used.
+   * @return a new, empty ThetaSketchArena with the current configuration of the Builder.
+   */
+  public ThetaSketchArena buildArena(final WritableMemory dstMem,
+      final MemoryRequestServer memReqSvr) {
+    return ThetaSketchArena.newInstance(bLgNomLongs, bSeed, bP, bRF, dstMem, memReqSvr);
+  }
+
+  /**
+   * Returns a new, empty {@link ThetaSlidingWindow}, which keeps one sealed CompactSketch per time
+   * bucket and answers distinct counts over the most recent buckets.
+   *
+   * <p>The current bucket is an on-heap UpdateSketch built with the current configuration of the
+   * Builder, and the sealed buckets and their unions use the same Nominal Entries and Seed.</p>
+   *
+   * @param maxBuckets the largest window in buckets, including the current bucket.
+   * It must be at least 2.
+   * @return a new, empty ThetaSlidingWindow with the current configuration of the Builder.
+   */
+  public ThetaSlidingWindow buildSlidingWindow(final int maxBuckets) {
+    return new ThetaSlidingWindow(build(), maxBuckets);
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder();
@@ -506,8 +699,13 @@ public class UpdateSketchBuilder {
     sb.append("Family:").append(TAB).append(bFam).append(LS);
     final String mrsStr = bMemReqSvr.getClass().getSimpleName();
     sb.append("MemoryRequestServer:").append(TAB).append(mrsStr).append(LS);
+    sb.append("IncrementalRebuild:").append(TAB).append(bIncrementalRebuild).append(LS);
+    sb.append("CacheLineBuckets:").append(TAB).append(bCacheLineBuckets).append(LS);
     sb.append("Propagate Ordered Compact").append(TAB).append(bPropagateOrderedCompact).append(LS);
     sb.append("NumPoolThreads").append(TAB).append(bNumPoolThreads).append(LS);
+    final String peStr = (bPropagationExecutor == null) ? "null"
+        : bPropagationExecutor.getClass().getSimpleName();
+    sb.append("PropagationExecutor").append(TAB).append(peStr).append(LS);
     sb.append("MaxConcurrencyError").append(TAB).append(bMaxConcurrencyError).append(LS);
     sb.append("MaxNumLocalThreads").append(TAB).append(bMaxNumLocalThreads).append(LS);
     return sb.toString();
@@ -42,6 +42,13 @@ public final class HashOperations {
    */
   public static final int STRIDE_MASK = (1 << STRIDE_HASH_BITS) - 1;
 
+  /**
+   * The number of longs in a bucket of the bucketed hash table layout, which is one 64-byte
+   * cache line.
+   */
+  public static final int BUCKET_LONGS = 8;
+  private static final int BUCKET_MASK = BUCKET_LONGS - 1;
+
   private HashOperations() {}
 
   //Make odd and independent of index assuming lgArrLongs lowest bits of the hash were used for
@@ -183,6 +190,146 @@ public final class HashOperations {
     return count;
   }
 
+  //ON-HEAP, BUCKETED LAYOUT
+
+  // The bucketed layout divides the table into buckets of BUCKET_LONGS longs, each aligned to a
+  // cache line. A hash starts at the bucket selected by its low bits, fills that bucket from its
+  // first slot, and overflows into the following buckets. A probe therefore reads consecutive
+  // longs of one cache line before touching the next one, where the OADH stride touches a new
+  // line per probe. Tables in this layout must have at least BUCKET_LONGS slots and can only be
+  // searched by the bucketed methods. Use hashArrayInsert() to convert them to the OADH layout of
+  // the serialized sketches.
+
+  /**
+   * Bucketed linear probing search for on-heap tables in the bucketed layout.
+   * Returns the index if found, -1 if not found.
+   *
+   * @param hashTable The hash table to search. Its size must be a power of 2 and at least
+   * {@link #BUCKET_LONGS}.
+   * @param lgArrLongs The log_base2(hashTable.length).
+   * <a href="{@docRoot}/resources/dictionary.html#lgArrLongs">See lgArrLongs</a>.
+   * @param hash The hash value to search for. It must not be zero.
+   * @return Current probe index if found, -1 if not found.
+   */
+  public static int hashSearchBucketed(final long[] hashTable, final int lgArrLongs,
+      final long hash) {
+    if (hash == 0) {
+      throw new SketchesArgumentException("Given hash must not be zero: " + hash);
+    }
+    final int arrayMask = (1 << lgArrLongs) - 1;
+    int bucket = (int) (hash & arrayMask) & ~BUCKET_MASK;
+    final int loopIndex = bucket;
+    do {
+      for (int i = bucket; i < bucket + BUCKET_LONGS; i++) {
+        final long arrVal = hashTable[i];
+        if (arrVal == hash) {
+          return i; // found
+        } else if (arrVal == EMPTY) {
+          return -1; // not found
+        }
+      }
+      bucket = (bucket + BUCKET_LONGS) & arrayMask;
+    } while (bucket != loopIndex);
+    return -1;
+  }
+
+  /**
+   * Bucketed linear probing insert for on-heap tables in the bucketed layout.
+   * This method assumes that the input hash is not a duplicate.
+   * Returns the index of insertion, which is always positive or zero.
+   * Throws an exception if the table has no empty slot.
+   *
+   * @param hashTable the hash table to insert into. Its size must be a power of 2 and at least
+   * {@link #BUCKET_LONGS}.
+   * @param lgArrLongs The log_base2(hashTable.length).
+   * <a href="{@docRoot}/resources/dictionary.html#lgArrLongs">See lgArrLongs</a>.
+   * @param hash The hash value to be inserted into an empty slot. It must not be zero.
+   * @return index of insertion.  Always positive or zero.
+   */
+  public static int hashInsertOnlyBucketed(final long[] hashTable, final int lgArrLongs,
+      final long hash) {
+    final int arrayMask = (1 << lgArrLongs) - 1;
+    int bucket = (int) (hash & arrayMask) & ~BUCKET_MASK;
+    final int loopIndex = bucket;
+    do {
+      for (int i = bucket; i < bucket + BUCKET_LONGS; i++) {
+        if (hashTable[i] == EMPTY) {
+          hashTable[i] = hash;
+          return i;
+        }
+      }
+      bucket = (bucket + BUCKET_LONGS) & arrayMask;
+    } while (bucket != loopIndex);
+    throw new SketchesArgumentException("No empty slot in table!");
+  }
+
+  /**
+   * Bucketed linear probing search or insert for on-heap tables in the bucketed layout.
+   * Returns index &ge; 0 if found (duplicate); &lt; 0 if inserted, inserted at -(index + 1).
+   * Throws an exception if the value is not found and table has no empty slot.
+   *
+   * @param hashTable The hash table to insert into. Its size must be a power of 2 and at least
+   * {@link #BUCKET_LONGS}.
+   * @param lgArrLongs The log_base2(hashTable.length).
+   * <a href="{@docRoot}/resources/dictionary.html#lgArrLongs">See lgArrLongs</a>.
+   * @param hash The hash value to be potentially inserted into an empty slot only if it is not
+   * a duplicate of any other hash value in the table. It must not be zero.
+   * @return index &ge; 0 if found (duplicate); &lt; 0 if inserted, inserted at -(index + 1).
+   */
+  public static int hashSearchOrInsertBucketed(final long[] hashTable, final int lgArrLongs,
+      final long hash) {
+    final int arrayMask = (1 << lgArrLongs) - 1;
+    int bucket = (int) (hash & arrayMask) & ~BUCKET_MASK;
+    final int loopIndex = bucket;
+    do {
+      for (int i = bucket; i < bucket + BUCKET_LONGS; i++) {
+        final long arrVal = hashTable[i];
+        if (arrVal == EMPTY) {
+          hashTable[i] = hash; // insert value
+          return ~i;
+        } else if (arrVal == hash) {
+          return i; // found a duplicate
+        }
+      }
+      bucket = (bucket + BUCKET_LONGS) & arrayMask;
+    } while (bucket != loopIndex);
+    throw new SketchesArgumentException("Hash not found and no empty slots!");
+  }
+
+  /**
+   * Inserts the given long array into the given bucketed hashTable of the target size,
+   * ignores duplicates and counts the values inserted. This is the same as
+   * {@link #hashArrayInsert(long[], long[], int, long)} for the bucketed layout. The source
+   * array may be in either layout, so each method converts a table to the layout of the other.
+   *
+   * @param srcArr the source hash array to be potentially inserted
+   * @param hashTable The hash table to insert into. Its size must be a power of 2 and at least
+   * {@link #BUCKET_LONGS}.
+   * @param lgArrLongs The log_base2(hashTable.length).
+   * <a href="{@docRoot}/resources/dictionary.html#lgArrLongs">See lgArrLongs</a>.
+   * @param thetaLong The theta value that all input hash values are compared against.
+   * It must greater than zero.
+   * <a href="{@docRoot}/resources/dictionary.html#thetaLong">See Theta Long</a>
+   * @return the count of values actually inserted
+   */
+  public static int hashArrayInsertBucketed(final long[] srcArr, final long[] hashTable,
+      final int lgArrLongs, final long thetaLong) {
+    int count = 0;
+    final int arrLen = srcArr.length;
+    checkThetaCorruption(thetaLong);
+    for (int i = 0; i < arrLen; i++ ) { // scan source array, build target array
+      final long hash = srcArr[i];
+      checkHashCorruption(hash);
+      if (continueCondition(thetaLong, hash) ) {
+        continue;
+      }
+      if (hashSearchOrInsertBucketed(hashTable, lgArrLongs, hash) < 0) {
+        count++ ;
+      }
+    }
+    return count;
+  }
+
   //With Memory or WritableMemory
 
   /**
@@ -43,6 +43,11 @@ public final class ThetaUtil {
    * The hash table rebuild threshold = 15.0/16.0.
    */
   public static final double REBUILD_THRESHOLD = 15.0 / 16.0;
+  /**
+   * The hash table rebuild threshold of the cache-line bucketed layout = 3.0/4.0. Full buckets
+   * overflow linearly into the following ones, so the probe clusters grow quickly above it.
+   */
+  public static final double BUCKETED_REBUILD_THRESHOLD = 3.0 / 4.0;
   /**
    * The resize threshold = 0.5; tuned for speed.
    */
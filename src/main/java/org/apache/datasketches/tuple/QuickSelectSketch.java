@@ -32,6 +32,7 @@ import org.apache.datasketches.common.ByteArrayUtil;
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.ResizeFactor;
 import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.common.SketchesStateException;
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.thetacommon.HashOperations;
 import org.apache.datasketches.thetacommon.QuickSelect;
@@ -56,6 +57,7 @@ class QuickSelectSketch<S extends Summary> extends Sketch<S> {
   private int rebuildThreshold_;
   private long[] hashTable_;
   S[] summaryTable_;
+  private boolean bucketed_; //hashTable_ uses the cache-line bucketed layout of HashOperations
 
   /**
    * This is to create an instance of a QuickSelectSketch with default resize factor.
@@ -151,6 +153,7 @@ class QuickSelectSketch<S extends Summary> extends Sketch<S> {
     summaryFactory_ = sketch.summaryFactory_;
     hashTable_ = sketch.hashTable_.clone();
     summaryTable_ = Util.copySummaryArray(sketch.summaryTable_);
+    bucketed_ = sketch.bucketed_;
   }
 
   /**
@@ -236,7 +239,23 @@ class QuickSelectSketch<S extends Summary> extends Sketch<S> {
   }
 
   long[] getHashTable() {
-    return hashTable_;
+    if (!bucketed_) { return hashTable_; }
+    //Callers search the table with the OADH methods
+    final long[] hashTable = new long[hashTable_.length];
+    HashOperations.hashArrayInsert(hashTable_, hashTable, lgCurrentCapacity_, thetaLong_);
+    return hashTable;
+  }
+
+  /**
+   * Switches the hash table of this empty sketch to the cache-line bucketed layout of
+   * HashOperations. The serialized form does not depend on the layout.
+   */
+  void setCacheLineBuckets() {
+    if (count_ > 0) {
+      throw new SketchesStateException("The layout can only be changed while the sketch is empty.");
+    }
+    bucketed_ = true;
+    setRebuildThreshold();
   }
 
   @Override
@@ -465,7 +484,9 @@ class QuickSelectSketch<S extends Summary> extends Sketch<S> {
   }
 
   int findOrInsert(final long hash) {
-    final int index = HashOperations.hashSearchOrInsert(hashTable_, lgCurrentCapacity_, hash);
+    final int index = bucketed_
+        ? HashOperations.hashSearchOrInsertBucketed(hashTable_, lgCurrentCapacity_, hash)
+        : HashOperations.hashSearchOrInsert(hashTable_, lgCurrentCapacity_, hash);
     if (index < 0) {
       count_++;
     }
@@ -490,7 +511,9 @@ class QuickSelectSketch<S extends Summary> extends Sketch<S> {
   }
 
   void insert(final long hash, final S summary) {
-    final int index = HashOperations.hashInsertOnly(hashTable_, lgCurrentCapacity_, hash);
+    final int index = bucketed_
+        ? HashOperations.hashInsertOnlyBucketed(hashTable_, lgCurrentCapacity_, hash)
+        : HashOperations.hashInsertOnly(hashTable_, lgCurrentCapacity_, hash);
     insertSummary(index, summary);
     count_++;
     empty_ = false;
@@ -528,7 +551,8 @@ class QuickSelectSketch<S extends Summary> extends Sketch<S> {
 
   private void setRebuildThreshold() {
     if (hashTable_.length > nomEntries_) {
-      rebuildThreshold_ = (int) (hashTable_.length * ThetaUtil.REBUILD_THRESHOLD);
+      rebuildThreshold_ = (int) (hashTable_.length * (bucketed_
+          ? ThetaUtil.BUCKETED_REBUILD_THRESHOLD : ThetaUtil.REBUILD_THRESHOLD));
     } else {
       rebuildThreshold_ = (int) (hashTable_.length * ThetaUtil.RESIZE_THRESHOLD);
     }
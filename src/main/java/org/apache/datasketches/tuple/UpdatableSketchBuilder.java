@@ -33,6 +33,7 @@ public class UpdatableSketchBuilder<U, S extends UpdatableSummary<U>> {
   private int nomEntries_;
   private ResizeFactor resizeFactor_;
   private float samplingProbability_;
+  private boolean cacheLineBuckets_;
   private final SummaryFactory<S> summaryFactory_;
 
   private static final float DEFAULT_SAMPLING_PROBABILITY = 1;
@@ -86,22 +87,41 @@ public class UpdatableSketchBuilder<U, S extends UpdatableSummary<U>> {
     return this;
   }
 
+  /**
+   * This is to choose the cache-line bucketed hash table layout, which probes buckets of eight
+   * longs linearly instead of striding across the table. It reduces cache misses per update for
+   * large sketches. The bucketed table is rebuilt at 3/4 of its capacity instead of 15/16, so the
+   * results are not hash-for-hash identical to those of the default layout. Only the serialized
+   * form is compatible.
+   * Default is false.
+   * @param cacheLineBuckets true to use the bucketed layout
+   * @return this UpdatableSketchBuilder
+   */
+  public UpdatableSketchBuilder<U, S> setCacheLineBuckets(final boolean cacheLineBuckets) {
+    cacheLineBuckets_ = cacheLineBuckets;
+    return this;
+  }
+
   /**
    * Returns an UpdatableSketch with the current configuration of this Builder.
    * @return an UpdatableSketch
    */
   public UpdatableSketch<U, S> build() {
-    return new UpdatableSketch<>(nomEntries_, resizeFactor_.lg(), samplingProbability_,
-        summaryFactory_);
+    final UpdatableSketch<U, S> sketch = new UpdatableSketch<>(nomEntries_, resizeFactor_.lg(),
+        samplingProbability_, summaryFactory_);
+    if (cacheLineBuckets_) { sketch.setCacheLineBuckets(); }
+    return sketch;
   }
 
   /**
-   * Resets the Nominal Entries, Resize Factor and Sampling Probability to their default values.
+   * Resets the Nominal Entries, Resize Factor, Sampling Probability and Cache Line Buckets to
+   * their default values.
    * The assignment of <i>U</i> and <i>S</i> remain the same.
    */
   public void reset() {
     nomEntries_ = ThetaUtil.DEFAULT_NOMINAL_ENTRIES;
     resizeFactor_ = DEFAULT_RESIZE_FACTOR;
     samplingProbability_ = DEFAULT_SAMPLING_PROBABILITY;
+    cacheLineBuckets_ = false;
   }
 }
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import org.apache.datasketches.hll.HllSketch;
+import org.apache.datasketches.kll.KllDoublesSketch;
+import org.apache.datasketches.memory.DefaultMemoryRequestServer;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.theta.Sketch;
+import org.apache.datasketches.theta.UpdateSketch;
+import org.testng.annotations.Test;
+
+public class SketchStoreTest {
+
+  private static final DefaultMemoryRequestServer memReqSvr = new DefaultMemoryRequestServer();
+
+  @Test
+  public void checkMixedFamilies() {
+    //stands in for a memory-mapped file, grown as the images stream in
+    final SketchStore.Writer writer = SketchStore.writer(WritableMemory.allocate(64), memReqSvr);
+    final int n = 100;
+    for (long key = n; key > 0; key--) { //out of order
+      final UpdateSketch theta = UpdateSketch.builder().build();
+      for (int i = 0; i < key; i++) { theta.update(i); }
+      writer.put(3 * key, theta.compact().toByteArray());
+      final HllSketch hll = new HllSketch(10);
+      for (int i = 0; i < key; i++) { hll.update(i); }
+      writer.put((3 * key) + 1, hll.toCompactByteArray());
+      final KllDoublesSketch kll = KllDoublesSketch.newHeapInstance();
+      for (int i = 0; i < key; i++) { kll.update(i); }
+      writer.put((3 * key) + 2, kll.toByteArray());
+    }
+    assertEquals(writer.size(), 3 * n);
+    final long bytes = writer.getSerializedSizeBytes();
+    assertEquals(bytes % 8, 0);
+
+    final SketchStore finished = writer.finish();
+    assertEquals(finished.size(), 3 * n);
+    final WritableMemory wmem = writer.getMemory();
+    assertTrue(wmem.getCapacity() >= bytes);
+    final SketchStore store = SketchStore.wrap(wmem.region(0, bytes));
+    assertEquals(store.size(), 3 * n);
+    for (int i = 1; i < store.size(); i++) { assertTrue(store.getKey(i - 1) < store.getKey(i)); }
+
+    for (long key = 1; key <= n; key++) {
+      assertEquals(store.get(3 * key, Sketch::wrap).getEstimate(), key, 0.0);
+      assertEquals(store.get((3 * key) + 1, HllSketch::wrap).getEstimate(), key, key * 0.05);
+      assertEquals(store.get((3 * key) + 2, KllDoublesSketch::wrap).getN(), key);
+      assertEquals(store.getFamilyId((3 * key) + 1), Family.HLL.getID());
+      assertEquals(store.getFamilyId((3 * key) + 2), Family.KLL.getID());
+    }
+    assertFalse(store.contains(0));
+    assertNull(store.getMemory(0));
+    assertNull(store.get(3 * n + 3, Sketch::wrap));
+    assertEquals(store.getFamilyId(-1), -1);
+
+    //the region is exactly the stored image
+    final UpdateSketch theta = UpdateSketch.builder().build();
+    theta.update(0);
+    final byte[] image = theta.compact().toByteArray();
+    final Memory region = store.getMemory(3);
+    assertEquals(region.getCapacity(), image.length);
+    final byte[] regionBytes = new byte[image.length];
+    region.getByteArray(0, regionBytes, 0, image.length);
+    assertEquals(regionBytes, image);
+  }
+
+  @Test
+  public void checkEmpty() {
+    final SketchStore.Writer writer = SketchStore.writer(WritableMemory.allocate(64));
+    writer.finish();
+    assertEquals(writer.getSerializedSizeBytes(), SketchStore.STORE_PREAMBLE_BYTES);
+    final SketchStore store = SketchStore.wrap(writer.getMemory());
+    assertEquals(store.size(), 0);
+    assertFalse(store.contains(1));
+  }
+
+  @Test
+  public void checkDestinationWithoutServerDoesNotGrow() {
+    final byte[] image = UpdateSketch.builder().build().compact().toByteArray();
+    final WritableMemory wmem = WritableMemory.allocate(SketchStore.STORE_PREAMBLE_BYTES + 8);
+    final SketchStore.Writer writer = SketchStore.writer(wmem).put(1, image);
+    try {
+      writer.finish(); //no room for the key index
+      fail();
+    } catch (final SketchesArgumentException e) {
+      assertTrue(writer.getMemory() == wmem);
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkDuplicateKey() {
+    final byte[] image = UpdateSketch.builder().build().compact().toByteArray();
+    SketchStore.writer(WritableMemory.allocate(256)).put(1, image).put(1, image);
+  }
+
+  @Test(expectedExceptions = SketchesStateException.class)
+  public void checkPutAfterFinish() {
+    final byte[] image = UpdateSketch.builder().build().compact().toByteArray();
+    final SketchStore.Writer writer = SketchStore.writer(WritableMemory.allocate(256));
+    writer.finish();
+    writer.put(1, image);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkNotAStore() {
+    SketchStore.wrap(Memory.wrap(new byte[32]));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkTruncated() {
+    final byte[] image = UpdateSketch.builder().build().compact().toByteArray();
+    final SketchStore.Writer writer = SketchStore.writer(WritableMemory.allocate(256));
+    final long bytes = writer.put(1, image).getSerializedSizeBytes();
+    writer.finish();
+    SketchStore.wrap(writer.getMemory().region(0, bytes - 8));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkKeyIndexOutOfRange() {
+    SketchStore.writer(WritableMemory.allocate(64)).finish().getKey(0);
+  }
+}
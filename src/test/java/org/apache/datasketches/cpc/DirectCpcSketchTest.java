@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.cpc;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.nio.ByteOrder;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.DefaultMemoryRequestServer;
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+public class DirectCpcSketchTest {
+  private static final DefaultMemoryRequestServer memReqSvr = new DefaultMemoryRequestServer();
+
+  @Test
+  public void matchesHeapSketchInAllFlavors() {
+    final int lgK = 8;
+    final CpcSketch heap = new CpcSketch(lgK);
+    final WritableMemory wmem = WritableMemory.allocate(DirectCpcSketch.getUpdatableBytes(lgK));
+    final DirectCpcSketch direct = new DirectCpcSketch(lgK, wmem);
+    assertTrue(direct.isEmpty());
+    assertEquals(direct.getEstimate(), 0.0);
+    int n = 0;
+    //EMPTY, SPARSE, HYBRID, PINNED and SLIDING
+    for (final int target : new int[] { 1, 20, 100, 1000, 100000 }) {
+      for ( ; n < target; n++) {
+        heap.update(n);
+        direct.update(n);
+      }
+      assertEquals(direct.getEstimate(), heap.getEstimate());
+      assertEquals(direct.getLowerBound(2), heap.getLowerBound(2));
+      assertEquals(direct.getUpperBound(2), heap.getUpperBound(2));
+      assertEquals(direct.toByteArray(), heap.toByteArray());
+    }
+    assertEquals(direct.toCpcSketch().getFlavor(), Flavor.SLIDING);
+    assertEquals(direct.getLgK(), lgK);
+    assertFalse(direct.isEmpty());
+  }
+
+  @Test
+  public void allUpdateTypes() {
+    final CpcSketch heap = new CpcSketch(10);
+    final DirectCpcSketch direct = new DirectCpcSketch(10,
+        WritableMemory.allocate(DirectCpcSketch.getUpdatableBytes(10)));
+    heap.update(1L);
+    direct.update(1L);
+    heap.update(-0.0);
+    direct.update(-0.0);
+    heap.update("3");
+    direct.update("3");
+    heap.update(new byte[] { 4 });
+    direct.update(new byte[] { 4 });
+    heap.update(new char[] { 5 });
+    direct.update(new char[] { 5 });
+    heap.update(new int[] { 6 });
+    direct.update(new int[] { 6 });
+    heap.update(new long[] { 7 });
+    direct.update(new long[] { 7 });
+    direct.update("");
+    direct.update((byte[]) null);
+    assertEquals(direct.getEstimate(), heap.getEstimate());
+    assertEquals(direct.toByteArray(), heap.toByteArray());
+  }
+
+  @Test
+  public void wrapAndHeapify() {
+    final int lgK = 10;
+    final long seed = 123;
+    final WritableMemory wmem = WritableMemory.allocate(DirectCpcSketch.getUpdatableBytes(lgK));
+    final DirectCpcSketch sk = new DirectCpcSketch(lgK, seed, wmem, null);
+    for (int i = 0; i < 5000; i++) { sk.update(i); }
+
+    final DirectCpcSketch wrapped = DirectCpcSketch.writableWrap(wmem, seed, null);
+    assertEquals(wrapped.getEstimate(), sk.getEstimate());
+    for (int i = 5000; i < 10000; i++) { wrapped.update(i); }
+    assertEquals(sk.getEstimate(), wrapped.getEstimate());
+
+    final CpcSketch heap = CpcSketch.heapify(wmem, seed);
+    assertEquals(heap.getEstimate(), sk.getEstimate());
+    assertEquals(heap.toByteArray(), sk.toByteArray());
+
+    final CpcSketch compact = CpcSketch.heapify(sk.toByteArray(), seed);
+    assertEquals(compact.getEstimate(), sk.getEstimate());
+  }
+
+  @Test
+  public void growsWithMemoryRequestServer() {
+    final int lgK = 10;
+    final WritableMemory wmem = WritableMemory.allocate(1100);
+    final DirectCpcSketch sk = new DirectCpcSketch(lgK, 9001L, wmem, memReqSvr);
+    final CpcSketch heap = new CpcSketch(lgK, 9001L);
+    for (int i = 0; i < 100000; i++) {
+      sk.update(i);
+      heap.update(i);
+    }
+    assertNotSame(sk.getMemory(), wmem);
+    assertEquals(sk.getEstimate(), heap.getEstimate());
+    assertEquals(sk.toByteArray(), heap.toByteArray());
+  }
+
+  @Test
+  public void doesNotGrowWithoutMemoryRequestServer() {
+    final int lgK = 10;
+    final WritableMemory wmem = WritableMemory.allocate(1100, ByteOrder.nativeOrder(), memReqSvr);
+    final DirectCpcSketch sk = new DirectCpcSketch(lgK, wmem);
+    try {
+      for (int i = 0; i < 100000; i++) { sk.update(i); }
+      fail();
+    } catch (final SketchesArgumentException e) {
+      //the server of the memory itself is not used
+    }
+    assertSame(sk.getMemory(), wmem);
+  }
+
+  @Test
+  public void reset() {
+    final DirectCpcSketch sk = new DirectCpcSketch(11,
+        WritableMemory.allocate(DirectCpcSketch.getUpdatableBytes(11)));
+    for (int i = 0; i < 10000; i++) { sk.update(i); }
+    sk.reset();
+    assertTrue(sk.isEmpty());
+    assertEquals(sk.getEstimate(), 0.0);
+    assertEquals(sk.toByteArray(), new CpcSketch(11).toByteArray());
+    sk.update(1);
+    assertEquals(sk.getEstimate(), 1.0, 0.01);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void wrapCompressedImage() {
+    final CpcSketch heap = new CpcSketch(10);
+    heap.update(1);
+    DirectCpcSketch.writableWrap(WritableMemory.writableWrap(heap.toByteArray()));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void wrapWrongSeed() {
+    final WritableMemory wmem = WritableMemory.allocate(DirectCpcSketch.getUpdatableBytes(10));
+    new DirectCpcSketch(10, wmem).update(1);
+    DirectCpcSketch.writableWrap(wmem, 123, null);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void memoryTooSmall() {
+    new DirectCpcSketch(10, WritableMemory.allocate(64));
+  }
+
+}
@@ -365,6 +365,19 @@ public class MurmurHash3Test {
     Assert.assertEquals(result1[1], h2);
   }
 
+  @Test
+  public void checkHash64() {
+    final long[] keys = {0L, 1L, -1L, Long.MIN_VALUE, Long.MAX_VALUE, 0x0807060504030201L};
+    final long[] seeds = {0L, 9001L, -1L};
+    for (long seed : seeds) {
+      for (long key : keys) {
+        Assert.assertEquals(MurmurHash3.hash64(key, seed), hash(key, seed)[0]);
+        Assert.assertEquals(MurmurHash3.hash64(key, seed), hash(new long[] { key }, seed)[0]);
+        Assert.assertEquals(MurmurHash3.hash128(key, seed, new long[2]), hash(key, seed));
+      }
+    }
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.hll.TgtHllType.HLL_4;
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.testng.annotations.Test;
+
+public class ConcurrentHllSketchTest {
+
+  @Test
+  public void checkMatchesHllSketch() throws InterruptedException {
+    final int lgK = 12;
+    final int numThreads = 4;
+    final int perThread = 50_000;
+    final ConcurrentHllSketch sketch = new ConcurrentHllSketch(lgK);
+    final List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < numThreads; t++) {
+      final long base = (long) t * perThread;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < perThread; i++) {
+          sketch.update(base + i);
+          sketch.update((base + i) / 2); //overlaps the other threads
+        }
+      }));
+    }
+    for (final Thread thread : threads) { thread.start(); }
+    for (final Thread thread : threads) { thread.join(); }
+
+    final HllSketch expected = new HllSketch(lgK, HLL_8);
+    for (long i = 0; i < ((long) numThreads * perThread); i++) { expected.update(i); }
+    final HllSketch result = sketch.getResult();
+    assertEquals(((HllArray) result.hllSketchImpl).hllByteArr,
+        ((HllArray) expected.hllSketchImpl).hllByteArr);
+    assertTrue(result.isOutOfOrder());
+    //the KxQ sums are accumulated in a different order
+    final double est = expected.getCompositeEstimate();
+    assertEquals(result.getEstimate(), est, est * 1e-9);
+    assertEquals(sketch.getEstimate(), est, est * 1e-9);
+    assertEquals(sketch.getResult(HLL_4).getCompositeEstimate(), est, est * 1e-9);
+
+    final Union union = new Union(lgK);
+    union.update(expected);
+    union.update(result);
+    assertEquals(union.getCompositeEstimate(), est, est * 1e-9);
+  }
+
+  @Test
+  public void checkSmallCountsAndReset() {
+    final ConcurrentHllSketch sketch = new ConcurrentHllSketch(10);
+    assertTrue(sketch.getResult().isEmpty());
+    assertEquals(sketch.getEstimate(), 0.0);
+    final HllSketch expected = new HllSketch(10, HLL_8);
+    for (int i = 0; i < 100; i++) {
+      sketch.update(i);
+      sketch.update(Integer.toString(i));
+      expected.update(i);
+      expected.update(Integer.toString(i));
+    }
+    sketch.update((String) null);
+    sketch.update(new byte[0]);
+    assertEquals(sketch.getEstimate(), 200, 10);
+    assertTrue(sketch.getResult().getLowerBound(2) <= expected.getEstimate());
+
+    final ConcurrentHllSketch batch = new ConcurrentHllSketch(10);
+    final long[] items = new long[100];
+    for (int i = 0; i < items.length; i++) { items[i] = i; }
+    batch.updateBatch(items, 0, items.length);
+    final ConcurrentHllSketch single = new ConcurrentHllSketch(10);
+    for (int i = 0; i < items.length; i++) { single.update(items[i]); }
+    assertEquals(batch.getEstimate(), single.getEstimate());
+
+    sketch.reset();
+    assertTrue(sketch.getResult().isEmpty());
+    assertEquals(sketch.getLgConfigK(), 10);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkBadLgK() {
+    new ConcurrentHllSketch(3);
+  }
+}
@@ -19,6 +19,7 @@
 
 package org.apache.datasketches.hll;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.datasketches.hll.HllSketch.getMaxUpdatableSerializationBytes;
 import static org.apache.datasketches.hll.HllUtil.LG_AUX_ARR_INTS;
 import static org.apache.datasketches.hll.HllUtil.LG_INIT_LIST_SIZE;
@@ -437,6 +438,60 @@ public class HllSketchTest {
     sk2 = HllSketch.heapify(Memory.wrap(arr));
   }
 
+  @Test
+  public void checkUpdateBatch() {
+    final int lgK = 10;
+    final int n = 20_000; //through LIST, SET and HLL modes
+    final long[] longs = new long[n + 7];
+    final double[] doubles = new double[n + 7];
+    final byte[][] bytes = new byte[n + 7][];
+    for (int i = 0; i < longs.length; i++) {
+      longs[i] = i * 0x9E3779B97F4A7C15L;
+      doubles[i] = ((i % 100) == 0) ? -0.0 : ((i % 101) == 0) ? Double.NaN : i / 3.0;
+      bytes[i] = ((i % 50) == 0) ? null
+          : ((i % 51) == 0) ? new byte[0] : Long.toString(i).getBytes(UTF_8);
+    }
+    for (final TgtHllType type : TgtHllType.values()) {
+      for (final boolean direct : new boolean[] {false, true}) {
+        final HllSketch[] batch = new HllSketch[3];
+        final HllSketch[] single = new HllSketch[3];
+        for (int s = 0; s < 3; s++) {
+          final int bytesNeeded = getMaxUpdatableSerializationBytes(lgK, type);
+          //direct and heap images differ in the unused lgArr byte, so compare like with like
+          batch[s] = direct
+              ? new HllSketch(lgK, type, WritableMemory.allocate(bytesNeeded))
+              : new HllSketch(lgK, type);
+          single[s] = direct
+              ? new HllSketch(lgK, type, WritableMemory.allocate(bytesNeeded))
+              : new HllSketch(lgK, type);
+        }
+        batch[0].updateBatch(longs, 3, n);
+        batch[1].updateBatch(doubles, 3, n);
+        batch[2].updateBatch(bytes, 3, n);
+        for (int i = 3; i < (n + 3); i++) {
+          single[0].update(longs[i]);
+          single[1].update(doubles[i]);
+          single[2].update(bytes[i]);
+        }
+        for (int s = 0; s < 3; s++) {
+          assertEquals(batch[s].getCurMode(), CurMode.HLL);
+          assertEquals(batch[s].getEstimate(), single[s].getEstimate());
+          assertEquals(batch[s].getCompositeEstimate(), single[s].getCompositeEstimate());
+          assertEquals(batch[s].toCompactByteArray(), single[s].toCompactByteArray());
+        }
+      }
+    }
+    final HllSketch sk = new HllSketch(lgK);
+    sk.updateBatch(longs, 0, 0);
+    assertTrue(sk.isEmpty());
+    try {
+      sk.updateBatch(longs, n, 8);
+      fail();
+    } catch (final SketchesArgumentException e) {
+      //expected
+    }
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hll;
+
+import static org.apache.datasketches.common.Util.invPow2;
+import static org.apache.datasketches.hll.HllUtil.pair;
+import static org.apache.datasketches.hll.TgtHllType.HLL_4;
+import static org.apache.datasketches.hll.TgtHllType.HLL_8;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+public class RegisterMergeTest {
+
+  @Test
+  public void checkMergeMatchesSlotValues() {
+    final int[][] lgKs = { {4, 4}, {6, 4}, {12, 12}, {14, 11}, {10, 12} }; //{srcLgK, gadgetLgK}
+    for (final TgtHllType type : TgtHllType.values()) {
+      for (final int[] lgK : lgKs) {
+        for (int form = 0; form < 3; form++) { //heap, updatable image, compact image
+          checkMerge(type, lgK[0], lgK[1], form, false);
+          checkMerge(type, lgK[0], lgK[1], form, true);
+        }
+      }
+    }
+  }
+
+  private static void checkMerge(final TgtHllType type, final int srcLgK, final int gdtLgK,
+      final int form, final boolean directGadget) {
+    final HllSketch gdtSk = newHllModeSketch(gdtLgK, HLL_8, 0);
+    final HllSketch srcSk = newHllModeSketch(srcLgK, type, 1L << 40);
+    final Union union = directGadget
+        ? new Union(gdtLgK, WritableMemory.allocate(Union.getMaxSerializationBytes(gdtLgK)))
+        : new Union(gdtLgK);
+    union.update(gdtSk);
+    if (form == 0) {
+      union.update(srcSk);
+    } else {
+      final byte[] image = (form == 1) ? srcSk.toUpdatableByteArray() : srcSk.toCompactByteArray();
+      union.update(HllSketch.wrap(Memory.wrap(image)));
+    }
+
+    final int k = 1 << Math.min(srcLgK, gdtLgK);
+    final int[] expected = new int[k];
+    fold((AbstractHllArray) gdtSk.hllSketchImpl, expected);
+    fold((AbstractHllArray) srcSk.hllSketchImpl, expected);
+    final HllSketch result = union.getResult(HLL_8);
+    final AbstractHllArray resultArr = (AbstractHllArray) result.hllSketchImpl;
+    assertEquals(result.getLgConfigK(), Math.min(srcLgK, gdtLgK));
+    for (int j = 0; j < k; j++) { assertEquals(resultArr.getSlotValue(j), expected[j]); }
+
+    int numZeros = 0;
+    double kxq0 = k;
+    double kxq1 = 0;
+    for (int j = 0; j < k; j++) {
+      final int v = expected[j];
+      if (v > 0) {
+        kxq0 -= 1.0; //no longer a zero register
+        if (v < 32) { kxq0 += invPow2(v); }
+        else        { kxq1 += invPow2(v); }
+      } else {
+        numZeros++;
+      }
+    }
+    //kept by the merge, not rebuilt, so the sums are in a different order
+    assertFalse(union.isRebuildCurMinNumKxQFlag());
+    assertEquals(resultArr.getKxQ0(), kxq0, kxq0 * 1e-12);
+    assertEquals(resultArr.getKxQ1(), kxq1, 1e-12);
+    assertEquals(resultArr.getCurMin(), 0);
+    assertEquals(resultArr.getNumAtCurMin(), numZeros);
+
+    //The rebuild takes the 1.0 of each register of 32 or more from kxq1, which cancels to a few
+    //significant bits when every register is that large, as after the fold of {14, 11}.
+    if (kxq0 == 0.0) { return; }
+    final HllSketch rebuilt = result.copy();
+    RegisterMerge.rebuildCurMinNumKxQ((AbstractHllArray) rebuilt.hllSketchImpl);
+    assertEquals(result.getCompositeEstimate(), rebuilt.getCompositeEstimate(),
+        rebuilt.getCompositeEstimate() * 1e-12);
+    assertEquals(result.getLowerBound(1), rebuilt.getLowerBound(1),
+        rebuilt.getLowerBound(1) * 1e-12);
+  }
+
+  //A sketch in HLL mode with a high curMin and, for HLL_4, exceptions in the aux map.
+  private static HllSketch newHllModeSketch(final int lgK, final TgtHllType type,
+      final long offset) {
+    final HllSketch sk = new HllSketch(lgK, type);
+    final int n = 32 << lgK;
+    for (int i = 0; i < n; i++) { sk.update(offset + i); }
+    final int k = 1 << lgK;
+    for (int slot = 3; slot < k; slot += 5) { sk.couponUpdate(pair(slot, 40 + (slot % 20))); }
+    if (type == HLL_4) { assertNotNull(((AbstractHllArray) sk.hllSketchImpl).getAuxHashMap()); }
+    return sk;
+  }
+
+  private static void fold(final AbstractHllArray arr, final int[] regs) {
+    final int mask = regs.length - 1;
+    for (int i = 0; i < (1 << arr.getLgConfigK()); i++) {
+      regs[i & mask] = Math.max(regs[i & mask], arr.getSlotValue(i));
+    }
+  }
+
+  @Test
+  public void checkMax8() {
+    final long a = 0x3F00_0102_0304_0506L;
+    final long b = 0x0001_0201_0405_0607L;
+    assertEquals(RegisterMerge.max8(a, b), 0x3F01_0202_0405_0607L);
+    assertEquals(RegisterMerge.max8(b, a), 0x3F01_0202_0405_0607L);
+    assertEquals(RegisterMerge.max8(a, a), a);
+  }
+}
@@ -312,35 +312,36 @@ public class UnionCaseTest {
     Union u = buildHeapUnion(12, 1 << 9);
     HllSketch sk = buildHeapSketch(12, HLL_8, 1 << 9);
 
+    //the merge keeps curMin, numAtCurMin and the KxQ registers, so nothing is left to rebuild
     u.update(sk);
-    assertTrue(u.isRebuildCurMinNumKxQFlag());
+    assertFalse(u.isRebuildCurMinNumKxQFlag());
+    final double est = u.getCompositeEstimate();
+
+    //a flag set by an earlier version is still honored by the getters
+    u.putRebuildCurMinNumKxQFlag(true);
     u.getCompositeEstimate();
     assertFalse(u.isRebuildCurMinNumKxQFlag());
 
-    u.update(sk);
-    assertTrue(u.isRebuildCurMinNumKxQFlag());
+    u.putRebuildCurMinNumKxQFlag(true);
     u.getLowerBound(2);
     assertFalse(u.isRebuildCurMinNumKxQFlag());
 
-    u.update(sk);
-    assertTrue(u.isRebuildCurMinNumKxQFlag());
+    u.putRebuildCurMinNumKxQFlag(true);
     u.getUpperBound(2);
     assertFalse(u.isRebuildCurMinNumKxQFlag());
 
-    u.update(sk);
-    assertTrue(u.isRebuildCurMinNumKxQFlag());
+    u.putRebuildCurMinNumKxQFlag(true);
     u.getResult();
     assertFalse(u.isRebuildCurMinNumKxQFlag());
 
-    u.update(sk);
-    assertTrue(u.isRebuildCurMinNumKxQFlag());
+    u.putRebuildCurMinNumKxQFlag(true);
     byte[] ba = u.toCompactByteArray();
     assertFalse(u.isRebuildCurMinNumKxQFlag());
 
-    u.update(sk);
-    assertTrue(u.isRebuildCurMinNumKxQFlag());
+    u.putRebuildCurMinNumKxQFlag(true);
     ba = u.toUpdatableByteArray();
     assertFalse(u.isRebuildCurMinNumKxQFlag());
+    assertEquals(u.getCompositeEstimate(), est, est * 1e-12);
 
     u.putRebuildCurMinNumKxQFlag(true);
     assertTrue(u.isRebuildCurMinNumKxQFlag());
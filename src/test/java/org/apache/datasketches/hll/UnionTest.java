@@ -28,6 +28,10 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableMemory;
@@ -448,12 +452,13 @@ public class UnionTest {
     WritableMemory wmem = WritableMemory.allocate(bytes);
     Union union1 = new Union(lgK, wmem); //Create original union off-heap
     union1.update(sk1);
-    union1.update(sk2); //oooFlag = Rebuild_KxQ = TRUE
+    union1.update(sk2); //oooFlag = TRUE, KxQ kept by the merge
     assertTrue(!union1.toString().isEmpty());
     boolean rebuild = PreambleUtil.extractRebuildCurMinNumKxQFlag(wmem);
     double hipAccum = PreambleUtil.extractHipAccum(wmem);
-    assertTrue(rebuild);
+    assertFalse(rebuild);
     assertTrue(hipAccum == 0.0);
+    union1.putRebuildCurMinNumKxQFlag(true); //as left by a merge of an earlier version
     //Heapify byteArr as if it were a sketch, but it is actually a union!
     HllSketch sk3 = HllSketch.heapify(wmem); //rebuilds sk3
     rebuild = sk3.hllSketchImpl.isRebuildCurMinNumKxQFlag();
@@ -474,9 +479,9 @@ public class UnionTest {
    }
    boolean rebuild = PreambleUtil.extractRebuildCurMinNumKxQFlag(wmem);
    double hipAccum = PreambleUtil.extractHipAccum(wmem);
-   assertTrue(rebuild);
+   assertFalse(rebuild); //KxQ kept by the merge
    assertTrue(hipAccum == 0.0);
-   HllSketch result = Union.writableWrap(wmem).getResult(); //rebuilds result
+   HllSketch result = Union.writableWrap(wmem).getResult();
    rebuild = result.hllSketchImpl.isRebuildCurMinNumKxQFlag();
    assertFalse(rebuild);
    double est = result.getEstimate();
@@ -503,6 +508,58 @@ public class UnionTest {
     return est / (1.0 + re);
   }
 
+  @Test
+  public void checkUpdateAllMatchesSequential() {
+    final int lgMaxK = 18; //larger than one merge chunk, so register merges are split
+    final TgtHllType[] types = {HLL_4, HLL_6, HLL_8};
+    final List<HllSketch> sketches = new ArrayList<>();
+    final List<Memory> images = new ArrayList<>();
+    for (int s = 0; s < 40; s++) {
+      final int lgK = ((s % 7) == 6) ? 16 : lgMaxK + (s % 2); //some larger, some smaller
+      final HllSketch sk = new HllSketch(lgK, types[s % 3]);
+      final int n = ((s % 5) == 4) ? 10 : 1 << 16; //some still in LIST mode
+      for (int i = 0; i < n; i++) { sk.update(((long) s << 32) + i); }
+      sketches.add(sk);
+      images.add(Memory.wrap(((s % 2) == 0) ? sk.toCompactByteArray() : sk.toUpdatableByteArray()));
+    }
+    sketches.add(null);
+    sketches.add(new HllSketch(lgMaxK));
+
+    final Union sequential = new Union(lgMaxK);
+    for (final HllSketch sk : sketches) { sequential.update(sk); }
+    final Union parallel = new Union(lgMaxK);
+    parallel.updateAll(sketches, ForkJoinPool.commonPool());
+    checkSameRegisters(parallel, sequential);
+
+    final Union fromImages = new Union(lgMaxK, WritableMemory.allocate(Union.getMaxSerializationBytes(lgMaxK)));
+    fromImages.updateAllMemory(images, new ForkJoinPool(3));
+    checkSameRegisters(fromImages, sequential);
+
+    //all in LIST or SET mode
+    final List<HllSketch> small = new ArrayList<>();
+    final Union smallSequential = new Union(lgMaxK);
+    for (int s = 0; s < 20; s++) {
+      final HllSketch sk = new HllSketch(lgMaxK, HLL_8);
+      for (int i = 0; i < 50; i++) { sk.update((s * 20) + i); }
+      small.add(sk);
+      smallSequential.update(sk);
+    }
+    final Union smallParallel = new Union(lgMaxK);
+    smallParallel.updateAll(small, ForkJoinPool.commonPool());
+    assertEquals(smallParallel.getCurMode(), smallSequential.getCurMode());
+    assertEquals(smallParallel.getCompositeEstimate(), smallSequential.getCompositeEstimate());
+  }
+
+  private static void checkSameRegisters(final Union union, final Union expected) {
+    final HllSketch result = union.getResult(HLL_8);
+    final HllSketch expectedResult = expected.getResult(HLL_8);
+    assertEquals(result.getLgConfigK(), expectedResult.getLgConfigK());
+    assertEquals(result.getCurMode(), CurMode.HLL);
+    assertEquals(((Hll8Array) result.hllSketchImpl).hllByteArr,
+        ((Hll8Array) expectedResult.hllSketchImpl).hllByteArr);
+    assertEquals(union.getCompositeEstimate(), expected.getCompositeEstimate());
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
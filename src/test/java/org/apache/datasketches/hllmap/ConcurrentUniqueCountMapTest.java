@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.hllmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.common.Util;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ConcurrentUniqueCountMapTest {
+  private static final int NUM_KEYS = 400;
+
+  @Test
+  public void matchesUniqueCountMap() throws InterruptedException {
+    final int numThreads = 4;
+    final ConcurrentUniqueCountMap map = new ConcurrentUniqueCountMap(1000, 4, 16);
+    Assert.assertEquals(map.getNumShards(), 16);
+    final List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < numThreads; t++) {
+      final int thread = t;
+      threads.add(new Thread(() -> {
+        //each thread owns the keys k with k % numThreads == thread, and reads all keys
+        final byte[] id = new byte[4];
+        for (int k = thread; k < NUM_KEYS; k += numThreads) {
+          final byte[] key = Util.intToBytes(k, new byte[4]);
+          for (int i = 0; i < numIds(k); i++) {
+            map.update(key, Util.intToBytes(i, id));
+            map.getEstimate(Util.intToBytes(i % NUM_KEYS, new byte[4]));
+          }
+        }
+      }));
+    }
+    for (final Thread thread : threads) { thread.start(); }
+    for (final Thread thread : threads) { thread.join(); }
+
+    //the estimate of a key depends only on its own identifiers and their order
+    final UniqueCountMap expected = new UniqueCountMap(1000, 4);
+    final byte[] id = new byte[4];
+    for (int k = 0; k < NUM_KEYS; k++) {
+      final byte[] key = Util.intToBytes(k, new byte[4]);
+      for (int i = 0; i < numIds(k); i++) { expected.update(key, Util.intToBytes(i, id)); }
+    }
+    Assert.assertEquals(map.getActiveEntries(), expected.getActiveEntries());
+    for (int k = 0; k < NUM_KEYS; k++) {
+      final byte[] key = Util.intToBytes(k, new byte[4]);
+      Assert.assertEquals(map.getEstimate(key), expected.getEstimate(key));
+      Assert.assertEquals(map.getUpperBound(key), expected.getUpperBound(key));
+      Assert.assertEquals(map.getLowerBound(key), expected.getLowerBound(key));
+    }
+    Assert.assertTrue(map.getMemoryUsageBytes() > 0);
+  }
+
+  @Test
+  public void nullKey() {
+    final ConcurrentUniqueCountMap map = new ConcurrentUniqueCountMap(1000, 4, 1);
+    Assert.assertEquals(map.getNumShards(), 1);
+    Assert.assertTrue(Double.isNaN(map.update(null, null)));
+    Assert.assertTrue(Double.isNaN(map.getEstimate(null)));
+    Assert.assertTrue(Double.isNaN(map.getUpperBound(null)));
+    Assert.assertTrue(Double.isNaN(map.getLowerBound(null)));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void wrongSizeKey() {
+    new ConcurrentUniqueCountMap(1000, 4, 4).update(new byte[8], new byte[4]);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void badNumShards() {
+    new ConcurrentUniqueCountMap(1000, 4, 0);
+  }
+
+  //Skewed numbers of identifiers per key, so that keys are promoted through all levels.
+  private static int numIds(final int k) {
+    return (k % 10 == 0) ? 40 * k : k % 9;
+  }
+
+}
@@ -22,10 +22,20 @@ package org.apache.datasketches.hllmap;
 import static org.apache.datasketches.hash.MurmurHash3.hash;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.io.File;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.testng.Assert;
 import org.testng.annotations.Test;
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.common.Util;
+import org.apache.datasketches.memory.DefaultMemoryRequestServer;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMapHandle;
+import org.apache.datasketches.memory.WritableMemory;
 
 public class UniqueCountMapTest {
   private final static int INIT_ENTRIES = 211;
@@ -180,6 +190,236 @@ public class UniqueCountMapTest {
     //println(map.toString());
   }
 
+  @Test
+  public void directMatchesHeapAndWraps() {
+    WritableMemory wmem = WritableMemory.allocate(8 << 20);
+    UniqueCountMap heapMap = new UniqueCountMap(INIT_ENTRIES, 4);
+    UniqueCountMap directMap = new UniqueCountMap(INIT_ENTRIES, 4, wmem, null);
+    Assert.assertFalse(heapMap.hasMemory());
+    Assert.assertTrue(directMap.hasMemory());
+    updateBoth(heapMap, directMap, 0);
+    Assert.assertTrue(directMap.getMemory() == wmem); //did not grow
+    Assert.assertNotNull(directMap.getHllMap());
+
+    //reopen from the memory alone
+    UniqueCountMap wrapped = UniqueCountMap.writableWrap(wmem);
+    checkSame(heapMap, wrapped);
+    Assert.assertEquals(wrapped.getActiveMaps(), heapMap.getActiveMaps());
+    updateBoth(heapMap, wrapped, 1000);
+  }
+
+  @Test
+  public void directGrows() {
+    WritableMemory wmem = WritableMemory.allocate(1024);
+    UniqueCountMap heapMap = new UniqueCountMap(INIT_ENTRIES, 4);
+    UniqueCountMap directMap =
+        new UniqueCountMap(INIT_ENTRIES, 4, wmem, new DefaultMemoryRequestServer());
+    updateBoth(heapMap, directMap, 0);
+    Assert.assertTrue(directMap.getMemory().getCapacity() > wmem.getCapacity());
+    Assert.assertTrue(directMap.getMemory().getCapacity() >= directMap.getMemoryUsageBytes());
+  }
+
+  @Test
+  public void directWithoutServerDoesNotGrow() {
+    WritableMemory wmem = WritableMemory.allocate(1 << 16);
+    UniqueCountMap directMap = new UniqueCountMap(INIT_ENTRIES, 4, wmem, null);
+    try {
+      byte[] id = new byte[4];
+      for (int i = 0; i < 100000; i++) { directMap.update(Util.intToBytes(i, new byte[4]), id); }
+      Assert.fail();
+    } catch (SketchesArgumentException e) {
+      //denied rather than moved to a memory the caller did not ask for
+    }
+    Assert.assertTrue(directMap.getMemory() == wmem);
+  }
+
+  @Test
+  public void mappedMapDoesNotGrow() throws Exception {
+    File file = File.createTempFile("ucm", ".bin");
+    file.deleteOnExit();
+    try (WritableMapHandle handle =
+        WritableMemory.writableMap(file, 0, 1 << 16, ByteOrder.nativeOrder())) {
+      WritableMemory wmem = handle.getWritable();
+      UniqueCountMap directMap = new UniqueCountMap(INIT_ENTRIES, 4, wmem, null);
+      try {
+        byte[] id = new byte[4];
+        for (int i = 0; i < 100000; i++) {
+          directMap.update(Util.intToBytes(i, new byte[4]), id);
+        }
+        Assert.fail();
+      } catch (SketchesArgumentException e) {
+        //a mapped map is never moved to the heap
+      }
+      Assert.assertTrue(directMap.getMemory() == wmem);
+      Assert.assertTrue(UniqueCountMap.writableWrap(wmem).getMemory() == wmem);
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void wrapBadMemory() {
+    UniqueCountMap.writableWrap(WritableMemory.allocate(1024));
+  }
+
+  @Test
+  public void serializeHeapifyAndWrap() {
+    UniqueCountMap heapMap = new UniqueCountMap(INIT_ENTRIES, 4);
+    UniqueCountMap directMap =
+        new UniqueCountMap(INIT_ENTRIES, 4, WritableMemory.allocate(1024),
+            new DefaultMemoryRequestServer());
+    updateBoth(heapMap, directMap, 0);
+
+    for (UniqueCountMap map : new UniqueCountMap[] {heapMap, directMap}) {
+      byte[] bytes = map.toByteArray();
+      UniqueCountMap heapified = UniqueCountMap.heapify(Memory.wrap(bytes));
+      Assert.assertFalse(heapified.hasMemory());
+      Assert.assertEquals(heapified.getActiveMaps(), heapMap.getActiveMaps());
+      checkSame(heapMap, heapified);
+      UniqueCountMap wrapped = UniqueCountMap.writableWrap(WritableMemory.writableWrap(bytes));
+      checkSame(heapMap, wrapped);
+    }
+    UniqueCountMap heapified = UniqueCountMap.heapify(Memory.wrap(heapMap.toByteArray()));
+    updateBoth(heapMap, heapified, 1000);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void heapifyBadMemory() {
+    UniqueCountMap.heapify(Memory.wrap(new byte[1024]));
+  }
+
+  @Test
+  public void iterator() {
+    UniqueCountMap map = new UniqueCountMap(INIT_ENTRIES, 4);
+    updateBoth(map, new UniqueCountMap(INIT_ENTRIES, 4), 0);
+    UniqueCountMapIterator it = map.iterator();
+    int count = 0;
+    while (it.next()) {
+      count++;
+      Assert.assertEquals(it.getEstimate(), map.getEstimate(it.getKey()));
+      Assert.assertTrue(it.getEstimate() > 0);
+    }
+    Assert.assertEquals(count, map.getActiveEntries());
+    Assert.assertFalse(it.next());
+    Assert.assertFalse(new UniqueCountMap(INIT_ENTRIES, 4).iterator().next());
+  }
+
+  @Test
+  public void mergeOverlapping() {
+    UniqueCountMap map1 = new UniqueCountMap(INIT_ENTRIES, 4);
+    UniqueCountMap map2 = new UniqueCountMap(INIT_ENTRIES, 4);
+    byte[] id = new byte[4];
+    for (int k = 0; k < 400; k++) {
+      byte[] key = Util.intToBytes(k, new byte[4]);
+      int numIds = (k % 10 == 0) ? 40 * k : k % 9;
+      for (int i = 0; i < numIds; i++) {
+        map1.update(key, Util.intToBytes(i, id));
+        map2.update(key, Util.intToBytes((numIds / 2) + i, id));
+      }
+    }
+    map1.merge(map2);
+    int numKeys = 0;
+    for (int k = 0; k < 400; k++) {
+      byte[] key = Util.intToBytes(k, new byte[4]);
+      int numIds = (k % 10 == 0) ? 40 * k : k % 9;
+      if (numIds == 0) {
+        Assert.assertEquals(map1.getEstimate(key), 0.0);
+        continue;
+      }
+      numKeys++;
+      double union = numIds + (numIds / 2);
+      Assert.assertEquals(map1.getEstimate(key), union, union * 0.15);
+    }
+    Assert.assertEquals(map1.getActiveEntries(), numKeys);
+  }
+
+  @Test
+  public void mergeDisjointKeys() {
+    UniqueCountMap map1 = new UniqueCountMap(INIT_ENTRIES, 4);
+    UniqueCountMap map2 = new UniqueCountMap(INIT_ENTRIES, 4);
+    UniqueCountMap all = new UniqueCountMap(INIT_ENTRIES, 4);
+    byte[] id = new byte[4];
+    for (int k = 0; k < 400; k++) {
+      byte[] key = Util.intToBytes(k, new byte[4]);
+      int numIds = (k % 10 == 0) ? 40 * k : k % 9;
+      for (int i = 0; i < numIds; i++) {
+        id = Util.intToBytes(i, id);
+        (((k / 10) % 2 == 0) ? map1 : map2).update(key, id);
+        all.update(key, id);
+      }
+    }
+    map1.merge(map2);
+    Assert.assertEquals(map1.getActiveEntries(), all.getActiveEntries());
+    for (int k = 0; k < 400; k++) {
+      byte[] key = Util.intToBytes(k, new byte[4]);
+      double est = all.getEstimate(key);
+      Assert.assertEquals(map1.getEstimate(key), est, est * 0.15);
+    }
+  }
+
+  @Test
+  public void topKAndKeysAbove() {
+    UniqueCountMap map = new UniqueCountMap(INIT_ENTRIES, 4);
+    updateBoth(map, new UniqueCountMap(INIT_ENTRIES, 4), 0);
+    List<Double> all = new ArrayList<>();
+    UniqueCountMapIterator it = map.iterator();
+    while (it.next()) { all.add(it.getEstimate()); }
+    Collections.sort(all, Collections.reverseOrder());
+
+    for (int k : new int[] {1, 5, 40, 100, 1000}) {
+      UniqueCountMap.Row[] rows = map.getTopK(k);
+      Assert.assertEquals(rows.length, Math.min(k, all.size()));
+      for (int i = 0; i < rows.length; i++) {
+        Assert.assertEquals(rows[i].getEstimate(), all.get(i).doubleValue());
+        Assert.assertEquals(map.getEstimate(rows[i].getKey()), rows[i].getEstimate());
+      }
+    }
+    for (double threshold : new double[] {-1, 0, 1, 3, 8, 50, 1000, 1e6}) {
+      UniqueCountMap.Row[] rows = map.getKeysAbove(threshold);
+      int count = 0;
+      for (double est : all) { if (est > threshold) { count++; } }
+      Assert.assertEquals(rows.length, count);
+      for (int i = 0; i < rows.length; i++) {
+        Assert.assertEquals(rows[i].getEstimate(), all.get(i).doubleValue());
+        Assert.assertEquals(map.getEstimate(rows[i].getKey()), rows[i].getEstimate());
+      }
+    }
+    Assert.assertEquals(new UniqueCountMap(INIT_ENTRIES, 4).getTopK(10).length, 0);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void topKBadK() {
+    new UniqueCountMap(INIT_ENTRIES, 4).getTopK(0);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void mergeWrongKeySize() {
+    new UniqueCountMap(INIT_ENTRIES, 4).merge(new UniqueCountMap(INIT_ENTRIES, 8));
+  }
+
+  //Skewed numbers of identifiers per key, so that keys are promoted through all levels.
+  private static void updateBoth(final UniqueCountMap map1, final UniqueCountMap map2,
+      final int idOffset) {
+    byte[] id = new byte[4];
+    for (int k = 0; k < 400; k++) {
+      byte[] key = Util.intToBytes(k, new byte[4]);
+      int numIds = (k % 10 == 0) ? 40 * k : k % 9;
+      for (int i = 0; i < numIds; i++) {
+        id = Util.intToBytes(idOffset + i, id);
+        Assert.assertEquals(map2.update(key, id), map1.update(key, id));
+      }
+    }
+    checkSame(map1, map2);
+  }
+
+  private static void checkSame(final UniqueCountMap map1, final UniqueCountMap map2) {
+    Assert.assertEquals(map2.getActiveEntries(), map1.getActiveEntries());
+    for (int k = 0; k < 400; k++) {
+      byte[] key = Util.intToBytes(k, new byte[4]);
+      Assert.assertEquals(map2.getEstimate(key), map1.getEstimate(key));
+      Assert.assertEquals(map2.getUpperBound(key), map1.getUpperBound(key));
+      Assert.assertEquals(map2.getLowerBound(key), map1.getLowerBound(key));
+    }
+  }
+
 
 
   @Test
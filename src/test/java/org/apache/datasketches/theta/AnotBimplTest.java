@@ -24,8 +24,11 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.util.Arrays;
+
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableMemory;
 import org.apache.datasketches.thetacommon.ThetaUtil;
 import org.testng.annotations.Test;
@@ -318,6 +321,43 @@ public class AnotBimplTest {
     assertEquals(bytes, 16 * 15 + 24);
   }
 
+  @Test
+  public void checkOrderedCompactMerge() {
+    final UpdateSketch usk1 = UpdateSketch.builder().setNominalEntries(1 << 9).build();
+    final UpdateSketch usk2 = UpdateSketch.builder().setNominalEntries(1 << 14).build();
+    for (int i = 0; i < 20_000; i++) { usk1.update(i); } //estimating, small
+    for (int i = 10_000; i < 60_000; i++) { usk2.update(i); } //estimating, much larger: gallops
+
+    final AnotB aNotB = SetOperation.builder().buildANotB();
+    //unordered inputs use the hash table path
+    final CompactSketch expAB = aNotB.aNotB(usk1.compact(false, null), usk2.compact(false, null));
+    final CompactSketch expBA = aNotB.aNotB(usk2.compact(false, null), usk1.compact(false, null));
+    assertTrue(expAB.getRetainedEntries() > 0);
+    assertTrue(expBA.getRetainedEntries() > 0);
+
+    final CompactSketch csk1 = usk1.compact(true, null);
+    final CompactSketch csk2 = usk2.compact(true, null);
+    final CompactSketch dsk1 = CompactSketch.wrap(Memory.wrap(csk1.toByteArray()));
+    final CompactSketch dsk2 = CompactSketch.wrap(Memory.wrap(csk2.toByteArrayCompressed()));
+    checkSameResult(aNotB.aNotB(csk1, csk2), expAB);
+    checkSameResult(aNotB.aNotB(csk2, csk1), expBA);
+    checkSameResult(aNotB.aNotB(dsk1, dsk2), expAB);
+    checkSameResult(aNotB.aNotB(dsk2, csk1, false, null), expBA);
+    final WritableMemory wmem = WritableMemory.allocate(expAB.getCurrentBytes());
+    checkSameResult(aNotB.aNotB(dsk1, csk2, true, wmem), expAB);
+  }
+
+  private static void checkSameResult(final CompactSketch result, final CompactSketch expected) {
+    assertEquals(result.getThetaLong(), expected.getThetaLong());
+    assertEquals(result.getRetainedEntries(), expected.getRetainedEntries());
+    assertEquals(result.isEmpty(), expected.isEmpty());
+    final long[] resultArr = result.getCache().clone();
+    final long[] expectedArr = expected.getCache().clone();
+    Arrays.sort(resultArr);
+    Arrays.sort(expectedArr);
+    assertEquals(resultArr, expectedArr);
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
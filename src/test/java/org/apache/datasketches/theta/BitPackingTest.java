@@ -22,6 +22,7 @@ package org.apache.datasketches.theta;
 import static org.testng.Assert.assertEquals;
 
 import org.apache.datasketches.common.Util;
+import org.apache.datasketches.memory.WritableMemory;
 import org.testng.annotations.Test;
 
 public class BitPackingTest {
@@ -89,6 +90,34 @@ public class BitPackingTest {
     }
   }
 
+  @Test
+  public void packUnpackBlocks64() {
+    for (int bits = 1; bits <= 63; bits++) {
+      final long mask = (1L << bits) - 1;
+      long[] input = new long[64];
+      final long golden64 = Util.INVERSE_GOLDEN_U64;
+      long value = 0xaa55aa55aa55aa55L; // arbitrary starting value
+      for (int i = 0; i < 64; ++i) {
+        input[i] = value & mask;
+        value += golden64;
+      }
+      //a block of 64 has the same layout as 8 consecutive blocks of 8
+      byte[] bytes8 = new byte[3 + (8 * bits)];
+      for (int i = 0; i < 8; i++) {
+        BitPacking.packBitsBlock8(input, i * 8, bytes8, 3 + (i * bits), bits);
+      }
+      byte[] bytes64 = new byte[3 + (8 * bits)];
+      BitPacking.packBitsBlock64(input, 0, WritableMemory.writableWrap(bytes64), 3, bits);
+      assertEquals(bytes64, bytes8);
+
+      long[] output = new long[65];
+      BitPacking.unpackBitsBlock64(output, 1, WritableMemory.writableWrap(bytes8), 3, bits);
+      for (int i = 0; i < 64; ++i) {
+        assertEquals(output[i + 1], input[i]);
+      }
+    }
+  }
+
   void hexDump(byte[] bytes) {
     for (int i = 0; i < bytes.length; i++) {
       System.out.print(String.format("%02x ", bytes[i]));
@@ -586,6 +586,58 @@ public class CompactSketchTest {
     }
   }
 
+  @Test
+  public void checkWrapCompressedStreamsIntoSetOperations() {
+    //covers whole blocks of 8 entries, a partial tail, and exact and estimation modes
+    for (int n : new int[] {2, 7, 8, 9, 100, 1000, 10000}) {
+      UpdateSketch skA = Sketches.updateSketchBuilder().setNominalEntries(1024).build();
+      UpdateSketch skB = Sketches.updateSketchBuilder().setNominalEntries(1024).build();
+      for (int i = 0; i < n; i++) {
+        skA.update(i);
+        skB.update(i + (n / 2));
+      }
+      CompactSketch csA = skA.compact();
+      CompactSketch csB = skB.compact();
+      CompactSketch wrapA = CompactSketch.wrap(Memory.wrap(csA.toByteArrayCompressed()));
+      CompactSketch wrapB = CompactSketch.wrap(Memory.wrap(csB.toByteArrayCompressed()));
+      assertTrue(wrapA instanceof DirectCompactCompressedSketch);
+      assertEquals(wrapA.getRetainedEntries(), csA.getRetainedEntries());
+      assertEquals(wrapA.getThetaLong(), csA.getThetaLong());
+      assertEquals(wrapA.getEstimate(), csA.getEstimate());
+      assertEquals(wrapA.toByteArray(), csA.toByteArray());
+      assertEquals(wrapA.getCompactBytes(), csA.getCompactBytes());
+      assertEquals(wrapA.getCurrentBytes(), csA.toByteArrayCompressed().length);
+      assertEquals(wrapA.toByteArrayCompressed(), csA.toByteArrayCompressed());
+      HashIterator it1 = csA.iterator();
+      HashIterator it2 = wrapA.iterator();
+      while (it1.next()) {
+        assertTrue(it2.next());
+        assertEquals(it2.get(), it1.get());
+      }
+      assertFalse(it2.next());
+
+      Union union = Sketches.setOperationBuilder().setNominalEntries(1024).buildUnion();
+      union.union(csA);
+      union.union(csB);
+      CompactSketch expected = union.getResult();
+      union.reset();
+      union.union(Memory.wrap(csA.toByteArrayCompressed()));
+      union.union(wrapB);
+      assertEquals(union.getResult().toByteArray(), expected.toByteArray());
+
+      Intersection inter = Sketches.setOperationBuilder().buildIntersection();
+      CompactSketch expectedInter = inter.intersect(csA, csB);
+      assertEquals(inter.intersect(wrapA, wrapB).toByteArray(), expectedInter.toByteArray());
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkWrapCompressedSeedConflict() {
+    UpdateSketch sk = Sketches.updateSketchBuilder().build();
+    for (int i = 0; i < 100; i++) { sk.update(i); }
+    CompactSketch.wrap(Memory.wrap(sk.compact().toByteArrayCompressed()), 123);
+  }
+
   private static class State {
     String classType = null;
     int count = 0;
@@ -623,6 +675,21 @@ public class CompactSketchTest {
     }
   }
 
+  @Test
+  public void checkUnorderedCompactMemoryToOrdered() {
+    UpdateSketch sk = Sketches.updateSketchBuilder().setNominalEntries(512).build();
+    for (int i = 0; i < 10000; i++) { sk.update(i); }
+    Memory mem = Memory.wrap(sk.compact(false, null).toByteArray());
+    CompactSketch csk = CompactSketch.wrap(mem);
+    assertFalse(csk.isOrdered());
+    CompactSketch ordered = csk.compact(true, null);
+    assertTrue(ordered.isOrdered());
+    long[] cache = ordered.getCache();
+    for (int i = 1; i < cache.length; i++) { assertTrue(cache[i - 1] < cache[i]); }
+    assertEquals(ordered.getEstimate(), sk.getEstimate());
+    assertEquals(ordered.toByteArray(), sk.compact(true, null).toByteArray());
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
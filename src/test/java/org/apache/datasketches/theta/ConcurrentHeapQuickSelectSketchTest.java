@@ -28,9 +28,12 @@ import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.common.SketchesStateException;
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableMemory;
 import org.apache.datasketches.thetacommon.ThetaUtil;
@@ -91,6 +94,31 @@ public class ConcurrentHeapQuickSelectSketchTest {
     assertTrue(shared.getRetainedEntries(true) <= u);
   }
 
+  @Test
+  public void checkUpdateBatch() {
+    int lgK = 9;
+    int k = 1 << lgK;
+    int u = k;
+    SharedLocal sl = new SharedLocal(lgK);
+    UpdateSketch shared = sl.shared;
+    UpdateSketch local = sl.local;
+    long[] items = new long[u];
+    for (int i = 0; i < u; i++) { items[i] = i; }
+
+    local.updateBatch(items, 0, u);
+    waitForBgPropagationToComplete(shared);
+
+    assertFalse(local.isEmpty());
+    assertEquals(local.getEstimate(), u, 0.0);
+    assertEquals(shared.getRetainedEntries(false), u);
+  }
+
+  @Test(expectedExceptions = UnsupportedOperationException.class)
+  public void checkUpdateBatchOnSharedThrows() {
+    SharedLocal sl = new SharedLocal(9);
+    sl.shared.updateBatch(new long[] { 1L, 2L }, 0, 2);
+  }
+
   @Test(expectedExceptions = SketchesArgumentException.class)
   public void checkIllegalSketchID_UpdateSketch() {
     int lgK = 9;
@@ -662,6 +690,58 @@ public class ConcurrentHeapQuickSelectSketchTest {
     sl.local.toByteArray();
   }
 
+  @Test
+  public void checkPropagationExecutor() {
+    int lgK = 12;
+    int u = 8 * (1 << lgK);
+    ExecutorService exec = Executors.newFixedThreadPool(2);
+    try {
+      UpdateSketchBuilder bldr = new UpdateSketchBuilder().setLogNominalEntries(lgK)
+          .setLocalLogNominalEntries(4).setPropagationExecutor(exec);
+      assertTrue(bldr.getPropagationExecutor() == exec);
+      UpdateSketch shared = bldr.buildShared();
+      UpdateSketch local = bldr.buildLocal(shared);
+      ConcurrentThetaSketch cts = (ConcurrentThetaSketch) shared;
+      for (int i = 0; i < u; i++) { local.update(i); }
+      cts.awaitPropagation();
+      assertTrue(shared.isEstimationMode());
+      assertEquals(shared.getEstimate(), u, u * 0.1);
+      cts.close();
+      assertTrue(cts.isClosed());
+      assertFalse(exec.isShutdown()); //the caller owns the executor
+      assertEquals(shared.getEstimate(), u, u * 0.1);
+    } finally {
+      exec.shutdown();
+    }
+  }
+
+  @Test
+  public void checkCloseKeepsSharedPool() {
+    int lgK = 12;
+    int u = 8 * (1 << lgK);
+    UpdateSketchBuilder bldr = new UpdateSketchBuilder().setLogNominalEntries(lgK)
+        .setLocalLogNominalEntries(4);
+    UpdateSketch shared1 = bldr.buildShared();
+    UpdateSketch shared2 = bldr.buildShared(); //same pool executor as shared1
+    UpdateSketch local2 = bldr.buildLocal(shared2);
+    ((ConcurrentThetaSketch) shared1).close();
+    for (int i = 0; i < u; i++) { local2.update(i); }
+    ((ConcurrentThetaSketch) shared2).awaitPropagation();
+    assertEquals(shared2.getEstimate(), u, u * 0.1);
+    ((ConcurrentThetaSketch) shared2).close();
+  }
+
+  @Test(expectedExceptions = SketchesStateException.class)
+  public void checkPropagateAfterClose() {
+    UpdateSketchBuilder bldr = new UpdateSketchBuilder().setLogNominalEntries(4)
+        .setLocalLogNominalEntries(4);
+    UpdateSketch shared = bldr.buildShared();
+    UpdateSketch local = bldr.buildLocal(shared);
+    ((ConcurrentThetaSketch) shared).close();
+    ((ConcurrentThetaSketch) shared).close(); //idempotent
+    local.update(1);
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
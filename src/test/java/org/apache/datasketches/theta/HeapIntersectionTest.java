@@ -27,6 +27,8 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.util.Arrays;
+
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.common.SketchesStateException;
@@ -518,6 +520,42 @@ public class HeapIntersectionTest {
     assertEquals(csk.getCompactBytes(), 8);
   }
 
+  @Test
+  public void checkOrderedCompactMerge() {
+    final UpdateSketch usk1 = UpdateSketch.builder().setNominalEntries(1 << 9).build();
+    final UpdateSketch usk2 = UpdateSketch.builder().setNominalEntries(1 << 14).build();
+    for (int i = 0; i < 20_000; i++) { usk1.update(i); } //estimating, small
+    for (int i = 10_000; i < 60_000; i++) { usk2.update(i); } //estimating, much larger: gallops
+
+    final Intersection inter = SetOperation.builder().buildIntersection();
+    //unordered inputs use the hash table path
+    final CompactSketch expected =
+        inter.intersect(usk1.compact(false, null), usk2.compact(false, null));
+    assertTrue(expected.getRetainedEntries() > 0);
+
+    final CompactSketch csk1 = usk1.compact(true, null);
+    final CompactSketch csk2 = usk2.compact(true, null);
+    final CompactSketch dsk1 = CompactSketch.wrap(Memory.wrap(csk1.toByteArray()));
+    final CompactSketch dsk2 = CompactSketch.wrap(Memory.wrap(csk2.toByteArrayCompressed()));
+    checkSameResult(inter.intersect(csk1, csk2), expected);
+    checkSameResult(inter.intersect(csk2, csk1), expected);
+    checkSameResult(inter.intersect(dsk1, dsk2), expected);
+    checkSameResult(inter.intersect(csk1, dsk2, false, null), expected);
+    final WritableMemory wmem = WritableMemory.allocate(expected.getCurrentBytes());
+    checkSameResult(inter.intersect(dsk1, csk2, true, wmem), expected);
+  }
+
+  private static void checkSameResult(final CompactSketch result, final CompactSketch expected) {
+    assertEquals(result.getThetaLong(), expected.getThetaLong());
+    assertEquals(result.getRetainedEntries(), expected.getRetainedEntries());
+    assertEquals(result.isEmpty(), expected.isEmpty());
+    final long[] resultArr = result.getCache().clone();
+    final long[] expectedArr = expected.getCache().clone();
+    Arrays.sort(resultArr);
+    Arrays.sort(expectedArr);
+    assertEquals(resultArr, expectedArr);
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
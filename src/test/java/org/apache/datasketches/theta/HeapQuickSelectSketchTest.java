@@ -19,6 +19,7 @@
 
 package org.apache.datasketches.theta;
 
+import static org.apache.datasketches.common.Family.ALPHA;
 import static org.apache.datasketches.common.Family.QUICKSELECT;
 import static org.apache.datasketches.common.ResizeFactor.X1;
 import static org.apache.datasketches.common.ResizeFactor.X2;
@@ -33,6 +34,7 @@ import static org.apache.datasketches.theta.PreambleUtil.insertLgResizeFactor;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -625,6 +627,154 @@ public class HeapQuickSelectSketchTest {
     }
   }
 
+  @Test
+  public void checkIncrementalRebuildRetainsAllHashesBelowTheta() {
+    final int k = 512;
+    final int n = 20 * k;
+    for (final ResizeFactor rf : new ResizeFactor[] {X1, X2, X8}) {
+      final UpdateSketch inc = UpdateSketch.builder().setNominalEntries(k).setResizeFactor(rf)
+          .setIncrementalRebuild(true).build();
+      final UpdateSketch exact = UpdateSketch.builder().setNominalEntries(4 * n).build();
+      int rebuilds = 0;
+      for (int i = 0; i < n; i++) {
+        exact.update(i);
+        final UpdateReturnState state = inc.update(i);
+        assertTrue(inc.update(i) != UpdateReturnState.InsertedCountIncremented);
+        if (state == UpdateReturnState.InsertedCountIncrementedRebuilt) { rebuilds++; }
+        if (state == UpdateReturnState.InsertedCountIncrementedRebuilt
+            || state == UpdateReturnState.InsertedCountIncrementedResized || (i % 1000) == 0) {
+          //mid-migration, every read sees every retained hash
+          final long[] expected = belowTheta(exact, inc.getThetaLong());
+          assertEquals(inc.compact().getCache(), expected);
+          assertEquals(inc.getRetainedEntries(true), expected.length);
+          int count = 0;
+          final HashIterator it = inc.iterator();
+          while (it.next()) { count++; }
+          assertEquals(count, expected.length);
+          final UpdateSketch heapified = UpdateSketch.heapify(Memory.wrap(inc.toByteArray()));
+          assertEquals(heapified.compact().getCache(), expected);
+        }
+      }
+      assertTrue(rebuilds > 0);
+      assertEquals(inc.getEstimate(), n, 4 * n / Math.sqrt(k));
+      inc.rebuild();
+      assertEquals(inc.compact().getCache(), belowTheta(exact, inc.getThetaLong()));
+      inc.reset();
+      assertTrue(inc.isEmpty());
+      assertEquals(inc.getRetainedEntries(true), 0);
+      final UpdateSketch exact2 = UpdateSketch.builder().setNominalEntries(4 * n).build();
+      for (int i = 0; i < 4 * k; i++) {
+        inc.update(i);
+        exact2.update(i);
+      }
+      assertEquals(inc.compact().getCache(), belowTheta(exact2, inc.getThetaLong()));
+    }
+  }
+
+  @Test
+  public void checkIncrementalRebuildMatchesDefault() {
+    final int k = 512;
+    final int n = 20 * k;
+    for (final ResizeFactor rf : new ResizeFactor[] {X1, X2, X8}) {
+      final UpdateSketch dflt = UpdateSketch.builder().setNominalEntries(k).setResizeFactor(rf)
+          .build();
+      final UpdateSketch inc = UpdateSketch.builder().setNominalEntries(k).setResizeFactor(rf)
+          .setIncrementalRebuild(true).build();
+      int rebuilds = 0;
+      for (int i = 0; i < n; i++) {
+        final UpdateReturnState state = dflt.update(i);
+        assertEquals(inc.update(i), state);
+        if (state == UpdateReturnState.InsertedCountIncrementedRebuilt) {
+          rebuilds++;
+          assertEquals(inc.getThetaLong(), dflt.getThetaLong());
+          assertEquals(inc.getRetainedEntries(true), dflt.getRetainedEntries(true));
+          assertEquals(inc.getEstimate(), dflt.getEstimate());
+          assertEquals(inc.compact().getCache(), dflt.compact().getCache());
+        }
+      }
+      assertTrue(rebuilds > 1);
+    }
+  }
+
+  //the hashes of an exact sketch that are below the given theta, in order
+  private static long[] belowTheta(final UpdateSketch exact, final long thetaLong) {
+    return Arrays.stream(exact.compact().getCache())
+        .filter(h -> h < thetaLong).toArray();
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkIncrementalRebuildNotDirect() {
+    UpdateSketch.builder().setIncrementalRebuild(true).build(WritableMemory.allocate(1 << 16));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkIncrementalRebuildNotAlpha() {
+    UpdateSketch.builder().setFamily(ALPHA).setIncrementalRebuild(true).build();
+  }
+
+  @Test
+  public void checkCacheLineBucketsRetainAllHashesBelowTheta() {
+    final int k = 512;
+    final int n = 20 * k;
+    for (final ResizeFactor rf : new ResizeFactor[] {X1, X8}) {
+      final UpdateSketch bsk = UpdateSketch.builder().setNominalEntries(k).setResizeFactor(rf)
+          .setCacheLineBuckets(true).build();
+      final UpdateSketch exact = UpdateSketch.builder().setNominalEntries(2 * n).build();
+      for (int i = 0; i < n; i++) {
+        bsk.update(i);
+        final UpdateReturnState state = bsk.update(i); //duplicate or over theta
+        assertTrue((state == UpdateReturnState.RejectedDuplicate)
+            || (state == UpdateReturnState.RejectedOverTheta));
+        exact.update(i);
+        if ((i % 997) == 0) {
+          final long[] expected = belowTheta(exact, bsk.getThetaLong());
+          assertEquals(bsk.compact().getCache(), expected);
+          assertEquals(bsk.getRetainedEntries(true), expected.length);
+        }
+      }
+      //the bucketed layout rebuilds earlier, so theta is at or below that of the OADH layout
+      assertTrue(bsk.getRetainedEntries(true) >= k);
+      final long[] expected = belowTheta(exact, bsk.getThetaLong());
+      assertEquals(bsk.compact().getCache(), expected);
+
+      //the OADH view is kept until the next insert
+      final long[] view = ((HeapQuickSelectSketch) bsk).getCache();
+      assertSame(((HeapQuickSelectSketch) bsk).getCache(), view);
+
+      //the serialized form is the OADH layout
+      final UpdateSketch heapified = UpdateSketch.heapify(Memory.wrap(bsk.toByteArray()));
+      assertEquals(heapified.compact().getCache(), expected);
+
+      //set operations that read the hash table see the same entries
+      final UpdateSketch other = UpdateSketch.builder().setNominalEntries(k).build();
+      for (int i = 10 * k; i < 30 * k; i++) { other.update(i); }
+      final AnotB aNotB = SetOperation.builder().buildANotB();
+      assertEquals(aNotB.aNotB(other, bsk).getEstimate(),
+          aNotB.aNotB(other, heapified.compact()).getEstimate());
+      final Union union = SetOperation.builder().setNominalEntries(k).buildUnion();
+      union.union(bsk);
+      final Union union2 = SetOperation.builder().setNominalEntries(k).buildUnion();
+      union2.union(heapified.compact());
+      assertEquals(union.getResult().getEstimate(), union2.getResult().getEstimate());
+
+      bsk.reset();
+      assertTrue(bsk.isEmpty());
+      bsk.update(1);
+      assertEquals(bsk.getEstimate(), 1.0);
+      assertEquals(bsk.compact().getCache().length, 1); //not the stale view
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkCacheLineBucketsNotDirect() {
+    UpdateSketch.builder().setCacheLineBuckets(true).build(WritableMemory.allocate(1 << 16));
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkCacheLineBucketsNotAlpha() {
+    UpdateSketch.builder().setFamily(ALPHA).setCacheLineBuckets(true).build();
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
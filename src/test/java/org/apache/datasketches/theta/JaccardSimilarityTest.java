@@ -21,9 +21,18 @@ package org.apache.datasketches.theta;
 
 import static org.apache.datasketches.theta.JaccardSimilarity.exactlyEqual;
 import static org.apache.datasketches.theta.JaccardSimilarity.jaccard;
+import static org.apache.datasketches.theta.JaccardSimilarity.jaccardMatrix;
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.thetacommon.BoundsOnRatiosInThetaSketchedSets;
 import org.testng.annotations.Test;
 
 /**
@@ -233,6 +242,122 @@ public class JaccardSimilarityTest {
     println(result[0] + ", " + result[1] + ", " + result[2]);
   }
 
+  @Test
+  public void checkMatrixMatchesPairwise() {
+    final List<Sketch> sketches = matrixSketches();
+    final int n = sketches.size();
+
+    final JaccardMatrix dense = jaccardMatrix(sketches, ForkJoinPool.commonPool());
+    assertFalse(dense.isSparse());
+    assertEquals(dense.getNumSketches(), n);
+    assertEquals(dense.getNumPairs(), (n * (n - 1)) / 2);
+    int pair = 0;
+    for (int i = 0; i < n; i++) {
+      assertEquals(dense.jaccard(i, i), jaccard(sketches.get(i), sketches.get(i)));
+      for (int j = i + 1; j < n; j++) {
+        final double[] expected = jaccard(sketches.get(i), sketches.get(j));
+        assertEquals(dense.jaccard(i, j), expected);
+        assertEquals(dense.jaccard(j, i), expected);
+        assertEquals(dense.getRow(pair), i);
+        assertEquals(dense.getColumn(pair), j);
+        assertEquals(dense.getLowerBound(pair), expected[0]);
+        assertEquals(dense.getEstimate(pair), expected[1]);
+        assertEquals(dense.getUpperBound(pair), expected[2]);
+        pair++;
+      }
+    }
+
+    final double threshold = 0.3;
+    final JaccardMatrix sparse = jaccardMatrix(sketches, threshold, new ForkJoinPool(3));
+    assertTrue(sparse.isSparse());
+    int stored = 0;
+    for (int i = 0; i < n; i++) {
+      for (int j = i + 1; j < n; j++) {
+        final double[] expected = jaccard(sketches.get(i), sketches.get(j));
+        if (expected[1] >= threshold) {
+          assertEquals(sparse.getRow(stored), i);
+          assertEquals(sparse.getColumn(stored), j);
+          assertEquals(sparse.jaccard(j, i), expected);
+          stored++;
+        } else {
+          assertNull(sparse.jaccard(i, j));
+        }
+      }
+    }
+    assertEquals(sparse.getNumPairs(), stored);
+  }
+
+  @Test
+  public void checkMatrixContainment() {
+    final List<Sketch> sketches = matrixSketches();
+    final int n = sketches.size();
+    final JaccardMatrix dense = jaccardMatrix(sketches, ForkJoinPool.commonPool());
+    final double threshold = 0.3;
+    final JaccardMatrix sparse = jaccardMatrix(sketches, threshold, ForkJoinPool.commonPool());
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        final Sketch skA = sketches.get(i);
+        final Sketch skB = sketches.get(j);
+        final double[] expected;
+        if ((skA == null) || (skB == null)) {
+          expected = new double[] {0.0, 0.0, 0.0};
+        } else if (i == j) {
+          expected = new double[] {1.0, 1.0, 1.0};
+        } else if (skA.isEmpty() || skB.isEmpty()) {
+          //no common hashes, and none of A if it is empty or retains none
+          final double est = (skA.getRetainedEntries(true) == 0) ? 0.5 : 0.0;
+          assertEquals(dense.containment(i, j)[1], est);
+          continue;
+        } else {
+          //the fraction of A that is in the intersection of A and B
+          final Intersection inter = SetOperation.builder().buildIntersection();
+          inter.intersect(skA);
+          inter.intersect(skB);
+          final Sketch interAB = inter.getResult();
+          expected = new double[] {
+              BoundsOnRatiosInThetaSketchedSets.getLowerBoundForBoverA(skA, interAB),
+              BoundsOnRatiosInThetaSketchedSets.getEstimateOfBoverA(skA, interAB),
+              BoundsOnRatiosInThetaSketchedSets.getUpperBoundForBoverA(skA, interAB)};
+          final int pair = (i < j) ? pairIndex(n, i, j) : pairIndex(n, j, i);
+          assertEquals(dense.getIntersectionCount(pair), interAB.getRetainedEntries(true));
+        }
+        assertEquals(dense.containment(i, j), expected);
+        if ((i != j) && (sparse.jaccard(i, j) == null)) {
+          assertNull(sparse.containment(i, j));
+        } else {
+          assertEquals(sparse.containment(i, j), expected);
+        }
+      }
+    }
+  }
+
+  //the position of the pair (i, j), i < j, in a dense matrix of n sketches
+  private static int pairIndex(final int n, final int i, final int j) {
+    return ((i * n) - ((i * (i + 1)) / 2)) + (j - i - 1);
+  }
+
+  //null, empty, exact, estimating and sampled sketches, with overlapping ranges
+  private static List<Sketch> matrixSketches() {
+    final List<Sketch> sketches = new ArrayList<>();
+    sketches.add(null);
+    sketches.add(UpdateSketch.builder().build()); //empty
+    for (int s = 0; s < 12; s++) {
+      final UpdateSketch sk = UpdateSketch.builder().setNominalEntries((s % 3 == 0) ? 64 : 512)
+          .setP((s % 4 == 3) ? 0.5f : 1.0f).build();
+      final int n = (s % 5 == 4) ? 1 : 200 * s;
+      for (int i = 0; i < n; i++) { sk.update(((s % 3) * 1000) + i); } //overlapping ranges
+      sketches.add((s % 2 == 0) ? sk.compact() : sk);
+    }
+    sketches.add(sketches.get(5)); //the same sketch twice
+    sketches.add(((UpdateSketch) sketches.get(3)).compact(false, null)); //equal data, unordered
+    return sketches;
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkMatrixBadThreshold() {
+    jaccardMatrix(new ArrayList<Sketch>(), 1.5, ForkJoinPool.commonPool());
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.datasketches.common.Family;
+import org.apache.datasketches.common.ResizeFactor;
+import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.memory.WritableMemory;
+import org.testng.annotations.Test;
+
+public class LockFreeQuickSelectSketchTest {
+
+  @Test
+  public void checkSingleThreadMatchesHeapQuickSelect() {
+    for (final ResizeFactor rf : new ResizeFactor[] {ResizeFactor.X1, ResizeFactor.X2, ResizeFactor.X8}) {
+      for (final float p : new float[] {1.0F, 0.5F}) {
+        final UpdateSketchBuilder bldr = UpdateSketch.builder().setNominalEntries(512)
+            .setResizeFactor(rf).setP(p);
+        final UpdateSketch heap = bldr.build();
+        final UpdateSketch lockFree = bldr.buildLockFree();
+        assertTrue(lockFree.isEmpty());
+        for (int i = 0; i < 10_000; i++) {
+          assertEquals(lockFree.update(i), heap.update(i));
+          assertEquals(lockFree.update(i), heap.update(i)); //duplicates
+        }
+        assertFalse(lockFree.isEmpty());
+        assertEquals(lockFree.getEstimate(), heap.getEstimate());
+        assertEquals(lockFree.getThetaLong(), heap.getThetaLong());
+        assertEquals(lockFree.getRetainedEntries(true), heap.getRetainedEntries(true));
+        assertEquals(lockFree.getLgArrLongs(), heap.getLgArrLongs());
+        //a migration re-inserts the hashes in table order, so only the ordered forms are equal
+        assertEquals(lockFree.compact().toByteArray(), heap.compact().toByteArray());
+        assertEquals(UpdateSketch.heapify(Memory.wrap(lockFree.toByteArray())).compact()
+            .toByteArray(), heap.compact().toByteArray());
+      }
+    }
+  }
+
+  @Test
+  public void checkEmptyAndExact() {
+    final UpdateSketch sk = UpdateSketch.builder().setNominalEntries(64).buildLockFree();
+    assertTrue(sk.isEmpty());
+    assertEquals(sk.getEstimate(), 0.0);
+    assertEquals(sk.getThetaLong(), Long.MAX_VALUE);
+    assertEquals(sk.getFamily(), Family.QUICKSELECT);
+    assertTrue(sk.compact().isEmpty());
+    for (int i = 0; i < 64; i++) { sk.update(i); }
+    assertEquals(sk.getEstimate(), 64.0);
+    assertFalse(sk.isEstimationMode());
+    assertFalse(sk.isDirect());
+    assertFalse(sk.hasMemory());
+  }
+
+  @Test
+  public void checkHeapifyAndWrap() {
+    final UpdateSketch sk = UpdateSketch.builder().setNominalEntries(256).buildLockFree();
+    for (int i = 0; i < 5000; i++) { sk.update(i); }
+    final byte[] bytes = sk.toByteArray();
+
+    final UpdateSketch heapified = UpdateSketch.heapify(Memory.wrap(bytes));
+    assertTrue(heapified instanceof HeapQuickSelectSketch);
+    assertEquals(heapified.getEstimate(), sk.getEstimate());
+
+    final UpdateSketch wrapped = UpdateSketch.wrap(WritableMemory.writableWrap(bytes));
+    assertEquals(wrapped.getEstimate(), sk.getEstimate());
+  }
+
+  @Test
+  public void checkIteratorAndRebuild() {
+    final UpdateSketch sk = UpdateSketch.builder().setNominalEntries(128).buildLockFree();
+    for (int i = 0; i < 1000; i++) { sk.update(i); }
+    sk.rebuild();
+    assertEquals(sk.getRetainedEntries(true), 128);
+    int count = 0;
+    final HashIterator it = sk.iterator();
+    while (it.next()) {
+      assertTrue(it.get() < sk.getThetaLong());
+      count++;
+    }
+    assertEquals(count, 128);
+  }
+
+  @Test
+  public void checkReset() {
+    final UpdateSketch sk = UpdateSketch.builder().setNominalEntries(64).buildLockFree();
+    for (int i = 0; i < 1000; i++) { sk.update(i); }
+    sk.reset();
+    assertTrue(sk.isEmpty());
+    assertEquals(sk.getEstimate(), 0.0);
+    assertEquals(sk.getRetainedEntries(true), 0);
+    sk.update(1);
+    assertEquals(sk.getEstimate(), 1.0);
+  }
+
+  @Test
+  public void checkConcurrentUpdatesExact() throws InterruptedException {
+    final int lgK = 12;
+    final int perThread = 500;
+    final int numThreads = 8;
+    final UpdateSketch sk = UpdateSketch.builder().setLogNominalEntries(lgK).buildLockFree();
+    runWriters(sk, numThreads, perThread, true);
+    //every thread writes the same items too, so there are duplicates across threads
+    assertEquals(sk.getEstimate(), numThreads * perThread, 0.0);
+    final Set<Long> unique = new HashSet<>();
+    final HashIterator it = sk.compact().iterator();
+    while (it.next()) { assertTrue(unique.add(it.get())); }
+    assertEquals(unique.size(), numThreads * perThread);
+  }
+
+  @Test
+  public void checkConcurrentUpdatesEstimation() throws InterruptedException {
+    for (final int lgK : new int[] {4, 10}) {
+      checkConcurrentUpdatesEstimation(lgK);
+    }
+  }
+
+  private static void checkConcurrentUpdatesEstimation(final int lgK) throws InterruptedException {
+    final int perThread = 50_000;
+    final int numThreads = 8;
+    final UpdateSketch sk = UpdateSketch.builder().setLogNominalEntries(lgK).buildLockFree();
+    runWriters(sk, numThreads, perThread, false);
+    final double n = (double) numThreads * perThread;
+    assertTrue(sk.isEstimationMode());
+    assertTrue(sk.getLowerBound(3) <= n);
+    assertTrue(sk.getUpperBound(3) >= n);
+
+    //A compact snapshot agrees with the sketch, and every retained hash is below theta
+    final CompactSketch csk = sk.compact();
+    assertEquals(csk.getEstimate(), sk.getEstimate());
+    final HashIterator it = csk.iterator();
+    while (it.next()) { assertTrue(it.get() < csk.getThetaLong()); }
+    sk.rebuild();
+    assertEquals(sk.getRetainedEntries(true), 1 << lgK);
+  }
+
+  @Test
+  public void checkConcurrentMigrations() throws InterruptedException {
+    //A small sketch with many writers migrates its table thousands of times while writers are
+    // inserting, so writers regularly meet frozen slots and insert into the next table.
+    final int perThread = 200_000;
+    final int numThreads = 8;
+    final UpdateSketch sk = UpdateSketch.builder().setNominalEntries(32).buildLockFree();
+    runWriters(sk, numThreads, perThread, true);
+    final double n = (double) numThreads * perThread;
+    assertTrue(sk.getLowerBound(3) <= n);
+    assertTrue(sk.getUpperBound(3) >= n);
+    final CompactSketch csk = sk.compact();
+    final Set<Long> unique = new HashSet<>();
+    final HashIterator it = csk.iterator();
+    while (it.next()) {
+      assertTrue(it.get() < csk.getThetaLong());
+      assertTrue(unique.add(it.get()));
+    }
+    assertEquals(unique.size(), csk.getRetainedEntries());
+  }
+
+  private static void runWriters(final UpdateSketch sk, final int numThreads, final int perThread,
+      final boolean duplicates) throws InterruptedException {
+    final Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final long base = (long) t * perThread;
+      threads[t] = new Thread(() -> {
+        for (int i = 0; i < perThread; i++) {
+          sk.update(base + i);
+          if (duplicates) { sk.update((base + i + perThread) % ((long) numThreads * perThread)); }
+        }
+      });
+      threads[t].start();
+    }
+    for (final Thread thread : threads) { thread.join(); }
+  }
+
+}
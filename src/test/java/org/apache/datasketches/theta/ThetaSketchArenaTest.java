@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.nio.ByteOrder;
+
+import org.apache.datasketches.common.ResizeFactor;
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.apache.datasketches.memory.DefaultMemoryRequestServer;
+import org.apache.datasketches.memory.WritableMapHandle;
+import org.apache.datasketches.memory.WritableMemory;
+import org.apache.datasketches.thetacommon.ThetaUtil;
+import org.testng.annotations.Test;
+
+public class ThetaSketchArenaTest {
+  private static final int K = 64;
+  private static final DefaultMemoryRequestServer memReqSvr = new DefaultMemoryRequestServer();
+
+  @Test
+  public void checkGetOrCreateAndGrow() {
+    final WritableMemory wmem = WritableMemory.allocate(ThetaSketchArena.ARENA_PREAMBLE_BYTES);
+    final ThetaSketchArena arena =
+        UpdateSketch.builder().setNominalEntries(K).buildArena(wmem, memReqSvr);
+    assertEquals(arena.size(), 0);
+    assertNull(arena.get(7));
+
+    final int numKeys = K - 4; //all exact
+    for (int key = 0; key < numKeys; key++) {
+      final UpdateSketch sk = arena.getOrCreate(key);
+      for (int i = 0; i < key; i++) { sk.update(i); }
+    }
+    assertEquals(arena.size(), numKeys);
+    assertTrue(arena.getMemory().getCapacity() >= arena.getSerializedSizeBytes());
+    //small sketches stay in the smallest size class
+    assertEquals(arena.getSlotBytes(1), ThetaSketchArena.getSlotBytesForClass(5));
+    assertTrue(arena.getSlotBytes(numKeys - 1) > arena.getSlotBytes(1));
+    arena.compact();
+    assertEquals(arena.getSerializedSizeBytes(), liveBytes(arena, 0, numKeys, 1));
+    for (int key = 0; key < numKeys; key++) {
+      assertTrue(arena.contains(key));
+      final UpdateSketch sk = arena.get(key);
+      assertEquals(sk.getEstimate(), (double) key);
+      assertEquals(sk.isEmpty(), key == 0);
+    }
+    //update through a fresh view accumulates
+    arena.getOrCreate(3).update(1_000);
+    assertEquals(arena.get(3).getEstimate(), 4.0);
+  }
+
+  @Test
+  public void checkRemoveReuseAndCompact() {
+    final WritableMemory wmem = WritableMemory.allocate(1 << 16);
+    final ThetaSketchArena arena = UpdateSketch.builder().setNominalEntries(K).buildArena(wmem);
+    for (long key = 0; key < 20; key++) { arena.getOrCreate(key * 1_000_003L).update(key); }
+    final long fullBytes = arena.getSerializedSizeBytes();
+
+    for (long key = 0; key < 20; key += 2) { assertTrue(arena.remove(key * 1_000_003L)); }
+    assertFalse(arena.remove(0));
+    assertEquals(arena.size(), 10);
+    assertEquals(arena.getSerializedSizeBytes(), fullBytes);
+
+    //a freed slot is reused without growing
+    arena.getOrCreate(-1L).update("x");
+    assertEquals(arena.getSerializedSizeBytes(), fullBytes);
+    assertTrue(arena.get(-1L).getEstimate() == 1.0);
+    assertTrue(arena.remove(-1L));
+
+    arena.compact();
+    assertEquals(arena.size(), 10);
+    assertEquals(arena.getSerializedSizeBytes(), liveBytes(arena, 1_000_003L, 20, 2));
+    for (long key = 0; key < 20; key++) {
+      final UpdateSketch sk = arena.get(key * 1_000_003L);
+      if ((key & 1) == 0) {
+        assertNull(sk);
+      } else {
+        assertEquals(sk.getEstimate(), 1.0);
+        final UpdateSketch check = UpdateSketch.builder().setNominalEntries(K).build();
+        check.update(key);
+        assertEquals(sk.compact().getCache(), check.compact().getCache());
+      }
+    }
+  }
+
+  @Test
+  public void checkSerializeAndWrap() {
+    final WritableMemory wmem = WritableMemory.allocate(1 << 12);
+    final ThetaSketchArena arena =
+        UpdateSketch.builder().setNominalEntries(K).buildArena(wmem, memReqSvr);
+    for (long key = 0; key < 50; key++) {
+      final UpdateSketch sk = arena.getOrCreate(key);
+      for (int i = 0; i < 1_000; i++) { sk.update((key << 32) + i); }
+    }
+    arena.remove(10);
+
+    final WritableMemory file = WritableMemory.allocate((int) arena.getSerializedSizeBytes());
+    arena.serializeTo(file);
+
+    final ThetaSketchArena arena2 =
+        ThetaSketchArena.writableWrap(file, ThetaUtil.DEFAULT_UPDATE_SEED, memReqSvr);
+    assertEquals(arena2.size(), 49);
+    assertFalse(arena2.contains(10));
+    for (long key = 0; key < 50; key++) {
+      if (key == 10) { continue; }
+      assertEquals(arena2.get(key).getEstimate(), arena.get(key).getEstimate());
+    }
+    //the resumed arena reuses the freed slot, then grows
+    arena2.getOrCreate(1_000L).update(1);
+    assertEquals(arena2.getSerializedSizeBytes(), arena.getSerializedSizeBytes());
+    arena2.getOrCreate(1_001L).update(1);
+    assertEquals(arena2.size(), 51);
+  }
+
+  @Test
+  public void checkSketchesMoveToLargerSlots() {
+    final WritableMemory wmem = WritableMemory.allocate(ThetaSketchArena.ARENA_PREAMBLE_BYTES);
+    final UpdateSketchBuilder bldr =
+        UpdateSketch.builder().setNominalEntries(K).setResizeFactor(ResizeFactor.X2);
+    final ThetaSketchArena arena = bldr.buildArena(wmem, memReqSvr);
+    final int numKeys = 8;
+    final UpdateSketch[] heap = new UpdateSketch[numKeys];
+    for (int key = 0; key < numKeys; key++) {
+      arena.getOrCreate(key).update(-1);
+      heap[key] = bldr.build();
+      heap[key].update(-1);
+    }
+    final long smallBytes = arena.getSlotBytes(0);
+    //interleave the keys so that every move lands between the slots of the other keys
+    for (int i = 0; i < 5_000; i++) {
+      for (int key = 0; key < numKeys; key++) {
+        final int n = i * (key + 1);
+        arena.get(key).update(n);
+        heap[key].update(n);
+      }
+    }
+    assertEquals(arena.getSlotBytes(0), ThetaSketchArena.getSlotBytesForClass(7));
+    assertTrue(arena.getSlotBytes(0) > smallBytes);
+    for (int key = 0; key < numKeys; key++) {
+      assertEquals(arena.get(key).getEstimate(), heap[key].getEstimate());
+      assertEquals(arena.get(key).compact().getCache(), heap[key].compact().getCache());
+    }
+    //a freed small slot is reused by a new key
+    final long bytes = arena.getSerializedSizeBytes();
+    arena.getOrCreate(100).update(1);
+    assertEquals(arena.getSerializedSizeBytes(), bytes);
+
+    final WritableMemory file = WritableMemory.allocate((int) arena.getSerializedSizeBytes());
+    arena.serializeTo(file);
+    final ThetaSketchArena arena2 =
+        ThetaSketchArena.writableWrap(file, ThetaUtil.DEFAULT_UPDATE_SEED, null);
+    for (int key = 0; key < numKeys; key++) {
+      assertEquals(arena2.get(key).getEstimate(), heap[key].getEstimate());
+    }
+    arena2.compact();
+    assertEquals(arena2.get(100).getEstimate(), 1.0);
+    for (int key = 0; key < numKeys; key++) {
+      assertEquals(arena2.get(key).getEstimate(), heap[key].getEstimate());
+    }
+  }
+
+  @Test
+  public void checkArenaWithoutServerDoesNotGrow() {
+    final long cap = ThetaSketchArena.ARENA_PREAMBLE_BYTES
+        + (2 * ThetaSketchArena.getSlotBytesForClass(5));
+    final WritableMemory wmem = WritableMemory.allocate((int) cap);
+    final ThetaSketchArena arena = UpdateSketch.builder().setNominalEntries(K)
+        .setResizeFactor(ResizeFactor.X2).buildArena(wmem);
+    arena.getOrCreate(1).update(1);
+    arena.getOrCreate(2).update(2);
+    try {
+      arena.getOrCreate(3);
+      fail();
+    } catch (final SketchesArgumentException e) {
+      //no slot left and no MemoryRequestServer to grow the region
+    }
+    final UpdateSketch sk = arena.get(1);
+    try {
+      for (int i = 0; i < 1_000; i++) { sk.update(i); }
+      fail();
+    } catch (final SketchesArgumentException e) {
+      //the sketch cannot move to a larger slot
+    }
+    assertTrue(arena.getMemory() == wmem);
+    assertEquals(arena.get(2).getEstimate(), 1.0);
+  }
+
+  @Test
+  public void checkArenaIgnoresServerOfMemory() {
+    final long cap =
+        ThetaSketchArena.ARENA_PREAMBLE_BYTES + ThetaSketchArena.getSlotBytesForClass(5);
+    final WritableMemory wmem =
+        WritableMemory.allocate((int) cap, ByteOrder.nativeOrder(), new DefaultMemoryRequestServer());
+    final ThetaSketchArena arena = UpdateSketch.builder().setNominalEntries(K)
+        .setResizeFactor(ResizeFactor.X2).buildArena(wmem);
+    arena.getOrCreate(1).update(1);
+    try {
+      arena.getOrCreate(2);
+      fail();
+    } catch (final SketchesArgumentException e) {
+      //only an explicit MemoryRequestServer grows the region
+    }
+    assertTrue(arena.getMemory() == wmem);
+  }
+
+  @Test
+  public void checkMappedArenaDoesNotGrow() throws Exception {
+    final File file = File.createTempFile("arena", ".bin");
+    file.deleteOnExit();
+    final long cap =
+        ThetaSketchArena.ARENA_PREAMBLE_BYTES + ThetaSketchArena.getSlotBytesForClass(5);
+    try (WritableMapHandle handle =
+        WritableMemory.writableMap(file, 0, cap, ByteOrder.nativeOrder())) {
+      final WritableMemory wmem = handle.getWritable();
+      final ThetaSketchArena arena = UpdateSketch.builder().setNominalEntries(K).buildArena(wmem);
+      arena.getOrCreate(1).update(1);
+      try {
+        arena.getOrCreate(2);
+        fail();
+      } catch (final SketchesArgumentException e) {
+        //a mapped region is never moved to the heap
+      }
+      assertTrue(arena.getMemory() == wmem);
+    }
+  }
+
+  private static long liveBytes(final ThetaSketchArena arena, final long keyStep,
+      final int numKeys, final int keyStride) {
+    long bytes = ThetaSketchArena.ARENA_PREAMBLE_BYTES;
+    for (long key = keyStride - 1; key < numKeys; key += keyStride) {
+      bytes += arena.getSlotBytes((keyStep == 0) ? key : key * keyStep);
+    }
+    return bytes;
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkWrapSeedConflict() {
+    final WritableMemory wmem = WritableMemory.allocate(1 << 12);
+    UpdateSketch.builder().setNominalEntries(K).buildArena(wmem).getOrCreate(1).update(1);
+    ThetaSketchArena.writableWrap(wmem, 123, null);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkWrapNotAnArena() {
+    ThetaSketchArena.writableWrap(WritableMemory.allocate(64), ThetaUtil.DEFAULT_UPDATE_SEED, null);
+  }
+}
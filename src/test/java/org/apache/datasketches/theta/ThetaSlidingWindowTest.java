@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.datasketches.theta;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.datasketches.common.SketchesArgumentException;
+import org.testng.annotations.Test;
+
+public class ThetaSlidingWindowTest {
+
+  @Test
+  public void checkExactWindows() {
+    final int maxBuckets = 7; //ring of 6 sealed buckets, not a power of 2
+    final ThetaSlidingWindow window = UpdateSketch.builder().buildSlidingWindow(maxBuckets);
+    assertEquals(window.getNumBuckets(), 1);
+    assertTrue(window.getResult(maxBuckets).isEmpty());
+
+    final int perBucket = 10;
+    for (int bucket = 0; bucket < 40; bucket++) {
+      //each bucket repeats the last half of the previous bucket
+      for (int i = 0; i < perBucket; i++) {
+        window.getCurrentBucket().update((bucket * (perBucket / 2)) + i);
+      }
+      for (int w = 1; w <= maxBuckets; w++) {
+        final int buckets = Math.min(w, bucket + 1);
+        final double expected = (buckets + 1) * (perBucket / 2);
+        assertEquals(window.getResult(w).getEstimate(), expected);
+      }
+      window.advance();
+      assertEquals(window.getNumBuckets(), Math.min(bucket + 2, maxBuckets));
+    }
+    assertEquals(window.getResult(1).getEstimate(), 0.0);
+    window.reset();
+    assertEquals(window.getNumBuckets(), 1);
+    assertTrue(window.getResult(maxBuckets).isEmpty());
+  }
+
+  @Test
+  public void checkMatchesFlatUnion() {
+    final int k = 256;
+    final int maxBuckets = 16;
+    final UpdateSketchBuilder bldr = UpdateSketch.builder().setNominalEntries(k);
+    final ThetaSlidingWindow window = bldr.buildSlidingWindow(maxBuckets);
+    final List<CompactSketch> buckets = new ArrayList<>();
+    for (int bucket = 0; bucket < 50; bucket++) {
+      final UpdateSketch sk = bldr.build();
+      final int n = ((bucket % 5) == 4) ? 0 : 100 * (bucket % 7); //some empty buckets
+      for (int i = 0; i < n; i++) {
+        final long item = ((long) bucket << 20) + i;
+        sk.update(item);
+        window.getCurrentBucket().update(item);
+      }
+      buckets.add(sk.compact());
+      for (int w = 1; w <= maxBuckets; w += 3) {
+        final Union union = SetOperation.builder().setNominalEntries(k).buildUnion();
+        for (int b = Math.max(0, buckets.size() - w); b < buckets.size(); b++) {
+          union.union(buckets.get(b));
+        }
+        final CompactSketch expected = union.getResult();
+        final CompactSketch result = window.getResult(w);
+        assertEquals(result.getRetainedEntries(true), expected.getRetainedEntries(true));
+        assertEquals(result.getThetaLong(), expected.getThetaLong());
+        assertEquals(result.getEstimate(), expected.getEstimate());
+      }
+      window.advance();
+    }
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkWindowTooLarge() {
+    UpdateSketch.builder().buildSlidingWindow(4).getResult(5);
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkMaxBucketsTooSmall() {
+    UpdateSketch.builder().buildSlidingWindow(1);
+  }
+}
@@ -23,8 +23,14 @@ import static org.apache.datasketches.theta.BackwardConversions.convertSerVer3to
 import static org.apache.datasketches.theta.BackwardConversions.convertSerVer3toSerVer2;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.memory.Memory;
 import org.apache.datasketches.memory.WritableHandle;
@@ -293,6 +299,129 @@ public class UnionImplTest {
     //println(csk.toString(true, true, 1, true));
   }
 
+  @Test
+  public void checkUnionAll() {
+    final int k = 512;
+    for (final int n : new int[] {100, 5000}) { //exact and estimation mode
+      final List<Sketch> sketches = new ArrayList<>();
+      for (int s = 0; s < 200; s++) {
+        final UpdateSketch sk = Sketches.updateSketchBuilder().setNominalEntries(k).build();
+        for (int i = 0; i < n; i++) { sk.update((s * (n / 4)) + i); }
+        switch (s % 4) {
+          case 0: sketches.add(sk); break;
+          case 1: sketches.add(sk.compact(false, null)); break;
+          case 2: sketches.add(sk.compact()); break;
+          default: sketches.add(CompactSketch.wrap(Memory.wrap(sk.compact().toByteArrayCompressed())));
+        }
+      }
+      sketches.add(null);
+      final Union expected = Sketches.setOperationBuilder().setNominalEntries(k).buildUnion();
+      for (final Sketch sk : sketches) { expected.union(sk); }
+
+      final Union union = Sketches.setOperationBuilder().setNominalEntries(k).buildUnion();
+      union.unionAll(sketches);
+      assertEquals(union.getResult().getEstimate(), expected.getResult().getEstimate());
+      assertEquals(union.getResult().getRetainedEntries(), expected.getResult().getRetainedEntries());
+
+      final ForkJoinPool pool = new ForkJoinPool(3);
+      try {
+        final Union union2 = Sketches.setOperationBuilder().setNominalEntries(k).buildUnion();
+        union2.unionAll(sketches.subList(0, 50), pool);
+        union2.unionAll(sketches.subList(50, sketches.size()), pool);
+        assertEquals(union2.getResult().getEstimate(), expected.getResult().getEstimate());
+      } finally {
+        pool.shutdown();
+      }
+    }
+  }
+
+  @Test
+  public void checkUnionAllMemory() {
+    final int k = 512;
+    final List<Memory> mems = new ArrayList<>();
+    final Union expected = Sketches.setOperationBuilder().setNominalEntries(k).buildUnion();
+    for (int s = 0; s < 100; s++) {
+      final UpdateSketch sk = Sketches.updateSketchBuilder().setNominalEntries(k).build();
+      for (int i = 0; i < 2000; i++) { sk.update((s * 500) + i); }
+      final Memory mem;
+      switch (s % 4) {
+        case 0: mem = Memory.wrap(sk.toByteArray()); break; //update sketch image
+        case 1: mem = Memory.wrap(sk.compact().toByteArrayCompressed()); break;
+        case 2: mem = convertSerVer3toSerVer2(sk.compact(), ThetaUtil.DEFAULT_UPDATE_SEED); break;
+        default: mem = Memory.wrap(sk.compact(false, null).toByteArray());
+      }
+      mems.add(mem);
+      expected.union(mem);
+    }
+    mems.add(Memory.wrap(Sketches.updateSketchBuilder().build().compact().toByteArray())); //empty
+    final Union union = Sketches.setOperationBuilder().setNominalEntries(k).buildUnion();
+    union.unionAllMemory(mems);
+    assertEquals(union.getResult().getEstimate(), expected.getResult().getEstimate());
+    assertEquals(union.getResult().getThetaLong(), expected.getResult().getThetaLong());
+  }
+
+  @Test(expectedExceptions = SketchesArgumentException.class)
+  public void checkUnionAllSeedConflict() {
+    final List<Sketch> sketches = new ArrayList<>();
+    for (int s = 0; s < 100; s++) {
+      final long seed = (s == 77) ? 123 : ThetaUtil.DEFAULT_UPDATE_SEED;
+      final UpdateSketch sk = Sketches.updateSketchBuilder().setSeed(seed).build();
+      sk.update(s);
+      sketches.add(sk.compact());
+    }
+    Sketches.setOperationBuilder().buildUnion().unionAll(sketches);
+  }
+
+  @Test
+  public void checkCachedResultAndEstimate() {
+    final int k = 512;
+    final Union union = SetOperation.builder().setNominalEntries(k).buildUnion();
+    assertEquals(union.getEstimate(), 0.0);
+    assertSame(union.getResult(), union.getResult());
+
+    int item = 0;
+    for (int round = 0; round < 20; round++) {
+      final UpdateSketch sk = UpdateSketch.builder().setNominalEntries(2 * k)
+          .setP((round % 4) == 3 ? 0.5f : 1.0f).build(); //some inputs lower the union theta
+      for (int i = 0; i < 100 * round; i++) { sk.update(item++); }
+      union.union(sk.compact());
+      union.update(item++);
+      final double estimate = union.getEstimate(); //before any result is cached
+      final CompactSketch result = union.getResult();
+      assertEquals(estimate, result.getEstimate());
+      assertSame(union.getResult(), result);
+      assertSame(union.getResult(false, null), result);
+      assertEquals(union.getEstimate(), estimate);
+
+      //a reused destination receives the cached result
+      final WritableMemory dstMem = WritableMemory.allocate(result.getCurrentBytes());
+      assertEquals(union.getResult(true, dstMem).toByteArray(), result.toByteArray());
+      assertEquals(union.getResult(true, dstMem).toByteArray(), result.toByteArray());
+
+      union.update(-1 - round); //any mutation drops the cached result
+      assertNotSame(union.getResult(), result);
+    }
+    union.reset();
+    assertEquals(union.getEstimate(), 0.0);
+    assertTrue(union.getResult().isEmpty());
+  }
+
+  @Test
+  public void checkDirectResultNotCached() {
+    final int k = 512;
+    final WritableMemory wmem = WritableMemory.allocate(Sketches.getMaxUnionBytes(k));
+    final Union union = SetOperation.builder().setNominalEntries(k).buildUnion(wmem);
+    for (int i = 0; i < 10 * k; i++) { union.update(i); }
+    final CompactSketch result = union.getResult();
+    assertEquals(union.getEstimate(), result.getEstimate());
+
+    //another Union of the same Memory changes the result
+    final Union other = Sketches.wrapUnion(wmem);
+    for (int i = 10 * k; i < 20 * k; i++) { other.update(i); }
+    assertTrue(union.getResult().getThetaLong() < result.getThetaLong());
+    assertEquals(union.getEstimate(), union.getResult().getEstimate());
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
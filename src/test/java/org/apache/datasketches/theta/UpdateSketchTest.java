@@ -30,6 +30,9 @@ import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import org.apache.datasketches.common.Family;
 import org.apache.datasketches.common.ResizeFactor;
 import org.apache.datasketches.common.SketchesArgumentException;
@@ -221,6 +224,97 @@ public class UpdateSketchTest {
     assertTrue(cskwmem1.equals(cskwmem3));
   }
 
+  @Test
+  public void checkUpdateBatchLongs() {
+    final int n = 20_000;
+    final long[] items = new long[n + 2];
+    for (int i = 0; i < items.length; i++) { items[i] = (i % 3 == 0) ? i / 3 : i; } //with dups
+    for (Family fam : new Family[] { Family.QUICKSELECT, Family.ALPHA }) {
+      for (int lgK : new int[] { 4, 9, 12 }) {
+        if ((fam == Family.ALPHA) && (lgK < 9)) { continue; } //Alpha requires lgK >= 9
+        for (float p : new float[] { 1.0f, 0.5f }) {
+          final UpdateSketchBuilder bldr = UpdateSketch.builder().setFamily(fam)
+              .setLogNominalEntries(lgK).setP(p);
+          final UpdateSketch single = bldr.build();
+          final UpdateSketch batch = bldr.build();
+          for (int i = 1; i <= n; i++) { single.update(items[i]); }
+          batch.updateBatch(items, 1, n);
+          assertEquals(batch.toByteArray(), single.toByteArray());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void checkUpdateBatchLongsDirect() {
+    final int lgK = 10;
+    final int n = 10_000;
+    final long[] items = new long[n];
+    for (int i = 0; i < n; i++) { items[i] = i; }
+    final int bytes = Sketch.getMaxUpdateSketchBytes(1 << lgK);
+    final WritableMemory wmem1 = WritableMemory.allocate(bytes);
+    final WritableMemory wmem2 = WritableMemory.allocate(bytes);
+    final UpdateSketch single = UpdateSketch.builder().setLogNominalEntries(lgK).build(wmem1);
+    final UpdateSketch batch = UpdateSketch.builder().setLogNominalEntries(lgK).build(wmem2);
+    for (int i = 0; i < n; i++) { single.update(items[i]); }
+    batch.updateBatch(items, 0, n);
+    assertEquals(batch.toByteArray(), single.toByteArray());
+  }
+
+  @Test
+  public void checkUpdateBatchStrings() {
+    final int n = 1000;
+    final String[] items = new String[n];
+    for (int i = 0; i < n; i++) { items[i] = (i % 10 == 0) ? null : (i % 10 == 1) ? "" : "s" + i; }
+    final UpdateSketch single = UpdateSketch.builder().setLogNominalEntries(6).build();
+    final UpdateSketch batch = UpdateSketch.builder().setLogNominalEntries(6).build();
+    for (int i = 0; i < n; i++) { single.update(items[i]); }
+    batch.updateBatch(items, 0, n);
+    assertEquals(batch.toByteArray(), single.toByteArray());
+
+    final UpdateSketch none = UpdateSketch.builder().build();
+    none.updateBatch(new String[] { null, "" }, 0, 2);
+    assertTrue(none.isEmpty());
+  }
+
+  @Test
+  public void checkUpdateBatchByteBuffer() {
+    final int n = 1000;
+    for (ByteOrder order : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN }) {
+      final ByteBuffer buf = ByteBuffer.allocate(((n + 1) * Long.BYTES) + 3).order(order);
+      buf.position(3);
+      for (long i = 0; i <= n; i++) { buf.putLong(i * 7); }
+      buf.position(3 + Long.BYTES).limit(3 + ((n + 1) * Long.BYTES));
+      final UpdateSketch single = UpdateSketch.builder().setLogNominalEntries(6).build();
+      final UpdateSketch batch = UpdateSketch.builder().setLogNominalEntries(6).build();
+      for (long i = 1; i <= n; i++) { single.update(i * 7); }
+      batch.updateBatch(buf);
+      assertEquals(batch.toByteArray(), single.toByteArray());
+      assertEquals(buf.position(), 3 + Long.BYTES);
+      assertEquals(buf.limit(), 3 + ((n + 1) * Long.BYTES));
+    }
+  }
+
+  @Test
+  public void checkUpdateBatchEmptyAndBounds() {
+    final UpdateSketch sk = UpdateSketch.builder().build();
+    sk.updateBatch(new long[4], 4, 0);
+    sk.updateBatch(ByteBuffer.allocate(0));
+    assertTrue(sk.isEmpty());
+    try {
+      sk.updateBatch(new long[4], 2, 3);
+      fail();
+    } catch (SketchesArgumentException e) { } //expected
+    try {
+      sk.updateBatch(new String[4], -1, 2);
+      fail();
+    } catch (SketchesArgumentException e) { } //expected
+    try {
+      sk.updateBatch(ByteBuffer.allocate(12));
+      fail();
+    } catch (SketchesArgumentException e) { } //expected
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: "+this.getClass().getName());
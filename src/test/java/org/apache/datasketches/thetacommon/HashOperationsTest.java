@@ -24,11 +24,15 @@ import static org.apache.datasketches.thetacommon.HashOperations.checkHashCorrup
 import static org.apache.datasketches.thetacommon.HashOperations.checkThetaCorruption;
 import static org.apache.datasketches.thetacommon.HashOperations.continueCondition;
 import static org.apache.datasketches.thetacommon.HashOperations.hashArrayInsert;
+import static org.apache.datasketches.thetacommon.HashOperations.hashArrayInsertBucketed;
 import static org.apache.datasketches.thetacommon.HashOperations.hashInsertOnly;
+import static org.apache.datasketches.thetacommon.HashOperations.hashInsertOnlyBucketed;
 import static org.apache.datasketches.thetacommon.HashOperations.hashInsertOnlyMemory;
 import static org.apache.datasketches.thetacommon.HashOperations.hashSearch;
+import static org.apache.datasketches.thetacommon.HashOperations.hashSearchBucketed;
 import static org.apache.datasketches.thetacommon.HashOperations.hashSearchMemory;
 import static org.apache.datasketches.thetacommon.HashOperations.hashSearchOrInsert;
+import static org.apache.datasketches.thetacommon.HashOperations.hashSearchOrInsertBucketed;
 import static org.apache.datasketches.thetacommon.HashOperations.hashSearchOrInsertMemory;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
@@ -202,6 +206,57 @@ public class HashOperationsTest {
   }
 
 
+  @Test
+  public void checkBucketedLayout() {
+    final int lgArrLongs = 6;
+    final long[] table = new long[1 << lgArrLongs];
+    final long[] hashes = new long[48];
+    for (int i = 0; i < hashes.length; i++) {
+      hashes[i] = hash(new long[] {i}, 0)[0] >>> 1;
+      assertTrue(hashSearchOrInsertBucketed(table, lgArrLongs, hashes[i]) < 0);
+    }
+    for (int i = 0; i < hashes.length; i++) {
+      final int index = hashSearchBucketed(table, lgArrLongs, hashes[i]);
+      assertEquals(table[index], hashes[i]);
+      assertEquals(hashSearchOrInsertBucketed(table, lgArrLongs, hashes[i]), index);
+    }
+    assertEquals(hashSearchBucketed(table, lgArrLongs, 12345L), -1);
+
+    //convert to OADH and back
+    final long[] oadh = new long[1 << lgArrLongs];
+    assertEquals(hashArrayInsert(table, oadh, lgArrLongs, Long.MAX_VALUE), hashes.length);
+    final long[] bucketed = new long[1 << lgArrLongs];
+    assertEquals(hashArrayInsertBucketed(oadh, bucketed, lgArrLongs, Long.MAX_VALUE),
+        hashes.length);
+    for (final long h : hashes) {
+      assertTrue(hashSearch(oadh, lgArrLongs, h) >= 0);
+      assertTrue(hashSearchBucketed(bucketed, lgArrLongs, h) >= 0);
+    }
+  }
+
+  @Test
+  public void checkBucketedOverflowWraps() {
+    final long[] table = new long[16];
+    for (int i = 0; i < 16; i++) { //all start in the last bucket
+      assertEquals(hashInsertOnlyBucketed(table, 4, (i << 4) | 15), (i + 8) & 15);
+    }
+    assertEquals(hashSearchBucketed(table, 4, (3 << 4) | 15), 11);
+    assertEquals(hashSearchBucketed(table, 4, (9 << 4) | 15), 1);
+    try {
+      hashInsertOnlyBucketed(table, 4, 1L << 20);
+      fail();
+    } catch (final SketchesArgumentException e) {
+      // expected
+    }
+    try {
+      hashSearchOrInsertBucketed(table, 4, 1L << 20);
+      fail();
+    } catch (final SketchesArgumentException e) {
+      // expected
+    }
+    assertEquals(hashSearchBucketed(table, 4, 1L << 20), -1);
+  }
+
   @Test
   public void printlnTest() {
     println("PRINTING: " + this.getClass().getName());
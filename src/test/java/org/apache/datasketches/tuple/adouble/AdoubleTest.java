@@ -21,9 +21,12 @@ package org.apache.datasketches.tuple.adouble;
 
 import static org.testng.Assert.assertEquals;
 
+import java.util.TreeMap;
+
 import org.apache.datasketches.common.ResizeFactor;
 import org.apache.datasketches.common.SketchesArgumentException;
 import org.apache.datasketches.memory.Memory;
+import org.apache.datasketches.tuple.AnotB;
 import org.apache.datasketches.tuple.Sketch;
 import org.apache.datasketches.tuple.TupleSketchIterator;
 import org.apache.datasketches.tuple.Sketches;
@@ -414,4 +417,43 @@ public class AdoubleTest {
       (new DoubleSummaryFactory(mode)).setSamplingProbability(2f).build();
   }
 
+  @Test
+  public void checkCacheLineBuckets() {
+    final int k = 512;
+    final UpdatableSketchBuilder<Double, DoubleSummary> bldr =
+        new UpdatableSketchBuilder<>(new DoubleSummaryFactory(mode)).setNominalEntries(k);
+    final UpdatableSketch<Double, DoubleSummary> bucketed = bldr.setCacheLineBuckets(true).build();
+    final UpdatableSketch<Double, DoubleSummary> exact =
+        bldr.setCacheLineBuckets(false).setNominalEntries(64 * k).build();
+    for (int i = 0; i < 20 * k; i++) {
+      exact.update(i, 1.0);
+      exact.update(i, 2.0);
+      bucketed.update(i, 1.0);
+      bucketed.update(i, 2.0);
+    }
+    //the bucketed layout rebuilds at a lower load, but retains every hash below its theta
+    final TreeMap<Long, Double> expected =
+        new TreeMap<>(toMap(exact.compact()).headMap(bucketed.getThetaLong()));
+    assertEquals(toMap(bucketed.compact()), expected);
+    assertEquals(bucketed.getRetainedEntries(), expected.size());
+
+    //the serialized form and the set operations do not depend on the layout
+    final Sketch<DoubleSummary> deserialized = Sketches.heapifySketch(
+        Memory.wrap(bucketed.compact().toByteArray()), new DoubleSummaryDeserializer());
+    assertEquals(toMap(deserialized), expected);
+    final UpdatableSketch<Double, DoubleSummary> other = bldr.setNominalEntries(k).build();
+    for (int i = 10 * k; i < 30 * k; i++) { other.update(i, 1.0); }
+    assertEquals(toMap(AnotB.aNotB(other, bucketed)), toMap(AnotB.aNotB(other, deserialized)));
+
+    bldr.reset();
+    assertEquals(bldr.build().getRetainedEntries(), 0);
+  }
+
+  private static TreeMap<Long, Double> toMap(final Sketch<DoubleSummary> sketch) {
+    final TreeMap<Long, Double> map = new TreeMap<>();
+    final TupleSketchIterator<DoubleSummary> it = sketch.iterator();
+    while (it.next()) { map.put(it.getHash(), it.getSummary().getValue()); }
+    return map;
+  }
+
 }